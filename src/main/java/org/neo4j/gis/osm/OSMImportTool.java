@@ -5,8 +5,14 @@ import org.neo4j.configuration.Config;
 import org.neo4j.configuration.GraphDatabaseSettings;
 import org.neo4j.configuration.SettingValueParsers;
 import org.neo4j.function.Predicates;
+import org.neo4j.gis.osm.importer.ImportCheckpoint;
+import org.neo4j.gis.osm.importer.ImportMetrics;
+import org.neo4j.gis.osm.importer.InputProgressMonitor;
 import org.neo4j.gis.osm.importer.OSMInput;
+import org.neo4j.gis.osm.importer.OSMInputConfiguration;
 import org.neo4j.gis.osm.importer.PrintingImportLogicMonitor;
+import org.neo4j.gis.osm.importer.TagFilter;
+import org.neo4j.gis.osm.model.RoutingProfile;
 import org.neo4j.internal.batchimport.BatchImporter;
 import org.neo4j.internal.batchimport.BatchImporterFactory;
 import org.neo4j.internal.batchimport.Configuration;
@@ -17,6 +23,7 @@ import org.neo4j.internal.batchimport.input.Collector;
 import org.neo4j.internal.batchimport.input.InputException;
 import org.neo4j.internal.batchimport.staging.ExecutionMonitor;
 import org.neo4j.internal.batchimport.staging.ExecutionMonitors;
+import org.neo4j.internal.batchimport.staging.MultiExecutionMonitor;
 import org.neo4j.internal.batchimport.staging.SpectrumExecutionMonitor;
 import org.neo4j.internal.helpers.Args;
 import org.neo4j.internal.helpers.Exceptions;
@@ -59,6 +66,7 @@ import static org.neo4j.internal.batchimport.input.BadCollector.BAD_FILE_NAME;
 import static org.neo4j.internal.batchimport.input.Collectors.*;
 import static org.neo4j.internal.helpers.Exceptions.throwIfUnchecked;
 import static org.neo4j.internal.helpers.Strings.TAB;
+import static org.neo4j.internal.helpers.collection.MapUtil.map;
 import static org.neo4j.io.ByteUnit.bytes;
 import static org.neo4j.io.ByteUnit.mebiBytes;
 import static org.neo4j.kernel.impl.scheduler.JobSchedulerFactory.createScheduler;
@@ -143,7 +151,68 @@ public class OSMImportTool {
                 "(advanced) Ignore environment-based heuristics, and assume that the target storage subsystem can " +
                         "support parallel IO with high throughput."),
         DETAILED_PROGRESS("detailed-progress", Boolean.FALSE, "true/false", "Use the old detailed 'spectrum' progress printing"),
-        TRACE_PAGE_CACHE("trace-page-cache", Boolean.FALSE, "true/false", "Trace the counts of page cache usage");
+        INPUT_PROGRESS("input-progress", Boolean.FALSE, "true/false",
+                "Print the progress from the bytes of the input files read, with the MB/s read and parsed and the time "
+                        + "left for each stage reading the input, instead of the default progress, which is based on "
+                        + "estimated entity counts that are mostly wrong for compressed files."),
+        TRACE_PAGE_CACHE("trace-page-cache", Boolean.FALSE, "true/false", "Trace the counts of page cache usage"),
+        REPORT("report", null, "<file>",
+                "Write a JSON report of the import to this file, with the bytes read, parse and wait times, chunk sizes "
+                        + "and events of each pass over the input, and the time of each importer stage and step."),
+        ROUTING_ONLY("routing-only", Boolean.FALSE, "<true/false>",
+                "Import only highway intersection and end nodes, connected by ROUTE relationships with distance, "
+                        + "geometry and routing profile costs, instead of the complete OSM model. "
+                        + "Requires an additional pass over the input files."),
+        ROUTING_PROFILES("routing-profiles", "car,bicycle,foot", "<names or profile file>",
+                "Routing profiles whose costs and access are stored on the ROUTE relationships of --routing-only, "
+                        + "either as names separated by commas, or as a file with one profile per line, each a name "
+                        + "followed by the highway speeds in km/h to change, like 'car motorway=0 residential=20'."),
+        MERGE_FILES("merge-files", Boolean.FALSE, "<true/false>",
+                "Read all input files concurrently, merging them by entity type and id so that nodes, ways and relations "
+                        + "occurring in more than one file, like on the borders of neighbouring extracts, are imported only once. "
+                        + "Each file must be sorted by type and id, as OSM files normally are."),
+        SORT_INPUT("sort-input", Boolean.FALSE, "<true/false>",
+                "Parse the input files once into a spool sorted by type and id, which all passes then read instead of "
+                        + "the files, so that unsorted files can be imported, and duplicate nodes, ways and relations are "
+                        + "imported only once. Spools larger than --spool-run-size are merged in --spool-directory. "
+                        + "Replaces --merge-files."),
+        RESUME("resume", Boolean.FALSE, "<true/false>",
+                "Keep the --sort-input spool of a failed import in --spool-directory as a cache of the parsed input, and "
+                        + "import the same files into the same database again from that spool instead of parsing them. "
+                        + "The importer stages always run again, after deleting the partial store of the failed import."),
+        BYTE_PARSER("byte-parser", Boolean.FALSE, "<true/false>",
+                "Read the OSM XML with a faster tokenizer working directly on the UTF-8 bytes, instead of the "
+                        + "general purpose StAX parser of the JDK."),
+        PARALLEL_PARSING("parallel-parsing", Boolean.FALSE, "<true/false>",
+                "Split uncompressed input files into ranges that are memory mapped and parsed concurrently, "
+                        + "using the byte parser. Compressed files are parsed whole. Not used together with --merge-files."),
+        PARALLEL_DECOMPRESSION("parallel-decompression", Boolean.FALSE, "<true/false>",
+                "Decompress the blocks of bzip2 input files concurrently, using as many threads as the importer."),
+        TAG_DICTIONARY_SIZE("tag-dictionary-size", 65536, "<max entries>",
+                "Maximum number of frequently repeated tag keys and values to share between tags, instead of "
+                        + "creating new strings for each. Use 0 to disable."),
+        TAG_FILTER("tag-filter", null, "<profile file>",
+                "Import only the nodes, ways and relations matching the include and exclude rules of the profile, "
+                        + "with the nodes and ways they reference, optionally keeping only some of their tags. "
+                        + "Requires an additional pass over the input files."),
+        METADATA("metadata", "full", "<none/minimal/full>",
+                "Which editing metadata of nodes, ways and relations to import: 'none', 'minimal' for only the version "
+                        + "and timestamp, or 'full' for also the user, uid, changeset and visibility."),
+        INLINE_TAGS("inline-tags", Boolean.FALSE, "<true/false>",
+                "Store the tags as properties of the OSMNode, OSMWay and OSMRelation nodes themselves, instead of on "
+                        + "separate OSMTags nodes connected by TAGS relationships."),
+        SHARED_TAGS("shared-tags", 0, "<max tag sets>",
+                "Maximum number of distinct tag sets for which one OSMTags node is shared by all entities with exactly "
+                        + "those tags, using 32 bytes of off-heap memory each. Use 0 to create an OSMTags node per entity."),
+        SPATIAL_ORDER("spatial-order", "none", "<none/hilbert/morton>",
+                "Import the OSMNode nodes sorted along a Hilbert or Morton curve, instead of in input order, so that "
+                        + "nodes close in space are stored close together. Sorts larger than --spool-run-size are spilled "
+                        + "to --spool-directory."),
+        SPOOL_DIRECTORY("spool-directory", null, "<directory>",
+                "Directory for the temporary files of sorts that do not fit in memory. Defaults to the system "
+                        + "temporary directory."),
+        SPOOL_RUN_SIZE("spool-run-size", 1_000_000, "<max entities>",
+                "Maximum number of entities each sort keeps in memory before writing them to a temporary file.");
 
         private final String key;
         private final Object defaultValue;
@@ -313,8 +382,10 @@ public class OSMImportTool {
             configuration = importConfiguration(processors, defaultSettingsSuitableForTests, maxMemory, homeDir, allowCacheOnHeap, defaultHighIO);
             in = defaultSettingsSuitableForTests ? new ByteArrayInputStream(EMPTY_BYTE_ARRAY) : System.in;
             boolean detailedProgress = args.getBoolean(Options.DETAILED_PROGRESS.key(), (Boolean) Options.DETAILED_PROGRESS.defaultValue());
+            boolean inputProgress = args.getBoolean(Options.INPUT_PROGRESS.key(), (Boolean) Options.INPUT_PROGRESS.defaultValue());
             boolean tracePageCache = args.getBoolean(Options.TRACE_PAGE_CACHE.key(), (Boolean) Options.TRACE_PAGE_CACHE.defaultValue());
-            doImport(out, err, in, databaseLayout, logsDir.toFile(), badFile, fs, osmFiles, enableStacktrace, dbConfig, badOutput, badCollector, configuration, detailedProgress, tracePageCache, range);
+            File report = args.interpretOption(Options.REPORT.key(), Converters.optional(), Converters.toFile());
+            doImport(out, err, in, databaseLayout, logsDir.toFile(), badFile, fs, osmFiles, enableStacktrace, dbConfig, badOutput, badCollector, configuration, inputConfiguration(args), detailedProgress, inputProgress, tracePageCache, range, report);
         }
     }
 
@@ -352,6 +423,11 @@ public class OSMImportTool {
         String error() {
             return Arrays.toString(errors.toArray());
         }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(range);
+        }
     }
 
     static class Converters {
@@ -373,6 +449,50 @@ public class OSMImportTool {
         public static Function<String, OSMRange> toRange() {
             return OSMRange::new;
         }
+
+        public static Function<String, OSMInputConfiguration.Metadata> toMetadata() {
+            return value -> {
+                try {
+                    return OSMInputConfiguration.Metadata.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Metadata '" + value + "' is not valid, expected one of: none, minimal, full");
+                }
+            };
+        }
+
+        public static Function<String, OSMInputConfiguration.SpatialOrder> toSpatialOrder() {
+            return value -> {
+                try {
+                    return OSMInputConfiguration.SpatialOrder.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Spatial order '" + value + "' is not valid, expected one of: none, hilbert, morton");
+                }
+            };
+        }
+
+        public static Function<String, List<RoutingProfile>> toRoutingProfiles() {
+            return value -> {
+                File file = new File(value);
+                if (!file.isFile()) {
+                    return RoutingProfile.parse(Arrays.asList(value.split(",")));
+                }
+                try {
+                    return RoutingProfile.load(file);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Routing profiles '" + file + "' could not be read: " + e.getMessage());
+                }
+            };
+        }
+
+        public static Function<String, TagFilter> toTagFilter() {
+            return file -> {
+                try {
+                    return TagFilter.load(new File(file));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Tag filter '" + file + "' could not be read: " + e.getMessage());
+                }
+            };
+        }
     }
 
     public static final Validator<OSMRange> RANGE_IS_VALID = value -> {
@@ -388,6 +508,34 @@ public class OSMImportTool {
                                 Collector badCollector, Configuration configuration,
                                 boolean detailedProgress, boolean tracePageCache,
                                 OSMRange range) throws IOException {
+        doImport(out, err, in, databaseLayout, logsDir, badFile, fs, osmFiles, enableStacktrace, dbConfig, badOutput, badCollector, configuration,
+                OSMInputConfiguration.DEFAULT, detailedProgress, tracePageCache, range);
+    }
+
+    public static void doImport(PrintStream out, PrintStream err, InputStream in, DatabaseLayout databaseLayout, File logsDir, File badFile,
+                                FileSystemAbstraction fs, String[] osmFiles,
+                                boolean enableStacktrace,
+                                Config dbConfig, OutputStream badOutput,
+                                Collector badCollector, Configuration configuration,
+                                OSMInputConfiguration inputConfiguration,
+                                boolean detailedProgress, boolean tracePageCache,
+                                OSMRange range) throws IOException {
+        doImport(out, err, in, databaseLayout, logsDir, badFile, fs, osmFiles, enableStacktrace, dbConfig, badOutput, badCollector, configuration,
+                inputConfiguration, detailedProgress, false, tracePageCache, range, null);
+    }
+
+    /**
+     * @param inputProgress print the {@link InputProgressMonitor} instead of the default progress
+     * @param report        the file to write the JSON report of the {@link ImportMetrics} to, or null for no report
+     */
+    public static void doImport(PrintStream out, PrintStream err, InputStream in, DatabaseLayout databaseLayout, File logsDir, File badFile,
+                                FileSystemAbstraction fs, String[] osmFiles,
+                                boolean enableStacktrace,
+                                Config dbConfig, OutputStream badOutput,
+                                Collector badCollector, Configuration configuration,
+                                OSMInputConfiguration inputConfiguration,
+                                boolean detailedProgress, boolean inputProgress, boolean tracePageCache,
+                                OSMRange range, File report) throws IOException {
         boolean success;
         LifeSupport life = new LifeSupport();
 
@@ -397,9 +545,34 @@ public class OSMImportTool {
         final JobScheduler jobScheduler = life.add(createScheduler());
 
         life.start();
+        OSMInput input = new OSMInput(fs, osmFiles, configuration, inputConfiguration, range);
         ExecutionMonitor executionMonitor = detailedProgress
                 ? new SpectrumExecutionMonitor(2, TimeUnit.SECONDS, out, SpectrumExecutionMonitor.DEFAULT_WIDTH)
+                : inputProgress
+                ? new InputProgressMonitor(input.metrics(), out, 10, TimeUnit.SECONDS)
                 : ExecutionMonitors.defaultVisible();
+        ImportCheckpoint checkpoint = input.openCheckpoint(databaseLayout.databaseDirectory());
+        if (checkpoint != null) {
+            if (checkpoint.resumable()) {
+                // The checkpoint is tied to the database directory, but never delete a store the failed import did not write
+                if (databaseLayout.databaseDirectory().exists() && !checkpoint.importedInto(databaseLayout.databaseDirectory())) {
+                    throw new IllegalArgumentException("Cannot resume " + checkpoint + " into " + databaseLayout.databaseDirectory() +
+                            ", which it was not imported into, use --delete to replace that database");
+                }
+                out.println("Resuming from " + checkpoint);
+                // The batch importer can only write a new store, so the partial store of the failed import is replaced
+                FileUtils.deleteRecursively(databaseLayout.databaseDirectory());
+                FileUtils.deleteRecursively(databaseLayout.getTransactionLogsDirectory());
+            }
+            executionMonitor = new MultiExecutionMonitor(executionMonitor, checkpoint.monitor());
+        }
+        ImportMetrics metrics = input.metrics();
+        if (report != null) {
+            metrics.put("files", osmFiles);
+            metrics.put("database", databaseLayout.databaseDirectory().getAbsolutePath());
+            metrics.put("processors", configuration.maxNumberOfProcessors());
+            executionMonitor = new MultiExecutionMonitor(executionMonitor, metrics.monitor());
+        }
         ImportLogic.Monitor importMonitor = new PrintingImportLogicMonitor(out, err);
         var cacheTracer = tracePageCache ? new DefaultPageCacheTracer() : PageCacheTracer.NULL;
         BatchImporter importer = BatchImporterFactory.withHighestPriority().instantiate(databaseLayout,
@@ -421,11 +594,12 @@ public class OSMImportTool {
         printOverview(databaseLayout.databaseDirectory(), osmFiles, configuration, out);
         success = false;
         try {
-            importer.doImport(new OSMInput(fs, osmFiles, configuration, range));
+            importer.doImport(input);
             success = true;
         } catch (Exception e) {
             throw andPrintError("Import error", e, enableStacktrace, err);
         } finally {
+            input.close();
             long numberOfBadEntries = badCollector.badEntries();
             badCollector.close();
             IOUtils.closeAll(badOutput);
@@ -439,6 +613,19 @@ public class OSMImportTool {
 
             life.shutdown();
 
+            if (report != null) {
+                if (tracePageCache) {
+                    metrics.put("pageCache", map("faults", cacheTracer.faults(), "pins", cacheTracer.pins(), "unpins", cacheTracer.unpins(),
+                            "hits", cacheTracer.hits(), "flushes", cacheTracer.flushes()));
+                }
+                try {
+                    metrics.writeReport(report);
+                    System.out.println("Wrote import report to " + report.getAbsolutePath());
+                } catch (IOException e) {
+                    err.println("Failed to write import report to " + report.getAbsolutePath() + ": " + e.getMessage());
+                }
+            }
+
             if (tracePageCache) {
                 System.out.println("Page cache counts:");
                 System.out.println("  faults:  " + cacheTracer.faults());
@@ -488,6 +675,106 @@ public class OSMImportTool {
         };
     }
 
+    public static OSMInputConfiguration inputConfiguration(Args args) {
+        boolean routingOnly = args.getBoolean(Options.ROUTING_ONLY.key(), (Boolean) Options.ROUTING_ONLY.defaultValue(), true);
+        boolean mergeFiles = args.getBoolean(Options.MERGE_FILES.key(), (Boolean) Options.MERGE_FILES.defaultValue(), true);
+        boolean sortInput = args.getBoolean(Options.SORT_INPUT.key(), (Boolean) Options.SORT_INPUT.defaultValue(), true);
+        boolean resume = args.getBoolean(Options.RESUME.key(), (Boolean) Options.RESUME.defaultValue(), true);
+        boolean byteParser = args.getBoolean(Options.BYTE_PARSER.key(), (Boolean) Options.BYTE_PARSER.defaultValue(), true);
+        boolean parallelParsing = args.getBoolean(Options.PARALLEL_PARSING.key(), (Boolean) Options.PARALLEL_PARSING.defaultValue(), true);
+        boolean parallelDecompression = args.getBoolean(Options.PARALLEL_DECOMPRESSION.key(), (Boolean) Options.PARALLEL_DECOMPRESSION.defaultValue(), true);
+        int tagDictionarySize = args.getNumber(Options.TAG_DICTIONARY_SIZE.key(), (Number) Options.TAG_DICTIONARY_SIZE.defaultValue()).intValue();
+        List<RoutingProfile> routingProfiles = Converters.toRoutingProfiles().apply(args.get(Options.ROUTING_PROFILES.key(), (String) Options.ROUTING_PROFILES.defaultValue()));
+        TagFilter tagFilter = args.interpretOption(Options.TAG_FILTER.key(), Converters.optional(), Converters.toTagFilter());
+        OSMInputConfiguration.Metadata metadata = Converters.toMetadata().apply(args.get(Options.METADATA.key(), (String) Options.METADATA.defaultValue()));
+        boolean inlineTags = args.getBoolean(Options.INLINE_TAGS.key(), (Boolean) Options.INLINE_TAGS.defaultValue(), true);
+        int sharedTagSets = args.getNumber(Options.SHARED_TAGS.key(), (Number) Options.SHARED_TAGS.defaultValue()).intValue();
+        OSMInputConfiguration.SpatialOrder spatialOrder = Converters.toSpatialOrder().apply(args.get(Options.SPATIAL_ORDER.key(), (String) Options.SPATIAL_ORDER.defaultValue()));
+        File spoolDirectory = args.interpretOption(Options.SPOOL_DIRECTORY.key(), Converters.optional(), Converters.toFile());
+        int spoolRunSize = args.getNumber(Options.SPOOL_RUN_SIZE.key(), (Number) Options.SPOOL_RUN_SIZE.defaultValue()).intValue();
+        return new OSMInputConfiguration() {
+            @Override
+            public boolean routingOnly() {
+                return routingOnly;
+            }
+
+            @Override
+            public List<RoutingProfile> routingProfiles() {
+                return routingProfiles;
+            }
+
+            @Override
+            public boolean mergeFiles() {
+                return mergeFiles;
+            }
+
+            @Override
+            public boolean sortInput() {
+                return sortInput;
+            }
+
+            @Override
+            public boolean resume() {
+                return resume;
+            }
+
+            @Override
+            public boolean byteParser() {
+                return byteParser;
+            }
+
+            @Override
+            public boolean parallelParsing() {
+                return parallelParsing;
+            }
+
+            @Override
+            public boolean parallelDecompression() {
+                return parallelDecompression;
+            }
+
+            @Override
+            public int tagDictionarySize() {
+                return tagDictionarySize;
+            }
+
+            @Override
+            public TagFilter tagFilter() {
+                return tagFilter;
+            }
+
+            @Override
+            public Metadata metadata() {
+                return metadata;
+            }
+
+            @Override
+            public boolean inlineTags() {
+                return inlineTags;
+            }
+
+            @Override
+            public int sharedTagSets() {
+                return sharedTagSets;
+            }
+
+            @Override
+            public SpatialOrder spatialOrder() {
+                return spatialOrder;
+            }
+
+            @Override
+            public File spoolDirectory() {
+                return spoolDirectory;
+            }
+
+            @Override
+            public int spoolRunSize() {
+                return spoolRunSize;
+            }
+        };
+    }
+
     private static String manualReference(ManualPage page, Anchor anchor) {
         // Docs are versioned major.minor-suffix, so drop the patch version.
         String[] versionParts = Version.getNeo4jVersion().split("-");
@@ -0,0 +1,108 @@
+package org.neo4j.gis.osm;
+
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.dbms.api.DatabaseManagementServiceBuilder;
+import org.neo4j.gis.osm.update.OSMChangeApplier;
+import org.neo4j.gis.osm.update.OSMChangeReader;
+import org.neo4j.gis.osm.update.OSMReplication;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.internal.helpers.Args;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import static org.apache.commons.lang3.ArrayUtils.isEmpty;
+import static org.neo4j.internal.helpers.Strings.TAB;
+
+/**
+ * Applies OSM change files (.osc, .osc.gz or .osc.bz2) to a database previously created by the OSMImportTool, so
+ * that it can be kept up to date without a complete re-import. Alternatively all new diffs in a local replication
+ * directory can be applied, continuing from the last sequence number applied to the database.
+ */
+public class OSMUpdateTool {
+    private static final String HOME_DIR = "into";
+    private static final String DB_NAME = "database";
+    private static final String BATCH_SIZE = "batch-size";
+    private static final String REPLICATION = "replication";
+    private static final String SEQUENCE = "sequence";
+    private static final String WINDOW = "window";
+    private static final String THREADS = "threads";
+    private static final int DEFAULT_WINDOW = 60;
+
+    public static void main(String[] incomingArguments) throws Exception {
+        PrintStream out = System.out;
+        Args args = Args.parse(incomingArguments);
+        String[] changeFiles = args.orphansAsArray();
+        String replication = args.get(REPLICATION, null);
+        if (isEmpty(incomingArguments) || (changeFiles.length == 0 && replication == null) || args.get(HOME_DIR, null) == null) {
+            printUsage(out);
+            return;
+        }
+        File homeDir = new File(args.get(HOME_DIR, null));
+        String databaseName = args.get(DB_NAME, "osm");
+        int batchSize = args.getNumber(BATCH_SIZE, OSMChangeApplier.DEFAULT_BATCH_SIZE).intValue();
+        // Community only starts the default database, and stores written by the batch importer have no transaction logs yet
+        DatabaseManagementService databases = new DatabaseManagementServiceBuilder(homeDir)
+                .setConfig(GraphDatabaseSettings.default_database, databaseName)
+                .setConfig(GraphDatabaseSettings.fail_on_missing_files, false).build();
+        try {
+            GraphDatabaseService db = databases.database(databaseName);
+            if (replication != null) {
+                Number sequence = args.getNumber(SEQUENCE, null);
+                int window = args.getNumber(WINDOW, DEFAULT_WINDOW).intValue();
+                int threads = args.getNumber(THREADS, Runtime.getRuntime().availableProcessors()).intValue();
+                doReplication(out, db, new File(replication), sequence == null ? null : sequence.longValue(), window, threads, batchSize);
+            } else {
+                doUpdate(out, db, changeFiles, batchSize);
+            }
+        } finally {
+            databases.shutdown();
+        }
+    }
+
+    public static OSMChangeApplier.Stats doUpdate(PrintStream out, GraphDatabaseService db, String[] changeFiles, int batchSize) throws Exception {
+        OSMChangeApplier applier = new OSMChangeApplier(db, batchSize, out);
+        applier.ensureIndexes();
+        OSMChangeApplier.Stats stats = new OSMChangeApplier.Stats();
+        for (String changeFile : changeFiles) {
+            out.println("Applying changes from " + changeFile);
+            try (OSMChangeReader changes = new OSMChangeReader(changeFile)) {
+                applier.apply(changes, stats);
+            }
+        }
+        out.println(stats);
+        return stats;
+    }
+
+    public static OSMChangeApplier.Stats doReplication(PrintStream out, GraphDatabaseService db, File directory, Long sequence, int window, int threads, int batchSize) throws Exception {
+        OSMChangeApplier applier = new OSMChangeApplier(db, batchSize, out);
+        applier.ensureIndexes();
+        OSMChangeApplier.Stats stats = new OSMReplication(db, directory, applier, window, threads, out).catchUp(sequence);
+        out.println(stats);
+        return stats;
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Neo4j OpenStreetMap Update Tool");
+        out.println(TAB + "osm-update applies OSM change files to a database created with osm-import.");
+        out.println("Usage:");
+        out.println("--" + HOME_DIR + " <home-dir>");
+        out.println(TAB + "The root of the DBMS containing the database to update.");
+        out.println("--" + DB_NAME + " <database-name>");
+        out.println(TAB + "Database name to update. Default value: osm");
+        out.println("--" + BATCH_SIZE + " <number of changes>");
+        out.println(TAB + "Number of changes to apply in each transaction. Default value: " + OSMChangeApplier.DEFAULT_BATCH_SIZE);
+        out.println("--" + REPLICATION + " <replication-dir>");
+        out.println(TAB + "Apply all diffs in a local replication directory, with state.txt, since the last applied sequence number.");
+        out.println("--" + SEQUENCE + " <sequence number>");
+        out.println(TAB + "Sequence number of the originally imported data, needed only for the first replication run.");
+        out.println("--" + WINDOW + " <number of diffs>");
+        out.println(TAB + "Number of consecutive diffs to merge in memory before applying them. Default value: " + DEFAULT_WINDOW);
+        out.println("--" + THREADS + " <number of threads>");
+        out.println(TAB + "Number of parallel transactions to apply each merged window with. Default value: number of processors");
+        out.println("Example:");
+        out.println(TAB + "bin/osm-update --into osm.db --database sweden 2020-11-01.osc.gz 2020-11-02.osc.gz");
+        out.println(TAB + "bin/osm-update --into osm.db --database sweden --replication replication/minute --sequence 4230");
+    }
+}
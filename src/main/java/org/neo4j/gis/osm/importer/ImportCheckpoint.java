@@ -0,0 +1,222 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.internal.batchimport.staging.ExecutionMonitor;
+import org.neo4j.internal.batchimport.staging.StageExecution;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The state of an import using {@link OSMInputConfiguration#resume()}, kept in the spool directory so that an import
+ * of the same files that failed can be run again without parsing the input. It records the files of the finished
+ * {@link OSMEntitySpool}, and the stages of the batch importer as they start and end, so that a resumed import can
+ * tell where the previous one failed. The batch importer cannot continue writing a store it did not finish, so
+ * completed stages are only reported, and the store is always imported again from the spool, but the parsing, which
+ * is the larger part of the time for compressed planet files, is skipped.
+ * <p>
+ * The checkpoint file name is derived from the input files, their sizes and modification times, the options that
+ * change what is spooled, and the database directory imported into, so that changed input is never imported from an
+ * old spool, and only the partial store of the failed import itself is ever replaced by a resumed import.
+ */
+public class ImportCheckpoint {
+    private static final String SPOOLED = "spooled";
+    private static final String COMPLETED = "completed";
+    private static final String CURRENT_STAGE = "stage.current";
+    private static final String COMPLETED_STAGES = "stage.completed";
+    private static final String DATABASE = "database";
+
+    private final File file;
+    private final File header;
+    private final Properties state = new Properties();
+    private final Properties previous;
+
+    private ImportCheckpoint(File file, File database, Properties previous) {
+        this.file = file;
+        this.header = new File(file.getPath().replaceAll("\\.checkpoint$", ".header"));
+        this.previous = previous;
+        if (previous != null) {
+            state.putAll(previous);
+            state.remove(COMPLETED);
+            state.remove(CURRENT_STAGE);
+            state.remove(COMPLETED_STAGES);
+        }
+        state.setProperty(DATABASE, database.getAbsolutePath());
+    }
+
+    /**
+     * The checkpoint for importing these files into the database directory, with the state of an earlier import of the
+     * same files into the same directory, if there is one.
+     *
+     * @param directory for the checkpoint and spool files, or null for the default temporary directory
+     * @param database  the database directory imported into
+     */
+    public static ImportCheckpoint open(File directory, File database, String[] osmFiles, OSMInputConfiguration config, OSMInput.RangeFilter range) throws IOException {
+        File dir = directory != null ? directory : new File(System.getProperty("java.io.tmpdir"));
+        File file = new File(dir, "osm-import-" + fingerprint(database, osmFiles, config, range) + ".checkpoint");
+        Properties previous = null;
+        if (file.isFile()) {
+            previous = new Properties();
+            try (Reader reader = new FileReader(file)) {
+                previous.load(reader);
+            }
+        }
+        return new ImportCheckpoint(file, database, previous);
+    }
+
+    private static String fingerprint(File database, String[] osmFiles, OSMInputConfiguration config, OSMInput.RangeFilter range) throws IOException {
+        StringBuilder identity = new StringBuilder(database.getCanonicalPath()).append('\n');
+        for (String osmFile : osmFiles) {
+            File input = new File(osmFile);
+            identity.append(input.getCanonicalPath()).append(':').append(input.length()).append(':').append(input.lastModified()).append('\n');
+        }
+        identity.append(config.metadata()).append('\n').append(range);
+        // FNV-1a, which is enough to tell imports apart, and keeps the file name short
+        long hash = 0xcbf29ce484222325L;
+        for (char c : identity.toString().toCharArray()) {
+            hash = (hash ^ c) * 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * Whether an earlier import of the same files spooled them completely, so they need not be parsed again.
+     */
+    public boolean resumable() {
+        return previous != null && previous.getProperty(SPOOLED) != null && previous.getProperty(COMPLETED) == null;
+    }
+
+    /**
+     * Whether the earlier import that can be resumed wrote its partial store into this database directory, which is
+     * then deleted to import it again.
+     */
+    public boolean importedInto(File database) throws IOException {
+        String previousDatabase = previous == null ? null : previous.getProperty(DATABASE);
+        return previousDatabase != null && new File(previousDatabase).getCanonicalPath().equals(database.getCanonicalPath());
+    }
+
+    /**
+     * The spool of the earlier import, if {@link #resumable()}.
+     */
+    OSMEntitySpool restoreSpool() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String name : state.getProperty(SPOOLED).split(File.pathSeparator)) {
+            if (!name.isEmpty()) {
+                files.add(new File(name));
+            }
+        }
+        return OSMEntitySpool.restore(header, files);
+    }
+
+    /**
+     * Record the finished spool, which makes the checkpoint {@link #resumable()} from now on.
+     */
+    synchronized void spooled(OSMEntitySpool spool) throws IOException {
+        spool.save(header);
+        StringJoiner files = new StringJoiner(File.pathSeparator);
+        for (File spooled : spool.files()) {
+            files.add(spooled.getAbsolutePath());
+        }
+        state.setProperty(SPOOLED, files.toString());
+        state.setProperty("spooled.at", Instant.now().toString());
+        save();
+    }
+
+    /**
+     * Record that an importer stage started, or ended when the duration is not negative.
+     */
+    public synchronized void stage(String name, long millis) {
+        if (millis < 0) {
+            state.setProperty(CURRENT_STAGE, name);
+        } else {
+            state.remove(CURRENT_STAGE);
+            String completed = state.getProperty(COMPLETED_STAGES);
+            state.setProperty(COMPLETED_STAGES, (completed == null ? "" : completed + ", ") + name + " in " + millis + "ms");
+        }
+        if (state.getProperty(SPOOLED) != null) {
+            try {
+                save();
+            } catch (IOException e) {
+                System.err.println("Failed to update import checkpoint " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Record that the import finished successfully, so that the spool can be deleted.
+     */
+    public synchronized void completed() {
+        state.setProperty(COMPLETED, Instant.now().toString());
+    }
+
+    public synchronized boolean isCompleted() {
+        return state.getProperty(COMPLETED) != null;
+    }
+
+    /**
+     * Delete the checkpoint, once the spool is deleted too.
+     */
+    public synchronized void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(header.toPath());
+    }
+
+    public File file() {
+        return file;
+    }
+
+    private void save() throws IOException {
+        // Written next to the checkpoint and then moved over it, so that a crash never leaves half a checkpoint
+        File written = new File(file.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(written)) {
+            state.store(writer, "OSM import checkpoint, used by --resume");
+        }
+        Files.move(written.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Records the start and end of each stage of the batch importer in this checkpoint.
+     */
+    public ExecutionMonitor monitor() {
+        return new ExecutionMonitor.Adapter(1, TimeUnit.SECONDS) {
+            @Override
+            public void start(StageExecution execution) {
+                stage(execution.getStageName(), -1);
+            }
+
+            @Override
+            public void end(StageExecution execution, long totalTimeMillis) {
+                stage(execution.getStageName(), totalTimeMillis);
+            }
+
+            @Override
+            public void done(boolean successful, long totalTimeMillis, String additionalInformation) {
+                if (successful) {
+                    completed();
+                }
+            }
+
+            @Override
+            public void check(StageExecution execution) {
+            }
+        };
+    }
+
+    /**
+     * What the earlier import of the same files got through, for the message when resuming it.
+     */
+    @Override
+    public synchronized String toString() {
+        if (previous == null) {
+            return "No checkpoint of an earlier import in " + file;
+        }
+        String failed = previous.getProperty(CURRENT_STAGE);
+        String completed = previous.getProperty(COMPLETED_STAGES);
+        return "Checkpoint " + file.getName() + " of the import into " + previous.getProperty(DATABASE) + " spooled at " + previous.getProperty("spooled.at") +
+                (failed != null ? ", which failed in stage '" + failed + "'" : ", which failed between importer stages") +
+                (completed != null ? " after completing " + completed : "");
+    }
+}
@@ -0,0 +1,401 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.internal.batchimport.staging.ExecutionMonitor;
+import org.neo4j.internal.batchimport.staging.StageExecution;
+import org.neo4j.internal.batchimport.staging.Step;
+import org.neo4j.internal.batchimport.stats.Keys;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Measurements of an import, to find out whether parsing, decompression or the batch importer stages are the
+ * bottleneck. Every pass over the input, like the node and relationship imports and the pre-passes, gets its own
+ * {@link Pass} with the bytes read, the time spent parsing and waiting for the input, the chunk sizes, and the node
+ * and relationship events created by type. The stages of the batch importer are recorded by the {@link #monitor()},
+ * with the processing time of each step. Everything is written as a JSON report by {@link #writeReport(File)}.
+ */
+public class ImportMetrics {
+    private final long started = System.currentTimeMillis();
+    private final List<Pass> passes = new CopyOnWriteArrayList<>();
+    private final List<Stage> stages = new CopyOnWriteArrayList<>();
+    private final Map<String, Object> properties = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile Pass pass = new Pass("input", 0);
+    private volatile Boolean successful = null;
+
+    Pass begin(String name) {
+        return begin(name, 0);
+    }
+
+    /**
+     * Start recording a new pass over the input, which all following measurements of the input are added to.
+     *
+     * @param inputBytes the size of the files the pass reads from disk, to tell how far it got
+     */
+    Pass begin(String name, long inputBytes) {
+        Pass begun = new Pass(name, inputBytes);
+        passes.add(begun);
+        pass = begun;
+        return begun;
+    }
+
+    /**
+     * The pass over the input currently being read.
+     */
+    Pass pass() {
+        return pass;
+    }
+
+    List<Pass> passes() {
+        return passes;
+    }
+
+    /**
+     * Add a value to the top level of the report, like the input files or the page cache counts.
+     */
+    public void put(String key, Object value) {
+        properties.put(key, value);
+    }
+
+    /**
+     * Records the start and end of each stage of the batch importer, with the time each step spent processing.
+     */
+    public ExecutionMonitor monitor() {
+        return new ExecutionMonitor.Adapter(1, TimeUnit.SECONDS) {
+            private final Map<String, Stage> running = new ConcurrentHashMap<>();
+
+            @Override
+            public void start(StageExecution execution) {
+                Stage stage = new Stage(execution.getStageName());
+                running.put(stage.name, stage);
+                stages.add(stage);
+            }
+
+            @Override
+            public void end(StageExecution execution, long totalTimeMillis) {
+                Stage stage = running.remove(execution.getStageName());
+                if (stage != null) {
+                    stage.millis = totalTimeMillis;
+                    for (Step<?> step : execution.steps()) {
+                        stage.steps.put(step.name(), new long[]{
+                                step.stats().stat(Keys.done_batches).asLong(),
+                                step.stats().stat(Keys.total_processing_time).asLong()});
+                    }
+                }
+            }
+
+            @Override
+            public void done(boolean success, long totalTimeMillis, String additionalInformation) {
+                successful = success;
+            }
+
+            @Override
+            public void check(StageExecution execution) {
+            }
+        };
+    }
+
+    /**
+     * Write all measurements as a JSON document.
+     */
+    public void writeReport(File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            writer.write(toJson());
+        }
+    }
+
+    String toJson() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("millis", System.currentTimeMillis() - started);
+        report.put("successful", successful);
+        synchronized (properties) {
+            report.putAll(properties);
+        }
+        List<Object> passReports = new ArrayList<>();
+        for (Pass pass : passes) {
+            passReports.add(pass.report());
+        }
+        report.put("passes", passReports);
+        List<Object> stageReports = new ArrayList<>();
+        for (Stage stage : stages) {
+            stageReports.add(stage.report());
+        }
+        report.put("stages", stageReports);
+        StringBuilder json = new StringBuilder();
+        json(json, report, "");
+        return json.append('\n').toString();
+    }
+
+    /**
+     * The measurements of one pass over the input, which can be updated by all threads reading the input.
+     */
+    static class Pass {
+        private final String name;
+        private final long inputBytes;
+        private final long started = System.nanoTime();
+        private volatile long ended = 0;
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder uncompressedBytes = new LongAdder();
+        private final LongAdder parseNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final LongAdder chunks = new LongAdder();
+        private final LongAdder chunkEvents = new LongAdder();
+        private final LongAccumulator largestChunk = new LongAccumulator(Math::max, 0);
+        private final Map<String, LongAdder> nodes = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> relationships = new ConcurrentHashMap<>();
+
+        private Pass(String name, long inputBytes) {
+            this.name = name;
+            this.inputBytes = inputBytes;
+        }
+
+        /**
+         * Count the bytes of a file read from disk, and the bytes after decompression.
+         */
+        InputStream counting(InputStream input, boolean compressed) {
+            return new CountingInputStream(input, compressed ? compressedBytes : uncompressedBytes);
+        }
+
+        void parsed(long nanos) {
+            parseNanos.add(nanos);
+        }
+
+        /**
+         * Time a thread waited for another thread reading the input.
+         */
+        void blocked(long nanos) {
+            blockedNanos.add(nanos);
+        }
+
+        void chunk(long events) {
+            if (events > 0) {
+                chunks.increment();
+                chunkEvents.add(events);
+                largestChunk.accumulate(events);
+            }
+        }
+
+        <T> void nodes(List<T> events, Function<T, String> label) {
+            count(nodes, events, label);
+        }
+
+        <T> void relationships(List<T> events, Function<T, String> type) {
+            count(relationships, events, type);
+        }
+
+        private static <T> void count(Map<String, LongAdder> counts, List<T> events, Function<T, String> name) {
+            // Counted per chunk first, so that the shared counters are only updated once per name and chunk
+            Map<String, long[]> chunk = new HashMap<>();
+            for (T event : events) {
+                chunk.computeIfAbsent(name.apply(event), key -> new long[1])[0]++;
+            }
+            chunk.forEach((key, count) -> counts.computeIfAbsent(key, k -> new LongAdder()).add(count[0]));
+        }
+
+        void end() {
+            ended = System.nanoTime();
+        }
+
+        boolean ended() {
+            return ended > 0;
+        }
+
+        /**
+         * The time since the pass began, or until it ended.
+         */
+        long nanos() {
+            return (ended > 0 ? ended : System.nanoTime()) - started;
+        }
+
+        String name() {
+            return name;
+        }
+
+        long inputBytes() {
+            return inputBytes;
+        }
+
+        long uncompressedBytes() {
+            return uncompressedBytes.sum();
+        }
+
+        long compressedBytes() {
+            return compressedBytes.sum();
+        }
+
+        long nodes(String label) {
+            LongAdder count = nodes.get(label);
+            return count == null ? 0 : count.sum();
+        }
+
+        long chunks() {
+            return chunks.sum();
+        }
+
+        private Map<String, Object> report() {
+            long nanos = nanos();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("name", name);
+            report.put("millis", TimeUnit.NANOSECONDS.toMillis(nanos));
+            report.put("inputBytes", inputBytes);
+            report.put("compressedBytes", compressedBytes.sum());
+            report.put("uncompressedBytes", uncompressedBytes.sum());
+            report.put("compressedMBps", megabytesPerSecond(compressedBytes.sum(), nanos));
+            report.put("uncompressedMBps", megabytesPerSecond(uncompressedBytes.sum(), nanos));
+            report.put("parseMillis", TimeUnit.NANOSECONDS.toMillis(parseNanos.sum()));
+            report.put("blockedMillis", TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum()));
+            report.put("chunks", chunks.sum());
+            report.put("averageChunkSize", chunks.sum() == 0 ? 0 : chunkEvents.sum() / chunks.sum());
+            report.put("largestChunkSize", largestChunk.get());
+            report.put("nodes", sums(nodes));
+            report.put("relationships", sums(relationships));
+            return report;
+        }
+
+        static double megabytesPerSecond(long bytes, long nanos) {
+            return nanos == 0 ? 0 : Math.round(bytes * 1000.0 / nanos * 10) / 10.0;
+        }
+
+        private static Map<String, Object> sums(Map<String, LongAdder> counts) {
+            Map<String, Object> sums = new TreeMap<>();
+            counts.forEach((key, count) -> sums.put(key, count.sum()));
+            return sums;
+        }
+    }
+
+    private static class Stage {
+        private final String name;
+        private volatile long millis = -1;
+        private final Map<String, long[]> steps = new LinkedHashMap<>();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        private Map<String, Object> report() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("name", name);
+            report.put("millis", millis);
+            List<Object> stepReports = new ArrayList<>();
+            steps.forEach((step, stats) -> {
+                Map<String, Object> stepReport = new LinkedHashMap<>();
+                stepReport.put("name", step);
+                stepReport.put("batches", stats[0]);
+                stepReport.put("processingMillis", stats[1]);
+                stepReports.add(stepReport);
+            });
+            report.put("steps", stepReports);
+            return report;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder bytes;
+
+        private CountingInputStream(InputStream input, LongAdder bytes) {
+            super(input);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                bytes.increment();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                bytes.add(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytes.add(skipped);
+            return skipped;
+        }
+    }
+
+    private static void json(StringBuilder json, Object value, String indent) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.isEmpty()) {
+                json.append("{}");
+                return;
+            }
+            json.append("{\n");
+            Iterator<? extends Map.Entry<?, ?>> entries = map.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                json.append(indent).append("  ");
+                string(json, String.valueOf(entry.getKey()));
+                json.append(": ");
+                json(json, entry.getValue(), indent + "  ");
+                json.append(entries.hasNext() ? ",\n" : "\n");
+            }
+            json.append(indent).append('}');
+        } else if (value instanceof Collection || value instanceof Object[]) {
+            Collection<?> values = value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value);
+            if (values.isEmpty()) {
+                json.append("[]");
+                return;
+            }
+            json.append("[\n");
+            Iterator<?> elements = values.iterator();
+            while (elements.hasNext()) {
+                json.append(indent).append("  ");
+                json(json, elements.next(), indent + "  ");
+                json.append(elements.hasNext() ? ",\n" : "\n");
+            }
+            json.append(indent).append(']');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            string(json, value.toString());
+        }
+    }
+
+    private static void string(StringBuilder json, String value) {
+        json.append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,91 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.internal.batchimport.staging.ExecutionMonitor;
+import org.neo4j.internal.batchimport.staging.StageExecution;
+import org.neo4j.internal.batchimport.staging.Step;
+import org.neo4j.internal.batchimport.stats.Keys;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the progress of the import from the bytes of the input files read so far, instead of the estimated entity
+ * counts used by the default progress, which are little more than guesses for compressed files. While a stage reads
+ * the input, each line shows how much of the files was read, the rate at which they are read from disk and parsed
+ * after decompression, and the time left for the pass at that rate. The pre-passes and the spool of
+ * {@link OSMInputConfiguration#sortInput()} are passes of their own, and passes reading the spool measure the bytes
+ * of the spool files. Stages after the input has been read only show how long they have run and the batches done.
+ */
+public class InputProgressMonitor extends ExecutionMonitor.Adapter {
+    private final ImportMetrics metrics;
+    private final PrintStream out;
+    private volatile long stageStarted = System.currentTimeMillis();
+
+    public InputProgressMonitor(ImportMetrics metrics, PrintStream out, long interval, TimeUnit unit) {
+        super(interval, unit);
+        this.metrics = metrics;
+        this.out = out;
+    }
+
+    @Override
+    public void start(StageExecution execution) {
+        stageStarted = System.currentTimeMillis();
+        out.println(execution.getStageName() + " started");
+    }
+
+    @Override
+    public void end(StageExecution execution, long totalTimeMillis) {
+        out.println(execution.getStageName() + " completed in " + duration(totalTimeMillis));
+    }
+
+    @Override
+    public void done(boolean successful, long totalTimeMillis, String additionalInformation) {
+        out.println("IMPORT " + (successful ? "DONE" : "FAILED") + " in " + duration(totalTimeMillis) + ". " + additionalInformation);
+    }
+
+    @Override
+    public void check(StageExecution execution) {
+        long batches = 0;
+        for (Step<?> step : execution.steps()) {
+            // The last step, which has done all the work of the stage for these batches
+            batches = step.stats().stat(Keys.done_batches).asLong();
+        }
+        out.println(progress(execution.getStageName(), metrics.pass(), System.currentTimeMillis() - stageStarted, batches));
+    }
+
+    /**
+     * One line of progress of the stage, with the progress of the pass over the input if it is still being read.
+     */
+    static String progress(String stage, ImportMetrics.Pass pass, long stageMillis, long batches) {
+        StringBuilder line = new StringBuilder(stage).append(": ").append(duration(stageMillis));
+        if (pass.ended() || pass.inputBytes() <= 0) {
+            return line.append(", ").append(batches).append(" batches done").toString();
+        }
+        long nanos = pass.nanos();
+        long read = pass.compressedBytes();
+        long parsed = pass.uncompressedBytes();
+        line.append(String.format(Locale.ROOT, ", %s pass read %.1f%% of %d MB, %.1f MB/s read", pass.name(),
+                Math.min(100.0, 100.0 * read / pass.inputBytes()), pass.inputBytes() >> 20,
+                ImportMetrics.Pass.megabytesPerSecond(read, nanos)));
+        if (parsed > 0) {
+            // After decompression, which for compressed files is several times the rate read from disk
+            line.append(String.format(Locale.ROOT, ", %.1f MB/s parsed", ImportMetrics.Pass.megabytesPerSecond(parsed, nanos)));
+        }
+        if (read > 0 && read < pass.inputBytes()) {
+            long left = (long) ((double) nanos * (pass.inputBytes() - read) / read);
+            line.append(", ETA ").append(duration(TimeUnit.NANOSECONDS.toMillis(left)));
+        }
+        return line.toString();
+    }
+
+    static String duration(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 60) {
+            return seconds + "s";
+        } else if (seconds < 3600) {
+            return (seconds / 60) + "m " + (seconds % 60) + "s";
+        }
+        return (seconds / 3600) + "h " + (seconds / 60 % 60) + "m";
+    }
+}
@@ -0,0 +1,71 @@
+package org.neo4j.gis.osm.importer;
+
+/**
+ * A compact set of non-negative long ids, such as OSM node ids, stored as a paged bitset.
+ * <p>
+ * OSM ids are dense enough that one bit per possible id is much smaller than any hash based set, but they exceed the
+ * int range supported by {@link java.util.BitSet}. Pages are only allocated for id ranges that are actually used.
+ * This class is not thread-safe for concurrent writes, but concurrent reads after all writes are complete are safe.
+ */
+public class LongBitSet {
+    private static final int PAGE_BITS = 22;                 // 4M ids, or 512kB, per page
+    private static final int WORDS_PER_PAGE = 1 << (PAGE_BITS - 6);
+    private static final long PAGE_MASK = (1L << PAGE_BITS) - 1;
+
+    private long[][] pages = new long[16][];
+    private long cardinality = 0;
+
+    public void set(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Cannot store negative id: " + id);
+        }
+        int pageIndex = (int) (id >>> PAGE_BITS);
+        if (pageIndex >= pages.length) {
+            long[][] larger = new long[Math.max(pageIndex + 1, pages.length * 2)][];
+            System.arraycopy(pages, 0, larger, 0, pages.length);
+            pages = larger;
+        }
+        long[] page = pages[pageIndex];
+        if (page == null) {
+            page = pages[pageIndex] = new long[WORDS_PER_PAGE];
+        }
+        int bit = (int) (id & PAGE_MASK);
+        long mask = 1L << bit;
+        if ((page[bit >>> 6] & mask) == 0) {
+            page[bit >>> 6] |= mask;
+            cardinality++;
+        }
+    }
+
+    public boolean get(long id) {
+        if (id < 0) {
+            return false;
+        }
+        int pageIndex = (int) (id >>> PAGE_BITS);
+        if (pageIndex >= pages.length || pages[pageIndex] == null) {
+            return false;
+        }
+        int bit = (int) (id & PAGE_MASK);
+        return (pages[pageIndex][bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the number of distinct ids in the set
+     */
+    public long cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @return the number of bytes allocated for pages
+     */
+    public long allocatedBytes() {
+        long bytes = 0;
+        for (long[] page : pages) {
+            if (page != null) {
+                bytes += page.length * 8L;
+            }
+        }
+        return bytes;
+    }
+}
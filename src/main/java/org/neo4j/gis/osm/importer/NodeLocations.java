@@ -0,0 +1,49 @@
+package org.neo4j.gis.osm.importer;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
+
+/**
+ * In-memory map from OSM node id to location, used when way geometry needs to be calculated during the relationship
+ * import stage, after the nodes themselves have been imported. Locations are stored as a single long each, with
+ * latitude and longitude in the OSM native fixed-point precision of 7 decimal places.
+ * <p>
+ * This uses roughly 32 bytes per node, so it is suitable for country sized extracts, but not the entire planet.
+ * Locations can be added by several threads parsing the input in parallel, but are only read once all have been added.
+ */
+public class NodeLocations {
+    private static final double FIXED_POINT = 1e7;
+    private final LongLongHashMap locations = new LongLongHashMap();
+
+    public synchronized void put(long id, double lon, double lat) {
+        locations.put(id, pack(lon, lat));
+    }
+
+    public boolean contains(long id) {
+        return locations.containsKey(id);
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * Fill the coordinate array with [lon, lat] for the node.
+     *
+     * @return false if the node location is unknown
+     */
+    public boolean get(long id, double[] coordinate) {
+        if (!locations.containsKey(id)) {
+            return false;
+        }
+        long packed = locations.get(id);
+        coordinate[0] = ((int) packed) / FIXED_POINT;
+        coordinate[1] = ((int) (packed >>> 32)) / FIXED_POINT;
+        return true;
+    }
+
+    static long pack(double lon, double lat) {
+        long x = (int) Math.round(lon * FIXED_POINT);
+        long y = (int) Math.round(lat * FIXED_POINT);
+        return (y << 32) | (x & 0xFFFFFFFFL);
+    }
+}
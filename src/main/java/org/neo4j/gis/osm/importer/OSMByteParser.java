@@ -0,0 +1,490 @@
+package org.neo4j.gis.osm.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A parser for OSM XML that tokenizes the UTF-8 bytes of the file directly, instead of decoding all characters and
+ * creating a String for every element and attribute name as a general purpose XML parser does. Element and attribute
+ * names known to occur in OSM files are mapped to constant strings, and the numerical attributes id, version, ref,
+ * lat and lon, as well as the timestamps, are parsed straight from the bytes, giving exactly the same values as
+ * {@link Double#parseDouble}, {@link Long#parseLong} and {@link OSMValues#parseTimestamp(String)}.
+ * <p>
+ * This is not a validating XML parser. It understands elements, attributes, the predefined and numerical character
+ * entities, comments, processing instructions and CDATA sections, which is all that occurs in OSM files, and expects
+ * the file to be UTF-8 encoded, as OSM files always are.
+ */
+class OSMByteParser extends OSMParser {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] ELEMENT_NAMES = new String[]{NODE, TAG, ND, WAY, MEMBER, RELATION, BOUNDS, OSM};
+    private static final String[] ATTRIBUTE_NAMES = new String[]{"k", "v", "ref", "type", "role", "id", "lat", "lon",
+            "version", "timestamp", "changeset", "uid", "user", "visible", "minlat", "minlon", "maxlat", "maxlon",
+            "origin", "generator"};
+    private static final byte[][] ELEMENT_BYTES = toBytes(ELEMENT_NAMES);
+    private static final byte[][] ATTRIBUTE_BYTES = toBytes(ATTRIBUTE_NAMES);
+
+    private final InputStream input;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private long offset = 0;
+    private boolean pendingEnd = false;
+    private String[] attributeNames = new String[16];
+    private int[] valueStarts = new int[16];
+    private int[] valueEnds = new int[16];
+    private int attributeCount = 0;
+
+    OSMByteParser(String osmFile, InputStream input, OSMInput.RangeFilter range) {
+        super(osmFile, range);
+        this.input = input;
+    }
+
+    @Override
+    boolean parseNext(OSMInput.OSMInputChunk events) throws IOException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            endElement(events);
+            return true;
+        }
+        while (true) {
+            int start = indexOf((byte) '<', position);
+            if (start < 0) {
+                if (incomplete()) {
+                    throw error("Unexpected end of file inside an element");
+                }
+                return false;
+            }
+            position = start;
+            if (!ensure(2)) {
+                throw error("Unexpected end of file");
+            }
+            byte next = buffer[position + 1];
+            if (next == '?') {
+                skipPast("?>");
+            } else if (next == '!') {
+                if (startsWith("<!--")) {
+                    skipPast("-->");
+                } else if (startsWith("<![CDATA[")) {
+                    skipPast("]]>");
+                } else {
+                    position = tagEnd() + 1;
+                }
+            } else if (next == '/') {
+                position = tagEnd() + 1;
+                if (depth() == 0) {
+                    throw error("Unexpected end tag");
+                }
+                endElement(events);
+                return true;
+            } else {
+                int end = tagEnd();
+                int nameEnd = nameEnd(position + 1, end);
+                String element = name(position + 1, nameEnd, ELEMENT_NAMES, ELEMENT_BYTES);
+                pendingEnd = buffer[end - 1] == '/';
+                readAttributes(nameEnd, pendingEnd ? end - 1 : end);
+                // The attributes refer to the buffer, which is only compacted again by the next call
+                position = end + 1;
+                startElement(element, events);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    Map<String, Object> attributes(String name) {
+        LinkedHashMap<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            String prop = attributeNames[i];
+            if (skipAttribute(name, prop)) {
+                continue;
+            }
+            if (name != null && prop.equals("id")) {
+                properties.put(idProperty(name), longValue(i));
+            } else if (prop.equals("lat") || prop.equals("lon")) {
+                properties.put(prop, doubleValue(i));
+            } else if (name != null && prop.equals("version")) {
+                long version = longValue(i);
+                properties.put(prop, version == (int) version ? (int) version : Integer.parseInt(stringValue(i)));
+            } else if (prop.equals("timestamp")) {
+                LocalDateTime timestamp = OSMValues.parseTimestamp(buffer, valueStarts[i], valueEnds[i]);
+                if (timestamp != null) {
+                    properties.put(prop, timestamp);
+                } else {
+                    addProperty(properties, name, prop, stringValue(i));
+                }
+            } else {
+                addProperty(properties, name, prop, stringValue(i));
+            }
+        }
+        return properties;
+    }
+
+    @Override
+    String stringAttribute(String key) {
+        int index = attributeIndex(key);
+        return index < 0 ? null : stringValue(index);
+    }
+
+    @Override
+    long longAttribute(String key) {
+        int index = attributeIndex(key);
+        if (index < 0) {
+            throw new NumberFormatException("Missing attribute: " + key);
+        }
+        return longValue(index);
+    }
+
+    @Override
+    String tagAttribute(String key) {
+        int index = attributeIndex(key);
+        if (index < 0) {
+            return null;
+        }
+        if (dictionary() == null || !isPlain(index)) {
+            return stringValue(index);
+        }
+        return dictionary().intern(buffer, valueStarts[index], valueEnds[index]);
+    }
+
+    @Override
+    void closeInput() throws IOException {
+        input.close();
+    }
+
+    private static String idProperty(String name) {
+        switch (name) {
+            case NODE:
+                return "node_osm_id";
+            case WAY:
+                return "way_osm_id";
+            case RELATION:
+                return "relation_osm_id";
+            default:
+                return name + "_osm_id";
+        }
+    }
+
+    private int attributeIndex(String key) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeNames[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long longValue(int index) {
+        int i = valueStarts[index];
+        int end = valueEnds[index];
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        // Up to 18 digits cannot overflow a long
+        if (i == end || end - i > 18) {
+            return Long.parseLong(stringValue(index));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(stringValue(index));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private double doubleValue(int index) {
+        double value = OSMValues.parseDecimal(buffer, valueStarts[index], valueEnds[index]);
+        return Double.isNaN(value) ? Double.parseDouble(stringValue(index)) : value;
+    }
+
+    private String stringValue(int index) {
+        int start = valueStarts[index];
+        int end = valueEnds[index];
+        if (isPlain(index)) {
+            return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        }
+        return decode(start, end);
+    }
+
+    /**
+     * Whether the attribute value can be used as it is, without decoding entities or normalizing whitespace.
+     */
+    private boolean isPlain(int index) {
+        for (int i = valueStarts[index]; i < valueEnds[index]; i++) {
+            byte b = buffer[i];
+            if (b == '&' || b == '\t' || b == '\n' || b == '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode an attribute value containing character entities or whitespace, which XML normalizes to spaces.
+     */
+    private String decode(int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        int segment = start;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '&' || b == '\t' || b == '\n' || b == '\r') {
+                value.append(new String(buffer, segment, i - segment, StandardCharsets.UTF_8));
+                if (b == '&') {
+                    int semicolon = i + 1;
+                    while (semicolon < end && buffer[semicolon] != ';') {
+                        semicolon++;
+                    }
+                    if (semicolon == end) {
+                        throw new IllegalArgumentException("Unterminated character entity in " + osmFile);
+                    }
+                    value.appendCodePoint(entity(new String(buffer, i + 1, semicolon - i - 1, StandardCharsets.UTF_8)));
+                    i = semicolon;
+                } else {
+                    if (b == '\r' && i + 1 < end && buffer[i + 1] == '\n') {
+                        i++;
+                    }
+                    value.append(' ');
+                }
+                segment = i + 1;
+            }
+        }
+        value.append(new String(buffer, segment, end - segment, StandardCharsets.UTF_8));
+        return value.toString();
+    }
+
+    private int entity(String entity) {
+        switch (entity) {
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            default:
+                if (entity.startsWith("#x")) {
+                    return Integer.parseInt(entity.substring(2), 16);
+                } else if (entity.startsWith("#")) {
+                    return Integer.parseInt(entity.substring(1));
+                }
+                throw new IllegalArgumentException("Unknown character entity '&" + entity + ";' in " + osmFile);
+        }
+    }
+
+    private void readAttributes(int start, int end) throws IOException {
+        attributeCount = 0;
+        int i = start;
+        while (true) {
+            while (i < end && isWhitespace(buffer[i])) {
+                i++;
+            }
+            if (i == end) {
+                return;
+            }
+            int nameStart = i;
+            while (i < end && buffer[i] != '=' && !isWhitespace(buffer[i])) {
+                i++;
+            }
+            int nameEnd = i;
+            while (i < end && isWhitespace(buffer[i])) {
+                i++;
+            }
+            if (i == end || buffer[i] != '=') {
+                throw error("Expected '=' after attribute name");
+            }
+            i++;
+            while (i < end && isWhitespace(buffer[i])) {
+                i++;
+            }
+            if (i == end || (buffer[i] != '"' && buffer[i] != '\'')) {
+                throw error("Expected quoted attribute value");
+            }
+            byte quote = buffer[i++];
+            int valueStart = i;
+            while (i < end && buffer[i] != quote) {
+                i++;
+            }
+            if (i == end) {
+                throw error("Unterminated attribute value");
+            }
+            if (attributeCount == attributeNames.length) {
+                attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+                valueStarts = Arrays.copyOf(valueStarts, attributeCount * 2);
+                valueEnds = Arrays.copyOf(valueEnds, attributeCount * 2);
+            }
+            attributeNames[attributeCount] = name(nameStart, nameEnd, ATTRIBUTE_NAMES, ATTRIBUTE_BYTES);
+            valueStarts[attributeCount] = valueStart;
+            valueEnds[attributeCount] = i;
+            attributeCount++;
+            i++;
+        }
+    }
+
+    private int nameEnd(int start, int end) {
+        int i = start;
+        while (i < end && buffer[i] != '/' && !isWhitespace(buffer[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private String name(int start, int end, String[] names, byte[][] bytes) throws IOException {
+        int length = end - start;
+        if (length == 0) {
+            throw error("Missing name");
+        }
+        for (int n = 0; n < bytes.length; n++) {
+            byte[] candidate = bytes[n];
+            if (candidate.length == length && matches(candidate, start)) {
+                return names[n];
+            }
+        }
+        return new String(buffer, start, length, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(byte[] candidate, int start) {
+        for (int i = 0; i < candidate.length; i++) {
+            if (buffer[start + i] != candidate[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Find the '>' ending the tag starting at the current position, ignoring any within quoted attribute values.
+     */
+    private int tagEnd() throws IOException {
+        int i = position + 1;
+        byte quote = 0;
+        while (true) {
+            if (i == limit) {
+                int relative = i - position;
+                if (!fill()) {
+                    throw error("Unexpected end of file inside a tag");
+                }
+                i = position + relative;
+            }
+            byte b = buffer[i];
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i;
+            }
+            i++;
+        }
+    }
+
+    private void skipPast(String terminator) throws IOException {
+        byte[] bytes = terminator.getBytes(StandardCharsets.US_ASCII);
+        int i = position + 2;
+        while (true) {
+            if (i + bytes.length > limit) {
+                int relative = i - position;
+                if (!fill()) {
+                    throw error("Unexpected end of file looking for '" + terminator + "'");
+                }
+                i = position + relative;
+                continue;
+            }
+            if (matches(bytes, i)) {
+                position = i + bytes.length;
+                return;
+            }
+            i++;
+        }
+    }
+
+    private boolean startsWith(String prefix) throws IOException {
+        byte[] bytes = prefix.getBytes(StandardCharsets.US_ASCII);
+        return ensure(bytes.length) && matches(bytes, position);
+    }
+
+    /**
+     * Find the next occurrence of the byte, discarding everything before it from the buffer.
+     *
+     * @return the index in the buffer, or -1 at the end of the file
+     */
+    private int indexOf(byte b, int from) throws IOException {
+        int i = from;
+        while (true) {
+            for (; i < limit; i++) {
+                if (buffer[i] == b) {
+                    return i;
+                }
+            }
+            position = limit;
+            if (!fill()) {
+                return -1;
+            }
+            i = position;
+        }
+    }
+
+    /**
+     * Make sure that at least the specified number of bytes from the current position are in the buffer.
+     */
+    private boolean ensure(int length) throws IOException {
+        while (limit - position < length) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read more of the file into the buffer, first moving the bytes from the current position to the start, and
+     * growing the buffer if it is already full.
+     *
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            offset += position;
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = input.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at byte " + (offset + position) + " of " + osmFile);
+    }
+
+    private static byte[][] toBytes(String[] names) {
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            bytes[i] = names[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,76 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.graphdb.Label;
+
+import java.util.*;
+
+/**
+ * A complete OSM node, way or relation, with its attributes, tags, way nodes and relation members, as parsed from
+ * the XML. The properties use the same names as are written to the graph, for example <code>node_osm_id</code>,
+ * <code>location</code> and <code>timestamp</code>.
+ */
+public class OSMEntity {
+    /**
+     * The entity types, in the order in which they are stored in OSM files.
+     */
+    public enum Type {
+        NODE("node", OSMModel.OSMNode), WAY("way", OSMModel.OSMWay), RELATION("relation", OSMModel.OSMRelation);
+
+        public final String element;
+        public final Label label;
+        public final String idProperty;
+
+        Type(String element, Label label) {
+            this.element = element;
+            this.label = label;
+            this.idProperty = element + "_osm_id";
+        }
+
+        public static Type forElement(String element) {
+            for (Type type : values()) {
+                if (type.element.equals(element)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    public final Type type;
+    public final long id;
+    public final Map<String, Object> properties;
+    public final Map<String, Object> tags;
+    public final List<Long> wayNodes;
+    public final ArrayList<Map<String, Object>> members;
+
+    public OSMEntity(Type type, long id, Map<String, Object> properties) {
+        this(type, id, properties, new LinkedHashMap<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    public OSMEntity(Type type, long id, Map<String, Object> properties, Map<String, Object> tags, List<Long> wayNodes, ArrayList<Map<String, Object>> members) {
+        this.type = type;
+        this.id = id;
+        this.properties = properties;
+        this.tags = tags;
+        this.wayNodes = wayNodes;
+        this.members = members;
+    }
+
+    public int version() {
+        Object version = properties.get("version");
+        return version instanceof Number ? ((Number) version).intValue() : 0;
+    }
+
+    /**
+     * Order by type and then id, which is the order of entities in OSM files.
+     */
+    public int compareTo(OSMEntity other) {
+        int order = Integer.compare(type.ordinal(), other.type.ordinal());
+        return order == 0 ? Long.compare(id, other.id) : order;
+    }
+
+    public String toString() {
+        return type.element + "[" + id + "]";
+    }
+}
@@ -0,0 +1,520 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.PointValue;
+import org.neo4j.values.storable.Values;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * An external merge sort of complete OSM entities by a key, like their location on a space filling curve. Entities
+ * are collected in memory until the run size is reached, and each full run is sorted and written to a spill file, so
+ * that the memory used is bounded regardless of the input size. The sorted entities are then read by merging all
+ * runs, at most {@value #MERGE_FACTOR} at a time. Entities with the same key keep the order in which they were added
+ * by each thread, so the sort is stable when entities are added by a single thread.
+ * <p>
+ * Entities can be added concurrently, but the sorted entities can only be read once all have been added.
+ */
+class OSMEntitySorter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MERGE_FACTOR = 64;
+
+    private final String name;
+    private final File directory;
+    private final int runSize;
+    private final ToLongFunction<OSMEntity> key;
+    private final boolean temporary;
+    private final List<Run> runs = new ArrayList<>();
+    private final List<RunReader> readers = new ArrayList<>();
+    private ArrayList<Keyed> buffer;
+    private long entities = 0;
+    private int spilledRuns = 0;
+    private long spilled = 0;
+
+    /**
+     * @param name      describing the sort order, for the spill file names and statistics
+     * @param directory for the spill files, or null for the default temporary directory
+     * @param runSize   the maximum number of entities to keep in memory before spilling them to disk
+     * @param key       the sort key of each entity
+     */
+    OSMEntitySorter(String name, File directory, int runSize, ToLongFunction<OSMEntity> key) {
+        this(name, directory, runSize, key, true);
+    }
+
+    /**
+     * @param temporary false to keep the spill files when the JVM exits without {@link #close()}, so that they can be
+     *                  read again by a later process
+     */
+    OSMEntitySorter(String name, File directory, int runSize, ToLongFunction<OSMEntity> key, boolean temporary) {
+        if (runSize <= 0) {
+            throw new IllegalArgumentException("Run size must be positive: " + runSize);
+        }
+        this.name = name;
+        this.directory = directory;
+        this.runSize = runSize;
+        this.key = key;
+        this.temporary = temporary;
+        this.buffer = new ArrayList<>(Math.min(runSize, BUFFER_SIZE));
+    }
+
+    void add(OSMEntity entity) throws IOException {
+        Keyed keyed = new Keyed(key.applyAsLong(entity), entity);
+        ArrayList<Keyed> full = null;
+        synchronized (this) {
+            buffer.add(keyed);
+            entities++;
+            if (buffer.size() >= runSize) {
+                full = buffer;
+                buffer = new ArrayList<>(Math.min(runSize, BUFFER_SIZE));
+            }
+        }
+        // The full run is sorted and written while other threads continue adding to the next one
+        if (full != null) {
+            spill(full);
+        }
+    }
+
+    /**
+     * The entities added so far, in key order. When nothing was spilled, this only sorts the entities in memory.
+     */
+    synchronized Iterator<OSMEntity> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(Keyed.ORDER);
+            Iterator<Keyed> entities = buffer.iterator();
+            buffer = new ArrayList<>();
+            return entities(entities);
+        }
+        spillBuffer();
+        reduce(MERGE_FACTOR);
+        return entities(merge(runs));
+    }
+
+    /**
+     * The spill files which, read one after the other by {@link #read(List)}, contain all entities in key order.
+     * When the entities were added in order, as for input that is already sorted, these are the runs as they were
+     * spilled, so that nothing needs to be merged. Otherwise all runs are merged into a single file. The files are
+     * deleted by {@link #close()}.
+     */
+    synchronized List<File> sortedFiles() throws IOException {
+        spillBuffer();
+        if (!ordered()) {
+            reduce(1);
+        }
+        List<File> files = new ArrayList<>(runs.size());
+        for (Run run : runs) {
+            files.add(run.file);
+        }
+        return files;
+    }
+
+    /**
+     * Read the entities of the {@link #sortedFiles()}.
+     */
+    static SortedReader read(List<File> files) {
+        return read(files, UnaryOperator.identity());
+    }
+
+    /**
+     * Read the entities of the {@link #sortedFiles()}, with each file read through the wrapping stream.
+     */
+    static SortedReader read(List<File> files, UnaryOperator<InputStream> wrapper) {
+        return new SortedReader(files, wrapper);
+    }
+
+    synchronized long entities() {
+        return entities;
+    }
+
+    synchronized int runs() {
+        return spilledRuns;
+    }
+
+    synchronized long spilledBytes() {
+        return spilled;
+    }
+
+    /**
+     * Delete all spill files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (RunReader reader : readers) {
+            reader.input.close();
+        }
+        readers.clear();
+        for (Run run : runs) {
+            Files.deleteIfExists(run.file.toPath());
+        }
+        runs.clear();
+        buffer = new ArrayList<>();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Sorted %d entities by %s order, in %d runs spilling %d MB to disk", entities, name, spilledRuns, spilled >> 20);
+    }
+
+    private void spillBuffer() throws IOException {
+        if (!buffer.isEmpty()) {
+            spill(buffer);
+            buffer = new ArrayList<>();
+        }
+    }
+
+    private void spill(ArrayList<Keyed> entities) throws IOException {
+        // Runs from input in order are already sorted, which the sort detects in linear time
+        entities.sort(Keyed.ORDER);
+        Run run = write(entities.iterator());
+        synchronized (this) {
+            runs.add(run);
+            spilledRuns++;
+            spilled += run.file.length();
+        }
+    }
+
+    /**
+     * Whether each run starts after the previous run ends, so that reading them one after the other is sorted.
+     */
+    private boolean ordered() {
+        for (int i = 1; i < runs.size(); i++) {
+            if (runs.get(i).first < runs.get(i - 1).last) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merge the first runs together, as often as needed to reach the maximum number of runs, so that the number of
+     * files open at once, and their buffers, stay bounded however large the input is. Since only consecutive runs
+     * are merged, entities with equal keys keep their order.
+     */
+    private void reduce(int maxRuns) throws IOException {
+        while (runs.size() > maxRuns) {
+            int count = Math.min(MERGE_FACTOR, runs.size() - maxRuns + 1);
+            List<Run> merged = new ArrayList<>(runs.subList(0, count));
+            Run run = write(merge(merged));
+            for (Run previous : merged) {
+                Files.deleteIfExists(previous.file.toPath());
+            }
+            runs.subList(0, count).clear();
+            runs.add(0, run);
+        }
+        for (RunReader reader : readers) {
+            reader.input.close();
+        }
+        readers.clear();
+    }
+
+    private Iterator<Keyed> merge(List<Run> merged) throws IOException {
+        PriorityQueue<RunReader> heads = new PriorityQueue<>(merged.size(), (a, b) -> {
+            int order = Long.compare(a.current.key, b.current.key);
+            return order == 0 ? Integer.compare(a.index, b.index) : order;
+        });
+        for (int i = 0; i < merged.size(); i++) {
+            RunReader reader = new RunReader(merged.get(i).file, i);
+            readers.add(reader);
+            if (reader.advance()) {
+                heads.add(reader);
+            }
+        }
+        return new Iterator<Keyed>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Keyed next() {
+                RunReader reader = heads.poll();
+                if (reader == null) {
+                    throw new NoSuchElementException();
+                }
+                Keyed keyed = reader.current;
+                try {
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read sorted " + name + " entities from " + reader.file + ": " + e.getMessage(), e);
+                }
+                return keyed;
+            }
+        };
+    }
+
+    private Run write(Iterator<Keyed> entities) throws IOException {
+        File file = File.createTempFile("osm-" + name + "-", ".run", directory);
+        if (temporary) {
+            file.deleteOnExit();
+        }
+        long first = Long.MIN_VALUE;
+        long last = Long.MIN_VALUE;
+        boolean empty = true;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            while (entities.hasNext()) {
+                Keyed keyed = entities.next();
+                if (empty) {
+                    first = keyed.key;
+                    empty = false;
+                }
+                last = keyed.key;
+                output.writeBoolean(true);
+                output.writeLong(keyed.key);
+                write(output, keyed.entity);
+            }
+            output.writeBoolean(false);
+        }
+        return new Run(file, first, last);
+    }
+
+    private static Iterator<OSMEntity> entities(Iterator<Keyed> keyed) {
+        return new Iterator<OSMEntity>() {
+            @Override
+            public boolean hasNext() {
+                return keyed.hasNext();
+            }
+
+            @Override
+            public OSMEntity next() {
+                return keyed.next().entity;
+            }
+        };
+    }
+
+    private static class Run {
+        private final File file;
+        private final long first;
+        private final long last;
+
+        private Run(File file, long first, long last) {
+            this.file = file;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    /**
+     * Reads the entities of several sorted files, one file after the other.
+     */
+    static class SortedReader implements Iterator<OSMEntity>, Closeable {
+        private final Iterator<File> files;
+        private final UnaryOperator<InputStream> wrapper;
+        private RunReader reader = null;
+        private boolean advanced = false;
+
+        private SortedReader(List<File> files, UnaryOperator<InputStream> wrapper) {
+            this.files = files.iterator();
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (!advanced) {
+                    if (reader == null) {
+                        if (!files.hasNext()) {
+                            return false;
+                        }
+                        reader = new RunReader(files.next(), 0, wrapper);
+                    }
+                    if (reader.advance()) {
+                        advanced = true;
+                    } else {
+                        reader = null;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read sorted entities from " + reader.file + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public OSMEntity next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            advanced = false;
+            return reader.current.entity;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.input.close();
+                reader = null;
+            }
+        }
+    }
+
+    private static class Keyed {
+        private static final Comparator<Keyed> ORDER = Comparator.comparingLong(keyed -> keyed.key);
+        private final long key;
+        private final OSMEntity entity;
+
+        private Keyed(long key, OSMEntity entity) {
+            this.key = key;
+            this.entity = entity;
+        }
+    }
+
+    private static class RunReader {
+        private final File file;
+        private final int index;
+        private final DataInputStream input;
+        private Keyed current = null;
+
+        private RunReader(File file, int index) throws IOException {
+            this(file, index, UnaryOperator.identity());
+        }
+
+        private RunReader(File file, int index, UnaryOperator<InputStream> wrapper) throws IOException {
+            this.file = file;
+            this.index = index;
+            this.input = new DataInputStream(new BufferedInputStream(wrapper.apply(new FileInputStream(file)), BUFFER_SIZE));
+        }
+
+        private boolean advance() throws IOException {
+            if (!input.readBoolean()) {
+                input.close();
+                current = null;
+                return false;
+            }
+            long key = input.readLong();
+            current = new Keyed(key, read(input));
+            return true;
+        }
+    }
+
+    static void write(DataOutput output, OSMEntity entity) throws IOException {
+        output.writeByte(entity.type.ordinal());
+        output.writeLong(entity.id);
+        writeMap(output, entity.properties);
+        writeMap(output, entity.tags);
+        output.writeInt(entity.wayNodes.size());
+        for (long wayNode : entity.wayNodes) {
+            output.writeLong(wayNode);
+        }
+        output.writeInt(entity.members.size());
+        for (Map<String, Object> member : entity.members) {
+            writeMap(output, member);
+        }
+    }
+
+    static OSMEntity read(DataInput input) throws IOException {
+        OSMEntity.Type type = OSMEntity.Type.values()[input.readByte()];
+        long id = input.readLong();
+        Map<String, Object> properties = readMap(input);
+        Map<String, Object> tags = readMap(input);
+        int wayNodeCount = input.readInt();
+        List<Long> wayNodes = new ArrayList<>(wayNodeCount);
+        for (int i = 0; i < wayNodeCount; i++) {
+            wayNodes.add(input.readLong());
+        }
+        int memberCount = input.readInt();
+        ArrayList<Map<String, Object>> members = new ArrayList<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            members.add(readMap(input));
+        }
+        return new OSMEntity(type, id, properties, tags, wayNodes, members);
+    }
+
+    private static final byte STRING = 0;
+    private static final byte LONG = 1;
+    private static final byte INT = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte TIMESTAMP = 5;
+    private static final byte POINT = 6;
+
+    static void writeMap(DataOutput output, Map<String, Object> map) throws IOException {
+        output.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(output, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                output.writeByte(STRING);
+                writeString(output, (String) value);
+            } else if (value instanceof Long) {
+                output.writeByte(LONG);
+                output.writeLong((Long) value);
+            } else if (value instanceof Integer) {
+                output.writeByte(INT);
+                output.writeInt((Integer) value);
+            } else if (value instanceof Double) {
+                output.writeByte(DOUBLE);
+                output.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                output.writeByte(BOOLEAN);
+                output.writeBoolean((Boolean) value);
+            } else if (value instanceof LocalDateTime) {
+                LocalDateTime timestamp = (LocalDateTime) value;
+                output.writeByte(TIMESTAMP);
+                output.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+                output.writeInt(timestamp.getNano());
+            } else if (value instanceof PointValue) {
+                double[] coordinate = ((PointValue) value).coordinate();
+                output.writeByte(POINT);
+                output.writeDouble(coordinate[0]);
+                output.writeDouble(coordinate[1]);
+            } else {
+                throw new IllegalArgumentException("Cannot spill property '" + entry.getKey() + "' of type " + (value == null ? null : value.getClass().getSimpleName()));
+            }
+        }
+    }
+
+    static Map<String, Object> readMap(DataInput input) throws IOException {
+        int size = input.readInt();
+        Map<String, Object> map = new LinkedHashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            String key = readString(input);
+            byte type = input.readByte();
+            switch (type) {
+                case STRING:
+                    map.put(key, readString(input));
+                    break;
+                case LONG:
+                    map.put(key, input.readLong());
+                    break;
+                case INT:
+                    map.put(key, input.readInt());
+                    break;
+                case DOUBLE:
+                    map.put(key, input.readDouble());
+                    break;
+                case BOOLEAN:
+                    map.put(key, input.readBoolean());
+                    break;
+                case TIMESTAMP:
+                    map.put(key, LocalDateTime.ofEpochSecond(input.readLong(), input.readInt(), ZoneOffset.UTC));
+                    break;
+                case POINT:
+                    map.put(key, Values.pointValue(CoordinateReferenceSystem.WGS84, input.readDouble(), input.readDouble()));
+                    break;
+                default:
+                    throw new IOException("Unknown property type " + type + " for '" + key + "' in spill file");
+            }
+        }
+        return map;
+    }
+
+    private static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
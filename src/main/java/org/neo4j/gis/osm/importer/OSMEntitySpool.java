@@ -0,0 +1,299 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.internal.batchimport.input.InputEntityVisitor;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * All entities of the input files, parsed once and spooled to disk in canonical order: nodes, then ways, then
+ * relations, each by id. Every pass over the input then reads the spool instead of parsing the XML again, and gets
+ * the entities in the order the pre-passes and the tag handling expect, even from files that are not sorted, like
+ * those exported from editors or concatenated by merging tools. Entities occurring more than once, for example in
+ * overlapping extracts, are read only once, keeping the highest version.
+ * <p>
+ * The spool is written by several threads parsing in parallel, each with its own {@link #newChunk() chunk}, and
+ * sorted with an {@link OSMEntitySorter}, which only needs to merge anything when the input was not already sorted.
+ * A spool that is not temporary can be {@link #save(File) saved} and {@link #restore(File, List) restored} by a later
+ * import of the same files.
+ */
+class OSMEntitySpool implements Closeable {
+    // OSM ids are far from this, but editors use negative ids for entities that were not uploaded yet
+    private static final long ID_OFFSET = 1L << 60;
+
+    private final OSMEntitySorter sorter;
+    private final Map<String, Map<String, Object>> datasets = new LinkedHashMap<>();
+    private final Map<String, Map<String, Object>> bounds = new LinkedHashMap<>();
+    private List<File> files = null;
+    private boolean restored = false;
+
+    OSMEntitySpool(File directory, int runSize) {
+        this(directory, runSize, true);
+    }
+
+    OSMEntitySpool(File directory, int runSize, boolean temporary) {
+        this.sorter = new OSMEntitySorter("canonical", directory, runSize, OSMEntitySpool::canonicalKey, temporary);
+    }
+
+    /**
+     * A spool saved by an earlier import, which can only be read.
+     *
+     * @param header as written by {@link #save(File)}
+     * @param files  the {@link #files()} of the saved spool
+     */
+    static OSMEntitySpool restore(File header, List<File> files) throws IOException {
+        OSMEntitySpool spool = new OSMEntitySpool(header.getParentFile(), 1, false);
+        for (File file : files) {
+            if (!file.isFile()) {
+                throw new FileNotFoundException("Spool file " + file + " no longer exists");
+            }
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(header)))) {
+            readNamedMaps(input, spool.datasets);
+            readNamedMaps(input, spool.bounds);
+        }
+        spool.files = new ArrayList<>(files);
+        spool.restored = true;
+        return spool;
+    }
+
+    /**
+     * Write the datasets and bounds, which are not part of the spool files, so that the spool can be restored.
+     */
+    synchronized void save(File header) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(header)))) {
+            writeNamedMaps(output, datasets);
+            writeNamedMaps(output, bounds);
+        }
+    }
+
+    private static void writeNamedMaps(DataOutput output, Map<String, Map<String, Object>> maps) throws IOException {
+        output.writeInt(maps.size());
+        for (Map.Entry<String, Map<String, Object>> entry : maps.entrySet()) {
+            output.writeUTF(entry.getKey());
+            OSMEntitySorter.writeMap(output, entry.getValue());
+        }
+    }
+
+    private static void readNamedMaps(DataInput input, Map<String, Map<String, Object>> maps) throws IOException {
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            maps.put(input.readUTF(), OSMEntitySorter.readMap(input));
+        }
+    }
+
+    /**
+     * Orders by type and then id, as {@link OSMEntity#compareTo(OSMEntity)}.
+     */
+    static long canonicalKey(OSMEntity entity) {
+        return ((long) entity.type.ordinal() << 61) + entity.id + ID_OFFSET;
+    }
+
+    /**
+     * A chunk for one parsing thread to write the entities to.
+     */
+    OSMInput.OSMInputChunk newChunk() {
+        return new SpoolingChunk();
+    }
+
+    /**
+     * Sort the entities written by all threads, which must all have finished writing.
+     */
+    synchronized void finish() throws IOException {
+        files = sorter.sortedFiles();
+    }
+
+    /**
+     * The sorted files holding all entities, once the spool is finished.
+     */
+    synchronized List<File> files() {
+        return files;
+    }
+
+    synchronized Map<String, Map<String, Object>> datasets() {
+        return datasets;
+    }
+
+    synchronized Map<String, Map<String, Object>> bounds() {
+        return bounds;
+    }
+
+    /**
+     * Read all entities in canonical order, with duplicates removed.
+     */
+    synchronized Reader read() {
+        return read(UnaryOperator.identity());
+    }
+
+    /**
+     * Read all entities, with the spool files read through the wrapping stream, like one counting the bytes read.
+     */
+    synchronized Reader read(UnaryOperator<InputStream> wrapper) {
+        if (files == null) {
+            throw new IllegalStateException("Spool must be finished before reading it");
+        }
+        return new Reader(OSMEntitySorter.read(files, wrapper));
+    }
+
+    /**
+     * The size of the spool files, once the spool is finished.
+     */
+    synchronized long bytes() {
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Delete the spool files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        sorter.close();
+        if (restored) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (restored) {
+            return "Restored spool of " + files.size() + " files of " + (bytes() >> 20) + " MB";
+        }
+        return "Spooled " + sorter.entities() + " entities in canonical order, in " + sorter.runs() + " runs of " +
+                (sorter.spilledBytes() >> 20) + " MB" + (files != null && files.size() == 1 && sorter.runs() > 1 ? ", merged into one" : "");
+    }
+
+    /**
+     * Reads the spooled entities, passing on only the highest version of entities with the same type and id.
+     */
+    static class Reader implements Iterator<OSMEntity>, Closeable {
+        private final OSMEntitySorter.SortedReader entities;
+        private OSMEntity next = null;
+        private long duplicates = 0;
+
+        private Reader(OSMEntitySorter.SortedReader entities) {
+            this.entities = entities;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null || entities.hasNext();
+        }
+
+        @Override
+        public OSMEntity next() {
+            OSMEntity entity = next != null ? next : entities.next();
+            next = null;
+            while (entities.hasNext()) {
+                OSMEntity following = entities.next();
+                if (following.compareTo(entity) != 0) {
+                    next = following;
+                    break;
+                }
+                if (following.version() > entity.version()) {
+                    entity = following;
+                }
+                duplicates++;
+            }
+            return entity;
+        }
+
+        long duplicates() {
+            return duplicates;
+        }
+
+        @Override
+        public void close() throws IOException {
+            entities.close();
+        }
+    }
+
+    /**
+     * Collects the parsed events for complete entities, like the chunks of the merging input. The way nodes, members
+     * and tags are copied, since the parser reuses them for the next entity.
+     */
+    private class SpoolingChunk implements OSMInput.OSMInputChunk {
+        private OSMEntity current = null;
+        private long size = 0;
+
+        @Override
+        public void addDatasetNode(String name, Map<String, Object> properties) {
+            synchronized (OSMEntitySpool.this) {
+                datasets.put(name, properties);
+            }
+        }
+
+        @Override
+        public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+            synchronized (OSMEntitySpool.this) {
+                bounds.put(name, properties);
+            }
+        }
+
+        @Override
+        public void addOSMNode(long id, Map<String, Object> properties) {
+            current = new OSMEntity(OSMEntity.Type.NODE, id, properties);
+        }
+
+        @Override
+        public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+            current = new OSMEntity(OSMEntity.Type.WAY, id, properties, new LinkedHashMap<>(wayTags), new ArrayList<>(wayNodes), new ArrayList<>());
+        }
+
+        @Override
+        public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            current = new OSMEntity(OSMEntity.Type.RELATION, id, properties, new LinkedHashMap<>(relationTags), new ArrayList<>(), new ArrayList<>(relationMembers));
+        }
+
+        @Override
+        public void addOSMTags(Map<String, Object> properties) {
+            if (current != null) {
+                current.tags.putAll(properties);
+            }
+        }
+
+        @Override
+        public boolean insideTaggableEvent() {
+            return current != null;
+        }
+
+        @Override
+        public void endTaggableEvent() {
+            if (current != null) {
+                try {
+                    sorter.add(current);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to spool " + current + ": " + e.getMessage(), e);
+                }
+                current = null;
+                size++;
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void reset() {
+            size = 0;
+        }
+
+        @Override
+        public boolean next(InputEntityVisitor visitor) {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.neo4j.gis.osm.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an uncompressed OSM XML file into byte ranges that can be parsed independently, each starting at a top level
+ * node, way or relation element, and opens the ranges as memory mapped streams. Since the tags, way nodes and members
+ * of an entity are nested within its element, every entity is completely contained in one range.
+ */
+class OSMFileSplitter {
+    // Ranges are mapped as a single buffer, so must stay well below 2GB even after moving to the next element
+    static final long MAX_RANGE_SIZE = 1L << 30;
+    static final long MIN_RANGE_SIZE = 1L << 20;
+    private static final int SCAN_SIZE = 64 * 1024;
+    private static final byte[][] ELEMENT_STARTS = new byte[][]{
+            "<node".getBytes(StandardCharsets.US_ASCII),
+            "<way".getBytes(StandardCharsets.US_ASCII),
+            "<relation".getBytes(StandardCharsets.US_ASCII)};
+
+    /**
+     * Split the file into about the specified number of ranges, more if needed to keep ranges below
+     * {@link #MAX_RANGE_SIZE}, and fewer if they would be smaller than {@link #MIN_RANGE_SIZE}.
+     *
+     * @return the start offsets of the ranges, the first being 0, followed by the file size as the end of the last
+     */
+    static long[] split(String osmFile, int ranges) throws IOException {
+        return split(osmFile, ranges, MIN_RANGE_SIZE);
+    }
+
+    static long[] split(String osmFile, int ranges, long minRangeSize) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(osmFile, "r")) {
+            long size = file.length();
+            long count = Math.max(ranges, (size + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+            count = Math.max(1, Math.min(count, size / minRangeSize));
+            List<Long> offsets = new ArrayList<>();
+            offsets.add(0L);
+            FileChannel channel = file.getChannel();
+            for (int i = 1; i < count; i++) {
+                long offset = elementStart(channel, Math.max(size * i / count, offsets.get(offsets.size() - 1) + 1));
+                if (offset < 0) {
+                    break;
+                }
+                offsets.add(offset);
+            }
+            offsets.add(size);
+            return offsets.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    /**
+     * Open a memory mapped stream over part of the file.
+     */
+    static InputStream open(String osmFile, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot map " + (end - start) + " bytes of " + osmFile + " as a single range");
+        }
+        try (RandomAccessFile file = new RandomAccessFile(osmFile, "r")) {
+            // The mapping stays valid after the channel is closed
+            return new ByteBufferInputStream(file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, end - start));
+        }
+    }
+
+    /**
+     * Find the first node, way or relation start tag at or after the offset.
+     *
+     * @return the offset of the '&lt;' starting the element, or -1 if there is none
+     */
+    static long elementStart(FileChannel channel, long from) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        long position = from;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return -1;
+            }
+            byte[] bytes = buffer.array();
+            // Stop early enough that the longest element name and the character after it are in this buffer
+            int last = read < SCAN_SIZE ? read : read - "<relation".length();
+            for (int i = 0; i < last; i++) {
+                if (bytes[i] == '<' && isElementStart(bytes, i, read)) {
+                    return position + i;
+                }
+            }
+            if (read < SCAN_SIZE) {
+                return -1;
+            }
+            position += last;
+        }
+    }
+
+    private static boolean isElementStart(byte[] bytes, int index, int limit) {
+        for (byte[] element : ELEMENT_STARTS) {
+            int end = index + element.length;
+            if (end < limit && startsWith(bytes, index, element)) {
+                byte next = bytes[end];
+                return next == ' ' || next == '\t' || next == '\n' || next == '\r' || next == '/' || next == '>';
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] bytes, int index, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[index + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -2,6 +2,10 @@ package org.neo4j.gis.osm.importer;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.neo4j.gis.osm.jfr.ParseChunkEvent;
+import org.neo4j.gis.osm.jfr.RoutingBatchEvent;
+import org.neo4j.gis.osm.model.EncodedPolyline;
+import org.neo4j.gis.osm.model.RoutingProfile;
 import org.neo4j.internal.batchimport.Configuration;
 import org.neo4j.internal.batchimport.InputIterable;
 import org.neo4j.internal.batchimport.InputIterator;
@@ -9,14 +13,14 @@ import org.neo4j.internal.batchimport.input.*;
 import org.neo4j.io.fs.FileSystemAbstraction;
 import org.neo4j.values.storable.*;
 
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 import java.io.*;
-import java.nio.charset.Charset;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import java.util.function.ToIntFunction;
 
 import static org.neo4j.gis.spatial.SpatialConstants.*;
@@ -39,12 +43,27 @@ public class OSMInput implements Input {
     private final CoordinateReferenceSystem wgs84 = CoordinateReferenceSystem.WGS84;
     private final CRSCalculator calculator = wgs84.getCalculator();
     private final Configuration config;
+    private final OSMInputConfiguration osmConfig;
+    private RoutingNodes routing = null;
+    private FilteredEntities filtered = null;
+    private OSMEntitySpool spool = null;
+    private ImportCheckpoint checkpoint = null;
+    private final ImportMetrics metrics = new ImportMetrics();
+    private final TagSets tagSets;
+    private final TagDictionary.Statistics tagStatistics = new TagDictionary.Statistics();
+    private final OSMParser.MetadataStatistics metadataStatistics = new OSMParser.MetadataStatistics();
 
     public OSMInput(FileSystemAbstraction fs, String[] osmFiles, Configuration config, RangeFilter range) {
+        this(fs, osmFiles, config, OSMInputConfiguration.DEFAULT, range);
+    }
+
+    public OSMInput(FileSystemAbstraction fs, String[] osmFiles, Configuration config, OSMInputConfiguration osmConfig, RangeFilter range) {
         this.fs = fs;
         this.osmFiles = osmFiles;
         this.config = config;
+        this.osmConfig = osmConfig;
         this.range = range;
+        this.tagSets = osmConfig.sharedTagSets() > 0 && !osmConfig.inlineTags() ? new TagSets(osmConfig.sharedTagSets()) : null;
         nodesGroup = this.groups.getOrCreate("osm_nodes");
         waysGroup = this.groups.getOrCreate("osm_ways");
         wayNodesGroup = this.groups.getOrCreate("osm_way_nodes");
@@ -149,6 +168,14 @@ public class OSMInput implements Input {
         private OSMTags(String id, Map<String, Object> properties) {
             super("OSMTags", "t" + id, tagsGroup, properties);
         }
+
+        private OSMTags(long tagSet, Map<String, Object> properties) {
+            super("OSMTags", sharedTagsId(tagSet), tagsGroup, properties);
+        }
+    }
+
+    private static String sharedTagsId(long tagSet) {
+        return "s" + Long.toHexString(tagSet);
     }
 
     private class OSMMisc extends NodeEvent {
@@ -183,6 +210,7 @@ public class OSMInput implements Input {
     class OSMInputChunkFunctions {
         OSMMisc dataset(String name, Map<String, Object> properties) {
             if (properties != null && !properties.containsKey("name")) properties.put("name", name);
+            if (properties != null && osmConfig.inlineTags()) properties.put("inline_tags", true);
             return new OSMMisc("OSM", "osm_" + name, properties);
         }
 
@@ -210,7 +238,7 @@ public class OSMInput implements Input {
         NodeEvent previousTaggableNodeEvent = null;
         int currentRead = -1;
 
-        private void addEvent(NodeEvent event) {
+        void addEvent(NodeEvent event) {
             data.add(event);
         }
 
@@ -256,7 +284,24 @@ public class OSMInput implements Input {
         public void addOSMTags(Map<String, Object> properties) {
             if (insideTaggableEvent()) {
                 augmentProperties("name", properties, previousTaggableNodeEvent.properties);
-                addEvent(new OSMTags(previousTaggableNodeEvent.osmId, properties));
+                if (osmConfig.inlineTags()) {
+                    // The attribute properties, and those derived from the tags like the road direction, take precedence
+                    properties.forEach(previousTaggableNodeEvent.properties::putIfAbsent);
+                } else if (tagSets != null) {
+                    long tagSet = TagSets.hash(properties);
+                    switch (tagSets.add(tagSet, TagSets.check(properties))) {
+                        case ADDED:
+                            addEvent(new OSMTags(tagSet, properties));
+                            break;
+                        case FULL:
+                            addEvent(new OSMTags(previousTaggableNodeEvent.osmId, properties));
+                            break;
+                        default:
+                            // Another entity with the same tags already created the shared node
+                    }
+                } else {
+                    addEvent(new OSMTags(previousTaggableNodeEvent.osmId, properties));
+                }
             } else {
                 error("Unexpected null parent node for tags: " + properties);
             }
@@ -295,6 +340,9 @@ public class OSMInput implements Input {
                 visitor.endOfEntity();
                 return true;
             }
+            if (data != null && currentRead == data.size()) {
+                metrics.pass().nodes(data, event -> event.label);
+            }
             return false;
         }
 
@@ -369,12 +417,18 @@ public class OSMInput implements Input {
         }
     }
 
+    private class OSMRouteRel extends RelationshipEvent {
+        private OSMRouteRel(OSMNode from, OSMNode to, Map<String, Object> properties) {
+            super("ROUTE", from, to, properties);
+        }
+    }
+
     class OSMRelationshipsInputChunk extends OSMInputChunkFunctions implements OSMInputChunk {
         ArrayList<RelationshipEvent> data = new ArrayList<>(config.batchSize());
         NodeEvent previousTaggableNodeEvent = null;
         int currentRead = -1;
 
-        private void addEvent(RelationshipEvent event) {
+        void addEvent(RelationshipEvent event) {
             data.add(event);
         }
 
@@ -495,8 +549,14 @@ public class OSMInput implements Input {
 
         @Override
         public void addOSMTags(Map<String, Object> properties) {
+            if (osmConfig.inlineTags()) {
+                return;
+            }
             if (insideTaggableEvent()) {
-                OSMTags tagNode = new OSMTags(previousTaggableNodeEvent.osmId, properties);
+                long tagSet = tagSets == null ? 0 : TagSets.hash(properties);
+                OSMTags tagNode = tagSets != null && tagSets.contains(tagSet, TagSets.check(properties))
+                        ? new OSMTags(tagSet, properties)
+                        : new OSMTags(previousTaggableNodeEvent.osmId, properties);
                 OSMTagsRel tagsRel = new OSMTagsRel(previousTaggableNodeEvent, tagNode);
                 //System.out.println("Creating relationship: (" + tagsRel.fromId + ")-[" + tagsRel.type + "]->(" + tagsRel.toId + ")");
                 addEvent(tagsRel);
@@ -533,6 +593,9 @@ public class OSMInput implements Input {
                 visitor.endOfEntity();
                 return true;
             }
+            if (data != null && currentRead == data.size()) {
+                metrics.pass().relationships(data, event -> event.type);
+            }
             return false;
         }
 
@@ -548,328 +611,1780 @@ public class OSMInput implements Input {
         }
     }
 
-    // "2008-06-11T12:36:28Z"
-    private DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    // Marks a taggable event that was not imported, so its tags should be silently ignored
+    private static final NodeEvent SKIPPED_EVENT = new NodeEvent("Skipped", "skipped", null);
 
-    private abstract class OSMInputIterator implements InputIterator {
-        private final String osmFile;
-        private final XMLStreamReader parser;
-        private final ArrayList<Long> wayNodes = new ArrayList<>();
-        private final ArrayList<Map<String, Object>> relationMembers = new ArrayList<>();
-        private Map<String, Object> wayProperties = null;
-        private Map<String, Object> relationProperties = null;
-        private int depth = 0;
-        private ArrayList<String> currentXMLTags = new ArrayList<>();
-        private Map<String, Object> currentNodeTags = new LinkedHashMap<>();
+    /**
+     * Node degree information for the routing-only model. A pre-pass over all highways finds the nodes used by more
+     * than one way, or at the end of a way. Only those are imported as OSMNode's, and all other highway nodes are
+     * reduced to the geometry stored on the ROUTE relationships between them.
+     */
+    private class RoutingNodes {
+        private final LongBitSet wayNodes = new LongBitSet();
+        private final LongBitSet routingNodes = new LongBitSet();
+        private final LongBitSet taggedNodes = new LongBitSet();
+        private final LongBitSet highways = new LongBitSet();
+        private final NodeLocations locations = new NodeLocations();
+        private long ways = 0;
 
-        private OSMInputIterator(String osmFile) {
-            this.osmFile = osmFile;
-            this.parser = getXMLParser();
+        private void scan() throws IOException {
+            long start = System.currentTimeMillis();
+            prePass("routing pre-pass", filtered(new DegreeCountingChunk()));
+            System.out.println("Routing pre-pass found " + routingNodes.cardinality() + " intersection and end nodes out of " +
+                    wayNodes.cardinality() + " nodes on " + ways + " highways in " + (System.currentTimeMillis() - start) + "ms");
         }
 
-        @Override
-        public synchronized boolean next(InputChunk chunk) {
-            OSMInputChunk events = (OSMInputChunk) chunk;
-            events.reset();
-            while (events.size() < config.batchSize() || events.insideTaggableEvent()) {
-                try {
-                    if (parser.hasNext()) {
-                        int event = parser.next();
-                        if (event == javax.xml.stream.XMLStreamConstants.END_DOCUMENT) {
-                            break;
-                        }
-                        switch (event) {
-                            case javax.xml.stream.XMLStreamConstants.START_ELEMENT:
-                                currentXMLTags.add(depth, parser.getLocalName());
-                                if (currentXMLTags.get(depth).equals("tag")) {
-                                    // add 'tag' to currentRead tag collection (to be saved at end of parent node)
-                                    Map<String, Object> properties = extractProperties(parser);
-                                    currentNodeTags.put(properties.get("k").toString(), properties.get("v").toString());
-                                } else if (currentXMLTags.get(0).equals("osm")) {
-                                    if (currentXMLTags.size() == 1) {
-                                        events.addDatasetNode(osmFile, extractProperties(parser));
-                                    } else if (currentXMLTags.size() > 1) {
-                                        String tag = currentXMLTags.get(1);
-                                        if (tag.equals("bounds")) {
-                                            events.addDatasetBoundsNode(osmFile, extractProperties(parser));
-                                        } else if (tag.equals("node")) {
-                                            // Create OSMNode object with all attributes (but not tags)
-                                            // <node id="269682538" lat="56.0420950"
-                                            // lon="12.9693483" user="sanna" uid="31450"
-                                            // visible="true" version="1" changeset="133823"
-                                            // timestamp="2008-06-11T12:36:28Z"/>
-                                            Map<String, Object> nodeProperties = extractProperties("node", parser, range);
-                                            long osm_id = Long.parseLong(nodeProperties.get("node_osm_id").toString());
-                                            events.addOSMNode(osm_id, nodeProperties);
-                                        } else if (tag.equals("way")) {
-                                            if (currentXMLTags.size() == 2) {
-                                                // <way id="27359054" user="spull" uid="61533"
-                                                // visible="true" version="8" changeset="4707351"
-                                                // timestamp="2010-05-15T15:39:57Z">
-                                                wayProperties = extractProperties("way", parser);
-                                                wayNodes.clear();
-                                            } else if (currentXMLTags.size() == 3 && currentXMLTags.get(2).equals("nd")) {
-                                                Map<String, Object> properties = extractProperties(parser);
-                                                wayNodes.add(Long.parseLong(properties.get("ref").toString()));
-                                            }
-                                        } else if (tag.equals("relation")) {
-                                            if (currentXMLTags.size() == 2) {
-                                                // <relation id="77965" user="Grillo" uid="13957"
-                                                // visible="true" version="24" changeset="5465617"
-                                                // timestamp="2010-08-11T19:25:46Z">
-                                                relationProperties = extractProperties("relation", parser);
-                                                relationMembers.clear();
-                                            } else if (currentXMLTags.size() == 3 && currentXMLTags.get(2).equals("member")) {
-                                                relationMembers.add(extractProperties(parser));
-                                            }
-                                        }
-                                    }
-                                }
-                                depth++;
-                                break;
-                            case javax.xml.stream.XMLStreamConstants.END_ELEMENT:
-                                if (currentXMLTags.size() == 2 && currentXMLTags.get(0).equals("osm")) {
-                                    String tag = currentXMLTags.get(1);
-                                    if (tag.equals("node")) {
-                                        addOSMTags(events);
-                                    } else if (tag.equals("way")) {
-                                        long osm_id = Long.parseLong(wayProperties.get("way_osm_id").toString());
-                                        events.addOSMWay(osm_id, wayProperties, wayNodes, currentNodeTags);
-                                        addOSMTags(events);
-                                    } else if (tag.equals("relation")) {
-                                        long osm_id = Long.parseLong(relationProperties.get("relation_osm_id").toString());
-                                        events.addOSMRelation(osm_id, relationProperties, relationMembers, currentNodeTags);
-                                        addOSMTags(events);
-                                    }
-                                }
-                                depth--;
-                                currentXMLTags.remove(depth);
-                                break;
-                            default:
-                                break;
-                        }
+        private boolean isWayNode(long id) {
+            return wayNodes.get(id);
+        }
+
+        private boolean isRoutingNode(long id) {
+            return routingNodes.get(id);
+        }
+
+        // Nodes not on any highway are only imported if they have tags, as possible points of interest
+        private boolean isImportedNode(long id) {
+            return wayNodes.get(id) ? routingNodes.get(id) : taggedNodes.get(id);
+        }
+
+        private class DegreeCountingChunk implements OSMInputChunk {
+            private long size = 0;
+            private long previousNode = -1;
+
+            @Override
+            public void addOSMWay(long id, Map<String, Object> properties, List<Long> nodes, Map<String, Object> wayTags) {
+                if (!wayTags.containsKey("highway") || nodes.isEmpty()) {
+                    return;
+                }
+                ways++;
+                size++;
+                highways.set(id);
+                routingNodes.set(nodes.get(0));
+                routingNodes.set(nodes.get(nodes.size() - 1));
+                for (long osmId : nodes) {
+                    if (wayNodes.get(osmId)) {
+                        routingNodes.set(osmId);
                     } else {
-                        break;
+                        wayNodes.set(osmId);
                     }
-                } catch (XMLStreamException e) {
-                    System.out.println("Failed to parse XML: " + e);
-                    e.printStackTrace();
-                    break;
                 }
             }
-            if (events.size() > config.batchSize() * 10) {
-                System.out.println("Created unexpectedly large chunk: " + events.size());
+
+            @Override
+            public void addDatasetNode(String name, Map<String, Object> properties) {
+            }
+
+            @Override
+            public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+            }
+
+            @Override
+            public void addOSMNode(long id, Map<String, Object> properties) {
+                previousNode = id;
+            }
+
+            @Override
+            public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            }
+
+            @Override
+            public void addOSMTags(Map<String, Object> properties) {
+                if (previousNode >= 0) {
+                    taggedNodes.set(previousNode);
+                }
+            }
+
+            @Override
+            public boolean insideTaggableEvent() {
+                return false;
+            }
+
+            @Override
+            public void endTaggableEvent() {
+                previousNode = -1;
+            }
+
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public void reset() {
+                size = 0;
+            }
+
+            @Override
+            public boolean next(InputEntityVisitor visitor) {
+                return false;
+            }
+
+            @Override
+            public void close() {
             }
-            return events.size() > 0;
         }
+    }
 
-        private void addOSMTags(OSMInputChunk events) {
-            if (currentNodeTags.size() > 0) {
-                events.addOSMTags(currentNodeTags);
-                currentNodeTags = new LinkedHashMap<>();
+    /**
+     * Read all input files into a chunk that only collects information for a later pass, without creating any events.
+     */
+    private void prePass(String name, OSMInputChunk chunk) throws IOException {
+        beginPass(name);
+        InputIterator iterator = spooling() ? new SpooledInputIterator() {
+            @Override
+            public InputChunk newChunk() {
+                throw new IllegalStateException("Pre-pass SpooledInputIterator should never be called directly");
+            }
+        } : osmConfig.mergeFiles() ? new MergingInputIterator(osmFiles) {
+            @Override
+            public InputChunk newChunk() {
+                throw new IllegalStateException("Pre-pass MergingInputIterator should never be called directly");
             }
-            events.endTaggableEvent();
+        } : new MultiFileInputIterator(osmFiles) {
+            @Override
+            public InputChunk newChunk() {
+                throw new IllegalStateException("Pre-pass MultiFileInputIterator should never be called directly");
+            }
+        };
+        try {
+            while (iterator.next(chunk)) {
+                chunk.reset();
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private synchronized void scanRoutingNodes() throws IOException {
+        if (routing == null) {
+            RoutingNodes scanned = new RoutingNodes();
+            scanned.scan();
+            routing = scanned;
+        }
+    }
+
+    /**
+     * Nodes for the routing-only model: highway intersection and end nodes, highways without way node proxies,
+     * relations, and nodes not on any highway only if they have tags (points of interest).
+     */
+    class RoutingNodesInputChunk extends OSMNodesInputChunk {
+        private final RoutingNodes routing;
+
+        RoutingNodesInputChunk(RoutingNodes routing) {
+            this.routing = routing;
         }
 
-        private InputStream openFile() throws IOException {
-            FileInputStream input = new FileInputStream(osmFile);
-            if (osmFile.endsWith(".bz2")) {
-                return new BZip2CompressorInputStream(input);
-            }else if (osmFile.endsWith(".gz")) {
-                return new GzipCompressorInputStream(input);
+        @Override
+        public void addOSMNode(long id, Map<String, Object> properties) {
+            if (routing.isWayNode(id)) {
+                routing.locations.put(id, (double) properties.get("lon"), (double) properties.get("lat"));
+            }
+            if (routing.isImportedNode(id)) {
+                super.addOSMNode(id, properties);
             } else {
-                return input;
+                previousTaggableNodeEvent = SKIPPED_EVENT;
             }
         }
 
-        private XMLStreamReader getXMLParser() {
-            try {
-                javax.xml.stream.XMLInputFactory factory = javax.xml.stream.XMLInputFactory.newInstance();
-                InputStreamReader reader = new InputStreamReader(openFile(), Charset.defaultCharset());
-                return factory.createXMLStreamReader(reader);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to open XML: " + e.getMessage(), e);
+        @Override
+        public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+            if (routing.highways.get(id)) {
+                previousTaggableNodeEvent = way(id, properties, wayTags, getRoadDirection(wayTags));
+                addEvent(previousTaggableNodeEvent);
+            } else {
+                previousTaggableNodeEvent = SKIPPED_EVENT;
             }
         }
 
         @Override
-        public void close() throws IOException {
-            try {
-                this.parser.close();
-            } catch (XMLStreamException e) {
-                throw new IOException("Failed to close: " + e.getMessage(), e);
+        public void addOSMTags(Map<String, Object> properties) {
+            if (previousTaggableNodeEvent != SKIPPED_EVENT) {
+                super.addOSMTags(properties);
             }
         }
     }
 
-    private abstract class MultiFileInputIterator implements InputIterator {
-        private String[] osmFiles;
-        private int currentFileIndex;
-        private OSMInputIterator current;
+    /**
+     * Relationships for the routing-only model: highways are split at intersection nodes into ROUTE relationships
+     * with the distance and encoded geometry of the interior nodes, and the routing profile costs.
+     */
+    class RoutingRelationshipsInputChunk extends OSMRelationshipsInputChunk {
+        private final RoutingNodes routing;
+        private final List<RoutingProfile> profiles = osmConfig.routingProfiles();
+        private double[] coordinates = new double[64];
+        // Lasting from the first to the last highway of the chunk, which are next to each other in sorted input
+        private RoutingBatchEvent batch = null;
 
-        private MultiFileInputIterator(String[] osmFiles) {
-            this.osmFiles = osmFiles;
-            this.currentFileIndex = 0;
+        RoutingRelationshipsInputChunk(RoutingNodes routing) {
+            this.routing = routing;
         }
 
+        // Also called when the chunk is closed
         @Override
-        public synchronized boolean next(InputChunk chunk) throws IOException {
-            while (true) {
-                if (current == null) {
-                    if (!hasNextFile()) {
-                        return false;
-                    }
-                    current = new OSMInputIterator(nextFile()) {
-                        @Override
-                        public InputChunk newChunk() {
-                            throw new IllegalStateException("Inner OSMInputIterator should never be called directly");
-                        }
-                    };
-                }
+        public void reset() {
+            commitBatch();
+            super.reset();
+        }
 
-                if (current.next(chunk)) {
-                    return true;
-                }
-                current.close();
-                current = null;
+        private void commitBatch() {
+            if (batch != null && batch.shouldCommit()) {
+                batch.source = "routing-only import";
+                batch.commit();
             }
+            batch = null;
         }
 
         @Override
-        public void close() {
-            try {
-                if (current != null) {
-                    current.close();
-                }
-                current = null;
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
+        public void addOSMNode(long id, Map<String, Object> properties) {
+            if (routing.isImportedNode(id)) {
+                super.addOSMNode(id, properties);
+            } else {
+                previousTaggableNodeEvent = SKIPPED_EVENT;
             }
         }
 
-        private boolean hasNextFile() {
-            return this.currentFileIndex < osmFiles.length;
-        }
-
-        private String nextFile() {
-            String osmFile = osmFiles[currentFileIndex];
-            currentFileIndex++;
-            return osmFile;
+        @Override
+        public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            ArrayList<Map<String, Object>> imported = new ArrayList<>(relationMembers.size());
+            for (Map<String, Object> memberProps : relationMembers) {
+                String memberType = (String) memberProps.get("type");
+                long ref = Long.parseLong(memberProps.get("ref").toString());
+                if ("node".equals(memberType) && !routing.isImportedNode(ref) || "way".equals(memberType) && !routing.highways.get(ref)) {
+                    continue;
+                }
+                imported.add(memberProps);
+            }
+            super.addOSMRelation(id, properties, imported, relationTags);
         }
-    }
 
-    private class OSMNodesInputIterator extends MultiFileInputIterator {
-        private OSMNodesInputIterator(String[] osmFiles) {
-            super(osmFiles);
+        @Override
+        public void addOSMWay(long wayId, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+            if (!routing.highways.get(wayId)) {
+                previousTaggableNodeEvent = SKIPPED_EVENT;
+                return;
+            }
+            if (batch == null) {
+                batch = new RoutingBatchEvent();
+                batch.begin();
+            }
+            int routes = data.size();
+            RoadDirection direction = getRoadDirection(wayTags);
+            previousTaggableNodeEvent = way(wayId, properties, wayTags, direction);
+            double[] coordinate = new double[2];
+            int count = 0;
+            long previousId = -1;
+            long segmentStart = -1;
+            double distance = 0.0;
+            PointValue previousPoint = null;
+            for (long osmId : wayNodes) {
+                if (osmId == previousId) {
+                    continue;
+                }
+                previousId = osmId;
+                if (routing.locations.get(osmId, coordinate)) {
+                    PointValue point = Values.pointValue(wgs84, coordinate[0], coordinate[1]);
+                    if (previousPoint != null) {
+                        distance += calculator.distance(previousPoint, point);
+                    }
+                    previousPoint = point;
+                    if (count * 2 + 2 > coordinates.length) {
+                        coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+                    }
+                    coordinates[count * 2] = coordinate[0];
+                    coordinates[count * 2 + 1] = coordinate[1];
+                    count++;
+                }
+                if (routing.isRoutingNode(osmId)) {
+                    if (segmentStart >= 0) {
+                        addSegment(wayId, wayTags, direction, segmentStart, osmId, distance, count);
+                    }
+                    // The routing node is both the last point of this segment and the first point of the next
+                    if (count > 0) {
+                        coordinates[0] = coordinates[count * 2 - 2];
+                        coordinates[1] = coordinates[count * 2 - 1];
+                        count = 1;
+                    }
+                    segmentStart = osmId;
+                    distance = 0.0;
+                }
+            }
+            batch.ways++;
+            batch.routes += data.size() - routes;
+            batch.end();
+        }
+
+        private void addSegment(long wayId, Map<String, Object> wayTags, RoadDirection direction, long fromId, long toId, double distance, int count) {
+            // Only the interior geometry is stored, since the end points are the nodes themselves
+            int interior = Math.max(0, count - 2);
+            double[] geometry = new double[interior * 2];
+            System.arraycopy(coordinates, 2, geometry, 0, geometry.length);
+            addRoute(wayId, wayTags, direction == RoadDirection.BACKWARD, fromId, toId, distance, geometry, interior);
+            for (int i = 0; i < interior / 2; i++) {
+                int j = interior - 1 - i;
+                for (int k = 0; k < 2; k++) {
+                    double swap = geometry[i * 2 + k];
+                    geometry[i * 2 + k] = geometry[j * 2 + k];
+                    geometry[j * 2 + k] = swap;
+                }
+            }
+            addRoute(wayId, wayTags, direction == RoadDirection.FORWARD, toId, fromId, distance, geometry, interior);
+        }
+
+        // Directed like the ROUTE relationships created by spatial.osm.routeIntersection, one for each direction allowed
+        private void addRoute(long wayId, Map<String, Object> wayTags, boolean againstOneway, long fromId, long toId, double distance, double[] geometry, int count) {
+            Map<String, Object> relProps = new LinkedHashMap<>();
+            relProps.put("distance", distance);
+            relProps.put("fromWay", wayId);
+            relProps.put("toWay", wayId);
+            relProps.put("geometry", EncodedPolyline.encode(geometry, count));
+            if (againstOneway) {
+                // Only profiles ignoring the one-way street, like foot, may use it, so searches without a profile skip it
+                relProps.put("againstOneway", true);
+            }
+            boolean anyAccess = !againstOneway;
+            for (RoutingProfile profile : profiles) {
+                double speed = profile.speed(wayTags);
+                boolean access = speed > 0 && (!againstOneway || profile.allowsReverse(wayTags, true));
+                relProps.put(profile.costProperty(), access ? distance / (speed / 3.6) : profile.defaultCost(distance));
+                relProps.put(profile.accessProperty(), access);
+                anyAccess |= access;
+            }
+            if (anyAccess) {
+                addEvent(new OSMRouteRel(new OSMNode(fromId), new OSMNode(toId), relProps));
+            }
         }
 
         @Override
-        public InputChunk newChunk() {
-            return new OSMNodesInputChunk();
+        public void addOSMTags(Map<String, Object> properties) {
+            if (previousTaggableNodeEvent != SKIPPED_EVENT) {
+                super.addOSMTags(properties);
+            }
         }
     }
 
-    private class OSMRelationshipsInputIterator extends MultiFileInputIterator {
-        private OSMRelationshipsInputIterator(String[] osmFiles) {
-            super(osmFiles);
+    /**
+     * The entities to import according to the {@link TagFilter}. A pre-pass finds the nodes, ways and relations that
+     * match the filter, as well as the nodes and ways they reference, which are imported without their tags so that
+     * the geometries remain complete. Ways that are only referenced by relations, like the boundaries of
+     * administrative areas, come before the relations in the file, so their nodes are found in a second pass.
+     */
+    private class FilteredEntities {
+        private final TagFilter filter;
+        private final LongBitSet nodes = new LongBitSet();
+        private final LongBitSet taggedNodes = new LongBitSet();
+        private final LongBitSet ways = new LongBitSet();
+        private final LongBitSet taggedWays = new LongBitSet();
+        private final LongBitSet relations = new LongBitSet();
+        private final LongBitSet memberWays = new LongBitSet();
+        private final long[] scanned = new long[OSMEntity.Type.values().length];
+
+        private FilteredEntities(TagFilter filter) {
+            this.filter = filter;
+        }
+
+        private void scan() throws IOException {
+            long start = System.currentTimeMillis();
+            prePass("tag filter pre-pass", new MatchingChunk());
+            if (memberWays.cardinality() > 0) {
+                prePass("tag filter member ways pre-pass", new MemberWaysChunk());
+            }
+            System.out.println("Tag filter pre-pass kept " + nodes.cardinality() + " of " + scanned[0] + " nodes, " +
+                    ways.cardinality() + " of " + scanned[1] + " ways and " + relations.cardinality() + " of " + scanned[2] +
+                    " relations in " + (System.currentTimeMillis() - start) + "ms");
+        }
+
+        private boolean isImported(String memberType, long ref) {
+            switch (memberType) {
+                case "node":
+                    return nodes.get(ref);
+                case "way":
+                    return ways.get(ref);
+                case "relation":
+                    return relations.get(ref);
+                default:
+                    return false;
+            }
         }
 
-        @Override
-        public InputChunk newChunk() {
-            return new OSMRelationshipsInputChunk();
-        }
-    }
+        private abstract class PrePassChunk implements OSMInputChunk {
+            long size = 0;
 
-    @Override
-    public InputIterable nodes(Collector badCollector) {
-        return () -> new OSMNodesInputIterator(osmFiles);
-    }
+            @Override
+            public void addDatasetNode(String name, Map<String, Object> properties) {
+            }
 
-    @Override
-    public InputIterable relationships(Collector badCollector) {
-        return () -> new OSMRelationshipsInputIterator(osmFiles);
-    }
+            @Override
+            public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+            }
 
-    @Override
-    public IdType idType() {
-        return IdType.STRING;
-    }
+            @Override
+            public void addOSMNode(long id, Map<String, Object> properties) {
+            }
 
-    @Override
-    public ReadableGroups groups() {
-        return groups;
-    }
+            @Override
+            public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            }
 
-    private static final int BYTES_PER_NODE = 1000;
-    private static final int BYTES_PER_REL = 10000;
+            @Override
+            public void addOSMTags(Map<String, Object> properties) {
+            }
 
-    private long calcFileSize() {
-        long totalSize = 0;
-        for (String osmFile : osmFiles) {
-            long fileSize = new File(osmFile).length();
-            if (osmFile.endsWith(".bz2") || osmFile.endsWith(".gz")) fileSize *= 10;
-            totalSize += fileSize;
+            @Override
+            public boolean insideTaggableEvent() {
+                return false;
+            }
+
+            @Override
+            public void endTaggableEvent() {
+                size++;
+            }
+
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public void reset() {
+                size = 0;
+            }
+
+            @Override
+            public boolean next(InputEntityVisitor visitor) {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
         }
-        return totalSize;
-    }
 
-    @Override
-    public Estimates calculateEstimates(PropertySizeCalculator propertySizeCalculator) throws IOException {
-        long fileSize = calcFileSize();
-        return Input.knownEstimates(fileSize / BYTES_PER_NODE, fileSize / BYTES_PER_REL, 8, 1, 8, 8, 1);
-    }
+        private class MatchingChunk extends PrePassChunk {
+            private long currentNode = -1;
+            private Map<String, Object> currentNodeTags = Collections.emptyMap();
 
-    private Map<String, Object> extractProperties(XMLStreamReader parser) {
-        return extractProperties(null, parser);
-    }
-
-    private Map<String, Object> extractProperties(String name, XMLStreamReader parser) {
-        return extractProperties(name, parser, null);
-    }
-
-    private Map<String, Object> extractProperties(String name, XMLStreamReader parser, RangeFilter range) {
-        // <node id="269682538" lat="56.0420950" lon="12.9693483" user="sanna"
-        // uid="31450" visible="true" version="1" changeset="133823"
-        // timestamp="2008-06-11T12:36:28Z"/>
-        // <way id="27359054" user="spull" uid="61533" visible="true"
-        // version="8" changeset="4707351" timestamp="2010-05-15T15:39:57Z">
-        // <relation id="77965" user="Grillo" uid="13957" visible="true"
-        // version="24" changeset="5465617" timestamp="2010-08-11T19:25:46Z">
-        LinkedHashMap<String, Object> properties = new LinkedHashMap<>();
-        for (int i = 0; i < parser.getAttributeCount(); i++) {
-            String prop = parser.getAttributeLocalName(i);
-            String value = parser.getAttributeValue(i);
-            if (name != null && prop.equals("id")) {
-                properties.put(name + "_osm_id", Long.parseLong(value));
-            } else if (prop.equals("lat") || prop.equals("lon")) {
-                properties.put(prop, Double.parseDouble(value));
-            } else if (name != null && prop.equals("version")) {
-                properties.put(prop, Integer.parseInt(value));
-            } else if (prop.equals("visible")) {
-                if (!value.equals("true") && !value.equals("1")) {
-                    properties.put(prop, false);
-                }
-            } else if (prop.equals("timestamp")) {
-                try {
-                    LocalDateTime timestamp = LocalDateTime.parse(value, timestampFormat);
-                    properties.put(prop, timestamp);
-                } catch (DateTimeParseException e) {
-                    error("Error parsing timestamp", e);
+            @Override
+            public void addOSMNode(long id, Map<String, Object> properties) {
+                scanned[0]++;
+                currentNode = id;
+                currentNodeTags = Collections.emptyMap();
+            }
+
+            @Override
+            public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+                scanned[1]++;
+                if (filter.matches(OSMEntity.Type.WAY, wayTags)) {
+                    ways.set(id);
+                    taggedWays.set(id);
+                    for (long osmId : wayNodes) {
+                        nodes.set(osmId);
+                    }
                 }
-            } else {
-                properties.put(prop, value);
+            }
+
+            @Override
+            public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+                scanned[2]++;
+                if (filter.matches(OSMEntity.Type.RELATION, relationTags)) {
+                    relations.set(id);
+                    for (Map<String, Object> memberProps : relationMembers) {
+                        String memberType = (String) memberProps.get("type");
+                        long ref = Long.parseLong(memberProps.get("ref").toString());
+                        if ("node".equals(memberType)) {
+                            nodes.set(ref);
+                        } else if ("way".equals(memberType) && !ways.get(ref)) {
+                            memberWays.set(ref);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void addOSMTags(Map<String, Object> properties) {
+                if (currentNode >= 0) {
+                    currentNodeTags = properties;
+                }
+            }
+
+            @Override
+            public boolean insideTaggableEvent() {
+                return currentNode >= 0;
+            }
+
+            @Override
+            public void endTaggableEvent() {
+                if (currentNode >= 0 && filter.includes(OSMEntity.Type.NODE) && filter.matches(OSMEntity.Type.NODE, currentNodeTags)) {
+                    nodes.set(currentNode);
+                    taggedNodes.set(currentNode);
+                }
+                currentNode = -1;
+                super.endTaggableEvent();
             }
         }
-        if (properties.containsKey("lat") && properties.containsKey("lon")) {
-            PointValue point = Values.pointValue(wgs84, (double) properties.get("lon"), (double) properties.get("lat"));
-            if (range == null || range.withinRange(point.coordinate())) {
-                properties.put("location", point);
-            } else {
-                //Nodes outside the filtered location should be completely ignored
-                return null;
+
+        private class MemberWaysChunk extends PrePassChunk {
+            @Override
+            public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+                if (memberWays.get(id)) {
+                    ways.set(id);
+                    for (long osmId : wayNodes) {
+                        nodes.set(osmId);
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void scanFilteredEntities() throws IOException {
+        if (filtered == null) {
+            FilteredEntities scanned = new FilteredEntities(osmConfig.tagFilter());
+            scanned.scan();
+            filtered = scanned;
+        }
+    }
+
+    /**
+     * Passes on only the entities found by the {@link FilteredEntities} pre-pass to the chunk creating the events,
+     * with the tags projected by the filter, or without tags for entities that are only imported as references.
+     */
+    private class FilteringInputChunk implements OSMInputChunk {
+        private final FilteredEntities filtered;
+        private final OSMInputChunk events;
+        private boolean inside = false;
+        private boolean keepTags = false;
+        private OSMEntity.Type type = null;
+        private Map<String, Object> tags = null;
+        private Map<String, Object> projected = null;
+
+        private FilteringInputChunk(FilteredEntities filtered, OSMInputChunk events) {
+            this.filtered = filtered;
+            this.events = events;
+        }
+
+        @Override
+        public void addDatasetNode(String name, Map<String, Object> properties) {
+            events.addDatasetNode(name, properties);
+        }
+
+        @Override
+        public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+            events.addDatasetBoundsNode(name, properties);
+        }
+
+        @Override
+        public void addOSMNode(long id, Map<String, Object> properties) {
+            inside = true;
+            if (filtered.nodes.get(id)) {
+                keep(OSMEntity.Type.NODE, filtered.taggedNodes.get(id));
+                events.addOSMNode(id, properties);
+            }
+        }
+
+        @Override
+        public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+            inside = true;
+            if (filtered.ways.get(id)) {
+                keep(OSMEntity.Type.WAY, filtered.taggedWays.get(id));
+                events.addOSMWay(id, properties, wayNodes, project(wayTags));
+            }
+        }
+
+        @Override
+        public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            inside = true;
+            if (filtered.relations.get(id)) {
+                keep(OSMEntity.Type.RELATION, true);
+                ArrayList<Map<String, Object>> imported = new ArrayList<>(relationMembers.size());
+                for (Map<String, Object> memberProps : relationMembers) {
+                    String memberType = (String) memberProps.get("type");
+                    if (memberType == null || filtered.isImported(memberType, Long.parseLong(memberProps.get("ref").toString()))) {
+                        imported.add(memberProps);
+                    }
+                }
+                events.addOSMRelation(id, properties, imported, project(relationTags));
+            }
+        }
+
+        private void keep(OSMEntity.Type type, boolean keepTags) {
+            this.type = type;
+            this.keepTags = keepTags;
+        }
+
+        // The parser passes the same tags to the way or relation and then to addOSMTags, so they are projected once
+        private Map<String, Object> project(Map<String, Object> properties) {
+            if (!keepTags) {
+                return Collections.emptyMap();
+            }
+            if (properties != tags) {
+                tags = properties;
+                projected = filtered.filter.project(type, properties);
+            }
+            return projected;
+        }
+
+        @Override
+        public void addOSMTags(Map<String, Object> properties) {
+            if (type != null && keepTags) {
+                Map<String, Object> imported = project(properties);
+                if (imported.size() > 0) {
+                    events.addOSMTags(imported);
+                }
+            }
+        }
+
+        @Override
+        public boolean insideTaggableEvent() {
+            return inside || events.insideTaggableEvent();
+        }
+
+        @Override
+        public void endTaggableEvent() {
+            if (type != null) {
+                events.endTaggableEvent();
+            }
+            inside = false;
+            type = null;
+            tags = null;
+            projected = null;
+        }
+
+        @Override
+        public long size() {
+            return events.size();
+        }
+
+        @Override
+        public void reset() {
+            events.reset();
+        }
+
+        @Override
+        public boolean next(InputEntityVisitor visitor) throws IOException {
+            return events.next(visitor);
+        }
+
+        @Override
+        public void close() throws IOException {
+            events.close();
+        }
+    }
+
+    private OSMInputChunk filtered(OSMInputChunk events) {
+        return filtered == null ? events : new FilteringInputChunk(filtered, events);
+    }
+
+    /**
+     * Pass a complete entity on as the same events the parser would have created for it.
+     */
+    private static void replay(OSMEntity entity, OSMInputChunk events) {
+        switch (entity.type) {
+            case NODE:
+                events.addOSMNode(entity.id, entity.properties);
+                break;
+            case WAY:
+                events.addOSMWay(entity.id, entity.properties, entity.wayNodes, entity.tags);
+                break;
+            case RELATION:
+                events.addOSMRelation(entity.id, entity.properties, entity.members, entity.tags);
+                break;
+        }
+        if (entity.tags.size() > 0) {
+            events.addOSMTags(entity.tags);
+        }
+        events.endTaggableEvent();
+    }
+
+    /**
+     * Collects the OSMNode entities, with their tags, into the sorter instead of passing them on, so that they can be
+     * passed on in sorted order once all input has been read. All other events are passed on as they are. The parser
+     * writes to the {@link #parsed} chunk, so that nodes removed by the tag filter are not sorted.
+     */
+    private class SortingInputChunk implements OSMInputChunk {
+        private final OSMEntitySorter sorter;
+        private final OSMInputChunk events;
+        private final OSMInputChunk parsed;
+        private OSMEntity current = null;
+        private long sorted = 0;
+
+        private SortingInputChunk(OSMEntitySorter sorter, OSMInputChunk events) {
+            this.sorter = sorter;
+            this.events = events;
+            this.parsed = filtered(this);
+        }
+
+        @Override
+        public void addDatasetNode(String name, Map<String, Object> properties) {
+            events.addDatasetNode(name, properties);
+        }
+
+        @Override
+        public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+            events.addDatasetBoundsNode(name, properties);
+        }
+
+        @Override
+        public void addOSMNode(long id, Map<String, Object> properties) {
+            if (routing != null && !routing.isImportedNode(id)) {
+                // Not sorted, since it is not imported, but the location of interior highway nodes is still needed
+                events.addOSMNode(id, properties);
+            } else {
+                current = new OSMEntity(OSMEntity.Type.NODE, id, properties);
+            }
+        }
+
+        @Override
+        public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+            events.addOSMWay(id, properties, wayNodes, wayTags);
+        }
+
+        @Override
+        public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            events.addOSMRelation(id, properties, relationMembers, relationTags);
+        }
+
+        @Override
+        public void addOSMTags(Map<String, Object> properties) {
+            if (current != null) {
+                // The parser reuses the tags map for the next entity
+                current.tags.putAll(properties);
+            } else {
+                events.addOSMTags(properties);
+            }
+        }
+
+        @Override
+        public boolean insideTaggableEvent() {
+            return current != null || events.insideTaggableEvent();
+        }
+
+        @Override
+        public void endTaggableEvent() {
+            if (current != null) {
+                try {
+                    sorter.add(current);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to spill sorted nodes: " + e.getMessage(), e);
+                }
+                current = null;
+                sorted++;
+            } else {
+                events.endTaggableEvent();
+            }
+        }
+
+        /**
+         * Includes the nodes given to the sorter, so that the chunks are handed to the importer at the usual rate
+         * while reading the nodes, even though they are empty.
+         */
+        @Override
+        public long size() {
+            return events.size() + sorted;
+        }
+
+        @Override
+        public void reset() {
+            events.reset();
+            sorted = 0;
+        }
+
+        @Override
+        public boolean next(InputEntityVisitor visitor) throws IOException {
+            return events.next(visitor);
+        }
+
+        @Override
+        public void close() throws IOException {
+            events.close();
+        }
+    }
+
+    /**
+     * Passes on all events except those of the OSMNode entities as they are read, and then the OSMNode entities in
+     * the {@link OSMInputConfiguration#spatialOrder()}. The input can be read by several threads, but the sorted nodes
+     * are only read once all threads have finished reading the input.
+     */
+    private class SortingInputIterator implements InputIterator {
+        private final InputIterator input;
+        private final OSMEntitySorter sorter;
+        private final ReadWriteLock reading = new ReentrantReadWriteLock();
+        private volatile Iterator<OSMEntity> sorted = null;
+
+        private SortingInputIterator(InputIterator input) {
+            OSMInputConfiguration.SpatialOrder order = osmConfig.spatialOrder();
+            this.input = input;
+            this.sorter = new OSMEntitySorter(order.name().toLowerCase(), osmConfig.spoolDirectory(), osmConfig.spoolRunSize(),
+                    entity -> spatialKey(order, entity));
+        }
+
+        @Override
+        public InputChunk newChunk() {
+            return new SortingInputChunk(sorter, nodesChunk());
+        }
+
+        @Override
+        public boolean next(InputChunk chunk) throws IOException {
+            SortingInputChunk events = (SortingInputChunk) chunk;
+            if (sorted == null) {
+                reading.readLock().lock();
+                try {
+                    if (sorted == null && input.next(events.parsed)) {
+                        return true;
+                    }
+                } finally {
+                    reading.readLock().unlock();
+                }
+                // Some inputs have nothing for this thread while other threads are still reading, so only once no other
+                // thread is reading does the end of the input mean that all nodes have been added
+                reading.writeLock().lock();
+                try {
+                    if (sorted == null) {
+                        if (input.next(events.parsed)) {
+                            return true;
+                        }
+                        sorted = sorter.sorted();
+                    }
+                } finally {
+                    reading.writeLock().unlock();
+                }
+            }
+            synchronized (this) {
+                events.reset();
+                while (events.events.size() < config.batchSize() && sorted.hasNext()) {
+                    replay(sorted.next(), events.events);
+                }
+                return events.size() > 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                input.close();
+                if (sorter.entities() > 0) {
+                    System.out.println(sorter);
+                }
+            } finally {
+                sorter.close();
+            }
+        }
+    }
+
+    private static long spatialKey(OSMInputConfiguration.SpatialOrder order, OSMEntity entity) {
+        Object lon = entity.properties.get("lon");
+        Object lat = entity.properties.get("lat");
+        if (lon instanceof Double && lat instanceof Double) {
+            return order.key((Double) lon, (Double) lat);
+        }
+        // Deleted nodes have no location
+        return Long.MAX_VALUE;
+    }
+
+    private OSMParser openParser(String osmFile) {
+        try {
+            InputStream input = openFile(osmFile);
+            if (osmConfig.byteParser()) {
+                return configure(new OSMByteParser(osmFile, input, range));
+            } else {
+                return configure(new StaxOSMParser(osmFile, input, range));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to open XML: " + e.getMessage(), e);
+        }
+    }
+
+    private InputStream openFile(String osmFile) throws IOException {
+        ImportMetrics.Pass pass = metrics.pass();
+        InputStream input = new BufferedInputStream(pass.counting(new FileInputStream(osmFile), true));
+        if (osmFile.endsWith(".bz2")) {
+            if (osmConfig.parallelDecompression()) {
+                return pass.counting(new ParallelBZip2InputStream(osmFile, input, config.maxNumberOfProcessors()), false);
+            }
+            return pass.counting(new BZip2CompressorInputStream(input, true), false);
+        }else if (osmFile.endsWith(".gz")) {
+            return pass.counting(new GzipCompressorInputStream(input), false);
+        } else {
+            return pass.counting(input, false);
+        }
+    }
+
+    private OSMParser configure(OSMParser parser) {
+        int size = osmConfig.tagDictionarySize();
+        if (size > 0) {
+            parser.withDictionary(new TagDictionary(size, tagStatistics));
+        }
+        return parser.withMetadata(osmConfig.metadata(), metadataStatistics);
+    }
+
+    /**
+     * Print how well the tag dictionaries worked, how much metadata was skipped and how many tag sets were shared,
+     * during the pass over the input that just ended, and end the measurements of that pass.
+     */
+    private void reportParsing() {
+        metrics.pass().end();
+        if (tagStatistics.lookups() > 0) {
+            System.out.println(tagStatistics);
+            tagStatistics.reset();
+        }
+        if (metadataStatistics.attributes() > 0) {
+            System.out.println(metadataStatistics);
+            metadataStatistics.reset();
+        }
+        if (tagSets != null && tagSets.entities() > 0) {
+            System.out.println(tagSets);
+            tagSets.resetStatistics();
+        }
+    }
+
+    /**
+     * Open a parser for part of an uncompressed file, as split by {@link OSMFileSplitter}. Since the parts do not
+     * form complete XML documents, they can only be read by the {@link OSMByteParser}.
+     */
+    private OSMParser openParser(String osmFile, long start, long end) {
+        try {
+            ImportMetrics.Pass pass = metrics.pass();
+            InputStream input = pass.counting(pass.counting(OSMFileSplitter.open(osmFile, start, end), true), false);
+            return configure(new OSMByteParser(osmFile, input, range).partial(start > 0));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map " + osmFile + " from " + start + " to " + end + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parse into the chunk until it reaches the batch size, but never stopping within a taggable entity.
+     *
+     * @return false if the parser reached the end of its input
+     */
+    private boolean fill(OSMParser parser, OSMInputChunk events) throws IOException {
+        long started = System.nanoTime();
+        ParseChunkEvent event = new ParseChunkEvent();
+        event.begin();
+        long nodes = parser.parsed(OSMEntity.Type.NODE);
+        long ways = parser.parsed(OSMEntity.Type.WAY);
+        long relations = parser.parsed(OSMEntity.Type.RELATION);
+        boolean more = true;
+        while (events.size() < config.batchSize() || events.insideTaggableEvent()) {
+            if (!parser.parseNext(events)) {
+                more = false;
+                break;
+            }
+        }
+        if (events.size() > config.batchSize() * 10) {
+            System.out.println("Created unexpectedly large chunk: " + events.size());
+        }
+        metrics.pass().parsed(System.nanoTime() - started);
+        event.end();
+        if (events.size() > 0 && event.shouldCommit()) {
+            event.file = parser.osmFile;
+            event.size = events.size();
+            event.nodes = parser.parsed(OSMEntity.Type.NODE) - nodes;
+            event.ways = parser.parsed(OSMEntity.Type.WAY) - ways;
+            event.relations = parser.parsed(OSMEntity.Type.RELATION) - relations;
+            event.commit();
+        }
+        return more;
+    }
+
+    private boolean counted(InputChunk chunk, boolean more) {
+        if (more) {
+            metrics.pass().chunk(((OSMInputChunk) chunk).size());
+        }
+        return more;
+    }
+
+    private abstract class OSMInputIterator implements InputIterator {
+        private final OSMParser parser;
+
+        private OSMInputIterator(String osmFile) {
+            this.parser = openParser(osmFile);
+        }
+
+        @Override
+        public synchronized boolean next(InputChunk chunk) throws IOException {
+            OSMInputChunk events = (OSMInputChunk) chunk;
+            events.reset();
+            fill(parser, events);
+            return events.size() > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    private abstract class MultiFileInputIterator implements InputIterator {
+        private String[] osmFiles;
+        private int currentFileIndex;
+        private OSMInputIterator current;
+
+        private MultiFileInputIterator(String[] osmFiles) {
+            this.osmFiles = osmFiles;
+            this.currentFileIndex = 0;
+        }
+
+        @Override
+        public boolean next(InputChunk chunk) throws IOException {
+            long waiting = System.nanoTime();
+            synchronized (this) {
+                metrics.pass().blocked(System.nanoTime() - waiting);
+                return counted(chunk, read(chunk));
+            }
+        }
+
+        private boolean read(InputChunk chunk) throws IOException {
+            while (true) {
+                if (current == null) {
+                    if (!hasNextFile()) {
+                        return false;
+                    }
+                    current = new OSMInputIterator(nextFile()) {
+                        @Override
+                        public InputChunk newChunk() {
+                            throw new IllegalStateException("Inner OSMInputIterator should never be called directly");
+                        }
+                    };
+                }
+
+                if (current.next(chunk)) {
+                    return true;
+                }
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (current != null) {
+                    current.close();
+                }
+                current = null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            reportParsing();
+        }
+
+        private boolean hasNextFile() {
+            return this.currentFileIndex < osmFiles.length;
+        }
+
+        private String nextFile() {
+            String osmFile = osmFiles[currentFileIndex];
+            currentFileIndex++;
+            return osmFile;
+        }
+    }
+
+    private static final List<OSMEntity> END_OF_FILE = new ArrayList<>(0);
+    private static final int QUEUED_CHUNKS_PER_FILE = 4;
+
+    /**
+     * Reads each uncompressed file as several ranges split at entity boundaries, and gives every importer thread asking
+     * for the next chunk its own parser, so that parsing scales with the number of threads instead of being limited
+     * by the single synchronized parser of the {@link MultiFileInputIterator}. Compressed files cannot be split, but
+     * are still parsed concurrently with the other files.
+     */
+    private abstract class ParallelInputIterator implements InputIterator {
+        private final ArrayDeque<Supplier<OSMParser>> unopened = new ArrayDeque<>();
+        private final ArrayDeque<OSMParser> idle = new ArrayDeque<>();
+        private final Set<OSMParser> open = new HashSet<>();
+
+        private ParallelInputIterator(String[] osmFiles) {
+            for (String osmFile : osmFiles) {
+                if (osmFile.endsWith(".bz2") || osmFile.endsWith(".gz")) {
+                    unopened.add(() -> openParser(osmFile));
+                } else {
+                    long[] offsets;
+                    try {
+                        offsets = OSMFileSplitter.split(osmFile, config.maxNumberOfProcessors());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to split " + osmFile + ": " + e.getMessage(), e);
+                    }
+                    for (int i = 0; i < offsets.length - 1; i++) {
+                        long start = offsets[i];
+                        long end = offsets[i + 1];
+                        unopened.add(() -> openParser(osmFile, start, end));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean next(InputChunk chunk) throws IOException {
+            OSMInputChunk events = (OSMInputChunk) chunk;
+            events.reset();
+            while (events.size() == 0) {
+                long waiting = System.nanoTime();
+                OSMParser parser = take();
+                metrics.pass().blocked(System.nanoTime() - waiting);
+                if (parser == null) {
+                    return false;
+                }
+                boolean more = false;
+                try {
+                    more = fill(parser, events);
+                } finally {
+                    release(parser, more);
+                }
+            }
+            return counted(chunk, true);
+        }
+
+        /**
+         * A parser not used by any other thread, preferring ranges already started to opening new ones.
+         *
+         * @return null once all ranges have been opened and all remaining parsers are in use by other threads
+         */
+        private synchronized OSMParser take() {
+            OSMParser parser = idle.poll();
+            if (parser == null && !unopened.isEmpty()) {
+                parser = unopened.poll().get();
+                open.add(parser);
+            }
+            return parser;
+        }
+
+        private synchronized void release(OSMParser parser, boolean more) throws IOException {
+            if (more) {
+                idle.add(parser);
+            } else {
+                open.remove(parser);
+                parser.close();
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            for (OSMParser parser : open) {
+                parser.close();
+            }
+            open.clear();
+            idle.clear();
+            unopened.clear();
+            reportParsing();
+        }
+    }
+
+    /**
+     * Reads all files concurrently, with one parsing thread per file, and merges the entities by type and id, which is
+     * the order in which they are stored in OSM files. Entities that occur in more than one file, like the nodes and
+     * ways on the borders of neighbouring extracts, are passed on only once, keeping the highest version.
+     */
+    private abstract class MergingInputIterator implements InputIterator {
+        private final EntitySource[] sources;
+        private final PriorityQueue<EntitySource> heads;
+        private boolean started = false;
+        private long duplicates = 0;
+
+        private MergingInputIterator(String[] osmFiles) {
+            this.sources = new EntitySource[osmFiles.length];
+            this.heads = new PriorityQueue<>(Math.max(1, osmFiles.length), (a, b) -> {
+                int order = a.current.compareTo(b.current);
+                return order == 0 ? Integer.compare(a.index, b.index) : order;
+            });
+            for (int i = 0; i < osmFiles.length; i++) {
+                sources[i] = new EntitySource(osmFiles[i], i);
+            }
+        }
+
+        @Override
+        public boolean next(InputChunk chunk) throws IOException {
+            long waiting = System.nanoTime();
+            synchronized (this) {
+                metrics.pass().blocked(System.nanoTime() - waiting);
+                return counted(chunk, read(chunk));
+            }
+        }
+
+        private boolean read(InputChunk chunk) throws IOException {
+            OSMInputChunk events = (OSMInputChunk) chunk;
+            events.reset();
+            if (!started) {
+                started = true;
+                for (EntitySource source : sources) {
+                    // The dataset and bounds elements come before all entities, so they are known after the first read
+                    if (source.advance()) {
+                        heads.add(source);
+                    }
+                    if (source.dataset != null) {
+                        events.addDatasetNode(source.osmFile, source.dataset);
+                    }
+                    if (source.bounds != null) {
+                        events.addDatasetBoundsNode(source.osmFile, source.bounds);
+                    }
+                }
+            }
+            while (events.size() < config.batchSize() && !heads.isEmpty()) {
+                EntitySource source = heads.poll();
+                OSMEntity entity = source.current;
+                if (source.advance()) {
+                    heads.add(source);
+                }
+                while (!heads.isEmpty() && heads.peek().current.compareTo(entity) == 0) {
+                    EntitySource duplicate = heads.poll();
+                    if (duplicate.current.version() > entity.version()) {
+                        entity = duplicate.current;
+                    }
+                    duplicates++;
+                    if (duplicate.advance()) {
+                        heads.add(duplicate);
+                    }
+                }
+                replay(entity, events);
+            }
+            return events.size() > 0;
+        }
+
+        @Override
+        public void close() {
+            for (EntitySource source : sources) {
+                source.close();
+            }
+            if (started) {
+                System.out.println("Merged " + sources.length + " files, skipping " + duplicates + " duplicate entities");
+            }
+            reportParsing();
+        }
+    }
+
+    /**
+     * One input file, parsed by its own thread into a bounded queue of entity chunks.
+     */
+    private class EntitySource {
+        private final String osmFile;
+        private final int index;
+        private final BlockingQueue<List<OSMEntity>> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS_PER_FILE);
+        private final Thread parser;
+        private volatile Map<String, Object> dataset = null;
+        private volatile Map<String, Object> bounds = null;
+        private volatile Exception failure = null;
+        private Iterator<OSMEntity> chunk = Collections.emptyIterator();
+        private OSMEntity current = null;
+        private boolean finished = false;
+        private boolean unsorted = false;
+
+        private EntitySource(String osmFile, int index) {
+            this.osmFile = osmFile;
+            this.index = index;
+            this.parser = new Thread(this::parse, "OSM parser " + index + ": " + new File(osmFile).getName());
+            this.parser.setDaemon(true);
+            this.parser.start();
+        }
+
+        private void parse() {
+            EntityCollectingChunk entities = new EntityCollectingChunk(this);
+            OSMInputIterator iterator = null;
+            try {
+                iterator = new OSMInputIterator(osmFile) {
+                    @Override
+                    public InputChunk newChunk() {
+                        throw new IllegalStateException("Inner OSMInputIterator should never be called directly");
+                    }
+                };
+                while (iterator.next(entities)) {
+                    queue.put(entities.entities);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                try {
+                    if (iterator != null) {
+                        iterator.close();
+                    }
+                } catch (IOException e) {
+                    error("Failed to close " + osmFile, e);
+                }
+            }
+            try {
+                queue.put(END_OF_FILE);
+            } catch (InterruptedException e) {
+                // Closed while waiting for the merge to catch up
+            }
+        }
+
+        private boolean advance() throws IOException {
+            while (!chunk.hasNext()) {
+                if (finished) {
+                    return false;
+                }
+                List<OSMEntity> next;
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading " + osmFile);
+                }
+                if (next == END_OF_FILE) {
+                    finished = true;
+                    if (failure != null) {
+                        throw new IOException("Failed to read " + osmFile + ": " + failure.getMessage(), failure);
+                    }
+                    return false;
+                }
+                chunk = next.iterator();
+            }
+            OSMEntity previous = current;
+            current = chunk.next();
+            if (previous != null && !unsorted && current.compareTo(previous) < 0) {
+                unsorted = true;
+                error("File is not sorted by type and id, so duplicates might not be merged: " + osmFile + " has " + current + " after " + previous);
+            }
+            return true;
+        }
+
+        private void close() {
+            parser.interrupt();
+        }
+    }
+
+    /**
+     * Collects the parsed events for complete entities, instead of creating the node and relationship events. The
+     * way nodes, members and tags are copied, since the parser reuses them for the next entity.
+     */
+    private class EntityCollectingChunk implements OSMInputChunk {
+        private final EntitySource source;
+        private List<OSMEntity> entities = new ArrayList<>();
+        private OSMEntity current = null;
+
+        private EntityCollectingChunk(EntitySource source) {
+            this.source = source;
+        }
+
+        @Override
+        public void addDatasetNode(String name, Map<String, Object> properties) {
+            source.dataset = properties;
+        }
+
+        @Override
+        public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+            source.bounds = properties;
+        }
+
+        @Override
+        public void addOSMNode(long id, Map<String, Object> properties) {
+            current = new OSMEntity(OSMEntity.Type.NODE, id, properties);
+        }
+
+        @Override
+        public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+            current = new OSMEntity(OSMEntity.Type.WAY, id, properties, new LinkedHashMap<>(wayTags), new ArrayList<>(wayNodes), new ArrayList<>());
+        }
+
+        @Override
+        public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            current = new OSMEntity(OSMEntity.Type.RELATION, id, properties, new LinkedHashMap<>(relationTags), new ArrayList<>(), new ArrayList<>(relationMembers));
+        }
+
+        @Override
+        public void addOSMTags(Map<String, Object> properties) {
+            if (current != null) {
+                current.tags.putAll(properties);
+            }
+        }
+
+        @Override
+        public boolean insideTaggableEvent() {
+            return current != null;
+        }
+
+        @Override
+        public void endTaggableEvent() {
+            if (current != null) {
+                entities.add(current);
+                current = null;
+            }
+        }
+
+        @Override
+        public long size() {
+            return entities.size();
+        }
+
+        @Override
+        public void reset() {
+            // The previous list has been handed over to the merging thread
+            entities = new ArrayList<>(config.batchSize());
+        }
+
+        @Override
+        public boolean next(InputEntityVisitor visitor) {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private boolean spooling() {
+        return osmConfig.sortInput() || osmConfig.resume();
+    }
+
+    /**
+     * The checkpoint recording the progress of the import into the database directory, when using
+     * {@link OSMInputConfiguration#resume()}, or null otherwise. Must be opened before the importer reads any input.
+     */
+    public synchronized ImportCheckpoint openCheckpoint(File databaseDirectory) {
+        if (checkpoint == null && osmConfig.resume()) {
+            try {
+                checkpoint = ImportCheckpoint.open(osmConfig.spoolDirectory(), databaseDirectory, osmFiles, osmConfig, range);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read import checkpoint: " + e.getMessage(), e);
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Parse all input files into the spool, unless done by an earlier pass, using as many threads as the importer
+     * with {@link OSMInputConfiguration#parallelParsing()}. When resuming an import that failed after spooling the
+     * same files, its spool is read instead.
+     */
+    private synchronized OSMEntitySpool spool() throws IOException {
+        if (spool == null && checkpoint != null && checkpoint.resumable()) {
+            try {
+                spool = checkpoint.restoreSpool();
+                System.out.println(spool + " from " + checkpoint.file() + ", skipping parsing of " + osmFiles.length + " files");
+            } catch (IOException e) {
+                error("Failed to restore the spool, parsing the input again", e);
+            }
+        }
+        if (spool == null) {
+            metrics.begin("spool", inputBytes());
+            OSMEntitySpool spooled = new OSMEntitySpool(osmConfig.spoolDirectory(), osmConfig.spoolRunSize(), checkpoint == null);
+            try {
+                if (osmConfig.parallelParsing()) {
+                    spoolParallel(spooled);
+                } else {
+                    InputIterator input = new MultiFileInputIterator(osmFiles) {
+                        @Override
+                        public InputChunk newChunk() {
+                            throw new IllegalStateException("Spooling MultiFileInputIterator should never be called directly");
+                        }
+                    };
+                    try {
+                        OSMInputChunk chunk = spooled.newChunk();
+                        while (input.next(chunk)) {
+                            chunk.reset();
+                        }
+                    } finally {
+                        input.close();
+                    }
+                }
+                spooled.finish();
+                if (checkpoint != null) {
+                    checkpoint.spooled(spooled);
+                }
+            } catch (IOException | RuntimeException e) {
+                spooled.close();
+                throw e;
+            }
+            System.out.println(spooled);
+            spool = spooled;
+        }
+        return spool;
+    }
+
+    private void spoolParallel(OSMEntitySpool spooled) throws IOException {
+        InputIterator input = new ParallelInputIterator(osmFiles) {
+            @Override
+            public InputChunk newChunk() {
+                throw new IllegalStateException("Spooling ParallelInputIterator should never be called directly");
+            }
+        };
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[config.maxNumberOfProcessors()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                OSMInputChunk chunk = spooled.newChunk();
+                try {
+                    // Each thread stops once all remaining ranges are being parsed by other threads
+                    while (failure.get() == null && input.next(chunk)) {
+                        chunk.reset();
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "OSM spooling parser " + i);
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while spooling the input", e);
+        } finally {
+            input.close();
+        }
+        Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e != null) {
+            throw new RuntimeException("Failed to spool the input: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the entities from the spool instead of the input files, starting with the datasets and bounds of all files.
+     */
+    private abstract class SpooledInputIterator implements InputIterator {
+        private final OSMEntitySpool.Reader entities;
+        private final Map<String, Map<String, Object>> datasets;
+        private final Map<String, Map<String, Object>> bounds;
+        private boolean started = false;
+
+        private SpooledInputIterator() {
+            try {
+                OSMEntitySpool spooled = spool();
+                ImportMetrics.Pass pass = metrics.pass();
+                this.entities = spooled.read(input -> pass.counting(input, true));
+                this.datasets = spooled.datasets();
+                this.bounds = spooled.bounds();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to spool the input: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean next(InputChunk chunk) throws IOException {
+            long waiting = System.nanoTime();
+            synchronized (this) {
+                metrics.pass().blocked(System.nanoTime() - waiting);
+                return counted(chunk, read(chunk));
+            }
+        }
+
+        private boolean read(InputChunk chunk) throws IOException {
+            OSMInputChunk events = (OSMInputChunk) chunk;
+            events.reset();
+            if (!started) {
+                started = true;
+                datasets.forEach(events::addDatasetNode);
+                bounds.forEach(events::addDatasetBoundsNode);
+            }
+            while (events.size() < config.batchSize() && entities.hasNext()) {
+                replay(entities.next(), events);
+            }
+            return events.size() > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            entities.close();
+            if (entities.duplicates() > 0) {
+                System.out.println("Read spooled input, skipping " + entities.duplicates() + " duplicate entities");
+            }
+            reportParsing();
+        }
+    }
+
+    private class OSMNodesInputIterator extends MultiFileInputIterator {
+        private OSMNodesInputIterator(String[] osmFiles) {
+            super(osmFiles);
+        }
+
+        @Override
+        public InputChunk newChunk() {
+            return newNodesChunk();
+        }
+    }
+
+    private class OSMRelationshipsInputIterator extends MultiFileInputIterator {
+        private OSMRelationshipsInputIterator(String[] osmFiles) {
+            super(osmFiles);
+        }
+
+        @Override
+        public InputChunk newChunk() {
+            return newRelationshipsChunk();
+        }
+    }
+
+    private InputChunk newNodesChunk() {
+        return filtered(nodesChunk());
+    }
+
+    private OSMInputChunk nodesChunk() {
+        return (routing != null) ? new RoutingNodesInputChunk(routing) : new OSMNodesInputChunk();
+    }
+
+    private InputChunk newRelationshipsChunk() {
+        return filtered((routing != null) ? new RoutingRelationshipsInputChunk(routing) : new OSMRelationshipsInputChunk());
+    }
+
+    @Override
+    public InputIterable nodes(Collector badCollector) {
+        if (osmConfig.tagFilter() != null) {
+            try {
+                scanFilteredEntities();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed tag filter pre-pass: " + e.getMessage(), e);
+            }
+        }
+        if (osmConfig.routingOnly()) {
+            try {
+                scanRoutingNodes();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed routing pre-pass: " + e.getMessage(), e);
+            }
+        }
+        InputIterable nodes;
+        if (spooling()) {
+            nodes = () -> new SpooledInputIterator() {
+                @Override
+                public InputChunk newChunk() {
+                    return newNodesChunk();
+                }
+            };
+        } else if (osmConfig.mergeFiles()) {
+            nodes = () -> new MergingInputIterator(osmFiles) {
+                @Override
+                public InputChunk newChunk() {
+                    return newNodesChunk();
+                }
+            };
+        } else if (osmConfig.parallelParsing()) {
+            nodes = () -> new ParallelInputIterator(osmFiles) {
+                @Override
+                public InputChunk newChunk() {
+                    return newNodesChunk();
+                }
+            };
+        } else {
+            nodes = () -> new OSMNodesInputIterator(osmFiles);
+        }
+        InputIterable metered = metered("nodes", nodes);
+        if (osmConfig.spatialOrder() != OSMInputConfiguration.SpatialOrder.NONE) {
+            return () -> new SortingInputIterator(metered.iterator());
+        }
+        return metered;
+    }
+
+    @Override
+    public InputIterable relationships(Collector badCollector) {
+        InputIterable relationships;
+        if (spooling()) {
+            relationships = () -> new SpooledInputIterator() {
+                @Override
+                public InputChunk newChunk() {
+                    return newRelationshipsChunk();
+                }
+            };
+        } else if (osmConfig.mergeFiles()) {
+            relationships = () -> new MergingInputIterator(osmFiles) {
+                @Override
+                public InputChunk newChunk() {
+                    return newRelationshipsChunk();
+                }
+            };
+        } else if (osmConfig.parallelParsing()) {
+            relationships = () -> new ParallelInputIterator(osmFiles) {
+                @Override
+                public InputChunk newChunk() {
+                    return newRelationshipsChunk();
+                }
+            };
+        } else {
+            relationships = () -> new OSMRelationshipsInputIterator(osmFiles);
+        }
+        return metered("relationships", relationships);
+    }
+
+    /**
+     * Record the measurements of each pass over the input separately, from the moment the importer starts reading.
+     */
+    private InputIterable metered(String name, InputIterable input) {
+        return () -> {
+            try {
+                beginPass(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to spool the input: " + e.getMessage(), e);
+            }
+            return input.iterator();
+        };
+    }
+
+    private void beginPass(String name) throws IOException {
+        if (spooling()) {
+            // The spool is written in a pass of its own, before the first pass reading it
+            metrics.begin(name, spool().bytes());
+        } else {
+            metrics.begin(name, inputBytes());
+        }
+    }
+
+    /**
+     * The size of the input files on disk, which is what a pass parsing them reads, compressed or not.
+     */
+    private long inputBytes() {
+        long bytes = 0;
+        for (String osmFile : osmFiles) {
+            bytes += new File(osmFile).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Measurements of the passes over the input, like the bytes read and events created.
+     */
+    public ImportMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public IdType idType() {
+        return IdType.STRING;
+    }
+
+    @Override
+    public ReadableGroups groups() {
+        return groups;
+    }
+
+    private static final int BYTES_PER_NODE = 1000;
+    private static final int BYTES_PER_REL = 10000;
+
+    private long calcFileSize() {
+        long totalSize = 0;
+        for (String osmFile : osmFiles) {
+            long fileSize = new File(osmFile).length();
+            if (osmFile.endsWith(".bz2") || osmFile.endsWith(".gz")) fileSize *= 10;
+            totalSize += fileSize;
+        }
+        return totalSize;
+    }
+
+    @Override
+    public Estimates calculateEstimates(PropertySizeCalculator propertySizeCalculator) throws IOException {
+        long fileSize = calcFileSize();
+        return Input.knownEstimates(fileSize / BYTES_PER_NODE, fileSize / BYTES_PER_REL, 8, 1, 8, 8, 1);
+    }
+
+    /**
+     * Delete the temporary files of the {@link OSMInputConfiguration#sortInput()} spool, once the import has finished.
+     * When using {@link OSMInputConfiguration#resume()}, the spool is only deleted with the checkpoint once the import
+     * completed, and is otherwise kept for the next attempt.
+     */
+    public synchronized void close() {
+        if (spool != null && checkpoint != null && !checkpoint.isCompleted()) {
+            System.out.println("Kept the input spool for --resume, with checkpoint " + checkpoint.file());
+        } else if (spool != null) {
+            try {
+                spool.close();
+                if (checkpoint != null) {
+                    checkpoint.delete();
+                }
+            } catch (IOException e) {
+                error("Failed to delete the input spool", e);
             }
         }
-        return properties;
+        spool = null;
     }
 
     public interface RangeFilter {
@@ -0,0 +1,266 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.gis.osm.model.RoutingProfile;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Options controlling how OSM files are read and which graph model is created from them. As with the batch importer
+ * {@link org.neo4j.internal.batchimport.Configuration}, override only the methods that should differ from the defaults.
+ */
+public interface OSMInputConfiguration {
+    OSMInputConfiguration DEFAULT = new OSMInputConfiguration() {
+    };
+
+    /**
+     * Which of the editing metadata attributes of nodes, ways and relations are imported as properties.
+     */
+    enum Metadata {
+        /**
+         * No metadata, only the id, location and tags.
+         */
+        NONE(),
+        /**
+         * Only the version and timestamp, which are enough to tell whether an entity is up to date.
+         */
+        MINIMAL("version", "timestamp"),
+        /**
+         * All attributes, including the user, uid, changeset and visibility of the last edit.
+         */
+        FULL("version", "timestamp", "user", "uid", "changeset", "visible");
+
+        private final Set<String> attributes;
+
+        Metadata(String... attributes) {
+            this.attributes = new HashSet<>(Arrays.asList(attributes));
+        }
+
+        /**
+         * Whether the attribute of a node, way or relation is imported, which is always true for attributes that
+         * are not metadata, like id, lat and lon.
+         */
+        public boolean includes(String attribute) {
+            return this == FULL || attributes.contains(attribute) || !FULL.attributes.contains(attribute);
+        }
+    }
+
+    /**
+     * The order in which the OSMNode nodes are passed to the importer, which assigns the store ids, and so decides
+     * which nodes share pages of the node store.
+     */
+    enum SpatialOrder {
+        /**
+         * The order of the input files, which is by id, and so effectively random in space.
+         */
+        NONE,
+        /**
+         * Along a Hilbert curve, which keeps nodes that are close on the curve close in space too.
+         */
+        HILBERT,
+        /**
+         * Along a Morton, or Z-order, curve, which is cheaper to calculate, but has larger jumps than the Hilbert curve.
+         */
+        MORTON;
+
+        private static final int BITS = 31;
+        private static final long CELLS = 1L << BITS;
+
+        /**
+         * The position along the curve of a grid of 2^31 by 2^31 cells covering the world, which is a few
+         * centimeters per cell.
+         */
+        public long key(double lon, double lat) {
+            long x = Math.min(CELLS - 1, Math.max(0, (long) ((lon + 180.0) / 360.0 * CELLS)));
+            long y = Math.min(CELLS - 1, Math.max(0, (long) ((lat + 90.0) / 180.0 * CELLS)));
+            switch (this) {
+                case HILBERT:
+                    return hilbert(x, y);
+                case MORTON:
+                    return morton(x, y);
+                default:
+                    return 0;
+            }
+        }
+
+        private static long hilbert(long x, long y) {
+            long d = 0;
+            for (long s = CELLS / 2; s > 0; s /= 2) {
+                long rx = (x & s) > 0 ? 1 : 0;
+                long ry = (y & s) > 0 ? 1 : 0;
+                d += s * s * ((3 * rx) ^ ry);
+                // Rotate the quadrant, so that the curve is continuous
+                if (ry == 0) {
+                    if (rx == 1) {
+                        x = CELLS - 1 - x;
+                        y = CELLS - 1 - y;
+                    }
+                    long t = x;
+                    x = y;
+                    y = t;
+                }
+            }
+            return d;
+        }
+
+        private static long morton(long x, long y) {
+            return spread(x) | spread(y) << 1;
+        }
+
+        private static long spread(long v) {
+            v = (v | v << 16) & 0x0000ffff0000ffffL;
+            v = (v | v << 8) & 0x00ff00ff00ff00ffL;
+            v = (v | v << 4) & 0x0f0f0f0f0f0f0f0fL;
+            v = (v | v << 2) & 0x3333333333333333L;
+            v = (v | v << 1) & 0x5555555555555555L;
+            return v;
+        }
+    }
+
+    /**
+     * Import only the parts of the model needed for routing. Instead of an OSMWayNode proxy, NODE and NEXT
+     * relationship for every node of every way, only intersection and end nodes of highways are imported, connected
+     * by ROUTE relationships with the distance and encoded geometry of the interior nodes. This needs an additional
+     * pre-pass over the input to find the intersections, and all highway node locations are kept in memory during
+     * the import.
+     */
+    default boolean routingOnly() {
+        return false;
+    }
+
+    /**
+     * Read all input files concurrently, merging them by entity type and id, so that entities occurring in more than
+     * one file, as happens with overlapping extracts of neighbouring regions, are imported only once. This expects
+     * each file to be sorted by type and then id, as OSM files normally are, while {@link #sortInput()} does not.
+     */
+    default boolean mergeFiles() {
+        return false;
+    }
+
+    /**
+     * Parse the input files only once, into a spool of all entities in the {@link #spoolDirectory()}, sorted by type
+     * and then id, which all passes over the input then read instead of parsing again. This imports files that are not
+     * sorted, and entities occurring more than once, in the same or in several files, are imported only once, keeping
+     * the highest version. Files that are already sorted are spooled without merging, and the additional passes of
+     * {@link #routingOnly()} and the {@link #tagFilter()} no longer parse the input. This replaces {@link #mergeFiles()},
+     * and uses {@link #parallelParsing()} to write the spool.
+     */
+    default boolean sortInput() {
+        return false;
+    }
+
+    /**
+     * Keep the spool of the {@link #sortInput()}, which this implies, after a failed import, together with a checkpoint
+     * recording the stages the importer completed. Importing the same files again with this option then reads that
+     * spool instead of parsing the input, and deletes it once the import completes. The store itself is always
+     * imported again, since the batch importer cannot continue writing a store it did not finish.
+     */
+    default boolean resume() {
+        return false;
+    }
+
+    /**
+     * Read the XML with a tokenizer specific to OSM files, which works directly on the UTF-8 bytes and parses the
+     * numerical attributes without creating intermediate strings, instead of the general purpose StAX parser.
+     */
+    default boolean byteParser() {
+        return false;
+    }
+
+    /**
+     * Split each uncompressed input file into ranges at node, way and relation boundaries, which are memory mapped and
+     * parsed concurrently by the importer threads using the {@link #byteParser()}. Compressed files are parsed whole.
+     * This has no effect when {@link #mergeFiles()} is used, since merging needs each file to be read in order.
+     */
+    default boolean parallelParsing() {
+        return false;
+    }
+
+    /**
+     * Decompress bzip2 files using as many threads as the importer, by finding the compressed blocks and decompressing
+     * them concurrently, instead of on the single thread reading the file.
+     */
+    default boolean parallelDecompression() {
+        return false;
+    }
+
+    /**
+     * The editing metadata to import for each node, way and relation. Most applications never read the user, uid and
+     * changeset, which take a large part of the property store of a full import. Without the version, entities
+     * occurring in several files are merged by keeping the first one, since it is not known which is newer.
+     */
+    default Metadata metadata() {
+        return Metadata.FULL;
+    }
+
+    /**
+     * Store the tags of each node, way and relation as properties of the entity itself, instead of on a separate
+     * OSMTags node connected by a TAGS relationship. This saves a node and relationship for every tagged entity, and
+     * a relationship hop on every tag lookup. Tags with the same key as an attribute property, like 'version', are
+     * not stored. {@link org.neo4j.gis.osm.model.OSMModel#tags(org.neo4j.graphdb.Node)} reads either layout.
+     */
+    default boolean inlineTags() {
+        return false;
+    }
+
+    /**
+     * The maximum number of distinct tag sets for which a single OSMTags node is shared by all entities with exactly
+     * those tags, like 'building=yes', instead of creating an OSMTags node for each entity. This takes 16 bytes of
+     * off-heap memory per tag set, and entities with tag sets beyond the maximum get their own OSMTags node. Zero
+     * disables sharing, which is also ignored when using {@link #inlineTags()}.
+     */
+    default int sharedTagSets() {
+        return 0;
+    }
+
+    /**
+     * The maximum number of tag keys and values each parser keeps in a dictionary, so that repeated strings like
+     * 'highway' and 'residential' are shared instead of created again for every tag. Zero disables the dictionary.
+     */
+    default int tagDictionarySize() {
+        return TagDictionary.DEFAULT_SIZE;
+    }
+
+    /**
+     * Import only the entities matching this filter, and the nodes and ways they reference, instead of the whole file.
+     * This needs an additional pre-pass over the input to find the referenced entities. Null imports everything.
+     */
+    default TagFilter tagFilter() {
+        return null;
+    }
+
+    /**
+     * Pass the OSMNode nodes to the importer in this order instead of the input order, so that nodes close in space
+     * are stored close together, and queries on an area, like routing, read fewer pages of the node store. The nodes
+     * are sorted with an external merge sort, spilling to the {@link #spoolDirectory()}, and are only imported once
+     * all input has been read.
+     */
+    default SpatialOrder spatialOrder() {
+        return SpatialOrder.NONE;
+    }
+
+    /**
+     * The directory for the temporary files of sorts that do not fit in memory, and of the spool of the
+     * {@link #sortInput()}. Null uses the system default.
+     */
+    default File spoolDirectory() {
+        return null;
+    }
+
+    /**
+     * The maximum number of entities each sort keeps in memory, before writing them to a temporary file.
+     */
+    default int spoolRunSize() {
+        return 1_000_000;
+    }
+
+    /**
+     * Routing profiles to evaluate for each ROUTE relationship created when importing with {@link #routingOnly()}.
+     */
+    default List<RoutingProfile> routingProfiles() {
+        return Arrays.asList(RoutingProfile.CAR, RoutingProfile.BICYCLE, RoutingProfile.FOOT);
+    }
+}
@@ -0,0 +1,324 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.PointValue;
+import org.neo4j.values.storable.Values;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the elements of an OSM XML file and passes the dataset, bounds, nodes, ways, relations and their tags to an
+ * {@link OSMInput.OSMInputChunk}. Subclasses only need to tokenize the XML and provide the attributes of the current
+ * element, while the interpretation of the OSM elements is shared, so that all parsers produce identical events.
+ */
+abstract class OSMParser implements Closeable {
+    static final String OSM = "osm";
+    static final String BOUNDS = "bounds";
+    static final String NODE = "node";
+    static final String WAY = "way";
+    static final String RELATION = "relation";
+    static final String TAG = "tag";
+    static final String ND = "nd";
+    static final String MEMBER = "member";
+
+    protected final String osmFile;
+    private final OSMInput.RangeFilter range;
+    private final ArrayList<String> elements = new ArrayList<>();
+    private final ArrayList<Long> wayNodes = new ArrayList<>();
+    private final ArrayList<Map<String, Object>> relationMembers = new ArrayList<>();
+    private Map<String, Object> wayProperties = null;
+    private Map<String, Object> relationProperties = null;
+    private Map<String, Object> currentNodeTags = new LinkedHashMap<>();
+    private boolean partial = false;
+    private TagDictionary dictionary = null;
+    private OSMInputConfiguration.Metadata metadata = OSMInputConfiguration.Metadata.FULL;
+    private MetadataStatistics metadataStatistics = null;
+    private long entityAttributes = 0;
+    private long skippedAttributes = 0;
+    private final long[] parsed = new long[OSMEntity.Type.values().length];
+
+    OSMParser(String osmFile, OSMInput.RangeFilter range) {
+        this.osmFile = osmFile;
+        this.range = range;
+    }
+
+    /**
+     * Read the next start or end element, passing any completed OSM elements to the chunk.
+     *
+     * @return false at the end of the document
+     */
+    abstract boolean parseNext(OSMInput.OSMInputChunk events) throws IOException;
+
+    /**
+     * All attributes of the current element, converted to properties as they should be stored in the graph.
+     *
+     * @param name the element name if this is an OSM entity, whose id attribute becomes the '[name]_osm_id' property
+     */
+    abstract Map<String, Object> attributes(String name);
+
+    /**
+     * The value of the specified attribute of the current element, or null if it does not exist.
+     */
+    abstract String stringAttribute(String key);
+
+    /**
+     * The value of the specified attribute of a tag element, which is taken from the dictionary if there is one.
+     */
+    String tagAttribute(String key) {
+        String value = stringAttribute(key);
+        return dictionary == null ? value : dictionary.intern(value);
+    }
+
+    /**
+     * The value of the specified numerical attribute of the current element.
+     */
+    long longAttribute(String key) {
+        return Long.parseLong(stringAttribute(key));
+    }
+
+    /**
+     * Parse only part of a file, as split by {@link OSMFileSplitter}, so the root element need not be closed at the
+     * end of the input.
+     *
+     * @param insideRoot true if the input starts after the root element, which is then treated as already open
+     */
+    OSMParser partial(boolean insideRoot) {
+        partial = true;
+        if (insideRoot) {
+            elements.add(OSM);
+        }
+        return this;
+    }
+
+    /**
+     * Share repeated tag keys and values using the dictionary.
+     */
+    OSMParser withDictionary(TagDictionary dictionary) {
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    TagDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Skip the metadata attributes of nodes, ways and relations not included in the mode, counting them in the
+     * statistics when the parser is closed.
+     */
+    OSMParser withMetadata(OSMInputConfiguration.Metadata metadata, MetadataStatistics statistics) {
+        this.metadata = metadata;
+        this.metadataStatistics = statistics;
+        return this;
+    }
+
+    /**
+     * Whether the attribute should not be read at all, because it is metadata not included in the metadata mode.
+     *
+     * @param name the element name if this is an OSM entity, as for {@link #attributes(String)}
+     */
+    boolean skipAttribute(String name, String prop) {
+        if (name == null || metadata == OSMInputConfiguration.Metadata.FULL) {
+            return false;
+        }
+        entityAttributes++;
+        if (metadata.includes(prop)) {
+            return false;
+        }
+        skippedAttributes++;
+        return true;
+    }
+
+    /**
+     * Whether the input ended with unclosed elements, which for part of a file excludes the root element.
+     */
+    boolean incomplete() {
+        return elements.size() > (partial ? 1 : 0);
+    }
+
+    /**
+     * The number of nodes, ways or relations parsed so far.
+     */
+    long parsed(OSMEntity.Type type) {
+        return parsed[type.ordinal()];
+    }
+
+    /**
+     * The number of currently open elements.
+     */
+    int depth() {
+        return elements.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (dictionary != null) {
+            dictionary.report();
+        }
+        if (metadataStatistics != null) {
+            metadataStatistics.attributes.add(entityAttributes);
+            metadataStatistics.skipped.add(skippedAttributes);
+            entityAttributes = 0;
+            skippedAttributes = 0;
+        }
+        closeInput();
+    }
+
+    abstract void closeInput() throws IOException;
+
+    void startElement(String element, OSMInput.OSMInputChunk events) {
+        elements.add(element);
+        int depth = elements.size() - 1;
+        if (element.equals(TAG)) {
+            // add 'tag' to currentRead tag collection (to be saved at end of parent node)
+            currentNodeTags.put(tagAttribute("k"), tagAttribute("v"));
+        } else if (elements.get(0).equals(OSM)) {
+            if (depth == 0) {
+                events.addDatasetNode(osmFile, withLocation(attributes(null), null));
+            } else {
+                String tag = elements.get(1);
+                if (tag.equals(BOUNDS)) {
+                    events.addDatasetBoundsNode(osmFile, withLocation(attributes(null), null));
+                } else if (tag.equals(NODE)) {
+                    // Create OSMNode object with all attributes (but not tags)
+                    // <node id="269682538" lat="56.0420950"
+                    // lon="12.9693483" user="sanna" uid="31450"
+                    // visible="true" version="1" changeset="133823"
+                    // timestamp="2008-06-11T12:36:28Z"/>
+                    Map<String, Object> nodeProperties = withLocation(attributes(NODE), range);
+                    long osm_id = Long.parseLong(nodeProperties.get("node_osm_id").toString());
+                    events.addOSMNode(osm_id, nodeProperties);
+                } else if (tag.equals(WAY)) {
+                    if (depth == 1) {
+                        // <way id="27359054" user="spull" uid="61533"
+                        // visible="true" version="8" changeset="4707351"
+                        // timestamp="2010-05-15T15:39:57Z">
+                        wayProperties = withLocation(attributes(WAY), null);
+                        wayNodes.clear();
+                    } else if (depth == 2 && element.equals(ND)) {
+                        wayNodes.add(longAttribute("ref"));
+                    }
+                } else if (tag.equals(RELATION)) {
+                    if (depth == 1) {
+                        // <relation id="77965" user="Grillo" uid="13957"
+                        // visible="true" version="24" changeset="5465617"
+                        // timestamp="2010-08-11T19:25:46Z">
+                        relationProperties = withLocation(attributes(RELATION), null);
+                        relationMembers.clear();
+                    } else if (depth == 2 && element.equals(MEMBER)) {
+                        relationMembers.add(withLocation(attributes(null), null));
+                    }
+                }
+            }
+        }
+    }
+
+    void endElement(OSMInput.OSMInputChunk events) {
+        if (elements.size() == 2 && elements.get(0).equals(OSM)) {
+            String tag = elements.get(1);
+            if (tag.equals(NODE)) {
+                addOSMTags(events);
+                parsed[OSMEntity.Type.NODE.ordinal()]++;
+            } else if (tag.equals(WAY)) {
+                long osm_id = Long.parseLong(wayProperties.get("way_osm_id").toString());
+                events.addOSMWay(osm_id, wayProperties, wayNodes, currentNodeTags);
+                addOSMTags(events);
+                parsed[OSMEntity.Type.WAY.ordinal()]++;
+            } else if (tag.equals(RELATION)) {
+                long osm_id = Long.parseLong(relationProperties.get("relation_osm_id").toString());
+                events.addOSMRelation(osm_id, relationProperties, relationMembers, currentNodeTags);
+                addOSMTags(events);
+                parsed[OSMEntity.Type.RELATION.ordinal()]++;
+            }
+        }
+        elements.remove(elements.size() - 1);
+    }
+
+    private void addOSMTags(OSMInput.OSMInputChunk events) {
+        if (currentNodeTags.size() > 0) {
+            events.addOSMTags(currentNodeTags);
+            currentNodeTags = new LinkedHashMap<>();
+        }
+        events.endTaggableEvent();
+    }
+
+    /**
+     * Convert a single attribute to a property in the same way for all parsers.
+     * <p>
+     * <code>&lt;node id="269682538" lat="56.0420950" lon="12.9693483" user="sanna" uid="31450" visible="true"
+     * version="1" changeset="133823" timestamp="2008-06-11T12:36:28Z"/&gt;</code>
+     */
+    static void addProperty(Map<String, Object> properties, String name, String prop, String value) {
+        if (name != null && prop.equals("id")) {
+            properties.put(name + "_osm_id", Long.parseLong(value));
+        } else if (prop.equals("lat") || prop.equals("lon")) {
+            properties.put(prop, OSMValues.parseDecimal(value));
+        } else if (name != null && prop.equals("version")) {
+            properties.put(prop, Integer.parseInt(value));
+        } else if (prop.equals("visible")) {
+            if (!value.equals("true") && !value.equals("1")) {
+                properties.put(prop, false);
+            }
+        } else if (prop.equals("timestamp")) {
+            try {
+                properties.put(prop, OSMValues.parseTimestamp(value));
+            } catch (DateTimeParseException e) {
+                System.err.println("Error parsing timestamp: " + e.getMessage());
+            }
+        } else {
+            properties.put(prop, value);
+        }
+    }
+
+    /**
+     * Add the location point for elements with lat and lon.
+     *
+     * @return the properties, or null if the location is outside the range, in which case the element should be ignored
+     */
+    static Map<String, Object> withLocation(Map<String, Object> properties, OSMInput.RangeFilter range) {
+        if (properties.containsKey("lat") && properties.containsKey("lon")) {
+            PointValue point = Values.pointValue(CoordinateReferenceSystem.WGS84, (double) properties.get("lon"), (double) properties.get("lat"));
+            if (range == null || range.withinRange(point.coordinate())) {
+                properties.put("location", point);
+            } else {
+                //Nodes outside the filtered location should be completely ignored
+                return null;
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * The node, way and relation attributes read and skipped by all parsers during one pass over the input.
+     */
+    static class MetadataStatistics {
+        private final LongAdder attributes = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+
+        long attributes() {
+            return attributes.sum();
+        }
+
+        long skipped() {
+            return skipped.sum();
+        }
+
+        void reset() {
+            attributes.reset();
+            skipped.reset();
+        }
+
+        @Override
+        public String toString() {
+            long attributes = attributes();
+            return String.format("Skipped %d of %d node, way and relation attributes (%.1f%%) as metadata not imported",
+                    skipped(), attributes, attributes == 0 ? 0.0 : 100.0 * skipped() / attributes);
+        }
+    }
+}
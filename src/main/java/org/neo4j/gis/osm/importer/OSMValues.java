@@ -0,0 +1,173 @@
+package org.neo4j.gis.osm.importer;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parsers for the coordinates and timestamps of OSM entities, which occur on every node, way and relation and so take
+ * a significant part of the parsing time when done with the general purpose JDK methods. These handle only the
+ * formats written by OSM tools, decimal coordinates like "56.0420950" and UTC timestamps like "2008-06-11T12:36:28Z",
+ * falling back to the JDK for anything else, so the results are always the same as before.
+ */
+public class OSMValues {
+    private static final DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private static final int TIMESTAMP_LENGTH = "2008-06-11T12:36:28Z".length();
+    // Integers up to 2^53 are exact as doubles, as are powers of ten up to 10^22, so dividing one by the other gives
+    // the same correctly rounded result as Double.parseDouble
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Parse a decimal number, giving exactly the same result as {@link Double#parseDouble(String)}.
+     */
+    public static double parseDecimal(String value) {
+        int length = value.length();
+        boolean negative = length > 0 && value.charAt(0) == '-';
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (int i = negative ? 1 : 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9' && mantissa < MAX_EXACT_MANTISSA) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return Double.parseDouble(value);
+            }
+        }
+        if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA || decimals >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(value);
+        }
+        return decimal(negative, mantissa, decimals);
+    }
+
+    /**
+     * Parse a decimal number from ASCII bytes, giving exactly the same result as {@link Double#parseDouble(String)}.
+     *
+     * @return the number, or NaN if it is not a plain decimal number, in which case the caller should use
+     * {@link Double#parseDouble(String)} on the decoded string
+     */
+    public static double parseDecimal(byte[] bytes, int start, int end) {
+        boolean negative = start < end && bytes[start] == '-';
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9' && mantissa < MAX_EXACT_MANTISSA) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA || decimals >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        return decimal(negative, mantissa, decimals);
+    }
+
+    private static double decimal(boolean negative, long mantissa, int decimals) {
+        double result = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parse a timestamp in the format "yyyy-MM-ddTHH:mm:ssZ", giving the same result as parsing it with a
+     * {@link DateTimeFormatter} for that pattern.
+     *
+     * @throws java.time.format.DateTimeParseException if the timestamp is not valid
+     */
+    public static LocalDateTime parseTimestamp(String value) {
+        if (value.length() == TIMESTAMP_LENGTH && value.charAt(4) == '-' && value.charAt(7) == '-' && value.charAt(10) == 'T'
+                && value.charAt(13) == ':' && value.charAt(16) == ':' && value.charAt(19) == 'Z') {
+            int year = digits(value, 0, 4);
+            int month = digits(value, 5, 2);
+            int day = digits(value, 8, 2);
+            int hour = digits(value, 11, 2);
+            int minute = digits(value, 14, 2);
+            int second = digits(value, 17, 2);
+            if (year > 0 && (month | day | hour | minute | second) >= 0) {
+                LocalDateTime timestamp = timestamp(year, month, day, hour, minute, second);
+                if (timestamp != null) {
+                    return timestamp;
+                }
+            }
+        }
+        return LocalDateTime.parse(value, timestampFormat);
+    }
+
+    /**
+     * Parse a timestamp in the format "yyyy-MM-ddTHH:mm:ssZ" from ASCII bytes.
+     *
+     * @return the timestamp, or null if it is not in the expected format or not a valid time, in which case the caller
+     * should use {@link #parseTimestamp(String)} on the decoded string to get the same result or error as before
+     */
+    public static LocalDateTime parseTimestamp(byte[] bytes, int start, int end) {
+        if (end - start == TIMESTAMP_LENGTH && bytes[start + 4] == '-' && bytes[start + 7] == '-' && bytes[start + 10] == 'T'
+                && bytes[start + 13] == ':' && bytes[start + 16] == ':' && bytes[start + 19] == 'Z') {
+            int year = digits(bytes, start, 4);
+            int month = digits(bytes, start + 5, 2);
+            int day = digits(bytes, start + 8, 2);
+            int hour = digits(bytes, start + 11, 2);
+            int minute = digits(bytes, start + 14, 2);
+            int second = digits(bytes, start + 17, 2);
+            if (year > 0 && (month | day | hour | minute | second) >= 0) {
+                return timestamp(year, month, day, hour, minute, second);
+            }
+        }
+        return null;
+    }
+
+    // Values the formatter would adjust, like the 31st of April, are left to the formatter
+    private static LocalDateTime timestamp(int year, int month, int day, int hour, int minute, int second) {
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    // Returns a negative number if any character is not a digit
+    private static int digits(String value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int digits(byte[] bytes, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+}
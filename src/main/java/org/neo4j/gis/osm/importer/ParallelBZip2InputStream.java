@@ -0,0 +1,445 @@
+package org.neo4j.gis.osm.importer;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.neo4j.gis.osm.jfr.DecompressionBlockEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decompresses bzip2 files using several threads. A bzip2 stream consists of independently compressed blocks of up
+ * to 900kB, each starting with a 48 bit magic number which is not byte aligned. A scanner thread finds these blocks,
+ * each of which is rebuilt into a complete single block bzip2 stream and decompressed by a thread pool, while the
+ * reader takes the decompressed blocks in their original order from a bounded queue, limiting how far the
+ * decompression can get ahead of the reader. Files made of several concatenated streams, as written by parallel
+ * compressors like pbzip2, are read completely.
+ * <p>
+ * Since the block magic can also occur by chance within the compressed data, a block that cannot be decompressed is
+ * merged with the following one and decompressed again.
+ */
+class ParallelBZip2InputStream extends InputStream {
+    static final long BLOCK_MAGIC = 0x314159265359L;
+    static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+    private static final int MAX_MERGES = 8;
+    private static final Block END = new Block(null, null);
+
+    private final String name;
+    private final InputStream compressed;
+    private final ExecutorService decompressors;
+    private final BlockingQueue<Block> blocks;
+    private final Thread scanner;
+    private volatile IOException failure = null;
+    private byte[] current = new byte[0];
+    private int position = 0;
+    private boolean finished = false;
+
+    ParallelBZip2InputStream(String name, InputStream compressed, int threads) {
+        this.name = name;
+        this.compressed = compressed;
+        this.decompressors = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bzip2 decompressor: " + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.blocks = new ArrayBlockingQueue<>(threads * 2);
+        this.scanner = new Thread(this::scan, "bzip2 scanner: " + name);
+        this.scanner.setDaemon(true);
+        this.scanner.start();
+    }
+
+    private void scan() {
+        try {
+            BlockScanner blockScanner = new BlockScanner(compressed);
+            Segment segment;
+            while ((segment = blockScanner.next()) != null) {
+                Segment block = segment;
+                blocks.put(new Block(block, decompressors.submit(() -> decompress(block))));
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (IOException e) {
+            failure = e;
+        }
+        try {
+            blocks.put(END);
+        } catch (InterruptedException e) {
+            // Closed before reading everything
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.interrupt();
+        decompressors.shutdownNow();
+        compressed.close();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position == current.length) {
+            if (finished) {
+                return false;
+            }
+            Block block = take();
+            if (block == END) {
+                finished = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            current = decompressed(block);
+            position = 0;
+        }
+        return true;
+    }
+
+    private byte[] decompressed(Block block) throws IOException {
+        try {
+            return block.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing " + name);
+        } catch (ExecutionException e) {
+            // A block magic occurring by chance in the compressed data splits a block in two parts, neither of which
+            // can be decompressed on its own, so try again including the following part
+            Segment merged = block.segment;
+            for (int merges = 0; merges < MAX_MERGES; merges++) {
+                Block next = take();
+                if (next == END) {
+                    break;
+                }
+                next.result.cancel(true);
+                merged = merged.merge(next.segment);
+                try {
+                    return decompress(merged);
+                } catch (IOException | RuntimeException retry) {
+                    // Keep merging
+                }
+            }
+            throw new IOException("Failed to decompress bzip2 block of " + name + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Block take() throws IOException {
+        try {
+            return blocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing " + name);
+        }
+    }
+
+    static byte[] decompress(Segment segment) throws IOException {
+        DecompressionBlockEvent event = new DecompressionBlockEvent();
+        event.begin();
+        byte[] decompressed;
+        try (InputStream input = new BZip2CompressorInputStream(new ByteArrayInputStream(segment.toStream()))) {
+            decompressed = input.readAllBytes();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.compressedBytes = (segment.end - segment.start + 7) / 8;
+            event.uncompressedBytes = decompressed.length;
+            event.commit();
+        }
+        return decompressed;
+    }
+
+    private static class Block {
+        private final Segment segment;
+        private final Future<byte[]> result;
+
+        private Block(Segment segment, Future<byte[]> result) {
+            this.segment = segment;
+            this.result = result;
+        }
+    }
+
+    /**
+     * The bits of one compressed block, from its block magic up to the next block or end of stream magic.
+     */
+    static class Segment {
+        final byte[] data;
+        final long start;
+        final long end;
+        final int level;
+
+        /**
+         * @param data  bytes containing the block
+         * @param start index of the first bit of the block magic in the data
+         * @param end   index of the bit after the block
+         * @param level the block size of the stream, in 100kB
+         */
+        Segment(byte[] data, long start, long end, int level) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.level = level;
+        }
+
+        Segment merge(Segment next) {
+            BitWriter merged = new BitWriter((int) ((end - start + next.end - next.start) / 8) + 1);
+            merged.copy(data, start, end);
+            merged.copy(next.data, next.start, next.end);
+            return new Segment(merged.bytes, 0, merged.bits, level);
+        }
+
+        /**
+         * A complete bzip2 stream containing only this block. The combined CRC of a stream with one block is the CRC
+         * of that block, which follows the block magic.
+         */
+        byte[] toStream() {
+            BitWriter stream = new BitWriter((int) ((end - start) / 8) + 16);
+            stream.write('B', 8);
+            stream.write('Z', 8);
+            stream.write('h', 8);
+            stream.write('0' + level, 8);
+            stream.copy(data, start, end);
+            stream.write(END_OF_STREAM_MAGIC, 48);
+            for (int i = 0; i < 4; i++) {
+                stream.write(readByte(data, start + 48 + i * 8), 8);
+            }
+            return stream.toByteArray();
+        }
+    }
+
+    /**
+     * Finds the blocks in a sequence of bzip2 streams.
+     */
+    static class BlockScanner {
+        private final InputStream input;
+        private byte[] buffer = new byte[1024 * 1024];
+        // Index in the file of the first byte in the buffer
+        private long bufferStart = 0;
+        private int length = 0;
+        private boolean endOfInput = false;
+        // Index in the file of the next byte to scan
+        private long next = 0;
+        private long window = 0;
+        private int windowBits = 0;
+        // Bit index in the file of the block currently being scanned, or -1 if not inside a block
+        private long blockStart = -1;
+        // The block size of the current stream, or -1 before reading the header of the next stream
+        private int level = -1;
+        private int streams = 0;
+
+        BlockScanner(InputStream input) {
+            this.input = input;
+        }
+
+        /**
+         * @return the next block, or null at the end of the input
+         */
+        Segment next() throws IOException {
+            while (true) {
+                if (level < 0 && !readHeader()) {
+                    return null;
+                }
+                if (!available(next)) {
+                    throw new IOException("Unexpected end of bzip2 stream after " + next + " bytes");
+                }
+                window = (window << 8) | byteAt(next++);
+                windowBits += 8;
+                // Check every bit position at which a magic could end within this byte, earliest first
+                for (int k = Math.min(7, windowBits - 48); k >= 0; k--) {
+                    long magic = (window >>> k) & MAGIC_MASK;
+                    if (magic == BLOCK_MAGIC || (magic == END_OF_STREAM_MAGIC && isEndOfStream(next * 8 - k - 48))) {
+                        long magicStart = next * 8 - k - 48;
+                        Segment block = blockStart >= 0 ? segment(blockStart, magicStart) : null;
+                        if (magic == BLOCK_MAGIC) {
+                            blockStart = magicStart;
+                        } else {
+                            // Skip the combined CRC and padding to the byte aligned start of the next stream
+                            blockStart = -1;
+                            level = -1;
+                            next = (magicStart + 48 + 32 + 7) / 8;
+                        }
+                        if (block != null) {
+                            return block;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * An end of stream magic is only accepted if followed by the end of the file or another stream, since it
+         * could also occur by chance within the compressed data.
+         */
+        private boolean isEndOfStream(long magicStart) throws IOException {
+            long header = (magicStart + 48 + 32 + 7) / 8;
+            if (!available(header)) {
+                return available(header - 1);
+            }
+            return isHeader(header);
+        }
+
+        private boolean isHeader(long index) throws IOException {
+            return available(index + 3) && byteAt(index) == 'B' && byteAt(index + 1) == 'Z' && byteAt(index + 2) == 'h'
+                    && byteAt(index + 3) >= '1' && byteAt(index + 3) <= '9';
+        }
+
+        private boolean readHeader() throws IOException {
+            if (!available(next)) {
+                return false;
+            }
+            if (!isHeader(next)) {
+                if (streams == 0) {
+                    throw new IOException("Not a bzip2 stream");
+                }
+                // Like BZip2CompressorInputStream, ignore anything after the last stream
+                return false;
+            }
+            level = byteAt(next + 3) - '0';
+            next += 4;
+            window = 0;
+            windowBits = 0;
+            streams++;
+            return true;
+        }
+
+        private Segment segment(long startBit, long endBit) {
+            long first = startBit / 8;
+            long last = (endBit + 7) / 8;
+            byte[] data = Arrays.copyOfRange(buffer, (int) (first - bufferStart), (int) (last - bufferStart));
+            long offset = startBit - first * 8;
+            return new Segment(data, offset, offset + endBit - startBit, level);
+        }
+
+        private int byteAt(long index) {
+            return buffer[(int) (index - bufferStart)] & 0xFF;
+        }
+
+        /**
+         * Make sure the byte with the specified index in the file is in the buffer, reading more if needed.
+         *
+         * @return false if the file is shorter
+         */
+        private boolean available(long index) throws IOException {
+            while (index >= bufferStart + length) {
+                if (endOfInput) {
+                    return false;
+                }
+                if (length == buffer.length) {
+                    // Keep the current block and enough before the scan position to find a magic ending there
+                    long keep = Math.min(next - 8, blockStart >= 0 ? blockStart / 8 : next - 8);
+                    int discard = (int) Math.max(0, keep - bufferStart);
+                    if (discard > 0) {
+                        System.arraycopy(buffer, discard, buffer, 0, length - discard);
+                        bufferStart += discard;
+                        length -= discard;
+                    } else {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                }
+                int read = input.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    length += read;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class BitWriter {
+        private byte[] bytes;
+        private long bits = 0;
+
+        private BitWriter(int capacity) {
+            this.bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        private void write(long value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                writeBit((int) (value >>> i) & 1);
+            }
+        }
+
+        private void writeBit(int bit) {
+            int index = (int) (bits >>> 3);
+            ensureCapacity(index + 1);
+            if (bit != 0) {
+                bytes[index] |= (byte) (0x80 >>> (bits & 7));
+            }
+            bits++;
+        }
+
+        private void writeByte(int value) {
+            int index = (int) (bits >>> 3);
+            int shift = (int) (bits & 7);
+            ensureCapacity(index + 2);
+            if (shift == 0) {
+                bytes[index] = (byte) value;
+            } else {
+                bytes[index] |= (byte) (value >>> shift);
+                bytes[index + 1] = (byte) (value << (8 - shift));
+            }
+            bits += 8;
+        }
+
+        private void copy(byte[] source, long from, long to) {
+            long bit = from;
+            for (; to - bit >= 8; bit += 8) {
+                writeByte(readByte(source, bit));
+            }
+            for (; bit < to; bit++) {
+                writeBit(((source[(int) (bit >>> 3)] & 0xFF) >>> (7 - (bit & 7))) & 1);
+            }
+        }
+
+        private void ensureCapacity(int size) {
+            if (size > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size, bytes.length * 2));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((bits + 7) >>> 3));
+        }
+    }
+
+    private static int readByte(byte[] source, long bit) {
+        int index = (int) (bit >>> 3);
+        int shift = (int) (bit & 7);
+        int value = (source[index] & 0xFF) << shift;
+        if (shift != 0 && index + 1 < source.length) {
+            value |= (source[index + 1] & 0xFF) >>> (8 - shift);
+        }
+        return value & 0xFF;
+    }
+}
@@ -0,0 +1,77 @@
+package org.neo4j.gis.osm.importer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The default parser, reading the OSM XML with the StAX parser of the JDK.
+ */
+class StaxOSMParser extends OSMParser {
+    private final InputStream input;
+    private final XMLStreamReader parser;
+
+    StaxOSMParser(String osmFile, InputStream input, OSMInput.RangeFilter range) throws XMLStreamException {
+        super(osmFile, range);
+        this.input = input;
+        // Let the parser detect the encoding from the XML declaration, which for OSM files is always UTF-8
+        this.parser = XMLInputFactory.newInstance().createXMLStreamReader(input);
+    }
+
+    @Override
+    boolean parseNext(OSMInput.OSMInputChunk events) {
+        try {
+            while (parser.hasNext()) {
+                switch (parser.next()) {
+                    case XMLStreamConstants.END_DOCUMENT:
+                        return false;
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(parser.getLocalName(), events);
+                        return true;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement(events);
+                        return true;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException e) {
+            System.out.println("Failed to parse XML: " + e);
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    Map<String, Object> attributes(String name) {
+        LinkedHashMap<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String prop = parser.getAttributeLocalName(i);
+            if (!skipAttribute(name, prop)) {
+                addProperty(properties, name, prop, parser.getAttributeValue(i));
+            }
+        }
+        return properties;
+    }
+
+    @Override
+    String stringAttribute(String key) {
+        return parser.getAttributeValue(null, key);
+    }
+
+    @Override
+    void closeInput() throws IOException {
+        try {
+            parser.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to close: " + e.getMessage(), e);
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.neo4j.gis.osm.importer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded dictionary of tag keys and values, so that frequently repeated strings like 'highway', 'building' and
+ * 'yes' are shared instead of being created again for every tag. This reduces the garbage created while parsing, and
+ * since the shared strings cache their hash codes, the lookups of property keys in the importer are faster too.
+ * <p>
+ * Only short strings seen at least twice are added, so that unique values like names and addresses do not fill the
+ * dictionary, and once it is full no more strings are added. Each parser has its own dictionary, so no synchronization
+ * is needed, and reports its lookups to {@link Statistics} shared by all parsers of the input.
+ */
+class TagDictionary {
+    static final int DEFAULT_SIZE = 65536;
+    static final int MAX_LENGTH = 32;
+
+    private final int size;
+    private final int mask;
+    private final String[] strings;
+    private final byte[][] bytes;
+    private final int[] hashes;
+    // A bit for each hash seen once, so that strings are only added when seen again
+    private final long[] seen;
+    private final Statistics statistics;
+    private int entries = 0;
+    private long lookups = 0;
+    private long hits = 0;
+
+    /**
+     * @param size       the maximum number of strings in the dictionary
+     * @param statistics to add the lookups and hits to when the parser is closed
+     */
+    TagDictionary(int size, Statistics statistics) {
+        this.size = size;
+        int capacity = Integer.highestOneBit(Math.max(size, 8) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.strings = new String[capacity];
+        this.bytes = new byte[capacity][];
+        this.hashes = new int[capacity];
+        this.seen = new long[capacity / 8];
+        this.statistics = statistics;
+    }
+
+    /**
+     * The shared instance of the string, for parsers that have already created it.
+     */
+    String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        lookups++;
+        int hash = value.hashCode();
+        int slot = hash & mask;
+        while (strings[slot] != null) {
+            if (hashes[slot] == hash && strings[slot].equals(value)) {
+                hits++;
+                return strings[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (admit(hash)) {
+            add(slot, hash, value, null);
+        }
+        return value;
+    }
+
+    /**
+     * The string for the UTF-8 bytes, which is only created if not already in the dictionary.
+     */
+    String intern(byte[] data, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return new String(data, start, length, StandardCharsets.UTF_8);
+        }
+        lookups++;
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + data[i];
+        }
+        hash ^= hash >>> 16;
+        int slot = hash & mask;
+        while (strings[slot] != null) {
+            if (hashes[slot] == hash && equal(bytes[slot], data, start, length)) {
+                hits++;
+                return strings[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = new String(data, start, length, StandardCharsets.UTF_8);
+        if (admit(hash)) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, start, copy, 0, length);
+            add(slot, hash, value, copy);
+        }
+        return value;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    /**
+     * Add the lookups since the last call to the shared statistics.
+     */
+    void report() {
+        statistics.lookups.add(lookups);
+        statistics.hits.add(hits);
+        statistics.largest.accumulate(entries);
+        lookups = 0;
+        hits = 0;
+    }
+
+    private boolean admit(int hash) {
+        if (entries >= size) {
+            return false;
+        }
+        int bit = (hash >>> 7) & (seen.length * 64 - 1);
+        long word = seen[bit >>> 6];
+        long flag = 1L << (bit & 63);
+        if ((word & flag) == 0) {
+            seen[bit >>> 6] = word | flag;
+            return false;
+        }
+        return true;
+    }
+
+    private void add(int slot, int hash, String value, byte[] data) {
+        strings[slot] = value;
+        bytes[slot] = data;
+        hashes[slot] = hash;
+        entries++;
+    }
+
+    private static boolean equal(byte[] stored, byte[] data, int start, int length) {
+        // Strings added from intern(String) have no bytes to compare with
+        if (stored == null || stored.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (stored[i] != data[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The lookups in all dictionaries used for one pass over the input.
+     */
+    static class Statistics {
+        private final LongAdder lookups = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAccumulator largest = new LongAccumulator(Math::max, 0);
+
+        long lookups() {
+            return lookups.sum();
+        }
+
+        long hits() {
+            return hits.sum();
+        }
+
+        double hitRate() {
+            long lookups = lookups();
+            return lookups == 0 ? 0 : (double) hits() / lookups;
+        }
+
+        void reset() {
+            lookups.reset();
+            hits.reset();
+            largest.reset();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Tag dictionary found %.1f%% of %d tag keys and values, with up to %d entries",
+                    hitRate() * 100, lookups(), largest.get());
+        }
+    }
+}
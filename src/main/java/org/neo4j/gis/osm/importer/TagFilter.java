@@ -0,0 +1,186 @@
+package org.neo4j.gis.osm.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * A profile deciding which nodes, ways and relations are imported, based on their tags, and optionally which of their
+ * tags are kept. Profiles are written one rule per line, each applying to an entity type (or '*' for all types):
+ * <pre>
+ * # Highways, points of interest and administrative boundaries
+ * node     include amenity shop tourism
+ * way      include highway
+ * way      exclude highway=proposed|construction
+ * relation include boundary=administrative type=restriction
+ * *        tags    name name:* highway oneway maxspeed amenity shop tourism boundary admin_level type
+ * </pre>
+ * An entity is imported if it matches at least one 'include' condition for its type, and no 'exclude' condition.
+ * Types without any 'include' rule are not imported, except when referenced by an imported way or relation.
+ * A condition is either a key, matching any value, or a key with one or more values separated by '|'. Keys ending in
+ * '*' match all keys with that prefix, and the key '*' alone matches every entity, even without tags.
+ * <p>
+ * The optional 'tags' rules project the tags of the imported entities onto the listed keys, so that for example
+ * notes and source references are not imported. Without them all tags are kept.
+ */
+public class TagFilter {
+    private final Map<OSMEntity.Type, List<Condition>> includes = new EnumMap<>(OSMEntity.Type.class);
+    private final Map<OSMEntity.Type, List<Condition>> excludes = new EnumMap<>(OSMEntity.Type.class);
+    private final Map<OSMEntity.Type, List<Condition>> projections = new EnumMap<>(OSMEntity.Type.class);
+
+    private TagFilter() {
+        for (OSMEntity.Type type : OSMEntity.Type.values()) {
+            includes.put(type, new ArrayList<>());
+            excludes.put(type, new ArrayList<>());
+            projections.put(type, new ArrayList<>());
+        }
+    }
+
+    public static TagFilter load(File file) throws IOException {
+        return parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if any line is not a valid rule
+     */
+    public static TagFilter parse(List<String> lines) {
+        TagFilter filter = new TagFilter();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment).trim();
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 3) {
+                throw new IllegalArgumentException("Tag filter rule on line " + (i + 1) + " should have a type, a rule and at least one condition: " + line);
+            }
+            Map<OSMEntity.Type, List<Condition>> rules;
+            switch (fields[1]) {
+                case "include":
+                    rules = filter.includes;
+                    break;
+                case "exclude":
+                    rules = filter.excludes;
+                    break;
+                case "tags":
+                    rules = filter.projections;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown tag filter rule '" + fields[1] + "' on line " + (i + 1) + ", expected one of: include, exclude, tags");
+            }
+            List<OSMEntity.Type> types;
+            if (fields[0].equals("*")) {
+                types = Arrays.asList(OSMEntity.Type.values());
+            } else {
+                OSMEntity.Type type = OSMEntity.Type.forElement(fields[0]);
+                if (type == null) {
+                    throw new IllegalArgumentException("Unknown entity type '" + fields[0] + "' on line " + (i + 1) + ", expected one of: node, way, relation, *");
+                }
+                types = Collections.singletonList(type);
+            }
+            for (int f = 2; f < fields.length; f++) {
+                Condition condition = Condition.parse(fields[f]);
+                for (OSMEntity.Type type : types) {
+                    rules.get(type).add(condition);
+                }
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Whether an entity with these tags is imported for its own sake, rather than only because it is referenced.
+     */
+    public boolean matches(OSMEntity.Type type, Map<String, Object> tags) {
+        return anyMatch(includes.get(type), tags) && !anyMatch(excludes.get(type), tags);
+    }
+
+    /**
+     * Whether any entity of this type can match, so that a pre-pass can skip looking at the others.
+     */
+    public boolean includes(OSMEntity.Type type) {
+        return !includes.get(type).isEmpty();
+    }
+
+    /**
+     * The tags to import for an entity of this type.
+     *
+     * @return the same map if all tags are kept, or a new map with only the tags listed in the 'tags' rules
+     */
+    public Map<String, Object> project(OSMEntity.Type type, Map<String, Object> tags) {
+        List<Condition> keys = projections.get(type);
+        if (keys.isEmpty()) {
+            return tags;
+        }
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> tag : tags.entrySet()) {
+            for (Condition key : keys) {
+                if (key.matchesKey(tag.getKey())) {
+                    projected.put(tag.getKey(), tag.getValue());
+                    break;
+                }
+            }
+        }
+        return projected;
+    }
+
+    private static boolean anyMatch(List<Condition> conditions, Map<String, Object> tags) {
+        for (Condition condition : conditions) {
+            if (condition.matches(tags)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Condition {
+        private final String key;
+        private final boolean prefix;
+        private final Set<String> values;
+
+        private Condition(String key, Set<String> values) {
+            this.prefix = key.endsWith("*");
+            this.key = prefix ? key.substring(0, key.length() - 1) : key;
+            this.values = values;
+        }
+
+        private static Condition parse(String condition) {
+            int equals = condition.indexOf('=');
+            if (equals < 0) {
+                return new Condition(condition, null);
+            }
+            String key = condition.substring(0, equals);
+            String[] values = condition.substring(equals + 1).split("\\|");
+            if (key.isEmpty() || values.length == 0) {
+                throw new IllegalArgumentException("Invalid tag filter condition '" + condition + "', expected key or key=value|value");
+            }
+            return new Condition(key, new HashSet<>(Arrays.asList(values)));
+        }
+
+        private boolean matchesKey(String tagKey) {
+            return prefix ? tagKey.startsWith(key) : tagKey.equals(key);
+        }
+
+        private boolean matches(Map<String, Object> tags) {
+            if (prefix && key.isEmpty() && values == null) {
+                return true;
+            }
+            if (!prefix) {
+                Object value = tags.get(key);
+                return value != null && (values == null || values.contains(value.toString()));
+            }
+            for (Map.Entry<String, Object> tag : tags.entrySet()) {
+                if (matchesKey(tag.getKey()) && (values == null || values.contains(String.valueOf(tag.getValue())))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
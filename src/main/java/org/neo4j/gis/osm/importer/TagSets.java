@@ -0,0 +1,202 @@
+package org.neo4j.gis.osm.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded set of the distinct tag sets seen while importing, so that entities with identical tags, like
+ * 'building=yes', can share a single OSMTags node. Each tag set is identified by a 64 bit hash of its keys and values
+ * in key order, which also forms the id of the shared node. The table stores these hashes together with a second,
+ * independent 64 bit {@link #check(Map) check} of the tags, in 32 bytes of off-heap memory per tag set, so that a tag
+ * set whose hash collides with that of another one is not shared, instead of silently getting the tags of the other.
+ * <p>
+ * Tag sets are added while importing the nodes, by several threads when parsing in parallel. Once the table is full,
+ * new tag sets are not shared, and their entities get an OSMTags node of their own as usual. The relationships are
+ * imported after all nodes, and only look up the tag sets, so that they point to the same OSMTags nodes.
+ */
+class TagSets {
+    enum Result {
+        /**
+         * The tag set was not seen before, so a shared OSMTags node should be created for it.
+         */
+        ADDED,
+        /**
+         * The tag set already has a shared OSMTags node.
+         */
+        FOUND,
+        /**
+         * The tag set was not seen before, and the table is full, so it cannot be shared.
+         */
+        FULL
+    }
+
+    private static final long EMPTY = 0;
+
+    private final int size;
+    private final int mask;
+    // The hash and check of each tag set, next to each other
+    private final LongBuffer hashes;
+    private int entries = 0;
+    private final LongAdder entities = new LongAdder();
+    private final LongAdder unshared = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+
+    /**
+     * @param size the maximum number of distinct tag sets to share
+     */
+    TagSets(int size) {
+        if (size <= 0 || size > 1 << 27) {
+            throw new IllegalArgumentException("Number of shared tag sets must be between 1 and " + (1 << 27) + ": " + size);
+        }
+        this.size = size;
+        int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.hashes = ByteBuffer.allocateDirect(capacity * 2 * Long.BYTES).asLongBuffer();
+    }
+
+    /**
+     * The hash identifying the tag set, which does not depend on the order of the tags, and is never zero.
+     */
+    static long hash(Map<String, Object> tags) {
+        String[] keys = tags.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        long hash = 0xcbf29ce484222325L;
+        for (String key : keys) {
+            hash = mix(hash, key);
+            hash = mix(hash, String.valueOf(tags.get(key)));
+        }
+        hash = finish(hash);
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    /**
+     * A second hash of the tag set, computed independently of {@link #hash(Map)}, which tells apart the tag sets whose
+     * hashes collide. It sums a hash of each tag, so it does not depend on the order of the tags either.
+     */
+    static long check(Map<String, Object> tags) {
+        long check = 0;
+        for (Map.Entry<String, Object> tag : tags.entrySet()) {
+            long hash = 0x9e3779b97f4a7c15L;
+            hash = mixCheck(hash, tag.getKey());
+            hash = mixCheck(hash, String.valueOf(tag.getValue()));
+            check += finish(hash);
+        }
+        return check;
+    }
+
+    /**
+     * Add the tag set of a tagged entity, counting the entity for the {@link #toString() statistics}. A tag set with
+     * the hash of another one, but a different check, is not shared, as if the table was full.
+     */
+    synchronized Result add(long hash, long check) {
+        entities.increment();
+        int slot = slot(hash);
+        long stored;
+        while ((stored = hashes.get(slot * 2)) != EMPTY) {
+            if (stored == hash) {
+                if (hashes.get(slot * 2 + 1) == check) {
+                    return Result.FOUND;
+                }
+                unshared.increment();
+                collisions.increment();
+                return Result.FULL;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (entries >= size) {
+            unshared.increment();
+            return Result.FULL;
+        }
+        hashes.put(slot * 2, hash);
+        hashes.put(slot * 2 + 1, check);
+        entries++;
+        return Result.ADDED;
+    }
+
+    /**
+     * Whether the tag set has a shared OSMTags node. This is only safe to call once all tag sets have been added.
+     */
+    boolean contains(long hash, long check) {
+        int slot = slot(hash);
+        long stored;
+        while ((stored = hashes.get(slot * 2)) != EMPTY) {
+            if (stored == hash) {
+                return hashes.get(slot * 2 + 1) == check;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    long entities() {
+        return entities.sum();
+    }
+
+    /**
+     * The number of tagged entities not sharing an OSMTags node, because the hash of their tags collided with that of
+     * different tags.
+     */
+    long collisions() {
+        return collisions.sum();
+    }
+
+    /**
+     * The average number of tagged entities for each OSMTags node created, which is one without sharing.
+     */
+    double ratio() {
+        long nodes = entries + unshared.sum();
+        return nodes == 0 ? 0 : (double) entities() / nodes;
+    }
+
+    /**
+     * Forget the entities counted while adding tag sets, but keep the tag sets themselves.
+     */
+    void resetStatistics() {
+        entities.reset();
+        unshared.reset();
+        collisions.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Shared tags used %d OSMTags nodes for %d tagged entities, %.1f entities per node, with %d of %d tag sets shared",
+                entries + unshared.sum(), entities(), ratio(), entries, size)
+                + (collisions() > 0 ? String.format(", and %d entities not sharing tags with a colliding hash", collisions()) : "");
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static long mix(long hash, String value) {
+        hash = (hash ^ value.length()) * 0x100000001b3L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mixCheck(long hash, String value) {
+        hash = (hash ^ value.length()) * 0xbf58476d1ce4e5b9L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = Long.rotateLeft(hash ^ value.charAt(i), 23) * 0x94d049bb133111ebL;
+        }
+        return hash;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
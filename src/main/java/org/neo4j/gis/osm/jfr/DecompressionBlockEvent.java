@@ -0,0 +1,21 @@
+package org.neo4j.gis.osm.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * One bzip2 block decompressed by the thread pool of --parallel-decompression.
+ */
+@Name("org.neo4j.gis.osm.DecompressionBlock")
+@Label("Decompression Block")
+@Category({"OpenStreetMap", "Import"})
+@Description("A bzip2 block of an input file decompressed on its own thread")
+@StackTrace(false)
+public class DecompressionBlockEvent extends Event {
+    @Label("Compressed Size")
+    @DataAmount
+    public long compressedBytes;
+
+    @Label("Uncompressed Size")
+    @DataAmount
+    public long uncompressedBytes;
+}
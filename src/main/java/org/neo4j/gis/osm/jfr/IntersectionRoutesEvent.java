@@ -0,0 +1,23 @@
+package org.neo4j.gis.osm.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * One search for the routes from a node along a way to the nearest intersections.
+ */
+@Name("org.neo4j.gis.osm.IntersectionRoutes")
+@Label("Intersection Routes")
+@Category({"OpenStreetMap", "Routing"})
+@Description("A search along a way for the routes to the nearest intersections")
+@StackTrace(false)
+public class IntersectionRoutesEvent extends Event {
+    @Label("From Node Id")
+    public long node;
+
+    @Label("Segments")
+    @Description("Path segments walked along the way and the chains of ways continuing it")
+    public int segments;
+
+    @Label("Routes")
+    public int routes;
+}
@@ -0,0 +1,24 @@
+package org.neo4j.gis.osm.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A point of interest connected to the routing graph by a LocationMaker.
+ */
+@Name("org.neo4j.gis.osm.Location")
+@Label("Point of Interest Location")
+@Category({"OpenStreetMap", "Routing"})
+@Description("A point of interest connected to the closest way by an existing, interpolated or linked node")
+@StackTrace(false)
+public class LocationEvent extends Event {
+    @Label("Point of Interest Id")
+    public long node;
+
+    @Label("Kind")
+    @Description("LocationExists, LocationInterpolated or LocationIsPoint")
+    public String kind;
+
+    @Label("Distance")
+    @Description("Distance in meters from the point of interest to the way")
+    public double distance;
+}
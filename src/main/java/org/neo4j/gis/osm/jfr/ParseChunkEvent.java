@@ -0,0 +1,30 @@
+package org.neo4j.gis.osm.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * One chunk of the input parsed for the batch importer, lasting as long as the parsing of the chunk. The entity mix
+ * shows which part of the file was being read, since nodes, ways and relations cost very different amounts of time.
+ */
+@Name("org.neo4j.gis.osm.ParseChunk")
+@Label("Parse Chunk")
+@Category({"OpenStreetMap", "Import"})
+@Description("A chunk of OSM entities parsed from an input file for the batch importer")
+@StackTrace(false)
+public class ParseChunkEvent extends Event {
+    @Label("File")
+    public String file;
+
+    @Label("Chunk Size")
+    @Description("Events in the chunk, which are nodes or relationships depending on the importer stage")
+    public long size;
+
+    @Label("Nodes")
+    public long nodes;
+
+    @Label("Ways")
+    public long ways;
+
+    @Label("Relations")
+    public long relations;
+}
@@ -0,0 +1,25 @@
+package org.neo4j.gis.osm.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A batch of ROUTE relationships built for the routing graph, either from the highways in one chunk of a routing-only
+ * import, or by one call of spatial.osm.routeIntersection.
+ */
+@Name("org.neo4j.gis.osm.RoutingBatch")
+@Label("Routing Graph Batch")
+@Category({"OpenStreetMap", "Routing"})
+@Description("ROUTE relationships built for the routing graph from a batch of ways")
+@StackTrace(false)
+public class RoutingBatchEvent extends Event {
+    @Label("Source")
+    @Description("The routing-only import, or the procedure building the routes")
+    public String source;
+
+    @Label("Ways")
+    @Description("Highways split into routes, or ways searched for routes")
+    public long ways;
+
+    @Label("Routes")
+    public long routes;
+}
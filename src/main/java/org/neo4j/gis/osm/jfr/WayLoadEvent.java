@@ -0,0 +1,19 @@
+package org.neo4j.gis.osm.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * An OSMWay loaded with all its way nodes and their locations.
+ */
+@Name("org.neo4j.gis.osm.WayLoad")
+@Label("OSMWay Load")
+@Category({"OpenStreetMap", "Routing"})
+@Description("An OSMWay loaded from the database by following its chain of way nodes")
+@StackTrace(false)
+public class WayLoadEvent extends Event {
+    @Label("Way Node Id")
+    public long way;
+
+    @Label("Way Nodes")
+    public int nodes;
+}
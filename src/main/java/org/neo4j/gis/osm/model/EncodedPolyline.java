@@ -0,0 +1,117 @@
+package org.neo4j.gis.osm.model;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A compact binary encoding of line geometry, suitable for storing on a relationship as a single byte[] property.
+ * <p>
+ * Coordinates are rounded to a configurable number of decimal places, and each point is stored as the difference
+ * from the previous point, zig-zag and varint encoded. For street geometry with 6 decimal places (about 10cm) this
+ * typically needs two to four bytes per point. The precision is stored in the first byte, so the encoding can be
+ * decoded without knowing how it was created.
+ */
+public class EncodedPolyline {
+    public static final int DEFAULT_PRECISION = 6;
+
+    /**
+     * Encode the points given as a flat array of [x0, y0, x1, y1, ...].
+     *
+     * @param coordinates flat array of x,y pairs (longitude, latitude for WGS84)
+     * @param count       number of points to encode from the start of the array
+     * @param precision   number of decimal places to keep, between 0 and 9
+     */
+    public static byte[] encode(double[] coordinates, int count, int precision) {
+        if (precision < 0 || precision > 9) {
+            throw new IllegalArgumentException("Precision must be between 0 and 9 decimal places: " + precision);
+        }
+        double factor = Math.pow(10, precision);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + count * 4);
+        out.write(precision);
+        long previousX = 0;
+        long previousY = 0;
+        for (int i = 0; i < count; i++) {
+            long x = Math.round(coordinates[i * 2] * factor);
+            long y = Math.round(coordinates[i * 2 + 1] * factor);
+            writeVarLong(out, zigZag(x - previousX));
+            writeVarLong(out, zigZag(y - previousY));
+            previousX = x;
+            previousY = y;
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] encode(double[] coordinates, int count) {
+        return encode(coordinates, count, DEFAULT_PRECISION);
+    }
+
+    /**
+     * Decode into a flat array of [x0, y0, x1, y1, ...].
+     */
+    public static double[] decode(byte[] encoded) {
+        if (encoded == null || encoded.length == 0) {
+            return new double[0];
+        }
+        double factor = Math.pow(10, encoded[0]);
+        double[] coordinates = new double[16];
+        int count = 0;
+        int[] position = new int[]{1};
+        long x = 0;
+        long y = 0;
+        while (position[0] < encoded.length) {
+            x += unZigZag(readVarLong(encoded, position));
+            y += unZigZag(readVarLong(encoded, position));
+            if (count + 2 > coordinates.length) {
+                double[] larger = new double[coordinates.length * 2];
+                System.arraycopy(coordinates, 0, larger, 0, count);
+                coordinates = larger;
+            }
+            coordinates[count++] = x / factor;
+            coordinates[count++] = y / factor;
+        }
+        double[] result = new double[count];
+        System.arraycopy(coordinates, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * The number of points in the encoded geometry, without decoding it.
+     */
+    public static int countPoints(byte[] encoded) {
+        int values = 0;
+        for (int i = 1; i < encoded.length; i++) {
+            if ((encoded[i] & 0x80) == 0) {
+                values++;
+            }
+        }
+        return values / 2;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] encoded, int[] position) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = encoded[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
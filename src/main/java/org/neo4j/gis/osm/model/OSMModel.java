@@ -1,5 +1,8 @@
 package org.neo4j.gis.osm.model;
 
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.gis.osm.jfr.IntersectionRoutesEvent;
+import org.neo4j.gis.osm.jfr.WayLoadEvent;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.spatial.Point;
 import org.neo4j.graphdb.traversal.Evaluators;
@@ -21,12 +24,22 @@ public class OSMModel {
     public static final RelationshipType NEXT = RelationshipType.withName("NEXT");
     public static final RelationshipType NODE = RelationshipType.withName("NODE");
     public static final RelationshipType ROUTE = RelationshipType.withName("ROUTE");
+    public static final RelationshipType MEMBER = RelationshipType.withName("MEMBER");
     public static final Label Routable = Label.label("Routable");
     public static final Label Intersection = Label.label("Intersection");
     public static final Label OSMWay = Label.label("OSMWay");
     public static final Label OSMWayNode = Label.label("OSMWayNode");
     public static final Label OSMNode = Label.label("OSMNode");
+    public static final Label OSMRelation = Label.label("OSMRelation");
     public static final Label OSMTags = Label.label("OSMTags");
+    public static final Label OSM = Label.label("OSM");
+    /**
+     * Properties of OSMNode, OSMWay and OSMRelation nodes that are imported from the OSM attributes, as opposed to the
+     * tags, which are also stored on the entity itself when imported with inline tags.
+     */
+    public static final Set<String> ENTITY_PROPERTIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "node_osm_id", "way_osm_id", "relation_osm_id", "lat", "lon", "location",
+            "version", "timestamp", "user", "uid", "changeset", "visible")));
 
     /**
      * Create a wrapper object exposing internal location specific features of a node.
@@ -53,6 +66,131 @@ public class OSMModel {
         return new IntersectionRoutes(osmNode, relToStartWayNode, startOsmWayNode, addLabels);
     }
 
+    /**
+     * Find the OSMWay node owning the given OSMWayNode, by following the NEXT chain in both directions until
+     * reaching the proxy node referenced by FIRST_NODE. Both directions are needed because one-way streets
+     * that are mapped backwards have their NEXT chain reversed.
+     *
+     * @param osmWayNode proxy node within a way
+     * @return the OSMWay node, or null if the chain is broken (eg. partial way imports)
+     */
+    public static Node findWay(Node osmWayNode) {
+        for (Direction direction : new Direction[]{Direction.INCOMING, Direction.OUTGOING}) {
+            HashSet<Long> visited = new HashSet<>();
+            Node current = osmWayNode;
+            while (current != null && visited.add(current.getId())) {
+                Relationship first = current.getSingleRelationship(FIRST_NODE, Direction.INCOMING);
+                if (first != null) {
+                    return first.getStartNode();
+                }
+                Node next = null;
+                for (Relationship rel : current.getRelationships(direction, NEXT)) {
+                    Node other = rel.getOtherNode(current);
+                    if (!visited.contains(other.getId())) {
+                        next = other;
+                        break;
+                    }
+                }
+                current = next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the OSM id of the way owning the given OSMWayNode, or -1 if it cannot be determined.
+     */
+    public static long findWayOsmId(Node osmWayNode) {
+        Node way = findWay(osmWayNode);
+        if (way != null && way.hasProperty("way_osm_id")) {
+            return ((Number) way.getProperty("way_osm_id")).longValue();
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Read the OSM tags of an entity (OSMNode, OSMWay or OSMRelation) from its OSMTags node, or from the entity itself
+     * if it was imported with inline tags. The road direction of inline tagged highways replaces their 'oneway' tag.
+     *
+     * @return the tags, or an empty map if the entity has no tags
+     */
+    public static Map<String, Object> tags(Node entity) {
+        Relationship tagsRel = entity.getSingleRelationship(TAGS, Direction.OUTGOING);
+        if (tagsRel != null) {
+            return tagsRel.getEndNode().getAllProperties();
+        }
+        Map<String, Object> tags = new HashMap<>();
+        for (Map.Entry<String, Object> property : entity.getAllProperties().entrySet()) {
+            if (!ENTITY_PROPERTIES.contains(property.getKey())) {
+                tags.put(property.getKey(), property.getValue());
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Was the database imported with inline tags? This is recorded on the OSM dataset nodes, so that updates can
+     * store the tags of changed entities in the same way.
+     */
+    public static boolean hasInlineTags(Transaction tx) {
+        try (ResourceIterator<Node> datasets = tx.findNodes(OSM, "inline_tags", true)) {
+            return datasets.hasNext();
+        }
+    }
+
+    /**
+     * Is the way a one-way street? If so, the NEXT chain of the way points in the allowed direction of travel.
+     */
+    public static boolean isOneway(Node way, Map<String, Object> tags) {
+        Object direction = way.getProperty("oneway", null);
+        if (direction != null) {
+            return !"BOTH".equals(direction);
+        }
+        Object oneway = tags.get("oneway");
+        return oneway != null && ("-1".equals(oneway) || "1".equals(oneway) || "yes".equalsIgnoreCase(oneway.toString()) || "true".equalsIgnoreCase(oneway.toString()));
+    }
+
+    /**
+     * The complete geometry of a ROUTE relationship, from the given start node through the interior points stored in
+     * its encoded <code>geometry</code> property to the other node. ROUTE relationships without stored geometry, like
+     * those connecting points of interest, are returned as a straight line.
+     *
+     * @param route ROUTE relationship
+     * @param from  the node to start from, which reverses the geometry if this is the end node of the relationship
+     */
+    public static List<PointValue> routeGeometry(Relationship route, Node from) {
+        ArrayList<PointValue> points = new ArrayList<>();
+        PointValue start = readLocation(from);
+        if (start != null) {
+            points.add(start);
+        }
+        double[] interior = EncodedPolyline.decode((byte[]) route.getProperty("geometry", null));
+        CoordinateReferenceSystem crs = (start == null) ? CoordinateReferenceSystem.WGS84 : start.getCoordinateReferenceSystem();
+        int count = interior.length / 2;
+        boolean reversed = route.getEndNode().equals(from);
+        for (int i = 0; i < count; i++) {
+            int index = reversed ? count - 1 - i : i;
+            points.add(Values.pointValue(crs, interior[index * 2], interior[index * 2 + 1]));
+        }
+        PointValue end = readLocation(route.getOtherNode(from));
+        if (end != null) {
+            points.add(end);
+        }
+        return points;
+    }
+
+    private static PointValue readLocation(Node node) {
+        Object location = node.getProperty("location", null);
+        if (location instanceof PointValue) {
+            return (PointValue) location;
+        } else if (location instanceof Point) {
+            return Values.point((Point) location);
+        } else {
+            return null;
+        }
+    }
+
     /**
      * A wrapped class to facilitate exposing location specific attributes of OSM nodes.
      * Internally it will use the API provided by the Node interface to read the location
@@ -105,13 +243,11 @@ public class OSMModel {
         OSMWay(Node wayNode) {
             if (!wayNode.hasLabel(OSMWay))
                 throw new IllegalArgumentException("Way node does not have :OSMWay label: " + wayNode);
-            Relationship tagsRel = wayNode.getSingleRelationship(TAGS, Direction.OUTGOING);
-            if (tagsRel == null)
-                throw new IllegalArgumentException("Way node does not have outgoing :TAGS relationship: " + wayNode);
+            WayLoadEvent event = new WayLoadEvent();
+            event.begin();
             this.wayNode = wayNode;
-            Node tagsNode = tagsRel.getEndNode();
             if (wayNode.hasProperty("name")) name = wayNode.getProperty("name").toString();
-            else if (tagsNode.hasProperty("name")) name = tagsNode.getProperty("name").toString();
+            else if (tags(wayNode).containsKey("name")) name = tags(wayNode).get("name").toString();
             this.wayNodes = new ArrayList<>();
             this.nodes = new ArrayList<>();
             this.seenNodes = new HashMap<>();
@@ -130,6 +266,12 @@ public class OSMModel {
                 this.wayNodes.add(endNode);
                 this.nodes.add(node);
             }
+            event.end();
+            if (event.shouldCommit()) {
+                event.way = wayNode.getId();
+                event.nodes = nodes.size();
+                event.commit();
+            }
         }
 
         public OSMWayDistance closeTo(LocatedNode poi){
@@ -432,7 +574,7 @@ public class OSMModel {
 
     /**
      * A complete route from a starting node to an ending intersection node. Is created based from a chain of
-     * PathSegments that are used to build up the route.
+     * PathSegments that are used to build up the route, referenced from the last segment back to the first.
      */
     public static class IntersectionRoute {
         public Node fromNode;
@@ -443,16 +585,20 @@ public class OSMModel {
         public long count;
         public Relationship fromRel;
         public Relationship toRel;
+        private final IntersectionRoutes.PathSegment[] segments;
 
-        public IntersectionRoute(Node node, Relationship wayNodeRel, Node wayNode, IntersectionRoutes.PathSegment pathSegment) {
+        public IntersectionRoute(Node node, Relationship wayNodeRel, Node wayNode, IntersectionRoutes.PathSegment lastSegment) {
             this.fromNode = node;
             this.fromRel = wayNodeRel;
             this.wayNode = wayNode;
-            this.toNode = pathSegment.lastSegment().osmNode;
-            this.toRel = pathSegment.lastRel();
-            this.distance = pathSegment.totalDistance();
-            this.length = pathSegment.totalLength();
-            this.count = pathSegment.countSegments();
+            this.toNode = lastSegment.osmNode;
+            this.toRel = lastSegment.lastRel;
+            this.segments = lastSegment.fromStart();
+            for (IntersectionRoutes.PathSegment segment : segments) {
+                this.distance += segment.distance;
+                this.length += segment.length;
+            }
+            this.count = segments.length;
         }
 
         public ArrayList<Relationship> getExistingRoutes() {
@@ -466,6 +612,20 @@ public class OSMModel {
         }
 
         public Relationship mergeRouteRelationship() {
+            return mergeRouteRelationship(Collections.emptyList());
+        }
+
+        public Relationship mergeRouteRelationship(List<RoutingProfile> profiles) {
+            return mergeRouteRelationship(profiles, EncodedPolyline.DEFAULT_PRECISION);
+        }
+
+        /**
+         * Create the ROUTE relationship for this route, replacing any previously created for the same path, and
+         * evaluate the routing profiles once for all ways along the route to store their costs on the relationship.
+         * The locations of all nodes passed between the two ends are stored in the <code>geometry</code> property,
+         * encoded with the given number of decimal places, so the route shape can be read without traversing it.
+         */
+        public Relationship mergeRouteRelationship(List<RoutingProfile> profiles, int geometryPrecision) {
             ArrayList<Relationship> toDelete = new ArrayList<>();
             for (Relationship rel : this.fromNode.getRelationships(Direction.BOTH, OSMModel.ROUTE)) {
                 if (rel.getOtherNode(fromNode).equals(this.toNode)) {
@@ -478,9 +638,84 @@ public class OSMModel {
             Relationship rel = fromNode.createRelationshipTo(toNode, OSMModel.ROUTE);
             rel.setProperty("fromRel", fromRel.getId());
             rel.setProperty("toRel", toRel.getId());
+            rel.setProperty("distance", distance);
+            double[] geometry = geometry();
+            rel.setProperty("geometry", EncodedPolyline.encode(geometry, geometry.length / 2, geometryPrecision));
+            // The ways at each end of the route allow turn restrictions to be checked when joining routes
+            long fromWay = findWayOsmId(wayNode);
+            long toWay = findWayOsmId(toRel.getStartNode());
+            if (fromWay >= 0 && toWay >= 0) {
+                rel.setProperty("fromWay", fromWay);
+                rel.setProperty("toWay", toWay);
+            }
+            if (isAgainstOneway()) {
+                rel.setProperty("againstOneway", true);
+            }
+            if (!profiles.isEmpty()) {
+                setProfileCosts(rel, profiles);
+            }
             return rel;
         }
 
+        /**
+         * The interior points of the route as a flat array of [x0, y0, x1, y1, ...], excluding the nodes at each end.
+         */
+        public double[] geometry() {
+            int points = 0;
+            for (IntersectionRoutes.PathSegment segment : segments) {
+                points += segment.points;
+            }
+            double[] coordinates = new double[Math.max(0, points - 1) * 2];
+            int offset = 0;
+            for (IntersectionRoutes.PathSegment segment : segments) {
+                int length = Math.min(segment.points * 2, coordinates.length - offset);
+                System.arraycopy(segment.coordinates, 0, coordinates, offset, length);
+                offset += length;
+            }
+            return coordinates;
+        }
+
+        /**
+         * Does the route follow any one-way street against its direction, which only some profiles, like foot, allow?
+         */
+        public boolean isAgainstOneway() {
+            for (IntersectionRoutes.PathSegment segment : segments) {
+                if (segment.direction == Direction.INCOMING) {
+                    Node way = findWay(segment.fromWayNode);
+                    if (way != null && isOneway(way, tags(way))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void setProfileCosts(Relationship rel, List<RoutingProfile> profiles) {
+            double[] costs = new double[profiles.size()];
+            boolean[] access = new boolean[profiles.size()];
+            Arrays.fill(access, true);
+            for (IntersectionRoutes.PathSegment segment : segments) {
+                Node way = findWay(segment.fromWayNode);
+                Map<String, Object> tags = (way == null) ? Collections.emptyMap() : tags(way);
+                boolean oneway = way != null && isOneway(way, tags);
+                boolean reverse = segment.direction == Direction.INCOMING;
+                for (int i = 0; i < costs.length; i++) {
+                    RoutingProfile profile = profiles.get(i);
+                    double speed = profile.speed(tags);
+                    if (speed <= 0 || (reverse && !profile.allowsReverse(tags, oneway))) {
+                        access[i] = false;
+                        costs[i] += profile.defaultCost(segment.distance);
+                    } else {
+                        costs[i] += segment.distance / (speed / 3.6);
+                    }
+                }
+            }
+            for (int i = 0; i < costs.length; i++) {
+                rel.setProperty(profiles.get(i).costProperty(), costs[i]);
+                rel.setProperty(profiles.get(i).accessProperty(), access[i]);
+            }
+        }
+
         private long getRelIdFromProperty(Relationship rel, String property) {
             if (rel.hasProperty(property)) {
                 return (Long) rel.getProperty(property);
@@ -496,22 +731,40 @@ public class OSMModel {
 
     }
 
+    /**
+     * Search from a node along a way in both directions for the nearest intersections, following chains of ways that
+     * continue each other through nodes that are not intersections.
+     * <p>
+     * The search is iterative, depth first, with the chain walks still to be made kept on a stack of primitive arrays.
+     * A single PathSegmentTree is reused to walk each chain, and only segments that are accepted as part of a route
+     * are kept, each referring back to the segment it continues from.
+     */
     public static class IntersectionRoutes {
+        private static final int OUTGOING = 0;
+        private static final int INCOMING = 1;
+        private static final Direction[] DIRECTIONS = new Direction[]{Direction.OUTGOING, Direction.INCOMING};
+
         private Node fromNode;
         private Node wayNode;
         private Relationship fromRel;
         private boolean addLabels;
         private int maxDepth;
-        private HashSet<Node> previouslySeen;
+        private final LongHashSet previouslySeen = new LongHashSet();
         public List<IntersectionRoute> routes;
 
+        // Chain walks still to make: start way node id, direction, depth and index of the segment being continued
+        private long[] stackWayNodes = new long[16];
+        private int[] stackDirections = new int[16];
+        private int[] stackDepths = new int[16];
+        private int[] stackParents = new int[16];
+        private int stackSize = 0;
+
         public IntersectionRoutes(Node node, Relationship wayNodeRel, Node wayNode, boolean addLabels) {
             this.fromNode = node;
             this.fromRel = wayNodeRel;
             this.wayNode = wayNode;
             this.addLabels = addLabels;
             this.maxDepth = 20;
-            this.previouslySeen = new HashSet<>();
             this.routes = new ArrayList<>();
         }
 
@@ -521,60 +774,145 @@ public class OSMModel {
         }
 
         public boolean process(Transaction tx) {
-            System.out.println("Searching for route from OSMNode:" + fromNode + " via OSMWayNode:" + wayNode);
-            for (PathSegmentTree tree : findIntersections(tx, wayNode, 0)) {
-                for (PathSegment path : tree.asPathSegments()) {
-                    routes.add(new IntersectionRoute(fromNode, fromRel, wayNode, path));
+            IntersectionRoutesEvent event = new IntersectionRoutesEvent();
+            event.begin();
+            routes.clear();
+            previouslySeen.clear();
+            stackSize = 0;
+            ArrayList<PathSegment> segments = new ArrayList<>();
+            PathSegmentTree walker = new PathSegmentTree(wayNode, Direction.OUTGOING);
+            pushBothDirections(wayNode.getId(), 0, -1);
+            while (stackSize > 0) {
+                stackSize--;
+                int depth = stackDepths[stackSize];
+                int parentIndex = stackParents[stackSize];
+                if (depth >= maxDepth) {
+                    continue;
+                }
+                walker.reset(tx.getNodeById(stackWayNodes[stackSize]), DIRECTIONS[stackDirections[stackSize]]);
+                if (!walker.process(tx) || !previouslySeen.add(walker.osmNode.getId())) {
+                    // No intersection in this direction, or a cyclic route back to an already processed node
+                    continue;
+                }
+                PathSegment parent = (parentIndex < 0) ? null : segments.get(parentIndex);
+                if (walker.osmNode.hasLabel(OSMModel.Intersection)) {
+                    segments.add(new PathSegment(walker, parent, true));
+                    continue;
+                }
+                Relationship nextWayRel = null;
+                int nextWayRels = 0;
+                for (Relationship rel : walker.osmNode.getRelationships(Direction.INCOMING, OSMModel.NODE)) {
+                    if (!rel.equals(walker.lastRel)) {
+                        nextWayRel = rel;
+                        nextWayRels++;
+                    }
+                }
+                if (nextWayRels > 1) {
+                    // Not a chain, but an intersection, so stop here, unless we may not label it as such
+                    if (addLabels) {
+                        walker.osmNode.addLabel(OSMModel.Intersection);
+                        segments.add(new PathSegment(walker, parent, true));
+                    }
+                } else if (nextWayRels == 1) {
+                    // A connection in a chain of ways, keep looking in both directions of the next way
+                    segments.add(new PathSegment(walker, parent, false));
+                    pushBothDirections(nextWayRel.getStartNode().getId(), depth + 1, segments.size() - 1);
                 }
             }
-            return routes.size() > 0;
-        }
-
-
-        static class PathSegment {
-            Node fromWayNode;
-            Node toWayNode;
-            Relationship lastRel;
-            Node osmNode;
-            double distance;
-            int length;
-            PathSegment nextSegment;
-
-            PathSegment(PathSegmentTree parent, PathSegment child) {
-                this.fromWayNode = parent.fromWayNode;
-                this.toWayNode = parent.toWayNode;
-                this.lastRel = parent.lastRel;
-                this.osmNode = parent.osmNode;
-                this.distance = parent.distance;
-                this.length = parent.length;
-                this.nextSegment = child;
+            // Intersections end a route, and so do chain links where none of the continuing searches succeeded
+            for (PathSegment segment : segments) {
+                if (segment.intersection || segment.continuations == 0) {
+                    routes.add(new IntersectionRoute(fromNode, fromRel, wayNode, segment));
+                }
             }
-
-            double totalDistance() {
-                return distance + ((nextSegment != null) ? nextSegment.totalDistance() : 0);
+            event.end();
+            if (event.shouldCommit()) {
+                event.node = fromNode.getId();
+                event.segments = segments.size();
+                event.routes = routes.size();
+                event.commit();
             }
+            return routes.size() > 0;
+        }
 
-            int totalLength() {
-                return length + ((nextSegment != null) ? nextSegment.totalLength() : 0);
+        private void pushBothDirections(long wayNodeId, int depth, int parent) {
+            if (stackSize + 2 > stackWayNodes.length) {
+                int size = stackWayNodes.length * 2;
+                stackWayNodes = Arrays.copyOf(stackWayNodes, size);
+                stackDirections = Arrays.copyOf(stackDirections, size);
+                stackDepths = Arrays.copyOf(stackDepths, size);
+                stackParents = Arrays.copyOf(stackParents, size);
             }
-
-            Relationship lastRel() {
-                return lastSegment().lastRel;
+            // Pushed in reverse, so the outgoing direction is searched first
+            for (int direction : new int[]{INCOMING, OUTGOING}) {
+                stackWayNodes[stackSize] = wayNodeId;
+                stackDirections[stackSize] = direction;
+                stackDepths[stackSize] = depth;
+                stackParents[stackSize] = parent;
+                stackSize++;
             }
+        }
 
-            PathSegment lastSegment() {
-                return (nextSegment == null) ? this : nextSegment.lastSegment();
+        /**
+         * One part of a route, along a single way from one node to the next intersection or chain link, referring
+         * back to the segment it continues, if any.
+         */
+        static class PathSegment {
+            final Node fromWayNode;
+            final Direction direction;
+            final Node toWayNode;
+            final Relationship lastRel;
+            final Node osmNode;
+            final double distance;
+            final int length;
+            final double[] coordinates;
+            final int points;
+            final boolean intersection;
+            final PathSegment previous;
+            int continuations = 0;
+
+            PathSegment(PathSegmentTree walked, PathSegment previous, boolean intersection) {
+                this.fromWayNode = walked.fromWayNode;
+                this.direction = walked.direction;
+                this.toWayNode = walked.toWayNode;
+                this.lastRel = walked.lastRel;
+                this.osmNode = walked.osmNode;
+                this.distance = walked.distance;
+                this.length = walked.length;
+                this.coordinates = Arrays.copyOf(walked.coordinates, walked.points * 2);
+                this.points = walked.points;
+                this.intersection = intersection;
+                this.previous = previous;
+                if (previous != null) {
+                    previous.continuations++;
+                }
             }
 
-            int countSegments() {
-                return 1 + ((nextSegment == null) ? 0 : nextSegment.countSegments());
+            /**
+             * All segments of the route ending with this one, in order from the start of the route.
+             */
+            PathSegment[] fromStart() {
+                int count = 0;
+                for (PathSegment segment = this; segment != null; segment = segment.previous) {
+                    count++;
+                }
+                PathSegment[] segments = new PathSegment[count];
+                for (PathSegment segment = this; segment != null; segment = segment.previous) {
+                    segments[--count] = segment;
+                }
+                return segments;
             }
 
+            @Override
             public String toString() {
-                return "PathSegment[from:" + fromWayNode + ", to:" + toWayNode + ", length:" + length + ", distance:" + distance + "]" + (nextSegment == null ? "" : ".." + nextSegment);
+                return "PathSegment[from:" + fromWayNode + ", to:" + toWayNode + ", length:" + length + ", distance:" + distance + "]";
             }
         }
 
+        /**
+         * Walks the NEXT chain of a way from one OSMWayNode in one direction, up to the first node labeled as an
+         * Intersection, or the end of the way. Can be reset and reused for many walks.
+         */
         static class PathSegmentTree {
             Node fromWayNode;
             Direction direction;
@@ -583,67 +921,79 @@ public class OSMModel {
             Node osmNode;
             double distance;
             int length;
-            List<PathSegmentTree> childSegments;
+            double[] coordinates = new double[16];
+            int points;
 
             PathSegmentTree(Node fromWayNode, Direction direction) {
+                reset(fromWayNode, direction);
+            }
+
+            void reset(Node fromWayNode, Direction direction) {
                 this.fromWayNode = fromWayNode;
                 this.direction = direction;
                 this.toWayNode = null;
+                this.lastRel = null;
                 this.osmNode = null;
                 this.distance = 0;
                 this.length = 0;
-                this.childSegments = null;
+                this.points = 0;
             }
 
-            List<PathSegment> asPathSegments() {
-                ArrayList<PathSegment> pathSegments = new ArrayList<>();
-                if (childSegments != null && childSegments.size() > 0) {
-                    for (PathSegmentTree child : childSegments) {
-                        for (PathSegment childSegment : child.asPathSegments()) {
-                            pathSegments.add(new PathSegment(this, childSegment));
-                        }
+            private void addPoint(Node node) {
+                PointValue location = readLocation(node);
+                if (location != null) {
+                    if (points * 2 + 2 > coordinates.length) {
+                        coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
                     }
-                } else {
-                    pathSegments.add(new PathSegment(this, null));
+                    coordinates[points * 2] = location.coordinate()[0];
+                    coordinates[points * 2 + 1] = location.coordinate()[1];
+                    points++;
                 }
-                return pathSegments;
             }
 
             boolean process(Transaction tx) {
-                traverseToFirstIntersection(tx);
+                traverseToFirstIntersection();
                 return osmNode != null;
             }
 
-            private void traverseToFirstIntersection(Transaction tx) {
-                this.distance = 0;
-                this.length = 0;
-                TraversalDescription traversalDescription = new MonoDirectionalTraversalDescription().depthFirst().relationships(OSMModel.NEXT, direction);
-                for (Path path : traversalDescription.traverse(fromWayNode)) {
-                    if (path.length() > 0) {
-                        toWayNode = path.endNode();
-                        Relationship rel = path.lastRelationship();
-                        if (rel.hasProperty("distance")) {
-                            distance += (double) rel.getProperty("distance");
-                            length++;
-                            lastRel = toWayNode.getSingleRelationship(OSMModel.NODE, Direction.OUTGOING);
-                            osmNode = lastRel.getEndNode();
-                            if (osmNode.hasLabel(OSMModel.Intersection)) {
-                                // stop searching
-                                break;
-                            }
-                        } else {
-                            System.out.println("spatial.osm.routeIntersection(): Missing 'distance' on " + rel);
-                            osmNode = null;
-                            break;
-                        }
+            private void traverseToFirstIntersection() {
+                Node current = fromWayNode;
+                while (true) {
+                    Relationship rel = firstRelationship(current, OSMModel.NEXT, direction);
+                    if (rel == null) {
+                        break;
+                    }
+                    current = rel.getOtherNode(current);
+                    if (current.equals(fromWayNode)) {
+                        // Closed ways lead back to where we started
+                        break;
+                    }
+                    toWayNode = current;
+                    Object relDistance = rel.getProperty("distance", null);
+                    if (relDistance == null) {
+                        // Cannot route over incompletely imported ways
+                        osmNode = null;
+                        break;
+                    }
+                    distance += (double) relDistance;
+                    length++;
+                    lastRel = toWayNode.getSingleRelationship(OSMModel.NODE, Direction.OUTGOING);
+                    osmNode = lastRel.getEndNode();
+                    addPoint(osmNode);
+                    if (osmNode.hasLabel(OSMModel.Intersection)) {
+                        // stop searching
+                        break;
                     }
                 }
-                if (toWayNode == null) {
-                    // TODO: Probably we started at the last node for this direction, so need not print anything here
-                    System.out.println("spatial.osm.routeIntersection(): No " + direction + " path found from OSMWayNode(" + fromWayNode + ")");
-                } else if (osmNode == null) {
-                    System.out.println("spatial.osm.routeIntersection(): No intersection node found in " + direction + " path found from OSMWayNode(" + fromWayNode + ")");
+            }
+
+            private static Relationship firstRelationship(Node node, RelationshipType type, Direction direction) {
+                Iterator<Relationship> iterator = node.getRelationships(direction, type).iterator();
+                Relationship rel = iterator.hasNext() ? iterator.next() : null;
+                if (iterator instanceof ResourceIterator) {
+                    ((ResourceIterator<Relationship>) iterator).close();
                 }
+                return rel;
             }
 
             ArrayList<Relationship> nextWayRels() {
@@ -659,58 +1009,7 @@ public class OSMModel {
             }
 
             public String toString() {
-                return "PathSegmentTree[from:" + fromWayNode + ", to:" + toWayNode + ", length:" + length + ", distance:" + distance + "]" + (childSegments == null ? "" : ".. and " + childSegments.size() + " child branches");
-            }
-        }
-
-        private List<PathSegmentTree> findIntersections(Transaction tx, Node startNode, int depth) {
-            List<PathSegmentTree> pathSegmentTrees = new ArrayList<>();
-            for (Direction direction : new Direction[]{Direction.OUTGOING, Direction.INCOMING}) {
-                PathSegmentTree pathSegmentTree = findIntersection(tx, startNode, direction, depth);
-                if (pathSegmentTree != null && pathSegmentTree.osmNode != null) {
-                    pathSegmentTrees.add(pathSegmentTree);
-                }
-            }
-            return pathSegmentTrees;
-        }
-
-        private PathSegmentTree findIntersection(Transaction tx, Node startNode, Direction direction, int depth) {
-            PathSegmentTree pathSegment = new PathSegmentTree(startNode, direction);
-            if (depth < maxDepth && pathSegment.process(tx)) {
-                if (previouslySeen.contains(pathSegment.osmNode)) {
-                    System.out.println("\tAlready processed potential intersection node, rejecting cyclic route: " + pathSegment.osmNode);
-                    return null;
-                }
-                previouslySeen.add(pathSegment.osmNode);
-                if (pathSegment.osmNode.hasLabel(OSMModel.Intersection)) {
-                    System.out.println("\tFound labeled intersection: " + pathSegment.osmNode);
-                    return pathSegment;
-                } else {
-                    ArrayList<Relationship> rels = pathSegment.nextWayRels();
-                    if (rels.size() > 1) {
-                        // Not a chain, but an intersection, let's stop here
-                        if (addLabels) {
-                            System.out.println("\tFound unlabeled intersection (will add label and include): " + pathSegment.osmNode);
-                            pathSegment.osmNode.addLabel(OSMModel.Intersection);
-                            return pathSegment;
-                        } else {
-                            System.out.println("\tFound unlabeled intersection (will not add label, rejecting): " + pathSegment.osmNode);
-                            return null;
-                        }
-                    } else if (rels.size() == 1) {
-                        // This is a connection in a chain, keep looking in the same direction
-                        // TODO: Look in two directions (branching the chain, so needs a different storage than nextSegement)
-                        System.out.println("\tFound chain link at " + pathSegment.osmNode + ", searching further...");
-                        Node nextWayNode = rels.get(0).getStartNode();
-                        pathSegment.childSegments = findIntersections(tx, nextWayNode, depth + 1);
-                        return pathSegment;
-                    } else {
-                        // the end of a chain?
-                        return null;
-                    }
-                }
-            } else {
-                return null;
+                return "PathSegmentTree[from:" + fromWayNode + ", to:" + toWayNode + ", length:" + length + ", distance:" + distance + "]";
             }
         }
     }
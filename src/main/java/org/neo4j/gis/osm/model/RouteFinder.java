@@ -0,0 +1,153 @@
+package org.neo4j.gis.osm.model;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongDoubleHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Shortest path search over the routing graph of ROUTE relationships.
+ * <p>
+ * The search is edge-based (each search label is a ROUTE relationship, not a node) so that turn restrictions,
+ * which depend on the way used to arrive at an intersection, can be checked when relaxing each edge.
+ * ROUTE relationships created by <code>spatial.osm.routeIntersection</code> carry <code>fromWay</code> and
+ * <code>toWay</code> properties and are only traversed in their own direction. Relationships without way information,
+ * such as those connecting points of interest, are traversed in both directions, so the search state is kept for each
+ * relationship and direction.
+ * <p>
+ * If a {@link RoutingProfile} is given, the precomputed <code>&lt;profile&gt;_cost</code> and
+ * <code>&lt;profile&gt;_access</code> properties are used, otherwise the route with the shortest distance is found.
+ * Relationships marked <code>againstOneway</code> lead the wrong way along a one-way street, and are only used by
+ * profiles that give them access.
+ */
+public class RouteFinder {
+    private final TurnRestrictions restrictions;
+    private final RoutingProfile profile;
+
+    public RouteFinder(TurnRestrictions restrictions) {
+        this(restrictions, null);
+    }
+
+    public RouteFinder(TurnRestrictions restrictions, RoutingProfile profile) {
+        this.restrictions = restrictions;
+        this.profile = profile;
+    }
+
+    /**
+     * The cost of travelling along the given ROUTE relationship, or a negative value if it cannot be used.
+     */
+    public double cost(Relationship rel) {
+        double distance = ((Number) rel.getProperty("distance", 0.0)).doubleValue();
+        Object access = profile == null ? null : rel.getProperty(profile.accessProperty(), null);
+        if (access != null) {
+            return (Boolean) access ? ((Number) rel.getProperty(profile.costProperty())).doubleValue() : -1;
+        } else if ((Boolean) rel.getProperty("againstOneway", false)) {
+            return -1;
+        } else {
+            return profile == null ? distance : profile.defaultCost(distance);
+        }
+    }
+
+    private static class SearchLabel implements Comparable<SearchLabel> {
+        final Relationship rel;
+        final long key;
+        final Node endNode;
+        final long arrivingWay;
+        final double cost;
+        final SearchLabel parent;
+
+        private SearchLabel(Relationship rel, long key, Node endNode, long arrivingWay, double cost, SearchLabel parent) {
+            this.rel = rel;
+            this.key = key;
+            this.endNode = endNode;
+            this.arrivingWay = arrivingWay;
+            this.cost = cost;
+            this.parent = parent;
+        }
+
+        @Override
+        public int compareTo(SearchLabel other) {
+            return Double.compare(this.cost, other.cost);
+        }
+    }
+
+    /**
+     * Find the cheapest sequence of ROUTE relationships between two nodes.
+     *
+     * @return the relationships in order from start to end, or an empty list if no route exists
+     */
+    public List<Relationship> find(Node start, Node end) {
+        if (start.equals(end)) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<SearchLabel> queue = new PriorityQueue<>();
+        LongDoubleHashMap costs = new LongDoubleHashMap();
+        LongHashSet settled = new LongHashSet();
+        relax(queue, costs, null, start);
+        while (!queue.isEmpty()) {
+            SearchLabel label = queue.poll();
+            if (!settled.add(label.key)) {
+                continue;
+            }
+            if (label.endNode.equals(end)) {
+                ArrayList<Relationship> path = new ArrayList<>();
+                for (SearchLabel step = label; step != null; step = step.parent) {
+                    path.add(step.rel);
+                }
+                Collections.reverse(path);
+                return path;
+            }
+            relax(queue, costs, label, label.endNode);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * The search state is keyed by relationship and direction, since relationships without way information can be
+     * used in both directions.
+     */
+    private static long key(Relationship rel, boolean forward) {
+        return rel.getId() * 2 + (forward ? 0 : 1);
+    }
+
+    private void relax(PriorityQueue<SearchLabel> queue, LongDoubleHashMap costs, SearchLabel arrived, Node node) {
+        Relationship arrivedBy = arrived == null ? null : arrived.rel;
+        long arrivingWay = arrived == null ? -1 : arrived.arrivingWay;
+        double cost = arrived == null ? 0.0 : arrived.cost;
+        long viaNode = arrivingWay < 0 ? -1 : ((Number) node.getProperty("node_osm_id", -1L)).longValue();
+        for (Relationship rel : node.getRelationships(Direction.BOTH, OSMModel.ROUTE)) {
+            if (rel.equals(arrivedBy)) {
+                continue;
+            }
+            boolean forward = rel.getStartNode().equals(node);
+            long fromWay = -1;
+            long toWay = -1;
+            if (rel.hasProperty("fromWay")) {
+                if (!forward) {
+                    continue;
+                }
+                fromWay = (Long) rel.getProperty("fromWay");
+                toWay = (Long) rel.getProperty("toWay");
+            }
+            if (!restrictions.isAllowed(arrivingWay, viaNode, fromWay)) {
+                continue;
+            }
+            double weight = cost(rel);
+            if (weight < 0) {
+                continue;
+            }
+            double nextCost = cost + weight;
+            long key = key(rel, forward);
+            if (nextCost < costs.getIfAbsent(key, Double.MAX_VALUE)) {
+                costs.put(key, nextCost);
+                queue.add(new SearchLabel(rel, key, rel.getOtherNode(node), toWay, nextCost, arrived));
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.neo4j.gis.osm.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * A routing profile describes how a particular mode of transport (car, bicycle, foot) values each way, based on
+ * the way tags. Profiles are evaluated once when the routing graph is built, and the results are stored as primitive
+ * properties on each ROUTE relationship:
+ * <ul>
+ * <li><code>&lt;name&gt;_cost</code> - the expected travel time in seconds</li>
+ * <li><code>&lt;name&gt;_access</code> - whether the route can be travelled in its direction with this profile</li>
+ * </ul>
+ * This means route searches never need to read the OSMTags nodes.
+ * <p>
+ * The built-in profiles can be used as they are, or copied with different speeds using {@link #withSpeed(String, double)}.
+ * Profiles can also be read from a file, one per line, each the name of a built-in profile followed by the highway
+ * speeds to change in km/h, where a speed of zero makes the highway type inaccessible:
+ * <pre>
+ * # Cars avoiding motorways, and walking
+ * car  motorway=0 motorway_link=0 residential=20
+ * foot
+ * </pre>
+ */
+public class RoutingProfile {
+    public static final RoutingProfile CAR = new RoutingProfile("car", 30.0, true,
+            Arrays.asList("motorcar", "motor_vehicle", "vehicle", "access"),
+            speeds("motorway", 110, "motorway_link", 60, "trunk", 90, "trunk_link", 50, "primary", 70, "primary_link", 50,
+                    "secondary", 60, "secondary_link", 40, "tertiary", 50, "tertiary_link", 40, "unclassified", 40,
+                    "residential", 30, "living_street", 10, "service", 15, "road", 30, "track", 10),
+            speeds());
+    public static final RoutingProfile BICYCLE = new RoutingProfile("bicycle", 16.0, true,
+            Arrays.asList("bicycle", "vehicle", "access"),
+            speeds("trunk", 16, "trunk_link", 16, "primary", 16, "primary_link", 16, "secondary", 16, "secondary_link", 16,
+                    "tertiary", 16, "tertiary_link", 16, "unclassified", 16, "residential", 16, "living_street", 10,
+                    "service", 14, "road", 14, "track", 12, "cycleway", 18, "path", 12, "footway", 5, "pedestrian", 5,
+                    "bridleway", 8),
+            speeds("unpaved", 0.6, "gravel", 0.6, "fine_gravel", 0.8, "dirt", 0.5, "ground", 0.5, "earth", 0.5, "sand", 0.3,
+                    "grass", 0.4, "mud", 0.3, "cobblestone", 0.7, "sett", 0.8, "unhewn_cobblestone", 0.6, "pebblestone", 0.6));
+    public static final RoutingProfile FOOT = new RoutingProfile("foot", 5.0, false,
+            Arrays.asList("foot", "access"),
+            speeds("primary", 5, "primary_link", 5, "secondary", 5, "secondary_link", 5, "tertiary", 5, "tertiary_link", 5,
+                    "unclassified", 5, "residential", 5, "living_street", 5, "service", 5, "road", 5, "track", 5,
+                    "cycleway", 5, "path", 5, "footway", 5, "pedestrian", 5, "bridleway", 5, "steps", 3, "corridor", 5,
+                    "trunk", 5, "trunk_link", 5),
+            speeds());
+
+    private final String name;
+    private final double defaultSpeed;
+    private final boolean respectOneway;
+    private final List<String> accessTags;
+    private final Map<String, Double> speeds;
+    private final Map<String, Double> surfaceFactors;
+
+    /**
+     * @param name           profile name, used as a prefix on the ROUTE relationship properties
+     * @param defaultSpeed   speed in km/h used for routes without way information (eg. point of interest connections)
+     * @param respectOneway  whether one-way streets may only be travelled in their own direction
+     * @param accessTags     tags that grant or deny access, from most specific to least specific
+     * @param speeds         speed in km/h for each accessible highway type, other highway types are not accessible
+     * @param surfaceFactors factors by which to reduce the speed on specific surfaces
+     */
+    public RoutingProfile(String name, double defaultSpeed, boolean respectOneway, List<String> accessTags, Map<String, Double> speeds, Map<String, Double> surfaceFactors) {
+        this.name = name;
+        this.defaultSpeed = defaultSpeed;
+        this.respectOneway = respectOneway;
+        this.accessTags = accessTags;
+        this.speeds = speeds;
+        this.surfaceFactors = surfaceFactors;
+    }
+
+    public static RoutingProfile forName(String name) {
+        switch (name.toLowerCase()) {
+            case "car":
+                return CAR;
+            case "bike":
+            case "bicycle":
+                return BICYCLE;
+            case "foot":
+            case "walk":
+                return FOOT;
+            default:
+                throw new IllegalArgumentException("Unknown routing profile '" + name + "', expected one of: car, bicycle, foot");
+        }
+    }
+
+    public static List<RoutingProfile> load(File file) throws IOException {
+        return parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if any line is not a valid profile, or the same profile is given twice
+     */
+    public static List<RoutingProfile> parse(List<String> lines) {
+        ArrayList<RoutingProfile> profiles = new ArrayList<>();
+        HashSet<String> names = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment).trim();
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            RoutingProfile profile = forName(fields[0]);
+            for (int f = 1; f < fields.length; f++) {
+                String[] speed = fields[f].split("=", 2);
+                try {
+                    profile = profile.withSpeed(speed[0], Double.parseDouble(speed[1]));
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    throw new IllegalArgumentException("Highway speed '" + fields[f] + "' on line " + (i + 1) + " should be a highway type and a speed in km/h, like residential=20");
+                }
+            }
+            // The name prefixes the properties of the ROUTE relationships, so each profile can only be used once
+            if (!names.add(profile.name)) {
+                throw new IllegalArgumentException("Routing profile '" + profile.name + "' on line " + (i + 1) + " is already defined");
+            }
+            profiles.add(profile);
+        }
+        return profiles;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String costProperty() {
+        return name + "_cost";
+    }
+
+    public String accessProperty() {
+        return name + "_access";
+    }
+
+    /**
+     * Create a copy of this profile with a different speed for one highway type. A speed of zero or less makes the
+     * highway type inaccessible.
+     */
+    public RoutingProfile withSpeed(String highway, double speed) {
+        HashMap<String, Double> changed = new HashMap<>(speeds);
+        if (speed > 0) {
+            changed.put(highway, speed);
+        } else {
+            changed.remove(highway);
+        }
+        return new RoutingProfile(name, defaultSpeed, respectOneway, accessTags, changed, surfaceFactors);
+    }
+
+    /**
+     * Speed in km/h for a way with the given tags, or zero if the way cannot be used with this profile at all.
+     */
+    public double speed(Map<String, Object> tags) {
+        Object highway = tags.get("highway");
+        if (highway == null) {
+            return 0.0;
+        }
+        Double speed = speeds.get(highway.toString());
+        Boolean access = explicitAccess(tags);
+        if (access != null && !access) {
+            return 0.0;
+        }
+        if (speed == null) {
+            if (access == null) {
+                return 0.0;
+            }
+            // Explicitly allowed on a highway type we don't normally use, like bicycle=yes on a footway
+            speed = defaultSpeed;
+        }
+        double maxspeed = parseMaxSpeed(tags.get("maxspeed"));
+        if (maxspeed > 0 && maxspeed < speed) {
+            speed = maxspeed;
+        }
+        Object surface = tags.get("surface");
+        if (surface != null) {
+            speed *= surfaceFactors.getOrDefault(surface.toString(), 1.0);
+        }
+        return speed;
+    }
+
+    /**
+     * Can a way with these tags be travelled against the direction of its NEXT chain?
+     */
+    public boolean allowsReverse(Map<String, Object> tags, boolean isOneway) {
+        if (!respectOneway || !isOneway) {
+            return true;
+        }
+        if (name.equals("bicycle")) {
+            Object onewayBicycle = tags.get("oneway:bicycle");
+            Object cycleway = tags.get("cycleway");
+            return "no".equals(onewayBicycle) || (cycleway != null && cycleway.toString().startsWith("opposite"));
+        }
+        return false;
+    }
+
+    /**
+     * Cost in seconds of travelling the given distance in meters at the default speed of this profile.
+     */
+    public double defaultCost(double distance) {
+        return distance / (defaultSpeed / 3.6);
+    }
+
+    private Boolean explicitAccess(Map<String, Object> tags) {
+        for (String key : accessTags) {
+            Object value = tags.get(key);
+            if (value != null) {
+                switch (value.toString()) {
+                    case "no":
+                    case "private":
+                    case "agricultural":
+                    case "forestry":
+                    case "use_sidepath":
+                        return false;
+                    case "yes":
+                    case "designated":
+                    case "permissive":
+                    case "destination":
+                    case "customers":
+                    case "delivery":
+                        return true;
+                    default:
+                        break;
+                }
+            }
+        }
+        return null;
+    }
+
+    static double parseMaxSpeed(Object value) {
+        if (value == null) {
+            return 0.0;
+        }
+        String text = value.toString().trim();
+        if (text.equals("walk")) {
+            return 5.0;
+        }
+        double factor = 1.0;
+        if (text.endsWith("mph")) {
+            factor = 1.609;
+            text = text.substring(0, text.length() - 3).trim();
+        } else if (text.endsWith("km/h")) {
+            text = text.substring(0, text.length() - 4).trim();
+        }
+        try {
+            return Double.parseDouble(text) * factor;
+        } catch (NumberFormatException e) {
+            // Values like 'none' or 'signals' do not limit the speed
+            return 0.0;
+        }
+    }
+
+    private static Map<String, Double> speeds(Object... values) {
+        HashMap<String, Double> speeds = new HashMap<>();
+        for (int i = 0; i < values.length; i += 2) {
+            speeds.put(values[i].toString(), ((Number) values[i + 1]).doubleValue());
+        }
+        return speeds;
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingProfile[" + name + "]";
+    }
+}
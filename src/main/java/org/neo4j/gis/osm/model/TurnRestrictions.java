@@ -0,0 +1,252 @@
+package org.neo4j.gis.osm.model;
+
+import org.neo4j.graphdb.*;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * A compiled lookup table of OSM turn restrictions (relations with <code>type=restriction</code>).
+ * <p>
+ * The batch importer only stores restriction relations as generic MEMBER relationships, which would require several
+ * graph hops to interpret during a route search. This class compiles those relations once into a single
+ * <code>:TurnRestrictions</code> node with primitive array properties, and loads that node into an open-addressing
+ * hash table keyed by (from-way, via-node, to-way) OSM ids, so that each edge relaxation in a search is a constant
+ * time lookup without touching the graph.
+ * <p>
+ * Only restrictions with a single via node are supported. Restrictions using a via way are counted as skipped.
+ */
+public class TurnRestrictions {
+    public static final Label TurnRestrictions = Label.label("TurnRestrictions");
+    public static final TurnRestrictions NONE = new TurnRestrictions(new long[0], new long[0], new long[0], new boolean[0]);
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long ANY_WAY = -1;
+    private static final long FORBIDDEN = -2;
+    private static final long ALLOWED = -3;
+    private static final long ONLY = -4;
+
+    private final long[] from;
+    private final long[] via;
+    private final long[] to;
+    private final boolean[] only;
+
+    // Open addressing hash table, four longs per slot: from, via, to, value
+    private final long[] table;
+    private final int mask;
+
+    private TurnRestrictions(long[] from, long[] via, long[] to, boolean[] only) {
+        this.from = from;
+        this.via = via;
+        this.to = to;
+        this.only = only;
+        // An only_* restriction takes two entries, the allowed turn and the marker for its from-way and via-node
+        int capacity = 4;
+        while (capacity < from.length * 4) {
+            capacity <<= 1;
+        }
+        this.mask = capacity - 1;
+        this.table = new long[capacity * 4];
+        for (int i = 0; i < capacity; i++) {
+            table[i * 4 + 1] = EMPTY;
+        }
+        for (int i = 0; i < from.length; i++) {
+            if (only[i]) {
+                put(from[i], via[i], to[i], ALLOWED);
+                put(from[i], via[i], ANY_WAY, ONLY);
+            } else {
+                put(from[i], via[i], to[i], FORBIDDEN);
+            }
+        }
+    }
+
+    /**
+     * Is travelling from the specified way, through the via node and onto the next way allowed? Negative ids are
+     * treated as unknown and never restricted. Once any only_* restriction applies to the from-way and via-node, only
+     * the to-ways of those restrictions are allowed.
+     */
+    public boolean isAllowed(long fromWay, long viaNode, long toWay) {
+        if (from.length == 0 || fromWay < 0 || viaNode < 0 || toWay < 0) {
+            return true;
+        }
+        if (get(fromWay, viaNode, toWay) == FORBIDDEN) {
+            return false;
+        }
+        if (get(fromWay, viaNode, ANY_WAY) == ONLY) {
+            return get(fromWay, viaNode, toWay) == ALLOWED;
+        }
+        return true;
+    }
+
+    public int size() {
+        return from.length;
+    }
+
+    private static int hash(long a, long b, long c) {
+        long h = a * 0x9E3779B97F4A7C15L;
+        h = (h ^ b) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ c) * 0x165667B19E3779F9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void put(long a, long b, long c, long value) {
+        int slot = hash(a, b, c) & mask;
+        while (table[slot * 4 + 1] != EMPTY) {
+            int i = slot * 4;
+            if (table[i] == a && table[i + 1] == b && table[i + 2] == c) {
+                // Duplicate restriction, keep the first one
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int i = slot * 4;
+        table[i] = a;
+        table[i + 1] = b;
+        table[i + 2] = c;
+        table[i + 3] = value;
+    }
+
+    private long get(long a, long b, long c) {
+        int slot = hash(a, b, c) & mask;
+        while (table[slot * 4 + 1] != EMPTY) {
+            int i = slot * 4;
+            if (table[i] == a && table[i + 1] == b && table[i + 2] == c) {
+                return table[i + 3];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Load the previously compiled restrictions from the database. If <code>spatial.osm.compileTurnRestrictions()</code>
+     * has never been run, this returns an empty table that allows all turns.
+     */
+    public static TurnRestrictions load(Transaction tx) {
+        try (ResourceIterator<Node> nodes = tx.findNodes(TurnRestrictions)) {
+            if (nodes.hasNext()) {
+                Node node = nodes.next();
+                return new TurnRestrictions(
+                        (long[]) node.getProperty("from"),
+                        (long[]) node.getProperty("via"),
+                        (long[]) node.getProperty("to"),
+                        (boolean[]) node.getProperty("only"));
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Scan all OSMRelation nodes for turn restrictions and store the compiled table on a single :TurnRestrictions
+     * node, replacing any previously compiled table.
+     */
+    public static CompileStats compile(Transaction tx) {
+        Compiler compiler = new Compiler();
+        try (ResourceIterator<Node> relations = tx.findNodes(OSMModel.OSMRelation)) {
+            while (relations.hasNext()) {
+                compiler.add(relations.next());
+            }
+        }
+        try (ResourceIterator<Node> existing = tx.findNodes(TurnRestrictions)) {
+            while (existing.hasNext()) {
+                existing.next().delete();
+            }
+        }
+        Node node = tx.createNode(TurnRestrictions);
+        node.setProperty("from", compiler.toArray(compiler.from));
+        node.setProperty("via", compiler.toArray(compiler.via));
+        node.setProperty("to", compiler.toArray(compiler.to));
+        boolean[] only = new boolean[compiler.only.size()];
+        for (int i = 0; i < only.length; i++) {
+            only[i] = compiler.only.get(i);
+        }
+        node.setProperty("only", only);
+        return compiler.stats;
+    }
+
+    public static class CompileStats {
+        public long relations;
+        public long restrictions;
+        public long skipped;
+
+        @Override
+        public String toString() {
+            return "TurnRestrictions: relations:" + relations + ", restrictions:" + restrictions + ", skipped:" + skipped;
+        }
+    }
+
+    private static class Compiler {
+        private final CompileStats stats = new CompileStats();
+        private final ArrayList<Long> from = new ArrayList<>();
+        private final ArrayList<Long> via = new ArrayList<>();
+        private final ArrayList<Long> to = new ArrayList<>();
+        private final ArrayList<Boolean> only = new ArrayList<>();
+
+        private void add(Node relation) {
+            Map<String, Object> tags = OSMModel.tags(relation);
+            if (!"restriction".equals(tags.get("type"))) {
+                return;
+            }
+            stats.relations++;
+            Object restriction = tags.get("restriction");
+            if (restriction == null) {
+                stats.skipped++;
+                return;
+            }
+            boolean isOnly = restriction.toString().startsWith("only_");
+            if (!isOnly && !restriction.toString().startsWith("no_")) {
+                stats.skipped++;
+                return;
+            }
+            ArrayList<Long> fromWays = new ArrayList<>();
+            ArrayList<Long> toWays = new ArrayList<>();
+            long viaNode = -1;
+            for (Relationship member : relation.getRelationships(Direction.OUTGOING, OSMModel.MEMBER)) {
+                String role = (String) member.getProperty("role", "");
+                Node target = member.getEndNode();
+                switch (role) {
+                    case "from":
+                        if (target.hasProperty("way_osm_id")) fromWays.add((Long) target.getProperty("way_osm_id"));
+                        break;
+                    case "to":
+                        if (target.hasProperty("way_osm_id")) toWays.add((Long) target.getProperty("way_osm_id"));
+                        break;
+                    case "via":
+                        if (target.hasProperty("node_osm_id")) {
+                            viaNode = (Long) target.getProperty("node_osm_id");
+                        } else {
+                            // Via ways are not supported by the compiled table
+                            stats.skipped++;
+                            return;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (viaNode < 0 || fromWays.isEmpty() || toWays.isEmpty()) {
+                // Members outside the imported area, or an incomplete relation
+                stats.skipped++;
+                return;
+            }
+            // no_entry and no_exit restrictions can have several from or to ways
+            for (long fromWay : fromWays) {
+                for (long toWay : toWays) {
+                    from.add(fromWay);
+                    via.add(viaNode);
+                    to.add(toWay);
+                    only.add(isOnly);
+                    stats.restrictions++;
+                }
+            }
+        }
+
+        private long[] toArray(ArrayList<Long> values) {
+            long[] result = new long[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package org.neo4j.gis.osm.procedures;
 
+import org.neo4j.gis.osm.jfr.LocationEvent;
+import org.neo4j.gis.osm.jfr.RoutingBatchEvent;
 import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.gis.osm.model.RouteFinder;
+import org.neo4j.gis.osm.model.RoutingProfile;
+import org.neo4j.gis.osm.model.TurnRestrictions;
 import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.spatial.Point;
 import org.neo4j.internal.kernel.api.exceptions.ProcedureException;
 import org.neo4j.kernel.api.exceptions.Status;
 import org.neo4j.procedure.*;
@@ -28,7 +34,16 @@ public class OSMProcedures {
             }
             System.out.println("spatial.osm.routePointOfInterest(" + node + ") located closest way: " + closestWay);
             OSMModel.LocationMaker locationMaker = closestWay.getLocationMaker();
+            LocationEvent event = new LocationEvent();
+            event.begin();
             Node connected = locationMaker.process(tx);
+            event.end();
+            if (event.shouldCommit()) {
+                event.node = node.getId();
+                event.kind = locationMaker.getClass().getSimpleName();
+                event.distance = locationMaker.getDistance();
+                event.commit();
+            }
             System.out.println("spatial.osm.routePointOfInterest(" + node + ") created connected node: " + connected);
             return Stream.of(new PointRouteResult(connected));
         } catch (NullPointerException e) {
@@ -38,8 +53,20 @@ public class OSMProcedures {
     }
 
     @Procedure(value = "spatial.osm.routeIntersection", mode = Mode.WRITE)
-    public Stream<IntersectionRouteResult> findStreetRoute(@Name("OSMNode") Node node, @Name("deleteExistingRoutes") boolean deleteExistingRoutes, @Name("createNewRoutes") boolean createNewRoutes, @Name("addLabels") boolean addLabels) throws ProcedureException {
+    public Stream<IntersectionRouteResult> findStreetRoute(@Name("OSMNode") Node node, @Name("deleteExistingRoutes") boolean deleteExistingRoutes, @Name("createNewRoutes") boolean createNewRoutes, @Name("addLabels") boolean addLabels,
+                                                           @Name(value = "profiles", defaultValue = "[]") List<String> profileNames,
+                                                           @Name(value = "precision", defaultValue = "6") long geometryPrecision) throws ProcedureException {
+        // Checked before any existing routes are deleted, since the geometry of the new routes is encoded last
+        if (geometryPrecision < 0 || geometryPrecision > 9) {
+            throw new ProcedureException(Status.Procedure.ProcedureCallFailed, "Geometry precision must be between 0 and 9 decimal places, but was %d", geometryPrecision);
+        }
         try {
+            List<RoutingProfile> profiles = new ArrayList<>();
+            for (String name : profileNames) {
+                profiles.add(RoutingProfile.forName(name));
+            }
+            RoutingBatchEvent event = new RoutingBatchEvent();
+            event.begin();
             OSMModel osm = new OSMModel();
             ArrayList<OSMModel.IntersectionRoutes> routesToSearch = new ArrayList<>();
             for (Relationship rel : node.getRelationships(Direction.INCOMING, OSMModel.NODE)) {
@@ -57,7 +84,7 @@ public class OSMProcedures {
                                 route.getExistingRoutes().forEach(Relationship::delete);
                             }
                             if (createNewRoutes) {
-                                route.mergeRouteRelationship();
+                                route.mergeRouteRelationship(profiles, (int) geometryPrecision);
                             }
                             routesFound.add(new IntersectionRouteResult(route));
                         }
@@ -67,6 +94,13 @@ public class OSMProcedures {
                 }
             }
             System.out.println("Found " + routesFound.size() + " routes from " + node);
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = "spatial.osm.routeIntersection";
+                event.ways = routesToSearch.size();
+                event.routes = routesFound.size();
+                event.commit();
+            }
             return routesFound.stream();
         } catch (NullPointerException e) {
             e.printStackTrace();
@@ -74,6 +108,76 @@ public class OSMProcedures {
         }
     }
 
+    @Description("Compile all OSM relations with type=restriction into a compact turn restriction table stored on a single :TurnRestrictions node. " +
+            "This should be run after import, and again after any changes to restriction relations, so that spatial.osm.route() can respect turn restrictions.")
+    @Procedure(value = "spatial.osm.compileTurnRestrictions", mode = Mode.WRITE)
+    public Stream<TurnRestrictionsResult> compileTurnRestrictions() {
+        TurnRestrictions.CompileStats stats = TurnRestrictions.compile(tx);
+        System.out.println("spatial.osm.compileTurnRestrictions() compiled " + stats);
+        return Stream.of(new TurnRestrictionsResult(stats));
+    }
+
+    @Description("Find the shortest route between two nodes in the routing graph of ROUTE relationships, respecting compiled turn restrictions. " +
+            "If a routing profile (car, bicycle or foot) is given, the route with the lowest travel time for that profile is found, " +
+            "using the costs stored on the ROUTE relationships by spatial.osm.routeIntersection. " +
+            "Returns one row per ROUTE relationship along the route, in order, with the geometry of each step in the direction travelled.")
+    @Procedure(value = "spatial.osm.route", mode = Mode.READ)
+    public Stream<RouteStepResult> findRoute(@Name("fromNode") Node fromNode, @Name("toNode") Node toNode, @Name(value = "profile", defaultValue = "") String profileName) {
+        RoutingProfile profile = profileName.isEmpty() ? null : RoutingProfile.forName(profileName);
+        RouteFinder finder = new RouteFinder(TurnRestrictions.load(tx), profile);
+        List<Relationship> route = finder.find(fromNode, toNode);
+        ArrayList<RouteStepResult> steps = new ArrayList<>(route.size());
+        Node current = fromNode;
+        double total = 0.0;
+        double totalCost = 0.0;
+        for (Relationship rel : route) {
+            Node next = rel.getOtherNode(current);
+            double distance = ((Number) rel.getProperty("distance", 0.0)).doubleValue();
+            double cost = finder.cost(rel);
+            total += distance;
+            totalCost += cost;
+            steps.add(new RouteStepResult(steps.size(), current, next, rel, distance, total, cost, totalCost, new ArrayList<>(OSMModel.routeGeometry(rel, current))));
+            current = next;
+        }
+        return steps.stream();
+    }
+
+    public static class TurnRestrictionsResult {
+        public long relations;
+        public long restrictions;
+        public long skipped;
+
+        public TurnRestrictionsResult(TurnRestrictions.CompileStats stats) {
+            this.relations = stats.relations;
+            this.restrictions = stats.restrictions;
+            this.skipped = stats.skipped;
+        }
+    }
+
+    public static class RouteStepResult {
+        public long index;
+        public Node fromNode;
+        public Node toNode;
+        public Relationship route;
+        public double distance;
+        public double totalDistance;
+        public double cost;
+        public double totalCost;
+        public List<Point> geometry;
+
+        public RouteStepResult(long index, Node fromNode, Node toNode, Relationship route, double distance, double totalDistance, double cost, double totalCost, List<Point> geometry) {
+            this.index = index;
+            this.fromNode = fromNode;
+            this.toNode = toNode;
+            this.route = route;
+            this.distance = distance;
+            this.totalDistance = totalDistance;
+            this.cost = cost;
+            this.totalCost = totalCost;
+            this.geometry = geometry;
+        }
+    }
+
     public static class IntersectionRouteResult {
         public Node fromNode;
         public Node wayNode;
@@ -0,0 +1,78 @@
+package org.neo4j.gis.osm.update;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.neo4j.gis.osm.importer.OSMEntity;
+
+import java.util.*;
+
+/**
+ * Changes from consecutive change files, merged in memory so that each entity occurs only once, with the latest
+ * change replacing all earlier ones. When catching up on a backlog of minutely diffs, frequently edited entities are
+ * then written only once per window instead of once per diff.
+ */
+public class ChangeWindow {
+    private final EnumMap<OSMEntity.Type, LongObjectHashMap<OSMChange>> changes = new EnumMap<>(OSMEntity.Type.class);
+    private long read = 0;
+
+    public ChangeWindow() {
+        for (OSMEntity.Type type : OSMEntity.Type.values()) {
+            changes.put(type, new LongObjectHashMap<>());
+        }
+    }
+
+    public void add(OSMChange change) {
+        changes.get(change.type).put(change.id, change);
+        read++;
+    }
+
+    public void addAll(Iterator<OSMChange> changes) {
+        changes.forEachRemaining(this::add);
+    }
+
+    public boolean contains(OSMEntity.Type type, long id) {
+        return changes.get(type).containsKey(id);
+    }
+
+    /**
+     * The creates and modifies of the specified type, ordered by OSM id.
+     */
+    public List<OSMChange> updates(OSMEntity.Type type) {
+        return select(type, false);
+    }
+
+    /**
+     * The deletes of the specified type, ordered by OSM id.
+     */
+    public List<OSMChange> deletes(OSMEntity.Type type) {
+        return select(type, true);
+    }
+
+    private List<OSMChange> select(OSMEntity.Type type, boolean deletes) {
+        ArrayList<OSMChange> selected = new ArrayList<>();
+        changes.get(type).forEachValue(change -> {
+            if ((change.action == OSMChange.Action.DELETE) == deletes) {
+                selected.add(change);
+            }
+        });
+        selected.sort(Comparator.comparingLong(change -> change.id));
+        return selected;
+    }
+
+    /**
+     * The number of changes read into this window, before merging.
+     */
+    public long read() {
+        return read;
+    }
+
+    /**
+     * The number of changes remaining after merging.
+     */
+    public int size() {
+        int size = 0;
+        for (LongObjectHashMap<OSMChange> typeChanges : changes.values()) {
+            size += typeChanges.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,38 @@
+package org.neo4j.gis.osm.update;
+
+import org.neo4j.gis.osm.importer.OSMEntity;
+
+import java.util.Map;
+
+/**
+ * A single create, modify or delete of an OSM node, way or relation, as read from an osmChange file.
+ */
+public class OSMChange extends OSMEntity {
+    public enum Action {
+        CREATE, MODIFY, DELETE;
+
+        static Action forElement(String element) {
+            switch (element) {
+                case "create":
+                    return CREATE;
+                case "modify":
+                    return MODIFY;
+                case "delete":
+                    return DELETE;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    public final Action action;
+
+    public OSMChange(Action action, Type type, long id, Map<String, Object> properties) {
+        super(type, id, properties);
+        this.action = action;
+    }
+
+    public String toString() {
+        return action + " " + super.toString();
+    }
+}
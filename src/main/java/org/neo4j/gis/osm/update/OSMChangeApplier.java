@@ -0,0 +1,454 @@
+package org.neo4j.gis.osm.update;
+
+import org.neo4j.gis.osm.importer.OSMEntity;
+import org.neo4j.gis.osm.importer.OSMInput;
+import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.schema.IndexDefinition;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Applies osmChange create, modify and delete operations to a database created by the OSMImportTool, producing the
+ * same graph model as a full import of the updated data would have, with the tags stored inline if the database was
+ * imported with inline tags. Entities are found by their OSM id, using an index on each of <code>node_osm_id</code>,
+ * <code>way_osm_id</code> and <code>relation_osm_id</code>, which is created if it does not already exist. Changes
+ * are committed in batches, to limit transaction state and allow the database to remain in use while the changes are
+ * applied.
+ * <p>
+ * Only the complete OSM model is supported, not the routing-only model. Changes to way nodes do not update any
+ * Intersection labels or ROUTE relationships, so the 'spatial.osm.routeIntersection' procedure should be run again
+ * for the affected nodes.
+ */
+public class OSMChangeApplier {
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+    private static final int MAX_ATTEMPTS = 10;
+    // Properties that can be set from the OSM attributes and tags, and so are replaced when an entity is modified
+    private static final Set<String> OSM_PROPERTIES = new HashSet<>(Arrays.asList(
+            "lat", "lon", "location", "version", "timestamp", "changeset", "user", "uid", "visible", "name", "oneway", "highway"));
+
+    private final GraphDatabaseService db;
+    private final int batchSize;
+    private final PrintStream out;
+    private long progressInterval = 10000;
+
+    public OSMChangeApplier(GraphDatabaseService db, int batchSize, PrintStream out) {
+        this.db = db;
+        this.batchSize = batchSize;
+        this.out = out;
+    }
+
+    public OSMChangeApplier(GraphDatabaseService db) {
+        this(db, DEFAULT_BATCH_SIZE, System.out);
+    }
+
+    /**
+     * Create any missing OSM id indexes, and wait for all indexes to come online.
+     */
+    public void ensureIndexes() {
+        try (Transaction tx = db.beginTx()) {
+            for (OSMEntity.Type type : OSMEntity.Type.values()) {
+                if (!hasIndex(tx, type)) {
+                    out.println("Creating index on :" + type.label.name() + "(" + type.idProperty + ")");
+                    tx.schema().indexFor(type.label).on(type.idProperty).create();
+                }
+            }
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            tx.schema().awaitIndexesOnline(1, TimeUnit.HOURS);
+            tx.commit();
+        }
+    }
+
+    private static boolean hasIndex(Transaction tx, OSMEntity.Type type) {
+        for (IndexDefinition index : tx.schema().getIndexes(type.label)) {
+            Iterator<String> keys = index.getPropertyKeys().iterator();
+            if (keys.hasNext() && keys.next().equals(type.idProperty) && !keys.hasNext()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Apply all changes in order, committing every batchSize changes.
+     */
+    public Stats apply(Iterator<OSMChange> changes) {
+        return apply(changes, new Stats());
+    }
+
+    /**
+     * Apply all changes in order, adding to the statistics of previously applied changes.
+     */
+    public Stats apply(Iterator<OSMChange> changes, Stats stats) {
+        long lastReport = System.currentTimeMillis();
+        ArrayList<OSMChange> batch = new ArrayList<>(batchSize);
+        while (changes.hasNext()) {
+            batch.clear();
+            while (batch.size() < batchSize && changes.hasNext()) {
+                batch.add(changes.next());
+            }
+            stats.add(applyBatch(batch));
+            long now = System.currentTimeMillis();
+            if (now - lastReport > progressInterval) {
+                out.println("Applied " + stats.changes() + " changes in " + stats.batches + " transactions: " + stats.changesPerSecond() + " changes/sec");
+                lastReport = now;
+            }
+        }
+        stats.finished = System.currentTimeMillis();
+        return stats;
+    }
+
+    /**
+     * Apply a window of merged changes, in which each entity is changed at most once, so the changes to different
+     * entities of the same type can be made in any order. Each type is applied in partitions keyed by OSM id, with one
+     * thread per partition: first the creates and modifies of nodes, ways and then relations, so that all members
+     * exist before they are referenced, and then the deletes in the reverse order.
+     */
+    public Stats apply(ChangeWindow window, int threads, Stats stats) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            applyPartitioned(executor, threads, window.updates(OSMEntity.Type.NODE), stats);
+            applyPartitioned(executor, threads, window.updates(OSMEntity.Type.WAY), stats);
+            // Relations with a relation member changed in this window are applied after all others, in a single thread
+            // with their members first, so that nested relations created in the same window find all their members
+            ArrayList<OSMChange> independent = new ArrayList<>();
+            ArrayList<OSMChange> dependent = new ArrayList<>();
+            for (OSMChange change : window.updates(OSMEntity.Type.RELATION)) {
+                (hasMemberIn(change, window) ? dependent : independent).add(change);
+            }
+            applyPartitioned(executor, threads, independent, stats);
+            applyPartitioned(executor, 1, membersFirst(dependent), stats);
+            applyPartitioned(executor, threads, window.deletes(OSMEntity.Type.RELATION), stats);
+            applyPartitioned(executor, threads, window.deletes(OSMEntity.Type.WAY), stats);
+            applyPartitioned(executor, threads, window.deletes(OSMEntity.Type.NODE), stats);
+        } finally {
+            executor.shutdown();
+        }
+        stats.finished = System.currentTimeMillis();
+        return stats;
+    }
+
+    private static boolean hasMemberIn(OSMChange relation, ChangeWindow window) {
+        for (Map<String, Object> member : relation.members) {
+            if ("relation".equals(member.get("type")) && window.contains(OSMEntity.Type.RELATION, Long.parseLong(member.get("ref").toString()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The relations ordered so that each comes after those of its members that are among them. Relations that are
+     * members of each other, directly or indirectly, keep their order, and the first of them misses its member.
+     */
+    static List<OSMChange> membersFirst(List<OSMChange> relations) {
+        HashMap<Long, OSMChange> byId = new HashMap<>();
+        for (OSMChange relation : relations) {
+            byId.put(relation.id, relation);
+        }
+        ArrayList<OSMChange> ordered = new ArrayList<>(relations.size());
+        HashSet<Long> visited = new HashSet<>();
+        for (OSMChange relation : relations) {
+            addMembersFirst(relation, byId, visited, ordered);
+        }
+        return ordered;
+    }
+
+    private static void addMembersFirst(OSMChange relation, Map<Long, OSMChange> byId, Set<Long> visited, List<OSMChange> ordered) {
+        if (!visited.add(relation.id)) {
+            return;
+        }
+        for (Map<String, Object> member : relation.members) {
+            if ("relation".equals(member.get("type"))) {
+                OSMChange memberRelation = byId.get(Long.parseLong(member.get("ref").toString()));
+                if (memberRelation != null) {
+                    addMembersFirst(memberRelation, byId, visited, ordered);
+                }
+            }
+        }
+        ordered.add(relation);
+    }
+
+    private void applyPartitioned(ExecutorService executor, int partitions, List<OSMChange> changes, Stats stats) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        ArrayList<List<OSMChange>> partitioned = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            partitioned.add(new ArrayList<>());
+        }
+        for (OSMChange change : changes) {
+            partitioned.get(Math.floorMod(change.id, partitions)).add(change);
+        }
+        ArrayList<Future<Stats>> results = new ArrayList<>(partitions);
+        for (List<OSMChange> partition : partitioned) {
+            results.add(executor.submit(() -> applyBatches(partition)));
+        }
+        try {
+            for (Future<Stats> result : results) {
+                stats.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while applying changes", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to apply changes: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Stats applyBatches(List<OSMChange> changes) {
+        Stats stats = new Stats();
+        for (int from = 0; from < changes.size(); from += batchSize) {
+            stats.add(applyBatch(changes.subList(from, Math.min(changes.size(), from + batchSize))));
+        }
+        return stats;
+    }
+
+    /**
+     * Apply the changes in a single transaction. Concurrent transactions creating relationships to the same nodes can
+     * deadlock, in which case the whole batch is retried.
+     */
+    private Stats applyBatch(List<OSMChange> changes) {
+        for (int attempt = 1; ; attempt++) {
+            Stats stats = new Stats();
+            try (Transaction tx = db.beginTx()) {
+                Batch batch = new Batch(tx, stats, OSMModel.hasInlineTags(tx));
+                changes.forEach(batch::apply);
+                tx.commit();
+                stats.batches++;
+                stats.retries = attempt - 1;
+                return stats;
+            } catch (TransientFailureException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public static class Stats {
+        private final long started = System.currentTimeMillis();
+        private long finished = 0;
+        public long created = 0;
+        public long modified = 0;
+        public long deleted = 0;
+        public long notFound = 0;
+        public long missingReferences = 0;
+        public long batches = 0;
+        public long retries = 0;
+
+        public void add(Stats other) {
+            created += other.created;
+            modified += other.modified;
+            deleted += other.deleted;
+            notFound += other.notFound;
+            missingReferences += other.missingReferences;
+            batches += other.batches;
+            retries += other.retries;
+        }
+
+        public long changes() {
+            return created + modified + deleted + notFound;
+        }
+
+        public long elapsedMillis() {
+            return (finished > 0 ? finished : System.currentTimeMillis()) - started;
+        }
+
+        public long changesPerSecond() {
+            return 1000 * changes() / Math.max(1, elapsedMillis());
+        }
+
+        public String toString() {
+            return "Applied " + changes() + " changes (" + created + " created, " + modified + " modified, " + deleted + " deleted, "
+                    + notFound + " not found) with " + missingReferences + " missing references in " + batches + " transactions and "
+                    + elapsedMillis() + "ms: " + changesPerSecond() + " changes/sec" + (retries > 0 ? " (" + retries + " retried)" : "");
+        }
+    }
+
+    private static class Batch {
+        private final Transaction tx;
+        private final Stats stats;
+        private final boolean inlineTags;
+
+        private Batch(Transaction tx, Stats stats, boolean inlineTags) {
+            this.tx = tx;
+            this.stats = stats;
+            this.inlineTags = inlineTags;
+        }
+
+        private void apply(OSMChange change) {
+            Node entity = tx.findNode(change.type.label, change.type.idProperty, change.id);
+            if (change.action == OSMChange.Action.DELETE) {
+                if (entity == null) {
+                    stats.notFound++;
+                } else {
+                    delete(change.type, entity);
+                    stats.deleted++;
+                }
+            } else {
+                // Creates of existing entities and modifies of missing ones are both likely when the database was
+                // imported from a snapshot taken part way through the change period, so both are accepted
+                if (entity == null) {
+                    entity = tx.createNode(change.type.label);
+                    stats.created++;
+                } else {
+                    stats.modified++;
+                }
+                update(change, entity);
+            }
+        }
+
+        private void update(OSMChange change, Node entity) {
+            Map<String, Object> properties = new LinkedHashMap<>(change.properties);
+            if (change.type == OSMEntity.Type.WAY && change.tags.containsKey("highway")) {
+                properties.put("oneway", OSMInput.getRoadDirection(change.tags).toString());
+                properties.put("highway", change.tags.get("highway"));
+            }
+            if (change.tags.containsKey("name")) {
+                properties.put("name", change.tags.get("name"));
+            }
+            if (inlineTags) {
+                // As in the importer, the attribute properties, and those derived from the tags, take precedence
+                change.tags.forEach(properties::putIfAbsent);
+            }
+            // Without an OSMTags node, all other properties are inline tags, which are replaced by the new tags
+            boolean replaceInline = inlineTags || !entity.hasRelationship(Direction.OUTGOING, OSMModel.TAGS);
+            for (String key : entity.getPropertyKeys()) {
+                boolean replaced = OSM_PROPERTIES.contains(key) || replaceInline && !OSMModel.ENTITY_PROPERTIES.contains(key);
+                if (replaced && !properties.containsKey(key)) {
+                    entity.removeProperty(key);
+                }
+            }
+            properties.forEach(entity::setProperty);
+            deleteTags(entity);
+            if (!inlineTags && !change.tags.isEmpty()) {
+                Node tags = tx.createNode(OSMModel.OSMTags);
+                change.tags.forEach(tags::setProperty);
+                entity.createRelationshipTo(tags, OSMModel.TAGS);
+            }
+            if (change.type == OSMEntity.Type.WAY) {
+                deleteWayNodes(entity);
+                createWayNodes(entity, change.wayNodes, OSMInput.getRoadDirection(change.tags));
+            } else if (change.type == OSMEntity.Type.RELATION) {
+                for (Relationship rel : entity.getRelationships(Direction.OUTGOING, OSMModel.MEMBER)) {
+                    rel.delete();
+                }
+                createMembers(entity, change);
+            }
+        }
+
+        /**
+         * Build the FIRST_NODE, NEXT and NODE chain of OSMWayNode proxies in the same way as the importer does.
+         */
+        private void createWayNodes(Node way, List<Long> wayNodes, OSMInput.RoadDirection direction) {
+            HashMap<Long, Node> madeWayNodes = new HashMap<>(wayNodes.size());
+            Node previousWayNode = null;
+            long previousId = -1;
+            for (long osmId : wayNodes) {
+                if (osmId == previousId) {
+                    continue;
+                }
+                Node wayNode = madeWayNodes.get(osmId);
+                if (wayNode == null) {
+                    wayNode = tx.createNode(OSMModel.OSMWayNode);
+                    madeWayNodes.put(osmId, wayNode);
+                    Node osmNode = tx.findNode(OSMEntity.Type.NODE.label, OSMEntity.Type.NODE.idProperty, osmId);
+                    if (osmNode == null) {
+                        stats.missingReferences++;
+                    } else {
+                        wayNode.createRelationshipTo(osmNode, OSMModel.NODE);
+                    }
+                }
+                if (previousWayNode == null) {
+                    way.createRelationshipTo(wayNode, OSMModel.FIRST_NODE);
+                } else if (direction == OSMInput.RoadDirection.BACKWARD) {
+                    wayNode.createRelationshipTo(previousWayNode, OSMModel.NEXT);
+                } else {
+                    previousWayNode.createRelationshipTo(wayNode, OSMModel.NEXT);
+                }
+                previousWayNode = wayNode;
+                previousId = osmId;
+            }
+        }
+
+        private void createMembers(Node relation, OSMChange change) {
+            Node previousMember = null;
+            for (Map<String, Object> memberProps : change.members) {
+                OSMEntity.Type memberType = OSMEntity.Type.forElement(String.valueOf(memberProps.get("type")));
+                if (memberType == null) {
+                    System.err.println("Unknown member type: " + memberProps);
+                    continue;
+                }
+                long ref = Long.parseLong(memberProps.get("ref").toString());
+                Node member = tx.findNode(memberType.label, memberType.idProperty, ref);
+                if (member == null) {
+                    stats.missingReferences++;
+                } else if (!member.equals(previousMember) && !member.equals(relation)) {
+                    Relationship rel = relation.createRelationshipTo(member, OSMModel.MEMBER);
+                    String role = (String) memberProps.get("role");
+                    if (role != null && role.length() > 0) {
+                        rel.setProperty("role", role);
+                    }
+                    previousMember = member;
+                }
+            }
+        }
+
+        private void delete(OSMEntity.Type type, Node entity) {
+            deleteTags(entity);
+            if (type == OSMEntity.Type.WAY) {
+                deleteWayNodes(entity);
+            }
+            detachDelete(entity);
+        }
+
+        /**
+         * Tags imported with shared tag sets can belong to many entities, so they are only deleted once unused.
+         */
+        private void deleteTags(Node entity) {
+            for (Relationship rel : entity.getRelationships(Direction.OUTGOING, OSMModel.TAGS)) {
+                Node tags = rel.getEndNode();
+                rel.delete();
+                if (!tags.hasRelationship(Direction.INCOMING, OSMModel.TAGS)) {
+                    detachDelete(tags);
+                }
+            }
+        }
+
+        /**
+         * Way nodes belong to only one way, and are all reachable from the first way node by NEXT relationships,
+         * in either direction, since one-way streets can be reversed.
+         */
+        private void deleteWayNodes(Node way) {
+            ArrayList<Node> wayNodes = new ArrayList<>();
+            HashSet<Long> seen = new HashSet<>();
+            for (Relationship rel : way.getRelationships(Direction.OUTGOING, OSMModel.FIRST_NODE)) {
+                Node first = rel.getEndNode();
+                if (seen.add(first.getId())) {
+                    wayNodes.add(first);
+                }
+            }
+            for (int i = 0; i < wayNodes.size(); i++) {
+                for (Relationship rel : wayNodes.get(i).getRelationships(OSMModel.NEXT)) {
+                    Node other = rel.getOtherNode(wayNodes.get(i));
+                    if (seen.add(other.getId())) {
+                        wayNodes.add(other);
+                    }
+                }
+            }
+            wayNodes.forEach(this::detachDelete);
+        }
+
+        private void detachDelete(Node node) {
+            for (Relationship rel : node.getRelationships()) {
+                rel.delete();
+            }
+            node.delete();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.neo4j.gis.osm.update;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.neo4j.gis.osm.importer.OSMEntity;
+import org.neo4j.gis.osm.importer.OSMValues;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.Values;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Streams the changes in an osmChange (.osc) file, in file order. The file looks like:
+ * <pre>
+ * &lt;osmChange version="0.6"&gt;
+ *   &lt;modify&gt;
+ *     &lt;node id="1" version="2" lat="56.04" lon="12.96" ...&gt;&lt;tag k="name" v="..."/&gt;&lt;/node&gt;
+ *   &lt;/modify&gt;
+ *   &lt;delete&gt;
+ *     &lt;way id="2" version="3" .../&gt;
+ *   &lt;/delete&gt;
+ * &lt;/osmChange&gt;
+ * </pre>
+ * Files ending in .gz or .bz2 are decompressed while reading, as is done by the importer.
+ */
+public class OSMChangeReader implements Iterator<OSMChange>, AutoCloseable {
+    private final String name;
+    private final InputStream input;
+    private final XMLStreamReader parser;
+    private OSMChange.Action action = null;
+    private OSMChange current = null;
+    private OSMChange next = null;
+
+    public OSMChangeReader(String osmChangeFile) throws IOException {
+        this(osmChangeFile, openFile(osmChangeFile));
+    }
+
+    public OSMChangeReader(String name, InputStream input) {
+        this.name = name;
+        this.input = input;
+        try {
+            this.parser = XMLInputFactory.newInstance().createXMLStreamReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed to open osmChange XML '" + name + "': " + e.getMessage(), e);
+        }
+    }
+
+    private static InputStream openFile(String osmChangeFile) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(osmChangeFile));
+        if (osmChangeFile.endsWith(".bz2")) {
+            return new BZip2CompressorInputStream(input);
+        } else if (osmChangeFile.endsWith(".gz")) {
+            return new GzipCompressorInputStream(input);
+        } else {
+            return input;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public OSMChange next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more changes in " + name);
+        }
+        OSMChange change = next;
+        next = null;
+        return change;
+    }
+
+    private OSMChange readNext() {
+        try {
+            while (parser.hasNext()) {
+                int event = parser.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = parser.getLocalName();
+                    if (current != null) {
+                        addChild(element);
+                    } else if (OSMChange.Action.forElement(element) != null) {
+                        action = OSMChange.Action.forElement(element);
+                    } else if (action != null && OSMEntity.Type.forElement(element) != null) {
+                        OSMEntity.Type type = OSMEntity.Type.forElement(element);
+                        Map<String, Object> properties = extractProperties(type.element);
+                        current = new OSMChange(action, type, (Long) properties.get(type.idProperty), properties);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String element = parser.getLocalName();
+                    if (current != null && element.equals(current.type.element)) {
+                        OSMChange change = current;
+                        current = null;
+                        return change;
+                    } else if (OSMChange.Action.forElement(element) != null) {
+                        action = null;
+                    }
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed to parse osmChange XML '" + name + "': " + e.getMessage(), e);
+        }
+    }
+
+    private void addChild(String element) {
+        Map<String, Object> properties = extractProperties(null);
+        switch (element) {
+            case "tag":
+                current.tags.put(properties.get("k").toString(), properties.get("v").toString());
+                break;
+            case "nd":
+                current.wayNodes.add(Long.parseLong(properties.get("ref").toString()));
+                break;
+            case "member":
+                current.members.add(properties);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Map<String, Object> extractProperties(String name) {
+        LinkedHashMap<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String prop = parser.getAttributeLocalName(i);
+            String value = parser.getAttributeValue(i);
+            if (name != null && prop.equals("id")) {
+                properties.put(name + "_osm_id", Long.parseLong(value));
+            } else if (prop.equals("lat") || prop.equals("lon")) {
+                properties.put(prop, OSMValues.parseDecimal(value));
+            } else if (name != null && prop.equals("version")) {
+                properties.put(prop, Integer.parseInt(value));
+            } else if (prop.equals("visible")) {
+                if (!value.equals("true") && !value.equals("1")) {
+                    properties.put(prop, false);
+                }
+            } else if (prop.equals("timestamp")) {
+                try {
+                    properties.put(prop, OSMValues.parseTimestamp(value));
+                } catch (DateTimeParseException e) {
+                    System.err.println("Error parsing timestamp: " + e.getMessage());
+                }
+            } else {
+                properties.put(prop, value);
+            }
+        }
+        if (properties.containsKey("lat") && properties.containsKey("lon")) {
+            properties.put("location", Values.pointValue(CoordinateReferenceSystem.WGS84, (double) properties.get("lon"), (double) properties.get("lat")));
+        }
+        return properties;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            parser.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to close osmChange XML '" + name + "': " + e.getMessage(), e);
+        } finally {
+            input.close();
+        }
+    }
+}
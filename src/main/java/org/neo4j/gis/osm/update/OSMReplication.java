@@ -0,0 +1,162 @@
+package org.neo4j.gis.osm.update;
+
+import org.neo4j.graphdb.*;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Properties;
+
+/**
+ * Catches up on a backlog of replication diffs in a local copy of an OSM replication directory, as published by
+ * planet.openstreetmap.org and the extract providers. The directory has a top level <code>state.txt</code> with the
+ * latest sequence number, and each diff is stored by sequence number, with sequence 1234 being in
+ * <code>000/001/234.osc.gz</code> with its own state in <code>000/001/234.state.txt</code>.
+ * <p>
+ * Consecutive diffs are merged into windows in memory, and each window is applied in parallel, after which the last
+ * applied sequence number is stored on the single <code>(:OSMReplication)</code> node, so that the next run continues
+ * from there.
+ */
+public class OSMReplication {
+    public static final Label OSMReplication = Label.label("OSMReplication");
+    private static final DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private final GraphDatabaseService db;
+    private final File directory;
+    private final OSMChangeApplier applier;
+    private final int windowSize;
+    private final int threads;
+    private final PrintStream out;
+
+    public OSMReplication(GraphDatabaseService db, File directory, OSMChangeApplier applier, int windowSize, int threads, PrintStream out) {
+        this.db = db;
+        this.directory = directory;
+        this.applier = applier;
+        this.windowSize = windowSize;
+        this.threads = threads;
+        this.out = out;
+    }
+
+    public static class State {
+        public final long sequenceNumber;
+        public final LocalDateTime timestamp;
+
+        State(long sequenceNumber, LocalDateTime timestamp) {
+            this.sequenceNumber = sequenceNumber;
+            this.timestamp = timestamp;
+        }
+
+        static State read(File stateFile) throws IOException {
+            Properties properties = new Properties();
+            try (InputStream input = new FileInputStream(stateFile)) {
+                properties.load(input);
+            }
+            String sequenceNumber = properties.getProperty("sequenceNumber");
+            if (sequenceNumber == null) {
+                throw new IOException("No sequenceNumber in " + stateFile);
+            }
+            LocalDateTime timestamp = null;
+            String value = properties.getProperty("timestamp");
+            if (value != null) {
+                try {
+                    timestamp = LocalDateTime.parse(value, timestampFormat);
+                } catch (DateTimeParseException e) {
+                    System.err.println("Error parsing timestamp in " + stateFile + ": " + e.getMessage());
+                }
+            }
+            return new State(Long.parseLong(sequenceNumber.trim()), timestamp);
+        }
+    }
+
+    /**
+     * The latest state available in the replication directory.
+     */
+    public State latest() throws IOException {
+        return State.read(new File(directory, "state.txt"));
+    }
+
+    /**
+     * The sequence number of the last diff applied to the database, or null if no diffs have been applied.
+     */
+    public Long lastApplied() {
+        try (Transaction tx = db.beginTx()) {
+            try (ResourceIterator<Node> nodes = tx.findNodes(OSMReplication)) {
+                return nodes.hasNext() ? (Long) nodes.next().getProperty("sequenceNumber", null) : null;
+            }
+        }
+    }
+
+    private void setLastApplied(long sequenceNumber, LocalDateTime timestamp) {
+        try (Transaction tx = db.beginTx()) {
+            Node node;
+            try (ResourceIterator<Node> nodes = tx.findNodes(OSMReplication)) {
+                node = nodes.hasNext() ? nodes.next() : tx.createNode(OSMReplication);
+            }
+            node.setProperty("sequenceNumber", sequenceNumber);
+            if (timestamp != null) {
+                node.setProperty("timestamp", timestamp);
+            }
+            node.setProperty("directory", directory.getAbsolutePath());
+            tx.commit();
+        }
+    }
+
+    static String sequencePath(long sequenceNumber) {
+        String digits = String.format("%09d", sequenceNumber);
+        return digits.substring(0, 3) + File.separator + digits.substring(3, 6) + File.separator + digits.substring(6);
+    }
+
+    File changeFile(long sequenceNumber) throws FileNotFoundException {
+        String path = sequencePath(sequenceNumber);
+        for (String extension : new String[]{".osc.gz", ".osc.bz2", ".osc"}) {
+            File file = new File(directory, path + extension);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        throw new FileNotFoundException("No change file for sequence " + sequenceNumber + " in " + new File(directory, path).getParent());
+    }
+
+    private State stateAfter(long sequenceNumber) throws IOException {
+        File stateFile = new File(directory, sequencePath(sequenceNumber) + ".state.txt");
+        return stateFile.exists() ? State.read(stateFile) : new State(sequenceNumber, null);
+    }
+
+    /**
+     * Apply all diffs after the last applied sequence number up to the latest state of the replication directory.
+     *
+     * @param startAfter sequence number of the data that was originally imported, used only if no diffs have been
+     *                   applied yet, or null to require a previously stored sequence number
+     */
+    public OSMChangeApplier.Stats catchUp(Long startAfter) throws IOException {
+        Long last = lastApplied();
+        if (last == null) {
+            last = startAfter;
+        }
+        if (last == null) {
+            throw new IllegalStateException("No replication sequence number found in the database, the sequence number of the imported data needs to be specified");
+        }
+        long latest = latest().sequenceNumber;
+        out.println("Replicating from sequence " + (last + 1) + " to " + latest + " in windows of " + windowSize + " diffs");
+        OSMChangeApplier.Stats stats = new OSMChangeApplier.Stats();
+        while (last < latest) {
+            long end = Math.min(last + windowSize, latest);
+            ChangeWindow window = new ChangeWindow();
+            for (long sequence = last + 1; sequence <= end; sequence++) {
+                try (OSMChangeReader changes = new OSMChangeReader(changeFile(sequence).getPath())) {
+                    window.addAll(changes);
+                }
+            }
+            long startTime = System.currentTimeMillis();
+            applier.apply(window, threads, stats);
+            State state = stateAfter(end);
+            setLastApplied(end, state.timestamp);
+            out.println("Applied sequences " + (last + 1) + " to " + end + ": merged " + window.read() + " changes into " + window.size()
+                    + " in " + (System.currentTimeMillis() - startTime) + "ms, " + (latest - end) + " diffs remaining"
+                    + (state.timestamp == null ? "" : ", now at " + state.timestamp));
+            last = end;
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,148 @@
+package org.neo4j.gis.osm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with <code>-rf csv</code>, usually from runs of the benchmark profile on two
+ * commits, and prints the change of every benchmark found in both. A change is only marked as faster or slower when
+ * the scores differ by more than the sum of their errors, so that the noise between runs is not taken for a
+ * regression. The benchmarks are matched by name and parameters, so results with other parameters are listed as
+ * only found in one of the files.
+ * <pre>
+ * java -cp target/test-classes org.neo4j.gis.osm.BenchmarkComparison before.csv after.csv
+ * </pre>
+ */
+public class BenchmarkComparison {
+
+    static class Result {
+        final String key;
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(String key, double score, double error, String unit) {
+            this.key = key;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        /**
+         * Whether a higher score is better, as for throughput, rather than for the time of each operation.
+         */
+        boolean higherIsBetter() {
+            return unit.startsWith("ops/");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.csv> <compared.csv>");
+            System.exit(1);
+        }
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> compared = read(new File(args[1]));
+        for (String line : compare(baseline, compared)) {
+            System.out.println(line);
+        }
+    }
+
+    static List<String> compare(Map<String, Result> baseline, Map<String, Result> compared) {
+        List<String> lines = new ArrayList<>();
+        for (Result before : baseline.values()) {
+            Result after = compared.get(before.key);
+            if (after == null) {
+                lines.add(String.format(Locale.ROOT, "%-70s only in baseline", before.key));
+                continue;
+            }
+            double change = before.score == 0 ? 0 : 100.0 * (after.score - before.score) / before.score;
+            String verdict = "within error";
+            if (Math.abs(after.score - before.score) > before.error + after.error) {
+                verdict = (after.score > before.score) == before.higherIsBetter() ? "FASTER" : "SLOWER";
+            }
+            lines.add(String.format(Locale.ROOT, "%-70s %14.3f -> %14.3f %s %+7.1f%% %s", before.key, before.score, after.score, after.unit, change, verdict));
+        }
+        for (Result after : compared.values()) {
+            if (!baseline.containsKey(after.key)) {
+                lines.add(String.format(Locale.ROOT, "%-70s only in compared", after.key));
+            }
+        }
+        return lines;
+    }
+
+    static Map<String, Result> read(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException("Empty JMH result file " + file);
+        }
+        List<String> header = split(lines.get(0));
+        int benchmark = column(header, "Benchmark", file);
+        int score = column(header, "Score", file);
+        int error = column(header, "Score Error (99.9%)", file);
+        int unit = column(header, "Unit", file);
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> values = split(line);
+            StringBuilder key = new StringBuilder(values.get(benchmark));
+            String separator = " ";
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && !values.get(i).isEmpty()) {
+                    key.append(separator).append(header.get(i).substring(7)).append('=').append(values.get(i));
+                    separator = ",";
+                }
+            }
+            results.put(key.toString(), new Result(key.toString(), parse(values.get(score)), parse(values.get(error)), values.get(unit)));
+        }
+        return results;
+    }
+
+    private static int column(List<String> header, String name, File file) throws IOException {
+        int index = header.indexOf(name);
+        if (index < 0) {
+            throw new IOException("Not a JMH CSV result file, missing column '" + name + "': " + file);
+        }
+        return index;
+    }
+
+    private static double parse(String value) {
+        return value.isEmpty() || value.equals("NaN") ? 0 : Double.parseDouble(value);
+    }
+
+    /**
+     * The values of a line of CSV, with quotes around values removed.
+     */
+    static List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
@@ -0,0 +1,563 @@
+package org.neo4j.gis.osm;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.neo4j.internal.helpers.Args;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Writes a synthetic OSM XML file of about the given number of entities, for testing and benchmarking imports at
+ * scales far beyond the samples. The data is a city of square blocks:
+ * <ul>
+ *     <li>Streets along the rows and columns of the grid, sharing a node at every intersection, with interior nodes
+ *     between the intersections. Each street is split into ways of at most ten blocks, as long streets are mapped,
+ *     and has the same highway class, name and direction on all of them, some of the streets being one-way in either
+ *     direction.</li>
+ *     <li>Buildings in each block, which are closed ways, and a point of interest.</li>
+ *     <li>A park in every sixteenth block, which is a multipolygon relation of an outer and an inner closed way.</li>
+ *     <li>A turn restriction relation at every fiftieth intersection, from a row street over the intersection to the
+ *     column street.</li>
+ * </ul>
+ * The tag values are drawn from frequency tables shaped like those of real extracts, where a few values are most of
+ * the tags, and a few mappers made most of the edits. Everything is a function of the seed and the entity ids, so the
+ * same arguments always give the same file, however large.
+ * <p>
+ * Optionally some nodes and ways are written twice, as happens when extracts overlap, and some nodes are written after
+ * the ways instead of in id order, as happens in files concatenated or edited by other tools. Importing such files
+ * needs --skip-duplicate-nodes or --sort-input.
+ * <pre>
+ * java -cp "target/test-classes:target/dependency/*" org.neo4j.gis.osm.OSMDataGenerator \
+ *   --entities 1e7 --seed 42 --duplicates 0.001 --out-of-order 0.001 target/generated.osm
+ * </pre>
+ * Files ending in .bz2 or .gz are compressed while writing.
+ */
+public class OSMDataGenerator {
+    private static final String ENTITIES = "entities";
+    private static final String SEED = "seed";
+    private static final String DUPLICATES = "duplicates";
+    private static final String OUT_OF_ORDER = "out-of-order";
+
+    // Nodes between two intersections, buildings in each block, and blocks in each way of a street
+    private static final int SEGMENT_NODES = 3;
+    private static final int BUILDINGS = 2;
+    private static final int WAY_BLOCKS = 10;
+    private static final int PARK_EVERY = 16;
+    private static final int RESTRICTION_EVERY = 50;
+    // About 19 entities are written for each block, which decides the size of the grid
+    private static final double ENTITIES_PER_BLOCK = 19;
+    // Blocks of about a hundred meters, in southern Sweden like the samples
+    private static final double SPACING = 0.001;
+    private static final double BASE_LAT = 56.0;
+    private static final double BASE_LON = 12.0;
+    private static final long FIRST_TIMESTAMP = Instant.parse("2010-01-01T00:00:00Z").getEpochSecond();
+    private static final long TIMESTAMP_RANGE = 10L * 365 * 24 * 3600;
+
+    private static final Weighted HIGHWAYS = new Weighted(
+            "residential", 55, "service", 15, "unclassified", 10, "tertiary", 9, "secondary", 6, "primary", 4, "living_street", 1);
+    private static final Weighted ONEWAY = new Weighted(null, 85, "yes", 12, "-1", 3);
+    private static final Weighted STREET_NAMES = new Weighted(
+            "Storgatan", 8, "Kungsgatan", 6, "Drottninggatan", 5, "J\u00e4rnv\u00e4gsgatan", 4, "Skolgatan", 4, "Kyrkogatan", 3,
+            "\u00d6stra Vallgatan", 2, "\u00c5sgatan", 2, "Parkv\u00e4gen", 2, "Bj\u00f6rkv\u00e4gen", 2, "Industrigatan", 1, "K\u00e4rleksgatan", 1);
+    private static final Weighted SURFACE = new Weighted(null, 55, "asphalt", 35, "paving_stones", 6, "gravel", 4);
+    private static final Weighted BUILDING = new Weighted("yes", 60, "house", 25, "apartments", 10, "garage", 5);
+    private static final Weighted POINTS_OF_INTEREST = new Weighted(
+            "amenity=parking", 18, "amenity=bench", 12, "amenity=restaurant", 8, "shop=convenience", 7, "amenity=cafe", 6,
+            "amenity=place_of_worship", 5, "amenity=school", 5, "amenity=fast_food", 5, "shop=supermarket", 5,
+            "amenity=bank", 4, "amenity=pharmacy", 4, "shop=clothes", 4, "amenity=post_box", 4, "tourism=hotel", 3,
+            "amenity=fuel", 3, "shop=bakery", 3, "amenity=library", 2, "leisure=playground", 2);
+    private static final Weighted RESTRICTIONS = new Weighted(
+            "no_left_turn", 45, "no_u_turn", 20, "no_right_turn", 15, "only_straight_on", 12, "only_right_turn", 8);
+
+    private final long seed;
+    private final double duplicates;
+    private final double outOfOrder;
+    private final int grid;
+    private final int spans;
+    private final long blocks;
+    private final long parks;
+    // The first ids of each kind of node and way, which are numbered in the order written
+    private final long rowNodes, columnNodes, buildingNodes, poiNodes, parkNodes;
+    private final long columnWays, buildingWays, parkWays;
+
+    private Writer out;
+    private boolean deferred;
+    private final StringBuilder line = new StringBuilder(256);
+    private final Stats stats = new Stats();
+
+    public OSMDataGenerator(long entities, long seed) {
+        this(entities, seed, 0, 0);
+    }
+
+    /**
+     * @param duplicates the fraction of the nodes and ways written twice
+     * @param outOfOrder the fraction of the nodes written after the ways
+     */
+    public OSMDataGenerator(long entities, long seed, double duplicates, double outOfOrder) {
+        this.seed = seed;
+        this.duplicates = duplicates;
+        this.outOfOrder = outOfOrder;
+        this.grid = (int) Math.max(3, Math.ceil(Math.sqrt(entities / ENTITIES_PER_BLOCK)) + 1);
+        this.spans = (grid - 2) / WAY_BLOCKS + 1;
+        this.blocks = (long) (grid - 1) * (grid - 1);
+        this.parks = (blocks + PARK_EVERY - 1) / PARK_EVERY;
+        long segmentNodes = (long) grid * (grid - 1) * SEGMENT_NODES;
+        this.rowNodes = (long) grid * grid;
+        this.columnNodes = rowNodes + segmentNodes;
+        this.buildingNodes = columnNodes + segmentNodes;
+        this.poiNodes = buildingNodes + blocks * BUILDINGS * 4;
+        this.parkNodes = poiNodes + blocks;
+        this.columnWays = (long) grid * spans;
+        this.buildingWays = columnWays + (long) grid * spans;
+        this.parkWays = buildingWays + blocks * BUILDINGS;
+    }
+
+    /**
+     * The number of entities written, not counting the duplicates.
+     */
+    public static class Stats {
+        public long nodes;
+        public long ways;
+        public long relations;
+        public long duplicates;
+        public long deferred;
+
+        public long entities() {
+            return nodes + ways + relations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes, %d ways and %d relations, with %d duplicates and %d nodes out of order", nodes, ways, relations, duplicates, deferred);
+        }
+    }
+
+    public Stats write(File file) throws IOException {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        if (file.getName().endsWith(".bz2")) {
+            output = new BZip2CompressorOutputStream(output);
+        } else if (file.getName().endsWith(".gz")) {
+            output = new GzipCompressorOutputStream(output);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16)) {
+            write(writer);
+        }
+        return stats;
+    }
+
+    public Stats write(Writer writer) throws IOException {
+        out = writer;
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osm version=\"0.6\" generator=\"OSMDataGenerator\">\n");
+        line.setLength(0);
+        line.append(" <bounds minlat=\"");
+        decimal(BASE_LAT - SPACING).append("\" minlon=\"");
+        decimal(BASE_LON - SPACING).append("\" maxlat=\"");
+        decimal(BASE_LAT + grid * SPACING).append("\" maxlon=\"");
+        decimal(BASE_LON + grid * SPACING).append("\"/>\n");
+        out.append(line);
+        deferred = false;
+        writeNodes();
+        writeWays();
+        if (outOfOrder > 0) {
+            deferred = true;
+            writeNodes();
+        }
+        writeRelations();
+        out.write("</osm>\n");
+        out.flush();
+        return stats;
+    }
+
+    private void writeNodes() throws IOException {
+        for (int row = 0; row < grid; row++) {
+            for (int column = 0; column < grid; column++) {
+                long id = intersection(row, column);
+                node(id, lat(row, column), lon(row, column), unit(id, 1) < 0.05 ? "highway=traffic_signals" : null);
+            }
+        }
+        for (int row = 0; row < grid; row++) {
+            for (int segment = 0; segment < grid - 1; segment++) {
+                for (int k = 0; k < SEGMENT_NODES; k++) {
+                    long id = rowNode(row, segment, k);
+                    double along = (k + 1.0) / (SEGMENT_NODES + 1);
+                    node(id, interpolate(lat(row, segment), lat(row, segment + 1), along), interpolate(lon(row, segment), lon(row, segment + 1), along),
+                            unit(id, 1) < 0.02 ? "highway=crossing" : null);
+                }
+            }
+        }
+        for (int column = 0; column < grid; column++) {
+            for (int segment = 0; segment < grid - 1; segment++) {
+                for (int k = 0; k < SEGMENT_NODES; k++) {
+                    long id = columnNode(column, segment, k);
+                    double along = (k + 1.0) / (SEGMENT_NODES + 1);
+                    node(id, interpolate(lat(segment, column), lat(segment + 1, column), along), interpolate(lon(segment, column), lon(segment + 1, column), along),
+                            unit(id, 1) < 0.02 ? "highway=crossing" : null);
+                }
+            }
+        }
+        for (long block = 0; block < blocks; block++) {
+            double lat = blockLat(block);
+            double lon = blockLon(block);
+            for (int building = 0; building < BUILDINGS; building++) {
+                // Squares of about 20 meters in the lower half of the block
+                double centerLat = lat + 0.25 * SPACING;
+                double centerLon = lon + (0.25 + 0.5 * building) * SPACING;
+                for (int corner = 0; corner < 4; corner++) {
+                    node(buildingNode(block, building, corner), corner(centerLat, 0.1, corner, true), corner(centerLon, 0.1, corner, false), null);
+                }
+            }
+        }
+        for (long block = 0; block < blocks; block++) {
+            long id = poiNodes + block + 1;
+            node(id, blockLat(block) + 0.55 * SPACING, blockLon(block) + 0.8 * SPACING, POINTS_OF_INTEREST.pick(unit(id, 1)));
+        }
+        for (long park = 0; park < parks; park++) {
+            long block = park * PARK_EVERY;
+            double centerLat = blockLat(block) + 0.7 * SPACING;
+            double centerLon = blockLon(block) + 0.35 * SPACING;
+            for (int corner = 0; corner < 8; corner++) {
+                node(parkNode(park, corner), corner(centerLat, corner < 4 ? 0.2 : 0.05, corner, true), corner(centerLon, corner < 4 ? 0.2 : 0.05, corner, false), null);
+            }
+        }
+    }
+
+    private void writeWays() throws IOException {
+        for (int row = 0; row < grid; row++) {
+            for (int span = 0; span < spans; span++) {
+                long id = 1 + (long) row * spans + span;
+                int first = span * WAY_BLOCKS;
+                int last = Math.min(first + WAY_BLOCKS, grid - 1);
+                long[] nodes = new long[(last - first) * (SEGMENT_NODES + 1) + 1];
+                int n = 0;
+                for (int segment = first; segment < last; segment++) {
+                    nodes[n++] = intersection(row, segment);
+                    for (int k = 0; k < SEGMENT_NODES; k++) {
+                        nodes[n++] = rowNode(row, segment, k);
+                    }
+                }
+                nodes[n] = intersection(row, last);
+                way(id, nodes, streetTags(row, true));
+            }
+        }
+        for (int column = 0; column < grid; column++) {
+            for (int span = 0; span < spans; span++) {
+                long id = columnWays + 1 + (long) column * spans + span;
+                int first = span * WAY_BLOCKS;
+                int last = Math.min(first + WAY_BLOCKS, grid - 1);
+                long[] nodes = new long[(last - first) * (SEGMENT_NODES + 1) + 1];
+                int n = 0;
+                for (int segment = first; segment < last; segment++) {
+                    nodes[n++] = intersection(segment, column);
+                    for (int k = 0; k < SEGMENT_NODES; k++) {
+                        nodes[n++] = columnNode(column, segment, k);
+                    }
+                }
+                nodes[n] = intersection(last, column);
+                way(id, nodes, streetTags(column, false));
+            }
+        }
+        for (long block = 0; block < blocks; block++) {
+            for (int building = 0; building < BUILDINGS; building++) {
+                long id = buildingWays + 1 + block * BUILDINGS + building;
+                long first = buildingNode(block, building, 0);
+                String[] tags = {"building", BUILDING.pick(unit(id, 1)), "addr:street", streetName((int) (block / (grid - 1)), true),
+                        "addr:housenumber", Long.toString(block % (grid - 1) * BUILDINGS * 2 + building * 2 + 1)};
+                way(id, new long[]{first, first + 1, first + 2, first + 3, first}, unit(id, 2) < 0.5 ? tags : new String[]{tags[0], tags[1]});
+            }
+        }
+        for (long park = 0; park < parks; park++) {
+            for (int ring = 0; ring < 2; ring++) {
+                long first = parkNode(park, ring * 4);
+                // The rings of a multipolygon are untagged, the tags are on the relation
+                way(parkWays + 1 + park * 2 + ring, new long[]{first, first + 1, first + 2, first + 3, first}, null);
+            }
+        }
+    }
+
+    private void writeRelations() throws IOException {
+        for (long park = 0; park < parks; park++) {
+            long id = park + 1;
+            relation(id, new String[]{"way", Long.toString(parkWays + 1 + park * 2), "outer", "way", Long.toString(parkWays + 2 + park * 2), "inner"},
+                    "type", "multipolygon", "leisure", "park", "name", STREET_NAMES.pick(unit(id, 1)) + "s park");
+        }
+        long id = parks;
+        for (int row = 1; row < grid - 1; row++) {
+            for (int column = 1; column < grid - 1; column++) {
+                long node = intersection(row, column);
+                if (node % RESTRICTION_EVERY == 0) {
+                    long from = 1 + (long) row * spans + Math.min(column / WAY_BLOCKS, spans - 1);
+                    long to = columnWays + 1 + (long) column * spans + Math.min(row / WAY_BLOCKS, spans - 1);
+                    id++;
+                    relation(id, new String[]{"way", Long.toString(from), "from", "node", Long.toString(node), "via", "way", Long.toString(to), "to"},
+                            "type", "restriction", "restriction", RESTRICTIONS.pick(unit(id, 1)));
+                }
+            }
+        }
+    }
+
+    private String[] streetTags(int street, boolean row) {
+        long key = row ? street : -1 - street;
+        String highway = HIGHWAYS.pick(unit(key, 3));
+        String oneway = highway.equals("primary") || highway.equals("secondary") ? null : ONEWAY.pick(unit(key, 4));
+        String surface = SURFACE.pick(unit(key, 5));
+        String[] tags = new String[12];
+        int n = 0;
+        tags[n++] = "highway";
+        tags[n++] = highway;
+        if (!highway.equals("service")) {
+            tags[n++] = "name";
+            tags[n++] = streetName(street, row);
+        }
+        if (oneway != null) {
+            tags[n++] = "oneway";
+            tags[n++] = oneway;
+        }
+        if (surface != null) {
+            tags[n++] = "surface";
+            tags[n++] = surface;
+        }
+        if (highway.equals("primary") || highway.equals("secondary") || highway.equals("tertiary")) {
+            tags[n++] = "maxspeed";
+            tags[n++] = highway.equals("tertiary") ? "50" : "70";
+        }
+        return Arrays.copyOf(tags, n);
+    }
+
+    private String streetName(int street, boolean row) {
+        long key = row ? street : -1 - street;
+        // Numbered, since most of the names are used more than once in a large city
+        return STREET_NAMES.pick(unit(key, 6)) + " " + (street / 10 + 1);
+    }
+
+    private void node(long id, double lat, double lon, String tag) throws IOException {
+        if (outOfOrder > 0 && (unit(id, 7) < outOfOrder) != deferred) {
+            return;
+        }
+        line.setLength(0);
+        line.append(" <node id=\"").append(id).append('"');
+        metadata(id, 0);
+        line.append(" lat=\"");
+        decimal(lat).append("\" lon=\"");
+        decimal(lon).append('"');
+        if (tag == null) {
+            line.append("/>\n");
+        } else {
+            line.append(">\n");
+            int equals = tag.indexOf('=');
+            tag(tag.substring(0, equals), tag.substring(equals + 1));
+            if (tag.startsWith("amenity") || tag.startsWith("shop") || tag.startsWith("tourism")) {
+                if (unit(id, 2) < 0.7) {
+                    tag("name", STREET_NAMES.pick(unit(id, 3)).replaceAll("(gatan|v\u00e4gen)$", "") + " " + tag.substring(equals + 1).replace('_', ' '));
+                }
+                if (unit(id, 4) < 0.3) {
+                    tag("opening_hours", "Mo-Fr 08:00-18:00; Sa 10:00-14:00");
+                }
+            }
+            line.append(" </node>\n");
+        }
+        written(id, 0);
+        if (deferred) {
+            stats.deferred++;
+        }
+    }
+
+    private void way(long id, long[] nodes, String[] tags) throws IOException {
+        line.setLength(0);
+        line.append(" <way id=\"").append(id).append('"');
+        metadata(id, 1);
+        line.append(">\n");
+        for (long node : nodes) {
+            line.append("  <nd ref=\"").append(node).append("\"/>\n");
+        }
+        if (tags != null) {
+            for (int i = 0; i < tags.length; i += 2) {
+                tag(tags[i], tags[i + 1]);
+            }
+        }
+        line.append(" </way>\n");
+        written(id, 1);
+    }
+
+    private void relation(long id, String[] members, String... tags) throws IOException {
+        line.setLength(0);
+        line.append(" <relation id=\"").append(id).append('"');
+        metadata(id, 2);
+        line.append(">\n");
+        for (int i = 0; i < members.length; i += 3) {
+            line.append("  <member type=\"").append(members[i]).append("\" ref=\"").append(members[i + 1]).append("\" role=\"").append(members[i + 2]).append("\"/>\n");
+        }
+        for (int i = 0; i < tags.length; i += 2) {
+            tag(tags[i], tags[i + 1]);
+        }
+        line.append(" </relation>\n");
+        written(id, 2);
+    }
+
+    /**
+     * Write the entity in the line, and again if it is one of the duplicates, which are never relations.
+     */
+    private void written(long id, int type) throws IOException {
+        out.append(line);
+        if (type == 0) {
+            stats.nodes++;
+        } else if (type == 1) {
+            stats.ways++;
+        } else {
+            stats.relations++;
+        }
+        if (type < 2 && duplicates > 0 && unit(id, 8 + type) < duplicates) {
+            out.append(line);
+            stats.duplicates++;
+        }
+    }
+
+    private void tag(String key, String value) {
+        // None of the generated keys or values need escaping
+        line.append("  <tag k=\"").append(key).append("\" v=\"").append(value).append("\"/>\n");
+    }
+
+    private void metadata(long id, int type) {
+        // Differs for the node, way and relation of the same id
+        long key = id * 3 + type;
+        double mapper = unit(key, 10);
+        // A few mappers make most of the edits
+        long uid = 1 + (long) (mapper * mapper * mapper * 5000);
+        line.append(" version=\"").append(1 + (long) (unit(key, 11) * unit(key, 12) * 8))
+                .append("\" timestamp=\"").append(Instant.ofEpochSecond(FIRST_TIMESTAMP + (long) (unit(key, 13) * TIMESTAMP_RANGE)))
+                .append("\" changeset=\"").append(10_000_000 + (long) (unit(key, 14) * 90_000_000))
+                .append("\" uid=\"").append(uid).append("\" user=\"mapper").append(uid).append('"');
+    }
+
+    /**
+     * Append the value with the seven decimals used by OSM, without the cost of formatting it.
+     */
+    private StringBuilder decimal(double value) {
+        long fixed = Math.round(value * 10_000_000);
+        if (fixed < 0) {
+            line.append('-');
+            fixed = -fixed;
+        }
+        line.append(fixed / 10_000_000).append('.');
+        String fraction = Long.toString(fixed % 10_000_000);
+        for (int i = fraction.length(); i < 7; i++) {
+            line.append('0');
+        }
+        return line.append(fraction);
+    }
+
+    private long intersection(int row, int column) {
+        return 1 + (long) row * grid + column;
+    }
+
+    private long rowNode(int row, int segment, int k) {
+        return rowNodes + 1 + ((long) row * (grid - 1) + segment) * SEGMENT_NODES + k;
+    }
+
+    private long columnNode(int column, int segment, int k) {
+        return columnNodes + 1 + ((long) column * (grid - 1) + segment) * SEGMENT_NODES + k;
+    }
+
+    private long buildingNode(long block, int building, int corner) {
+        return buildingNodes + 1 + (block * BUILDINGS + building) * 4 + corner;
+    }
+
+    private long parkNode(long park, int corner) {
+        return parkNodes + 1 + park * 8 + corner;
+    }
+
+    /**
+     * The location of the intersection, moved a little from the grid so that not all blocks are the same.
+     */
+    private double lat(int row, int column) {
+        return BASE_LAT + (row + 0.1 * (unit(intersection(row, column), 15) - 0.5)) * SPACING;
+    }
+
+    private double lon(int row, int column) {
+        return BASE_LON + (column + 0.1 * (unit(intersection(row, column), 16) - 0.5)) * SPACING;
+    }
+
+    private double blockLat(long block) {
+        return BASE_LAT + (block / (grid - 1)) * SPACING;
+    }
+
+    private double blockLon(long block) {
+        return BASE_LON + (block % (grid - 1)) * SPACING;
+    }
+
+    private static double interpolate(double from, double to, double along) {
+        return from + (to - from) * along;
+    }
+
+    /**
+     * The corners of a square around the center, counterclockwise from the lower left, for corners 0 to 3 and again
+     * for 4 to 7.
+     */
+    private static double corner(double center, double size, int corner, boolean lat) {
+        int c = corner % 4;
+        boolean high = lat ? c >= 2 : c == 1 || c == 2;
+        return center + (high ? size : -size) * SPACING;
+    }
+
+    /**
+     * A uniformly distributed number from 0 to 1 for the id, which differs for each use of the same id.
+     */
+    private double unit(long id, int use) {
+        // SplitMix64 finalizer
+        long z = seed * 0x9E3779B97F4A7C15L + id * 0xBF58476D1CE4E5B9L + use * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Values with the relative frequency given after each of them, of which a null value means no tag.
+     */
+    private static class Weighted {
+        private final String[] values;
+        private final double[] cumulative;
+
+        private Weighted(Object... valuesAndWeights) {
+            values = new String[valuesAndWeights.length / 2];
+            cumulative = new double[values.length];
+            double total = 0;
+            for (int i = 0; i < values.length; i++) {
+                total += ((Number) valuesAndWeights[i * 2 + 1]).doubleValue();
+            }
+            double sum = 0;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (String) valuesAndWeights[i * 2];
+                sum += ((Number) valuesAndWeights[i * 2 + 1]).doubleValue();
+                cumulative[i] = sum / total;
+            }
+        }
+
+        private String pick(double unit) {
+            for (int i = 0; i < values.length - 1; i++) {
+                if (unit < cumulative[i]) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+    }
+
+    public static void main(String[] incomingArguments) throws IOException {
+        Args args = Args.parse(incomingArguments);
+        String[] files = args.orphansAsArray();
+        if (files.length != 1) {
+            System.out.println("Usage: OSMDataGenerator [--entities 1e6] [--seed 42] [--duplicates 0] [--out-of-order 0] <file.osm[.bz2|.gz]>");
+            return;
+        }
+        long entities = (long) Double.parseDouble(args.get(ENTITIES, "1e6"));
+        long seed = Long.parseLong(args.get(SEED, "42"));
+        double duplicates = Double.parseDouble(args.get(DUPLICATES, "0"));
+        double outOfOrder = Double.parseDouble(args.get(OUT_OF_ORDER, "0"));
+        long started = System.currentTimeMillis();
+        Stats stats = new OSMDataGenerator(entities, seed, duplicates, outOfOrder).write(new File(files[0]));
+        System.out.println("Wrote " + stats + " to " + files[0] + " in " + (System.currentTimeMillis() - started) + "ms");
+    }
+}
@@ -0,0 +1,79 @@
+package org.neo4j.gis.osm;
+
+import org.neo4j.io.fs.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures complete imports by the OSMImportTool of files written by the {@link OSMDataGenerator}, each into a new
+ * database. The generated files are kept in target/import-benchmark and reused by later runs with the same number of
+ * entities, since writing the larger ones takes a while. Run with the main method, giving the numbers of entities to
+ * import as arguments, like 1e5 1e7 1e9, or with the JMH runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class OSMImportToolBenchmark {
+
+    @Param({"100000", "1000000"})
+    public long entities;
+
+    @Param({"false", "true"})
+    public boolean byteParser;
+
+    private final File home = new File("target/import-benchmark");
+    private File osmFile;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        osmFile = new File(home, "generated-" + entities + ".osm");
+        if (!osmFile.isFile()) {
+            home.mkdirs();
+            File written = new File(home, osmFile.getName() + ".tmp");
+            System.out.println("Generated " + new OSMDataGenerator(entities, 42).write(written));
+            if (!written.renameTo(osmFile)) {
+                throw new IOException("Failed to rename " + written + " to " + osmFile);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDatabase() throws IOException {
+        FileUtils.deleteRecursively(new File(home, "data"));
+    }
+
+    @Benchmark
+    public void importFile() throws IOException {
+        List<String> args = new ArrayList<>(Arrays.asList("--delete", "--into", home.getCanonicalPath(), "--database", "generated"));
+        if (byteParser) {
+            args.add("--byte-parser");
+        }
+        args.add(osmFile.getCanonicalPath());
+        OSMImportTool.main(args.toArray(new String[0]));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder().include(OSMImportToolBenchmark.class.getSimpleName());
+        if (args.length > 0) {
+            String[] entities = new String[args.length];
+            for (int i = 0; i < args.length; i++) {
+                entities[i] = Long.toString((long) Double.parseDouble(args[i]));
+            }
+            options.param("entities", entities);
+        }
+        new Runner(options.build()).run();
+    }
+}
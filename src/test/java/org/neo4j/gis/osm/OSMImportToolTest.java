@@ -4,6 +4,12 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.neo4j.configuration.GraphDatabaseSettings;
 import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.gis.osm.importer.OSMInputConfiguration;
+import org.neo4j.gis.osm.model.EncodedPolyline;
+import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.gis.osm.model.RouteFinder;
+import org.neo4j.gis.osm.model.RoutingProfile;
+import org.neo4j.gis.osm.model.TurnRestrictions;
 import org.neo4j.graphdb.*;
 import org.neo4j.io.fs.FileUtils;
 import org.neo4j.io.layout.Neo4jLayout;
@@ -12,15 +18,21 @@ import org.neo4j.test.TestDatabaseManagementServiceBuilder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 
 import static java.lang.String.format;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.isOneOf;
 import static org.junit.Assert.fail;
@@ -78,6 +90,67 @@ public class OSMImportToolTest {
         });
     }
 
+    @Test
+    public void testTwoStreetRoutingOnly() throws IOException {
+        File osmFile = findOSMFile("two-street");
+        importAndAssert("two-street-routing", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected only way end nodes", countNodesWithLabel(db, "OSMNode"), equalTo(4L));
+            assertThat("Expected no way node proxies", countNodesWithLabel(db, "OSMWayNode"), equalTo(0L));
+            assertThat("Expected both ways", countNodesWithLabel(db, "OSMWay"), equalTo(2L));
+            assertThat("Expected one ROUTE in each direction per way", countRelationshipsWithType(db, "ROUTE"), equalTo(4L));
+            assertThat("Expected no NEXT chains", countRelationshipsWithType(db, "NEXT"), equalTo(0L));
+            try (Transaction tx = db.beginTx()) {
+                long interiorPoints = 0;
+                for (Relationship route : tx.getAllRelationships()) {
+                    if (route.isType(RelationshipType.withName("ROUTE"))) {
+                        assertThat(route.getProperty("distance") instanceof Double, equalTo(true));
+                        assertThat(route.getAllProperties(), hasKey("car_cost"));
+                        interiorPoints += EncodedPolyline.countPoints((byte[]) route.getProperty("geometry"));
+                    }
+                }
+                assertThat("Expected geometry of all interior way nodes in both directions", interiorPoints, equalTo(2L * (14 + 6)));
+                tx.commit();
+            }
+        }, "--routing-only", "--into", home.homeDirectory().getCanonicalPath(), "--database", "two-street-routing", osmFile.getCanonicalPath());
+    }
+
+    @Test
+    public void testRoutingProfiles() throws IOException {
+        File osmFile = findOSMFile("two-street");
+        importAndAssert("two-street-car", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected one ROUTE in each direction per way", countRelationshipsWithType(db, "ROUTE"), equalTo(4L));
+            try (Transaction tx = db.beginTx()) {
+                for (Relationship route : tx.getAllRelationships()) {
+                    if (route.isType(OSMModel.ROUTE)) {
+                        assertThat(route.getAllProperties(), hasKey("car_cost"));
+                        assertThat(route.hasProperty("foot_cost"), equalTo(false));
+                    }
+                }
+                tx.commit();
+            }
+        }, "--routing-only", "--routing-profiles", "car", "--into", home.homeDirectory().getCanonicalPath(), "--database", "two-street-car", osmFile.getCanonicalPath());
+    }
+
+    @Test
+    public void testOneWayStreetRoutingOnly() throws IOException {
+        File osmFile = findOSMFile("one-way-forward");
+        importAndAssert("one-way-routing", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected a ROUTE in each direction, since foot ignores one-way streets", countRelationshipsWithType(db, "ROUTE"), equalTo(2L));
+            try (Transaction tx = db.beginTx()) {
+                Node first = tx.findNode(OSMModel.OSMNode, "node_osm_id", 857081476L);
+                Node last = tx.findNode(OSMModel.OSMNode, "node_osm_id", 857081796L);
+                RouteFinder shortest = new RouteFinder(TurnRestrictions.NONE);
+                assertThat("Expected the route along the one-way street", shortest.find(first, last).size(), equalTo(1));
+                assertThat("Expected no route against the one-way street", shortest.find(last, first).size(), equalTo(0));
+                assertThat(new RouteFinder(TurnRestrictions.NONE, RoutingProfile.CAR).find(last, first).size(), equalTo(0));
+                List<Relationship> walked = new RouteFinder(TurnRestrictions.NONE, RoutingProfile.FOOT).find(last, first);
+                assertThat("Expected to walk against the one-way street", walked.size(), equalTo(1));
+                assertThat(walked.get(0).getProperty("againstOneway"), equalTo(true));
+                tx.commit();
+            }
+        }, "--routing-only", "--into", home.homeDirectory().getCanonicalPath(), "--database", "one-way-routing", osmFile.getCanonicalPath());
+    }
+
     @Test
     public void testParking() throws IOException {
         importAndAssert("parking", (db, stats) -> {
@@ -139,6 +212,197 @@ public class OSMImportToolTest {
         });
     }
 
+    @Test
+    public void testMergedOverlappingFiles() throws IOException {
+        // A copy of the same file overlaps completely, so every entity would be imported twice without merging
+        File osmFile = findOSMFile("two-street");
+        File copy = new File(home.homeDirectory(), "two-street-copy.osm");
+        copy.getParentFile().mkdirs();
+        Files.copy(osmFile.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        importAndAssert("two-street-merged", osmFile.getName() + " twice", (db, stats) -> {
+            stats.put("expectedOSMNodes", 24L);
+            stats.put("expectedOSMWayNodes", 24L);
+            stats.put("expectedOSMWays", 2L);
+            assertOSMModel(db, stats);
+            assertThat("Expected dataset node for each file", countNodesWithLabel(db, "OSM"), equalTo(2L));
+        }, "--merge-files", "--into", home.homeDirectory().getCanonicalPath(), "--database", "two-street-merged", osmFile.getCanonicalPath(), copy.getCanonicalPath());
+    }
+
+    @Test
+    public void testSortedInput() throws IOException {
+        // The copy has the ways before the nodes, and overlaps the original completely
+        File osmFile = findOSMFile("two-street");
+        File unsorted = new File(home.homeDirectory(), "two-street-unsorted.osm");
+        unsorted.getParentFile().mkdirs();
+        List<String> lines = Files.readAllLines(osmFile.toPath());
+        List<String> reordered = new ArrayList<>(lines.subList(0, 3));
+        reordered.addAll(lines.subList(27, lines.size() - 1));
+        reordered.addAll(lines.subList(3, 27));
+        reordered.add(lines.get(lines.size() - 1));
+        Files.write(unsorted.toPath(), reordered);
+        importAndAssert("two-street-sorted", osmFile.getName() + " and unsorted copy", (db, stats) -> {
+            stats.put("expectedOSMNodes", 24L);
+            stats.put("expectedOSMWayNodes", 24L);
+            stats.put("expectedOSMWays", 2L);
+            assertOSMModel(db, stats);
+            assertThat("Expected dataset node for each file", countNodesWithLabel(db, "OSM"), equalTo(2L));
+        }, "--sort-input", "--spool-run-size", "10", "--into", home.homeDirectory().getCanonicalPath(), "--database", "two-street-sorted",
+                osmFile.getCanonicalPath(), unsorted.getCanonicalPath());
+    }
+
+    @Test
+    public void testGeneratedInputWithDuplicatesOutOfOrder() throws IOException {
+        File osmFile = new File(home.homeDirectory(), "generated.osm.bz2");
+        osmFile.getParentFile().mkdirs();
+        OSMDataGenerator.Stats generated = new OSMDataGenerator(20_000, 42, 0.01, 0.01).write(osmFile);
+        assertThat("Expected duplicates", generated.duplicates, greaterThan(0L));
+        assertThat("Expected nodes after the ways", generated.deferred, greaterThan(0L));
+        importAndAssert("generated", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected each node once", countNodesWithLabel(db, "OSMNode"), equalTo(generated.nodes));
+            assertThat("Expected each way once", countNodesWithLabel(db, "OSMWay"), equalTo(generated.ways));
+            assertThat("Expected each way to have a first node", countRelationshipsWithType(db, "FIRST_NODE"), equalTo(generated.ways));
+            assertThat("Expected each relation once", countNodesWithLabel(db, "OSMRelation"), equalTo(generated.relations));
+        }, "--sort-input", "--into", home.homeDirectory().getCanonicalPath(), "--database", "generated", osmFile.getCanonicalPath());
+    }
+
+    @Test
+    public void testResumeDeletesSpoolOfCompletedImport() throws IOException {
+        File osmFile = findOSMFile("two-street");
+        File spool = new File(home.homeDirectory(), "two-street-spool");
+        FileUtils.deleteRecursively(spool);
+        spool.mkdirs();
+        importAndAssert("two-street-resume", osmFile.getName(), (db, stats) -> {
+            stats.put("expectedOSMNodes", 24L);
+            stats.put("expectedOSMWayNodes", 24L);
+            stats.put("expectedOSMWays", 2L);
+            assertOSMModel(db, stats);
+        }, "--resume", "--spool-directory", spool.getCanonicalPath(), "--into", home.homeDirectory().getCanonicalPath(), "--database", "two-street-resume", osmFile.getCanonicalPath());
+        assertThat("Expected no spool or checkpoint after a completed import", spool.list().length, equalTo(0));
+    }
+
+    @Test
+    public void testUpdateImportedDatabase() throws Exception {
+        File osmFile = findOSMFile("one-street");
+        importAndAssert("one-street-update", osmFile.getName(), (db, stats) -> {
+            stats.put("expectedOSMNodes", 8L);
+            stats.put("expectedOSMWayNodes", 8L);
+            stats.put("expectedOSMWays", 1L);
+            assertOSMModel(db, stats);
+        }, "--into", home.homeDirectory().getCanonicalPath(), "--database", "one-street-update", osmFile.getCanonicalPath());
+        File changeFile = new File(home.homeDirectory(), "one-street-update.osc");
+        Files.write(changeFile.toPath(), ("<osmChange version=\"0.6\">" +
+                "<create><node id=\"900\" version=\"1\" timestamp=\"2020-11-01T10:00:00Z\" lat=\"56.0710\" lon=\"12.9650\">" +
+                "<tag k=\"name\" v=\"Cafe\"/><tag k=\"amenity\" v=\"cafe\"/></node></create>" +
+                "<modify><way id=\"72090582\" version=\"2\" timestamp=\"2020-11-01T10:00:00Z\">" +
+                "<nd ref=\"371662020\"/><nd ref=\"857081476\"/><nd ref=\"857081950\"/><nd ref=\"857081819\"/>" +
+                "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"Nybrodalsv\u00e4gen\"/><tag k=\"oneway\" v=\"yes\"/></way></modify>" +
+                "</osmChange>").getBytes(StandardCharsets.UTF_8));
+        OSMUpdateTool.main(new String[]{"--into", home.homeDirectory().getCanonicalPath(), "--database", "one-street-update", changeFile.getCanonicalPath()});
+        assertImportedCorrectly("one-street-update", (db, stats) -> {
+            try (Transaction tx = db.beginTx()) {
+                assertThat(tx.findNode(OSMModel.OSMNode, "node_osm_id", 900L).getProperty("name"), equalTo("Cafe"));
+                Node way = tx.findNode(OSMModel.OSMWay, "way_osm_id", 72090582L);
+                assertThat(way.getProperty("oneway"), equalTo("FORWARD"));
+                assertThat(way.getProperty("name"), equalTo("Nybrodalsv\u00e4gen"));
+                tx.commit();
+            }
+        });
+    }
+
+    @Test
+    public void testReport() throws IOException {
+        File osmFile = findOSMFile("two-street");
+        File report = new File(home.homeDirectory(), "two-street-report.json");
+        report.getParentFile().mkdirs();
+        importAndAssert("two-street-report", osmFile.getName(), (db, stats) -> {
+            stats.put("expectedOSMNodes", 24L);
+            stats.put("expectedOSMWayNodes", 24L);
+            stats.put("expectedOSMWays", 2L);
+            assertOSMModel(db, stats);
+        }, "--report", report.getCanonicalPath(), "--into", home.homeDirectory().getCanonicalPath(), "--database", "two-street-report", osmFile.getCanonicalPath());
+        String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"successful\": true"));
+        assertThat(json, containsString("\"name\": \"nodes\""));
+        assertThat(json, containsString("\"OSMNode\": 24"));
+        assertThat(json, containsString("\"uncompressedBytes\": " + osmFile.length()));
+        assertThat(json, containsString("\"NEXT\": 22"));
+        assertThat(json, containsString("\"stages\": [\n"));
+    }
+
+    @Test
+    public void testTagFilter() throws IOException {
+        // The relation keeps its three member footways, which do not match the filter themselves, but without their tags
+        File osmFile = findOSMFile("parking-and-streets");
+        File profile = new File(home.homeDirectory(), "parking-filter.txt");
+        profile.getParentFile().mkdirs();
+        Files.write(profile.toPath(), Arrays.asList("way include amenity=parking", "relation include highway=footway"));
+        importAndAssert("parking-filtered", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected parking and member ways", countNodesWithLabel(db, "OSMWay"), equalTo(4L));
+            assertThat("Expected only nodes of kept ways", countNodesWithLabel(db, "OSMNode"), equalTo(6L));
+            assertThat("Expected way nodes of kept ways", countNodesWithLabel(db, "OSMWayNode"), equalTo(10L));
+            assertThat("Expected the footway relation", countNodesWithLabel(db, "OSMRelation"), equalTo(1L));
+            assertThat("Expected tags of matching entities only", countNodesWithLabel(db, "OSMTags"), equalTo(2L));
+            assertThat("Expected all relation members", countRelationshipsWithType(db, "MEMBER"), equalTo(3L));
+        }, "--tag-filter", profile.getCanonicalPath(), "--into", home.homeDirectory().getCanonicalPath(), "--database", "parking-filtered", osmFile.getCanonicalPath());
+    }
+
+    @Test
+    public void testInlineTags() throws IOException {
+        File osmFile = findOSMFile("parking-and-streets");
+        importAndAssert("parking-inline", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected no separate tag nodes", countNodesWithLabel(db, "OSMTags"), equalTo(0L));
+            assertThat("Expected no TAGS relationships", countRelationshipsWithType(db, "TAGS"), equalTo(0L));
+            assertThat("Expected all ways", countNodesWithLabel(db, "OSMWay"), equalTo(7L));
+            try (Transaction tx = db.beginTx()) {
+                Node parking = tx.findNode(Label.label("OSMWay"), "way_osm_id", 68083521L);
+                assertThat(parking.getProperty("amenity"), equalTo("parking"));
+                assertThat(OSMModel.tags(parking).get("amenity"), equalTo("parking"));
+                assertThat("Attributes should not be read as tags", OSMModel.tags(parking).containsKey("way_osm_id"), equalTo(false));
+                Node street = tx.findNode(Label.label("OSMWay"), "way_osm_id", 67835018L);
+                assertThat(OSMModel.tags(street).get("highway"), equalTo("residential"));
+                tx.commit();
+            }
+        }, "--inline-tags", "--into", home.homeDirectory().getCanonicalPath(), "--database", "parking-inline", osmFile.getCanonicalPath());
+    }
+
+    @Test
+    public void testSharedTags() throws IOException {
+        // The two footways have identical tags, so they share one OSMTags node
+        File osmFile = findOSMFile("parking-and-streets");
+        importAndAssert("parking-shared-tags", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected one tag node per distinct tag set", countNodesWithLabel(db, "OSMTags"), equalTo(7L));
+            assertThat("Expected tags for every tagged entity", countRelationshipsWithType(db, "TAGS"), equalTo(8L));
+            try (Transaction tx = db.beginTx()) {
+                Node parking = tx.findNode(Label.label("OSMWay"), "way_osm_id", 68083521L);
+                assertThat(OSMModel.tags(parking).get("amenity"), equalTo("parking"));
+                tx.commit();
+            }
+        }, "--shared-tags", "1000", "--into", home.homeDirectory().getCanonicalPath(), "--database", "parking-shared-tags", osmFile.getCanonicalPath());
+    }
+
+    @Test
+    public void testSpatialOrder() throws IOException {
+        File osmFile = findOSMFile("parking-and-streets");
+        importAndAssert("parking-hilbert", osmFile.getName(), (db, stats) -> {
+            assertThat("Expected all nodes", countNodesWithLabel(db, "OSMNode"), equalTo(17L));
+            assertThat("Expected all ways", countNodesWithLabel(db, "OSMWay"), equalTo(7L));
+            assertThat("Expected tags of all tagged entities", countNodesWithLabel(db, "OSMTags"), equalTo(8L));
+            try (Transaction tx = db.beginTx()) {
+                // The store ids are assigned in import order, which should follow the curve
+                ArrayList<long[]> nodes = new ArrayList<>();
+                try (ResourceIterator<Node> found = tx.findNodes(Label.label("OSMNode"))) {
+                    found.forEachRemaining(node -> nodes.add(new long[]{node.getId(),
+                            OSMInputConfiguration.SpatialOrder.HILBERT.key((double) node.getProperty("lon"), (double) node.getProperty("lat"))}));
+                }
+                nodes.sort((a, b) -> Long.compare(a[0], b[0]));
+                for (int i = 1; i < nodes.size(); i++) {
+                    assertThat("Expected node " + nodes.get(i)[0] + " after the previous node on the curve", nodes.get(i)[1] >= nodes.get(i - 1)[1], equalTo(true));
+                }
+                tx.commit();
+            }
+        }, "--spatial-order", "hilbert", "--spool-run-size", "5", "--into", home.homeDirectory().getCanonicalPath(), "--database", "parking-hilbert", osmFile.getCanonicalPath());
+    }
+
     private File findOSMFile(String name) {
         for (String ext : new String[]{".osm.bz2", ".osm"}) {
             File file = new File("samples/" + name + ext);
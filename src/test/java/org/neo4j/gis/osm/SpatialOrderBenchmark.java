@@ -0,0 +1,140 @@
+package org.neo4j.gis.osm;
+
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.gis.osm.model.RouteFinder;
+import org.neo4j.gis.osm.model.TurnRestrictions;
+import org.neo4j.graphdb.*;
+import org.neo4j.io.fs.FileUtils;
+import org.neo4j.io.layout.Neo4jLayout;
+import org.neo4j.io.pagecache.tracing.PageCacheTracer;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares routing between nearby intersections on a routing-only import with the nodes in input order and along a
+ * Hilbert curve. The page cache is kept much smaller than the store, so that routes reading fewer pages are faster,
+ * and the page faults per route are printed at the end of each trial. The import itself is run with
+ * --trace-page-cache, which prints the page cache counts of the import. Run with the main method, or with the JMH
+ * runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpatialOrderBenchmark {
+
+    @Param({"none", "hilbert"})
+    public String spatialOrder;
+
+    @Param({"samples/map.osm"})
+    public String osmFile;
+
+    @Param({"2m"})
+    public String pageCache;
+
+    // Routes between intersections at most about a kilometer apart, like most routing requests in a city
+    private static final double MAX_ROUTE_DEGREES = 0.01;
+    private static final int ROUTES = 1000;
+
+    private final Neo4jLayout home = Neo4jLayout.of(new File("target/spatial-order-benchmark"));
+    private DatabaseManagementService databases;
+    private PageCacheTracer tracer;
+    private GraphDatabaseService db;
+    private Transaction tx;
+    private RouteFinder finder;
+    private long[][] routes;
+    private int next = 0;
+    private long routed = 0;
+    private long faults = 0;
+
+    @Setup(Level.Trial)
+    public void importAndStart() throws IOException {
+        String name = "routing-" + spatialOrder;
+        FileUtils.deleteRecursively(home.databaseLayout(name).databaseDirectory());
+        OSMImportTool.main(new String[]{"--routing-only", "--spatial-order", spatialOrder, "--trace-page-cache",
+                "--into", home.homeDirectory().getCanonicalPath(), "--database", name, new File(osmFile).getCanonicalPath()});
+        databases = new TestDatabaseManagementServiceBuilder(home)
+                .setConfig(GraphDatabaseSettings.default_database, name)
+                .setConfig(GraphDatabaseSettings.pagecache_memory, pageCache)
+                .setConfig(GraphDatabaseSettings.fail_on_missing_files, false).build();
+        db = databases.database(name);
+        tracer = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(PageCacheTracer.class);
+        routes = findRoutes();
+    }
+
+    /**
+     * Pairs of intersections close to each other, chosen the same way for both layouts.
+     */
+    private long[][] findRoutes() {
+        try (Transaction tx = db.beginTx()) {
+            ArrayList<Node> intersections = new ArrayList<>();
+            try (ResourceIterator<Node> nodes = tx.findNodes(OSMModel.OSMNode)) {
+                nodes.forEachRemaining(node -> {
+                    if (node.hasRelationship(OSMModel.ROUTE)) {
+                        intersections.add(node);
+                    }
+                });
+            }
+            // Sorted by OSM id, so that the pairs do not depend on the store ids
+            intersections.sort((a, b) -> Long.compare((long) a.getProperty("node_osm_id"), (long) b.getProperty("node_osm_id")));
+            Random random = new Random(42);
+            ArrayList<long[]> pairs = new ArrayList<>();
+            for (int attempt = 0; pairs.size() < ROUTES && attempt < ROUTES * 100; attempt++) {
+                Node from = intersections.get(random.nextInt(intersections.size()));
+                Node to = intersections.get(random.nextInt(intersections.size()));
+                double dx = (double) from.getProperty("lon") - (double) to.getProperty("lon");
+                double dy = (double) from.getProperty("lat") - (double) to.getProperty("lat");
+                if (from != to && Math.sqrt(dx * dx + dy * dy) < MAX_ROUTE_DEGREES) {
+                    pairs.add(new long[]{from.getId(), to.getId()});
+                }
+            }
+            tx.commit();
+            return pairs.toArray(new long[0][]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void beginTx() {
+        tx = db.beginTx();
+        finder = new RouteFinder(TurnRestrictions.load(tx));
+        faults -= tracer.faults();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeTx() {
+        faults += tracer.faults();
+        tx.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        System.out.printf("%n%s order: %d routes, %.1f page faults per route%n", spatialOrder, routed, (double) faults / Math.max(1, routed));
+        databases.shutdown();
+    }
+
+    @Benchmark
+    public int route() {
+        long[] route = routes[next];
+        next = (next + 1) % routes.length;
+        routed++;
+        return finder.find(tx.getNodeById(route[0]), tx.getNodeById(route[1])).size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SpatialOrderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
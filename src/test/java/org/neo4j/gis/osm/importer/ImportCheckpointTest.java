@@ -0,0 +1,91 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+public class ImportCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final File database = new File("target/data/databases/osm");
+
+    @Test
+    public void shouldResumeFromSpoolOfFailedImport() throws IOException {
+        String[] osmFiles = {input("map.osm", "<osm/>").getPath()};
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(folder.getRoot(), database, osmFiles, OSMInputConfiguration.DEFAULT, null);
+        assertThat(checkpoint.resumable(), equalTo(false));
+        OSMEntitySpool spool = new OSMEntitySpool(folder.getRoot(), 2, false);
+        OSMInput.OSMInputChunk chunk = spool.newChunk();
+        chunk.addDatasetNode("map.osm", new HashMap<>(Collections.singletonMap("name", "map.osm")));
+        for (long id : new long[]{3, 1, 2}) {
+            chunk.addOSMNode(id, new HashMap<>(Collections.singletonMap("node_osm_id", id)));
+            chunk.endTaggableEvent();
+        }
+        spool.finish();
+        checkpoint.spooled(spool);
+        checkpoint.stage("Node import", 1200);
+        checkpoint.stage("Relationship import", -1);
+
+        ImportCheckpoint resumed = ImportCheckpoint.open(folder.getRoot(), database, osmFiles, OSMInputConfiguration.DEFAULT, null);
+        assertThat(resumed.resumable(), equalTo(true));
+        assertThat(resumed.toString(), containsString("failed in stage 'Relationship import' after completing Node import in 1200ms"));
+        assertThat(resumed.importedInto(database), equalTo(true));
+        assertThat(resumed.importedInto(new File("target/data/databases/other")), equalTo(false));
+        OSMEntitySpool restored = resumed.restoreSpool();
+        assertThat(restored.datasets().keySet(), equalTo(Collections.singleton("map.osm")));
+        try (OSMEntitySpool.Reader entities = restored.read()) {
+            List<Long> ids = new ArrayList<>();
+            entities.forEachRemaining(entity -> ids.add(entity.id));
+            assertThat(ids, equalTo(Arrays.asList(1L, 2L, 3L)));
+        }
+
+        resumed.completed();
+        restored.close();
+        resumed.delete();
+        assertThat(Arrays.asList(folder.getRoot().list()), equalTo(Collections.singletonList("map.osm")));
+    }
+
+    @Test
+    public void shouldNotResumeWhenInputOrDatabaseChanged() throws IOException {
+        File osmFile = input("map.osm", "<osm/>");
+        String[] osmFiles = {osmFile.getPath()};
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(folder.getRoot(), database, osmFiles, OSMInputConfiguration.DEFAULT, null);
+        OSMEntitySpool spool = new OSMEntitySpool(folder.getRoot(), 2, false);
+        spool.finish();
+        checkpoint.spooled(spool);
+        assertThat(ImportCheckpoint.open(folder.getRoot(), database, osmFiles, OSMInputConfiguration.DEFAULT, null).resumable(), equalTo(true));
+        ImportCheckpoint otherDatabase = ImportCheckpoint.open(folder.getRoot(), new File("target/data/databases/other"), osmFiles, OSMInputConfiguration.DEFAULT, null);
+        assertThat(otherDatabase.resumable(), equalTo(false));
+        assertThat(otherDatabase.file(), not(equalTo(checkpoint.file())));
+
+        Files.write(osmFile.toPath(), "<osm version=\"0.6\"/>".getBytes());
+        ImportCheckpoint changed = ImportCheckpoint.open(folder.getRoot(), database, osmFiles, OSMInputConfiguration.DEFAULT, null);
+        assertThat(changed.resumable(), equalTo(false));
+        assertThat(changed.file(), not(equalTo(checkpoint.file())));
+        OSMInputConfiguration minimal = new OSMInputConfiguration() {
+            @Override
+            public Metadata metadata() {
+                return Metadata.MINIMAL;
+            }
+        };
+        assertThat(ImportCheckpoint.open(folder.getRoot(), database, osmFiles, minimal, null).file(), not(equalTo(changed.file())));
+    }
+
+    private File input(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes());
+        return file;
+    }
+}
@@ -0,0 +1,57 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ImportMetricsTest {
+
+    @Test
+    public void shouldMeasureEachPassSeparately() throws IOException {
+        ImportMetrics metrics = new ImportMetrics();
+        ImportMetrics.Pass nodes = metrics.begin("nodes");
+        try (InputStream input = nodes.counting(nodes.counting(new ByteArrayInputStream(new byte[1000]), true), false)) {
+            assertThat(input.read(new byte[600]), equalTo(600));
+            assertThat(input.read(), equalTo(0));
+            assertThat(input.skip(100), equalTo(100L));
+        }
+        nodes.nodes(Arrays.asList("OSMNode", "OSMNode", "OSMTags"), label -> label);
+        nodes.nodes(Arrays.asList("OSMNode"), label -> label);
+        nodes.chunk(3);
+        nodes.chunk(1);
+        nodes.chunk(0);
+        nodes.end();
+        ImportMetrics.Pass relationships = metrics.begin("relationships");
+        relationships.relationships(Arrays.asList("TAGS"), type -> type);
+
+        assertThat(metrics.pass(), equalTo(relationships));
+        assertThat(nodes.compressedBytes(), equalTo(701L));
+        assertThat(nodes.uncompressedBytes(), equalTo(701L));
+        assertThat(nodes.nodes("OSMNode"), equalTo(3L));
+        assertThat(nodes.chunks(), equalTo(2L));
+        assertThat(relationships.nodes("OSMNode"), equalTo(0L));
+    }
+
+    @Test
+    public void shouldWriteJsonReport() {
+        ImportMetrics metrics = new ImportMetrics();
+        metrics.put("files", new String[]{"samples/map \"2\".osm"});
+        ImportMetrics.Pass nodes = metrics.begin("nodes");
+        nodes.nodes(Arrays.asList("OSMNode", "OSMWay"), label -> label);
+        nodes.chunk(2);
+        String json = metrics.toJson();
+        assertThat(json, containsString("\"files\": [\n    \"samples/map \\\"2\\\".osm\"\n  ]"));
+        assertThat(json, containsString("\"name\": \"nodes\""));
+        assertThat(json, containsString("\"averageChunkSize\": 2"));
+        assertThat(json, containsString("\"nodes\": {\n        \"OSMNode\": 1,\n        \"OSMWay\": 1\n      }"));
+        assertThat(json, containsString("\"relationships\": {}"));
+        assertThat(json, containsString("\"stages\": []"));
+    }
+}
@@ -0,0 +1,51 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+public class InputProgressMonitorTest {
+
+    @Test
+    public void shouldShowProgressOfPassFromBytesRead() throws IOException {
+        ImportMetrics metrics = new ImportMetrics();
+        ImportMetrics.Pass nodes = metrics.begin("nodes", 4 << 20);
+        try (InputStream input = nodes.counting(new ByteArrayInputStream(new byte[4 << 20]), true)) {
+            nodes.counting(input, false).read(new byte[1 << 20]);
+        }
+        String progress = InputProgressMonitor.progress("Nodes", nodes, 65_000, 0);
+        assertThat(progress, containsString("Nodes: 1m 5s, nodes pass read 25.0% of 4 MB"));
+        assertThat(progress, containsString("MB/s read"));
+        assertThat(progress, containsString("MB/s parsed"));
+        assertThat(progress, containsString("ETA"));
+
+        nodes.end();
+        progress = InputProgressMonitor.progress("Node Degrees", nodes, 2_000, 12);
+        assertThat(progress, equalTo("Node Degrees: 2s, 12 batches done"));
+    }
+
+    @Test
+    public void shouldNotEstimateBeforeReadingOrWithoutInput() {
+        ImportMetrics metrics = new ImportMetrics();
+        assertThat(InputProgressMonitor.progress("Nodes", metrics.pass(), 0, 0), equalTo("Nodes: 0s, 0 batches done"));
+        String progress = InputProgressMonitor.progress("Nodes", metrics.begin("spool", 1000), 0, 0);
+        assertThat(progress, containsString("spool pass read 0.0% of 0 MB"));
+        assertThat(progress, not(containsString("ETA")));
+        assertThat(progress, not(containsString("parsed")));
+    }
+
+    @Test
+    public void shouldFormatDurations() {
+        assertThat(InputProgressMonitor.duration(999), equalTo("0s"));
+        assertThat(InputProgressMonitor.duration(59_000), equalTo("59s"));
+        assertThat(InputProgressMonitor.duration(3_599_000), equalTo("59m 59s"));
+        assertThat(InputProgressMonitor.duration(90_061_000), equalTo("25h 1m"));
+    }
+}
@@ -0,0 +1,56 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class LongBitSetTest {
+
+    @Test
+    public void shouldSetAndGetOSMSizedIds() {
+        LongBitSet set = new LongBitSet();
+        long[] ids = new long[]{0, 1, 63, 64, 4194303, 4194304, 7_500_000_000L};
+        for (long id : ids) {
+            set.set(id);
+        }
+        set.set(64);
+        for (long id : ids) {
+            assertThat("Expected id " + id, set.get(id), equalTo(true));
+        }
+        assertThat(set.get(2), equalTo(false));
+        assertThat(set.get(7_500_000_001L), equalTo(false));
+        assertThat(set.get(-1), equalTo(false));
+        assertThat(set.cardinality(), equalTo((long) ids.length));
+    }
+
+    @Test
+    public void shouldOnlyAllocateUsedPages() {
+        LongBitSet set = new LongBitSet();
+        set.set(10);
+        set.set(1_000_000_000L);
+        assertThat(set.allocatedBytes(), equalTo(2L * 512 * 1024));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNegativeIds() {
+        new LongBitSet().set(-5);
+    }
+
+    @Test
+    public void shouldStoreLocationsWithOSMPrecision() {
+        NodeLocations locations = new NodeLocations();
+        locations.put(12345678901L, 12.9693483, 56.0420950);
+        locations.put(2, -179.9999999, -89.9999999);
+        double[] coordinate = new double[2];
+        assertThat(locations.get(12345678901L, coordinate), equalTo(true));
+        assertThat(coordinate[0], closeTo(12.9693483, 1e-9));
+        assertThat(coordinate[1], closeTo(56.0420950, 1e-9));
+        assertThat(locations.get(2, coordinate), equalTo(true));
+        assertThat(coordinate[0], closeTo(-179.9999999, 1e-9));
+        assertThat(coordinate[1], closeTo(-89.9999999, 1e-9));
+        assertThat(locations.get(3, coordinate), equalTo(false));
+        assertThat(locations.size(), equalTo(2));
+    }
+}
@@ -0,0 +1,93 @@
+package org.neo4j.gis.osm.importer;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class OSMByteParserTest {
+
+    @Test
+    public void shouldProduceSameEventsAsStaxForAllSamples() throws Exception {
+        File[] samples = new File("samples").listFiles((dir, name) -> name.endsWith(".osm") || name.endsWith(".osm.bz2"));
+        assertThat(samples.length, greaterThan(0));
+        for (File sample : samples) {
+            List<String> expected = RecordingChunk.parse(new StaxOSMParser(sample.getName(), open(sample), null));
+            List<String> actual = RecordingChunk.parse(new OSMByteParser(sample.getName(), open(sample), null));
+            assertThat("Expected events for " + sample, expected.size(), greaterThan(0));
+            assertThat("Different number of events for " + sample, actual.size(), equalTo(expected.size()));
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat("Event " + i + " of " + sample, actual.get(i), equalTo(expected.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void shouldHandleEntitiesWhitespaceAndComments() throws Exception {
+        String xml = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<!-- generated for testing -->\n" +
+                "<osm version=\"0.6\" generator=\"test &amp; more\">\n" +
+                "  <node id=\"1\" lat=\"-0.5\" lon=\"179.99999999\" version=\"3\" timestamp=\"2010-05-15T15:39:57Z\"/>\n" +
+                "  <node id='2' lat='1e-3' lon=\"0\" visible=\"false\">\n" +
+                "    <tag k=\"name\" v=\"S&#246;der &lt;&#x41;&gt; &quot;a&apos;\"/>\n" +
+                "    <tag k=\"note\" v=\"two\nlines\tand > sign\"/>\n" +
+                "    <tag k=\"name:ru\" v=\"\u0421\u0442\u043e\u043a\u0433\u043e\u043b\u044c\u043c\" />\n" +
+                "  </node>\n" +
+                "  <way id=\"3\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"highway\" v=\"residential\"/></way>\n" +
+                "  <relation id=\"4\"><member type=\"way\" ref=\"3\" role=\"\"/><![CDATA[ <ignored/> ]]></relation>\n" +
+                "</osm>\n";
+        List<String> expected = RecordingChunk.parse(new StaxOSMParser("test", stream(xml), null));
+        List<String> actual = RecordingChunk.parse(new OSMByteParser("test", stream(xml), null));
+        assertThat(actual, equalTo(expected));
+        assertThat(actual.size(), equalTo(7));
+    }
+
+    @Test
+    public void shouldSkipMetadataNotIncluded() throws Exception {
+        String xml = "<osm version=\"0.6\">\n" +
+                "  <bounds minlat=\"1\" minlon=\"2\" maxlat=\"3\" maxlon=\"4\"/>\n" +
+                "  <node id=\"1\" lat=\"1.5\" lon=\"2.5\" version=\"3\" timestamp=\"2010-05-15T15:39:57Z\" user=\"sanna\" uid=\"31450\" changeset=\"133823\"/>\n" +
+                "  <way id=\"3\" version=\"1\" user=\"sanna\"><nd ref=\"1\"/><tag k=\"user\" v=\"kept\"/></way>\n" +
+                "</osm>\n";
+        for (OSMInputConfiguration.Metadata metadata : OSMInputConfiguration.Metadata.values()) {
+            OSMParser.MetadataStatistics statistics = new OSMParser.MetadataStatistics();
+            List<String> expected = RecordingChunk.parse(new StaxOSMParser("test", stream(xml), null).withMetadata(metadata, statistics));
+            List<String> actual = RecordingChunk.parse(new OSMByteParser("test", stream(xml), null).withMetadata(metadata, statistics));
+            assertThat(actual, equalTo(expected));
+            String node = actual.get(2);
+            assertThat(metadata + ": " + node, node.contains("node_osm_id=1") && node.contains("lat=1.5") && node.contains("location"), equalTo(true));
+            assertThat(metadata + ": " + node, node.contains("version=3"), equalTo(metadata != OSMInputConfiguration.Metadata.NONE));
+            assertThat(metadata + ": " + node, node.contains("user=sanna"), equalTo(metadata == OSMInputConfiguration.Metadata.FULL));
+            assertThat(metadata + ": " + actual.get(1), actual.get(1).contains("minlat=1"), equalTo(true));
+            assertThat(metadata + ": " + actual, actual.toString().contains("user=kept"), equalTo(true));
+        }
+        OSMParser.MetadataStatistics statistics = new OSMParser.MetadataStatistics();
+        RecordingChunk.parse(new OSMByteParser("test", stream(xml), null).withMetadata(OSMInputConfiguration.Metadata.MINIMAL, statistics));
+        assertThat(statistics.attributes(), equalTo(11L));
+        assertThat(statistics.skipped(), equalTo(4L));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnTruncatedFile() throws Exception {
+        RecordingChunk.parse(new OSMByteParser("test", stream("<osm><node id=\"1\" lat=\"1.0\" lon=\"2."), null));
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        return file.getName().endsWith(".bz2") ? new BZip2CompressorInputStream(input) : input;
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
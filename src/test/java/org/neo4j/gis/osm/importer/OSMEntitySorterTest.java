@@ -0,0 +1,158 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.Values;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class OSMEntitySorterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldSortInMemoryWithoutSpilling() throws IOException {
+        try (OSMEntitySorter sorter = new OSMEntitySorter("id", folder.getRoot(), 100, entity -> -entity.id)) {
+            for (long id = 1; id <= 10; id++) {
+                sorter.add(node(id, 0, 0));
+            }
+            assertThat(ids(sorter.sorted()), equalTo(Arrays.asList(10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L)));
+            assertThat(sorter.runs(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void shouldMergeSpilledRunsStably() throws IOException {
+        try (OSMEntitySorter sorter = new OSMEntitySorter("parity", folder.getRoot(), 3, entity -> entity.id % 2)) {
+            for (long id = 1; id <= 10; id++) {
+                sorter.add(node(id, 0, 0));
+            }
+            assertThat(ids(sorter.sorted()), equalTo(Arrays.asList(2L, 4L, 6L, 8L, 10L, 1L, 3L, 5L, 7L, 9L)));
+            assertThat(sorter.runs(), equalTo(4));
+            assertThat(sorter.entities(), equalTo(10L));
+        }
+        assertThat(folder.getRoot().list().length, equalTo(0));
+    }
+
+    @Test
+    public void shouldNotMergeRunsAddedInOrder() throws IOException {
+        try (OSMEntitySorter sorter = new OSMEntitySorter("id", folder.getRoot(), 3, entity -> entity.id)) {
+            for (long id = 1; id <= 10; id++) {
+                sorter.add(node(id, 0, 0));
+            }
+            List<File> files = sorter.sortedFiles();
+            assertThat(files.size(), equalTo(4));
+            try (OSMEntitySorter.SortedReader sorted = OSMEntitySorter.read(files)) {
+                assertThat(ids(sorted), equalTo(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L)));
+            }
+        }
+        assertThat(folder.getRoot().list().length, equalTo(0));
+    }
+
+    @Test
+    public void shouldMergeRunsAddedOutOfOrderIntoOneFile() throws IOException {
+        try (OSMEntitySorter sorter = new OSMEntitySorter("id", folder.getRoot(), 3, entity -> entity.id)) {
+            for (long id : new long[]{5, 1, 9, 2, 8, 3, 7, 4, 6, 10}) {
+                sorter.add(node(id, 0, 0));
+            }
+            List<File> files = sorter.sortedFiles();
+            assertThat(files.size(), equalTo(1));
+            assertThat(folder.getRoot().list().length, equalTo(1));
+            try (OSMEntitySorter.SortedReader sorted = OSMEntitySorter.read(files)) {
+                assertThat(ids(sorted), equalTo(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L)));
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepAllPropertiesWhenSpilled() throws IOException {
+        Map<String, Object> member = new LinkedHashMap<>();
+        member.put("type", "way");
+        member.put("ref", "42");
+        member.put("role", "outer");
+        OSMEntity node = node(1, 12.9693483, 56.042095);
+        node.properties.put("version", 3);
+        node.properties.put("timestamp", LocalDateTime.of(2008, 6, 11, 12, 36, 28));
+        node.properties.put("visible", false);
+        node.tags.put("name", "Malm\u00f6");
+        OSMEntity relation = new OSMEntity(OSMEntity.Type.RELATION, 2, new LinkedHashMap<>(Collections.singletonMap("relation_osm_id", 2L)),
+                new LinkedHashMap<>(Collections.singletonMap("type", "multipolygon")), new ArrayList<>(), new ArrayList<>(Collections.singletonList(member)));
+        OSMEntity way = new OSMEntity(OSMEntity.Type.WAY, 3, new LinkedHashMap<>(Collections.singletonMap("way_osm_id", 3L)),
+                new LinkedHashMap<>(), Arrays.asList(1L, 4L, 1L), new ArrayList<>());
+        try (OSMEntitySorter sorter = new OSMEntitySorter("id", folder.getRoot(), 1, entity -> entity.id)) {
+            sorter.add(way);
+            sorter.add(relation);
+            sorter.add(node);
+            Iterator<OSMEntity> sorted = sorter.sorted();
+            assertEqual(sorted.next(), node);
+            assertEqual(sorted.next(), relation);
+            assertEqual(sorted.next(), way);
+            assertThat(sorted.hasNext(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void shouldKeepNeighboursCloseAlongHilbertCurve() {
+        OSMInputConfiguration.SpatialOrder hilbert = OSMInputConfiguration.SpatialOrder.HILBERT;
+        // Points a few meters apart in Malmo are much closer on the curve than points in another city
+        long here = hilbert.key(13.0000, 55.6000);
+        long near = hilbert.key(13.0001, 55.6001);
+        long far = hilbert.key(18.0686, 59.3293);
+        assertThat(Math.abs(here - near), lessThan(Math.abs(here - far) / 1000));
+        assertThat(hilbert.key(-180, -90), equalTo(0L));
+        // The curve visits every cell once, so the four cells of a 2x2 grid get four consecutive keys
+        double cell = 360.0 / (1L << 31);
+        Set<Long> corner = new TreeSet<>();
+        for (int x = 0; x < 2; x++) {
+            for (int y = 0; y < 2; y++) {
+                corner.add(hilbert.key(-180 + (x + 0.5) * cell, -90 + (y + 0.5) * cell / 2));
+            }
+        }
+        assertThat(corner, equalTo(new TreeSet<>(Arrays.asList(0L, 1L, 2L, 3L))));
+    }
+
+    @Test
+    public void shouldInterleaveBitsAlongMortonCurve() {
+        OSMInputConfiguration.SpatialOrder morton = OSMInputConfiguration.SpatialOrder.MORTON;
+        double cell = 360.0 / (1L << 31);
+        assertThat(morton.key(-180 + 0.5 * cell, -90 + 0.25 * cell), equalTo(0L));
+        assertThat(morton.key(-180 + 1.5 * cell, -90 + 0.25 * cell), equalTo(1L));
+        assertThat(morton.key(-180 + 0.5 * cell, -90 + 0.75 * cell), equalTo(2L));
+        assertThat(morton.key(-180 + 1.5 * cell, -90 + 0.75 * cell), equalTo(3L));
+        assertThat(morton.key(180, 90), equalTo((1L << 62) - 1));
+    }
+
+    private static OSMEntity node(long id, double lon, double lat) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("node_osm_id", id);
+        properties.put("lat", lat);
+        properties.put("lon", lon);
+        properties.put("location", Values.pointValue(CoordinateReferenceSystem.WGS84, lon, lat));
+        return new OSMEntity(OSMEntity.Type.NODE, id, properties);
+    }
+
+    private static List<Long> ids(Iterator<OSMEntity> entities) {
+        List<Long> ids = new ArrayList<>();
+        entities.forEachRemaining(entity -> ids.add(entity.id));
+        return ids;
+    }
+
+    private static void assertEqual(OSMEntity actual, OSMEntity expected) {
+        assertThat(actual.type, equalTo(expected.type));
+        assertThat(actual.id, equalTo(expected.id));
+        assertThat(actual.properties, equalTo(expected.properties));
+        assertThat(actual.tags, equalTo(expected.tags));
+        assertThat(actual.wayNodes, equalTo(expected.wayNodes));
+        assertThat(actual.members, equalTo(expected.members));
+    }
+}
@@ -0,0 +1,70 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class OSMEntitySpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldOrderByTypeAndId() {
+        OSMEntity negative = new OSMEntity(OSMEntity.Type.NODE, -1, new HashMap<>());
+        OSMEntity node = new OSMEntity(OSMEntity.Type.NODE, 10_000_000_000L, new HashMap<>());
+        OSMEntity way = new OSMEntity(OSMEntity.Type.WAY, 1, new HashMap<>());
+        OSMEntity relation = new OSMEntity(OSMEntity.Type.RELATION, 1, new HashMap<>());
+        assertThat(OSMEntitySpool.canonicalKey(negative), lessThan(OSMEntitySpool.canonicalKey(node)));
+        assertThat(OSMEntitySpool.canonicalKey(node), lessThan(OSMEntitySpool.canonicalKey(way)));
+        assertThat(OSMEntitySpool.canonicalKey(way), lessThan(OSMEntitySpool.canonicalKey(relation)));
+    }
+
+    @Test
+    public void shouldReadUnsortedEntitiesInOrderWithoutDuplicates() throws IOException {
+        try (OSMEntitySpool spool = new OSMEntitySpool(folder.getRoot(), 2)) {
+            OSMInput.OSMInputChunk chunk = spool.newChunk();
+            chunk.addDatasetNode("map.osm", Collections.singletonMap("name", "map.osm"));
+            addWay(chunk, 7, 1, 1L, 2L);
+            addNode(chunk, 2, 1);
+            addNode(chunk, 1, 1);
+            addWay(chunk, 7, 3, 1L, 2L, 3L);
+            addNode(chunk, 3, 1);
+            addWay(chunk, 7, 2, 1L);
+            addNode(chunk, 2, 1);
+            spool.finish();
+            assertThat(spool.datasets().keySet(), equalTo(Collections.singleton("map.osm")));
+            try (OSMEntitySpool.Reader entities = spool.read()) {
+                List<String> read = new ArrayList<>();
+                entities.forEachRemaining(entity -> read.add(entity.type + "[" + entity.id + "] v" + entity.version() + " " + entity.wayNodes));
+                assertThat(read, equalTo(Arrays.asList("NODE[1] v1 []", "NODE[2] v1 []", "NODE[3] v1 []", "WAY[7] v3 [1, 2, 3]")));
+                assertThat(entities.duplicates(), equalTo(3L));
+            }
+        }
+        assertThat(folder.getRoot().list().length, equalTo(0));
+    }
+
+    private static void addNode(OSMInput.OSMInputChunk chunk, long id, int version) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("node_osm_id", id);
+        properties.put("version", version);
+        chunk.addOSMNode(id, properties);
+        chunk.endTaggableEvent();
+    }
+
+    private static void addWay(OSMInput.OSMInputChunk chunk, long id, int version, Long... nodes) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("way_osm_id", id);
+        properties.put("version", version);
+        chunk.addOSMWay(id, properties, Arrays.asList(nodes), Collections.singletonMap("highway", "residential"));
+        chunk.addOSMTags(Collections.singletonMap("highway", "residential"));
+        chunk.endTaggableEvent();
+    }
+}
@@ -0,0 +1,56 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.startsWith;
+
+public class OSMFileSplitterTest {
+    private static final String MAP = "samples/map.osm";
+
+    @Test
+    public void shouldSplitAtEntityElements() throws IOException {
+        long[] offsets = OSMFileSplitter.split(MAP, 16, 1024);
+        assertThat(offsets.length, equalTo(17));
+        assertThat(offsets[0], equalTo(0L));
+        try (RandomAccessFile file = new RandomAccessFile(MAP, "r")) {
+            assertThat(offsets[offsets.length - 1], equalTo(file.length()));
+            for (int i = 1; i < offsets.length - 1; i++) {
+                assertThat(offsets[i], greaterThan(offsets[i - 1]));
+                byte[] start = new byte[10];
+                file.seek(offsets[i]);
+                file.readFully(start);
+                assertThat(new String(start, StandardCharsets.US_ASCII), anyOf(startsWith("<node "), startsWith("<way "), startsWith("<relation ")));
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotSplitSmallFiles() throws IOException {
+        assertThat(OSMFileSplitter.split("samples/two-street.osm", 16).length, equalTo(2));
+    }
+
+    @Test
+    public void shouldParseRangesToSameEventsAsWholeFile() throws IOException {
+        List<String> expected = RecordingChunk.parse(new OSMByteParser(MAP, new FileInputStream(MAP), null));
+        long[] offsets = OSMFileSplitter.split(MAP, 7, 1024);
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < offsets.length - 1; i++) {
+            InputStream range = OSMFileSplitter.open(MAP, offsets[i], offsets[i + 1]);
+            actual.addAll(RecordingChunk.parse(new OSMByteParser(MAP, range, null).partial(offsets[i] > 0)));
+        }
+        assertThat(actual.size(), equalTo(expected.size()));
+        assertThat(actual, equalTo(expected));
+    }
+}
@@ -0,0 +1,131 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.gis.osm.OSMDataGenerator;
+import org.neo4j.internal.batchimport.Configuration;
+import org.neo4j.internal.batchimport.InputIterable;
+import org.neo4j.internal.batchimport.InputIterator;
+import org.neo4j.internal.batchimport.input.Collector;
+import org.neo4j.internal.batchimport.input.InputChunk;
+import org.neo4j.internal.batchimport.input.InputEntityVisitor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the node and relationship passes of {@link OSMInput} over a file written by the {@link OSMDataGenerator},
+ * as read by the batch importer. The fill benchmarks parse the file into chunks with either parser, without passing
+ * the events on, while the replay benchmarks pass the events of chunks filled once to the importer's visitor, so that
+ * the cost of creating the chunk events and of handing them over can be told apart. Run with the main method, or
+ * with the JMH runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OSMInputBenchmark {
+
+    @Param({"stax", "bytes"})
+    public String parser;
+
+    @Param({"100000"})
+    public long entities;
+
+    private File osmFile;
+    private OSMInput input;
+    private List<InputChunk> nodeChunks;
+    private List<InputChunk> relationshipChunks;
+    private final CountingVisitor visitor = new CountingVisitor();
+
+    @Setup(Level.Trial)
+    public void generateInput() throws IOException {
+        osmFile = File.createTempFile("osm-input-benchmark", ".osm");
+        new OSMDataGenerator(entities, 42).write(osmFile);
+        boolean byteParser = parser.equals("bytes");
+        input = new OSMInput(null, new String[]{osmFile.getPath()}, Configuration.DEFAULT, new OSMInputConfiguration() {
+            @Override
+            public boolean byteParser() {
+                return byteParser;
+            }
+        }, null);
+        nodeChunks = fill(input.nodes(Collector.EMPTY));
+        relationshipChunks = fill(input.relationships(Collector.EMPTY));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() throws IOException {
+        input.close();
+        Files.deleteIfExists(osmFile.toPath());
+    }
+
+    @Benchmark
+    public long fillNodes() throws IOException {
+        return fill(input.nodes(Collector.EMPTY)).size();
+    }
+
+    @Benchmark
+    public long fillRelationships() throws IOException {
+        return fill(input.relationships(Collector.EMPTY)).size();
+    }
+
+    @Benchmark
+    public long replayNodes() throws IOException {
+        visitor.entities = 0;
+        for (InputChunk chunk : nodeChunks) {
+            ((OSMInput.OSMNodesInputChunk) chunk).currentRead = -1;
+            while (chunk.next(visitor)) {
+                // only counting
+            }
+        }
+        return visitor.entities;
+    }
+
+    @Benchmark
+    public long replayRelationships() throws IOException {
+        visitor.entities = 0;
+        for (InputChunk chunk : relationshipChunks) {
+            ((OSMInput.OSMRelationshipsInputChunk) chunk).currentRead = -1;
+            while (chunk.next(visitor)) {
+                // only counting
+            }
+        }
+        return visitor.entities;
+    }
+
+    /**
+     * All chunks of one pass, each filled once and not passed on.
+     */
+    private static List<InputChunk> fill(InputIterable input) throws IOException {
+        List<InputChunk> chunks = new ArrayList<>();
+        try (InputIterator iterator = input.iterator()) {
+            InputChunk chunk = iterator.newChunk();
+            while (iterator.next(chunk)) {
+                chunks.add(chunk);
+                chunk = iterator.newChunk();
+            }
+        }
+        return chunks;
+    }
+
+    private static class CountingVisitor extends InputEntityVisitor.Adapter {
+        private long entities = 0;
+
+        @Override
+        public void endOfEntity() {
+            entities++;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OSMInputBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,125 @@
+package org.neo4j.gis.osm.importer;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.neo4j.internal.batchimport.input.InputEntityVisitor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how many times per second the StAX parser and the byte level tokenizer can parse the uncompressed
+ * samples/map2.osm.bz2 file held in memory, so that neither decompression nor disk reads are included, and how much
+ * skipping the metadata attributes saves. Run with the main method, or with the JMH runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OSMParserBenchmark {
+
+    @Param({"stax", "bytes"})
+    public String parser;
+
+    @Param({"FULL", "NONE"})
+    public OSMInputConfiguration.Metadata metadata;
+
+    private byte[] osm;
+
+    @Setup(Level.Trial)
+    public void readFile() throws IOException {
+        try (InputStream input = new BZip2CompressorInputStream(new FileInputStream("samples/map2.osm.bz2"))) {
+            osm = input.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public long parse() throws Exception {
+        InputStream input = new ByteArrayInputStream(osm);
+        CountingChunk events = new CountingChunk();
+        try (OSMParser osmParser = (parser.equals("bytes") ? new OSMByteParser("map2.osm", input, null) : new StaxOSMParser("map2.osm", input, null))
+                .withMetadata(metadata, new OSMParser.MetadataStatistics())) {
+            while (osmParser.parseNext(events)) {
+                // only counting
+            }
+        }
+        return events.size();
+    }
+
+    private static class CountingChunk implements OSMInput.OSMInputChunk {
+        private long count = 0;
+
+        @Override
+        public void addDatasetNode(String name, Map<String, Object> properties) {
+            count++;
+        }
+
+        @Override
+        public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+            count++;
+        }
+
+        @Override
+        public void addOSMNode(long id, Map<String, Object> properties) {
+            count += properties.size();
+        }
+
+        @Override
+        public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+            count += wayNodes.size();
+        }
+
+        @Override
+        public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+            count += relationMembers.size();
+        }
+
+        @Override
+        public void addOSMTags(Map<String, Object> properties) {
+            count += properties.size();
+        }
+
+        @Override
+        public boolean insideTaggableEvent() {
+            return false;
+        }
+
+        @Override
+        public void endTaggableEvent() {
+        }
+
+        @Override
+        public long size() {
+            return count;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+
+        @Override
+        public boolean next(InputEntityVisitor visitor) {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OSMParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
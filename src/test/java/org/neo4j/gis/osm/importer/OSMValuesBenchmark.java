@@ -0,0 +1,100 @@
+package org.neo4j.gis.osm.importer;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing OSM coordinates and timestamps with {@link OSMValues} to the JDK methods used before, both from
+ * strings as done with the StAX parser, and from bytes as done by the {@link OSMByteParser}. Run with the main
+ * method, or with the JMH runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(OSMValuesBenchmark.VALUES)
+public class OSMValuesBenchmark {
+    static final int VALUES = 1000;
+    private static final DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    private String[] coordinates = new String[VALUES];
+    private byte[][] coordinateBytes = new byte[VALUES][];
+    private String[] timestamps = new String[VALUES];
+    private byte[][] timestampBytes = new byte[VALUES][];
+
+    @Setup(Level.Trial)
+    public void createValues() {
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2008, 1, 1, 0, 0);
+        for (int i = 0; i < VALUES; i++) {
+            coordinates[i] = String.format("%.7f", random.nextDouble() * 360 - 180);
+            coordinateBytes[i] = coordinates[i].getBytes(StandardCharsets.US_ASCII);
+            timestamps[i] = start.plusSeconds(random.nextInt(400_000_000)).format(timestampFormat);
+            timestampBytes[i] = timestamps[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    public void parseDouble(Blackhole blackhole) {
+        for (String coordinate : coordinates) {
+            blackhole.consume(Double.parseDouble(coordinate));
+        }
+    }
+
+    @Benchmark
+    public void parseDecimal(Blackhole blackhole) {
+        for (String coordinate : coordinates) {
+            blackhole.consume(OSMValues.parseDecimal(coordinate));
+        }
+    }
+
+    @Benchmark
+    public void parseDoubleFromBytes(Blackhole blackhole) {
+        for (byte[] coordinate : coordinateBytes) {
+            blackhole.consume(Double.parseDouble(new String(coordinate, StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Benchmark
+    public void parseDecimalFromBytes(Blackhole blackhole) {
+        for (byte[] coordinate : coordinateBytes) {
+            blackhole.consume(OSMValues.parseDecimal(coordinate, 0, coordinate.length));
+        }
+    }
+
+    @Benchmark
+    public void formatterTimestamp(Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(LocalDateTime.parse(timestamp, timestampFormat));
+        }
+    }
+
+    @Benchmark
+    public void parseTimestamp(Blackhole blackhole) {
+        for (String timestamp : timestamps) {
+            blackhole.consume(OSMValues.parseTimestamp(timestamp));
+        }
+    }
+
+    @Benchmark
+    public void parseTimestampFromBytes(Blackhole blackhole) {
+        for (byte[] timestamp : timestampBytes) {
+            blackhole.consume(OSMValues.parseTimestamp(timestamp, 0, timestamp.length));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OSMValuesBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,81 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class OSMValuesTest {
+    private static final DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    @Test
+    public void shouldParseCoordinatesLikeParseDouble() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            double coordinate = random.nextDouble() * 360 - 180;
+            String value = String.format("%." + random.nextInt(10) + "f", coordinate);
+            assertParsedLikeParseDouble(value);
+        }
+        for (String value : new String[]{"0", "-0", "0.0", "-0.0", "56.0420950", "-179.9999999", "1.", ".5", "-.5",
+                "12345678901234567890", "0.12345678901234567890123", "3.141592653589793238"}) {
+            assertParsedLikeParseDouble(value);
+        }
+    }
+
+    @Test
+    public void shouldLeaveOtherNumberFormatsToParseDouble() {
+        for (String value : new String[]{"1e-3", "+1.5", " 1.5", "NaN", "Infinity", "0x1p3"}) {
+            assertThat(value, OSMValues.parseDecimal(value), equalTo(Double.parseDouble(value)));
+            assertThat(value, Double.isNaN(OSMValues.parseDecimal(bytes(value), 0, value.length())), equalTo(true));
+        }
+        for (String value : new String[]{"", "-", ".", "1.2.3", "abc"}) {
+            assertThat(value, Double.isNaN(OSMValues.parseDecimal(bytes(value), 0, value.length())), equalTo(true));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void shouldFailOnInvalidNumberLikeParseDouble() {
+        OSMValues.parseDecimal(".");
+    }
+
+    @Test
+    public void shouldParseTimestampsLikeFormatter() {
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            LocalDateTime time = LocalDateTime.of(2004, 1, 1, 0, 0).plusSeconds(random.nextInt(600_000_000));
+            String value = time.format(timestampFormat);
+            assertThat(OSMValues.parseTimestamp(value), equalTo(time));
+            assertThat(OSMValues.parseTimestamp(bytes(value), 0, value.length()), equalTo(time));
+        }
+        // The formatter resolves these to valid dates, which is left to it
+        for (String value : new String[]{"2019-04-31T10:00:00Z", "2019-02-29T10:00:00Z"}) {
+            assertThat(value, OSMValues.parseTimestamp(value), equalTo(LocalDateTime.parse(value, timestampFormat)));
+            assertThat(value, OSMValues.parseTimestamp(bytes(value), 0, value.length()), nullValue());
+        }
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void shouldFailOnInvalidTimestampLikeFormatter() {
+        OSMValues.parseTimestamp("2008-06-11 12:36:28");
+    }
+
+    private static void assertParsedLikeParseDouble(String value) {
+        double expected = Double.parseDouble(value);
+        assertThat(value, Double.doubleToRawLongBits(OSMValues.parseDecimal(value)), equalTo(Double.doubleToRawLongBits(expected)));
+        double fromBytes = OSMValues.parseDecimal(bytes(value), 0, value.length());
+        if (!Double.isNaN(fromBytes)) {
+            assertThat(value, Double.doubleToRawLongBits(fromBytes), equalTo(Double.doubleToRawLongBits(expected)));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
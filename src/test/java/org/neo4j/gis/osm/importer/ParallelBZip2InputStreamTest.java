@@ -0,0 +1,130 @@
+package org.neo4j.gis.osm.importer;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import org.neo4j.gis.osm.jfr.DecompressionBlockEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class ParallelBZip2InputStreamTest {
+
+    @Test
+    public void shouldDecompressSampleFile() throws IOException {
+        byte[] expected;
+        try (InputStream input = new BZip2CompressorInputStream(new FileInputStream("samples/map2.osm.bz2"))) {
+            expected = input.readAllBytes();
+        }
+        try (InputStream input = new ParallelBZip2InputStream("map2.osm.bz2", new FileInputStream("samples/map2.osm.bz2"), 4)) {
+            assertThat(Arrays.equals(input.readAllBytes(), expected), equalTo(true));
+        }
+    }
+
+    @Test
+    public void shouldDecompressManyBlocksAndConcatenatedStreams() throws IOException {
+        byte[] data = randomOSM(2_000);
+        byte[] first = compress(data);
+        byte[] second = compress(Arrays.copyOf(data, 1000));
+        ByteArrayOutputStream both = new ByteArrayOutputStream();
+        both.write(first);
+        both.write(second);
+        try (InputStream input = new ParallelBZip2InputStream("test", new ByteArrayInputStream(both.toByteArray()), 3)) {
+            byte[] actual = input.readAllBytes();
+            assertThat(actual.length, equalTo(data.length + 1000));
+            assertThat(Arrays.equals(Arrays.copyOf(actual, data.length), data), equalTo(true));
+            assertThat(Arrays.equals(Arrays.copyOfRange(actual, data.length, actual.length), Arrays.copyOf(data, 1000)), equalTo(true));
+        }
+    }
+
+    @Test
+    public void shouldRecoverFromBlockSplitByFalseMagic() throws IOException {
+        byte[] data = randomOSM(100);
+        ParallelBZip2InputStream.BlockScanner scanner = new ParallelBZip2InputStream.BlockScanner(new ByteArrayInputStream(compress(data)));
+        ParallelBZip2InputStream.Segment block = scanner.next();
+        assertThat(scanner.next(), nullValue());
+        assertThat(Arrays.equals(ParallelBZip2InputStream.decompress(block), data), equalTo(true));
+
+        long split = block.start + (block.end - block.start) / 3;
+        ParallelBZip2InputStream.Segment head = new ParallelBZip2InputStream.Segment(block.data, block.start, split, block.level);
+        ParallelBZip2InputStream.Segment tail = new ParallelBZip2InputStream.Segment(block.data, split, block.end, block.level);
+        try {
+            ParallelBZip2InputStream.decompress(head);
+            fail("Should not be able to decompress part of a block");
+        } catch (IOException | RuntimeException e) {
+            // expected
+        }
+        assertThat(Arrays.equals(ParallelBZip2InputStream.decompress(head.merge(tail)), data), equalTo(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnTruncatedFile() throws IOException {
+        byte[] compressed = compress(randomOSM(2_000));
+        try (InputStream input = new ParallelBZip2InputStream("test", new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length / 2)), 2)) {
+            input.readAllBytes();
+        }
+    }
+
+    @Test
+    public void shouldRecordDecompressedBlocks() throws IOException {
+        byte[] data = randomOSM(2_000);
+        Path recorded = Files.createTempFile("decompression", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(DecompressionBlockEvent.class);
+            recording.start();
+            try (InputStream input = new ParallelBZip2InputStream("test", new ByteArrayInputStream(compress(data)), 3)) {
+                input.readAllBytes();
+            }
+            recording.stop();
+            recording.dump(recorded);
+            List<RecordedEvent> blocks = RecordingFile.readAllEvents(recorded);
+            assertThat(blocks.size(), greaterThan(1));
+            long uncompressed = 0;
+            for (RecordedEvent block : blocks) {
+                assertThat(block.getEventType().getName(), equalTo("org.neo4j.gis.osm.DecompressionBlock"));
+                uncompressed += block.getLong("uncompressedBytes");
+            }
+            assertThat(uncompressed, equalTo((long) data.length));
+        } finally {
+            Files.delete(recorded);
+        }
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        // The smallest block size gives many blocks for little data
+        try (BZip2CompressorOutputStream output = new BZip2CompressorOutputStream(compressed, 1)) {
+            output.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] randomOSM(int nodes) {
+        Random random = new Random(42);
+        StringBuilder osm = new StringBuilder();
+        for (int i = 0; i < nodes; i++) {
+            osm.append(String.format("  <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\" version=\"%d\" user=\"user%d\"/>\n",
+                    random.nextInt(Integer.MAX_VALUE), random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+                    random.nextInt(10), random.nextInt(1000)));
+        }
+        return osm.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
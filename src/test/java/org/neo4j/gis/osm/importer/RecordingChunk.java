@@ -0,0 +1,93 @@
+package org.neo4j.gis.osm.importer;
+
+import org.neo4j.internal.batchimport.input.InputEntityVisitor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the events passed to a chunk as strings, to compare the output of different ways of parsing the same file.
+ */
+class RecordingChunk implements OSMInput.OSMInputChunk {
+    private final List<String> events = new ArrayList<>();
+    private boolean inside = false;
+
+    @Override
+    public void addDatasetNode(String name, Map<String, Object> properties) {
+        events.add("dataset " + name + " " + properties);
+    }
+
+    @Override
+    public void addDatasetBoundsNode(String name, Map<String, Object> properties) {
+        events.add("bounds " + name + " " + properties);
+    }
+
+    @Override
+    public void addOSMNode(long id, Map<String, Object> properties) {
+        events.add("node " + id + " " + properties);
+        inside = true;
+    }
+
+    @Override
+    public void addOSMWay(long id, Map<String, Object> properties, List<Long> wayNodes, Map<String, Object> wayTags) {
+        events.add("way " + id + " " + properties + " " + wayNodes + " " + wayTags);
+        inside = true;
+    }
+
+    @Override
+    public void addOSMRelation(long id, Map<String, Object> properties, ArrayList<Map<String, Object>> relationMembers, Map<String, Object> relationTags) {
+        events.add("relation " + id + " " + properties + " " + relationMembers + " " + relationTags);
+        inside = true;
+    }
+
+    @Override
+    public void addOSMTags(Map<String, Object> properties) {
+        events.add("tags " + properties);
+    }
+
+    @Override
+    public boolean insideTaggableEvent() {
+        return inside;
+    }
+
+    @Override
+    public void endTaggableEvent() {
+        inside = false;
+    }
+
+    @Override
+    public long size() {
+        return events.size();
+    }
+
+    @Override
+    public void reset() {
+        events.clear();
+    }
+
+    @Override
+    public boolean next(InputEntityVisitor visitor) {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Parse all of the input, returning the recorded events.
+     */
+    static List<String> parse(OSMParser parser) throws IOException {
+        RecordingChunk events = new RecordingChunk();
+        try {
+            while (parser.parseNext(events)) {
+                // all events are recorded by the chunk
+            }
+        } finally {
+            parser.close();
+        }
+        return events.events;
+    }
+}
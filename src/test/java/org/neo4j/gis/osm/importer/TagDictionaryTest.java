@@ -0,0 +1,99 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class TagDictionaryTest {
+
+    @Test
+    public void shouldShareStringsSeenMoreThanOnce() {
+        TagDictionary dictionary = new TagDictionary(16, new TagDictionary.Statistics());
+        String first = new String("highway");
+        String second = new String("highway");
+        String third = new String("highway");
+        assertThat(dictionary.intern(first), sameInstance(first));
+        assertThat(dictionary.entries(), equalTo(0));
+        assertThat(dictionary.intern(second), sameInstance(second));
+        assertThat(dictionary.entries(), equalTo(1));
+        assertThat(dictionary.intern(third), sameInstance(second));
+    }
+
+    @Test
+    public void shouldShareStringsFromBytes() {
+        TagDictionary dictionary = new TagDictionary(16, new TagDictionary.Statistics());
+        byte[] data = bytes("<tag k=\"name\" v=\"Malm\u00f6\"/><tag k=\"name\" v=\"Malm\u00f6\"/>");
+        String first = dictionary.intern(data, 17, 23);
+        String second = dictionary.intern(data, 43, 49);
+        String third = dictionary.intern(data, 43, 49);
+        assertThat(first, equalTo("Malm\u00f6"));
+        assertThat(second, equalTo("Malm\u00f6"));
+        assertThat(third, sameInstance(second));
+        assertThat(dictionary.intern(data, 8, 12), equalTo("name"));
+    }
+
+    @Test
+    public void shouldMixStringAndByteLookups() {
+        TagDictionary dictionary = new TagDictionary(16, new TagDictionary.Statistics());
+        String shared = new String("yes");
+        dictionary.intern(new String("yes"));
+        dictionary.intern(shared);
+        assertThat(dictionary.intern(new String("yes")), sameInstance(shared));
+        byte[] data = bytes("yes");
+        assertThat(dictionary.intern(data, 0, 3), equalTo("yes"));
+        String fromBytes = dictionary.intern(data, 0, 3);
+        assertThat(dictionary.intern(data, 0, 3), sameInstance(fromBytes));
+    }
+
+    @Test
+    public void shouldNotGrowBeyondSize() {
+        TagDictionary dictionary = new TagDictionary(10, new TagDictionary.Statistics());
+        for (int i = 0; i < 1000; i++) {
+            dictionary.intern("value" + i);
+            dictionary.intern("value" + i);
+        }
+        assertThat(dictionary.entries(), equalTo(10));
+        String unknown = new String("value999");
+        assertThat(dictionary.intern(unknown), sameInstance(unknown));
+    }
+
+    @Test
+    public void shouldNotShareLongStrings() {
+        TagDictionary dictionary = new TagDictionary(16, new TagDictionary.Statistics());
+        String value = "A name that is longer than any common tag key or value";
+        for (int i = 0; i < 3; i++) {
+            String copy = new String(value);
+            assertThat(dictionary.intern(copy), sameInstance(copy));
+        }
+        assertThat(dictionary.entries(), equalTo(0));
+    }
+
+    @Test
+    public void shouldReportHitRate() {
+        TagDictionary.Statistics statistics = new TagDictionary.Statistics();
+        TagDictionary first = new TagDictionary(16, statistics);
+        TagDictionary second = new TagDictionary(16, statistics);
+        for (int i = 0; i < 4; i++) {
+            first.intern("building");
+            second.intern("yes");
+        }
+        first.report();
+        second.report();
+        assertThat(statistics.lookups(), equalTo(8L));
+        assertThat(statistics.hits(), equalTo(4L));
+        assertThat(statistics.hitRate(), closeTo(0.5, 0.0001));
+        first.report();
+        assertThat(statistics.lookups(), equalTo(8L));
+        statistics.reset();
+        assertThat(statistics.lookups(), equalTo(0L));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
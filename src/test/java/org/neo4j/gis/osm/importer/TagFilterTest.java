@@ -0,0 +1,86 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.neo4j.gis.osm.importer.OSMEntity.Type.*;
+
+public class TagFilterTest {
+    private final TagFilter filter = TagFilter.parse(Arrays.asList(
+            "# Highways, points of interest and administrative boundaries",
+            "node     include amenity shop",
+            "way      include highway",
+            "way      exclude highway=proposed|construction   # not built yet",
+            "",
+            "relation include boundary=administrative",
+            "*        tags    name name:* highway"));
+
+    @Test
+    public void shouldIncludeMatchingKeysAndValues() {
+        assertThat(filter.matches(NODE, tags("amenity", "cafe", "name", "Kaffe")), equalTo(true));
+        assertThat(filter.matches(NODE, tags("highway", "crossing")), equalTo(false));
+        assertThat(filter.matches(WAY, tags("highway", "residential")), equalTo(true));
+        assertThat(filter.matches(RELATION, tags("boundary", "administrative", "admin_level", "8")), equalTo(true));
+        assertThat(filter.matches(RELATION, tags("boundary", "protected_area")), equalTo(false));
+    }
+
+    @Test
+    public void shouldExcludeMatchingValues() {
+        assertThat(filter.matches(WAY, tags("highway", "proposed")), equalTo(false));
+        assertThat(filter.matches(WAY, tags("highway", "construction")), equalTo(false));
+    }
+
+    @Test
+    public void shouldNotIncludeUntaggedEntities() {
+        assertThat(filter.matches(NODE, Collections.emptyMap()), equalTo(false));
+        TagFilter all = TagFilter.parse(Collections.singletonList("node include *"));
+        assertThat(all.matches(NODE, Collections.emptyMap()), equalTo(true));
+        assertThat(all.includes(NODE), equalTo(true));
+        assertThat(all.includes(WAY), equalTo(false));
+        assertThat(all.matches(WAY, tags("highway", "residential")), equalTo(false));
+    }
+
+    @Test
+    public void shouldMatchKeyPrefixes() {
+        TagFilter prefix = TagFilter.parse(Collections.singletonList("way include addr:*=Malm\u00f6"));
+        assertThat(prefix.matches(WAY, tags("addr:city", "Malm\u00f6")), equalTo(true));
+        assertThat(prefix.matches(WAY, tags("addr:city", "Lund")), equalTo(false));
+    }
+
+    @Test
+    public void shouldProjectTags() {
+        Map<String, Object> projected = filter.project(WAY, tags("highway", "primary", "name", "Storgatan", "name:en", "Main Street", "source", "survey"));
+        assertThat(projected, equalTo(tags("highway", "primary", "name", "Storgatan", "name:en", "Main Street")));
+        Map<String, Object> tags = tags("highway", "primary", "source", "survey");
+        TagFilter unprojected = TagFilter.parse(Collections.singletonList("way include highway"));
+        assertThat(unprojected.project(WAY, tags), sameInstance(tags));
+    }
+
+    @Test
+    public void shouldRejectInvalidRules() {
+        for (String rule : new String[]{"way include", "area include building", "way keep highway", "way include =residential"}) {
+            try {
+                TagFilter.parse(Collections.singletonList(rule));
+                fail("Expected invalid rule: " + rule);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static Map<String, Object> tags(String... keysAndValues) {
+        Map<String, Object> tags = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            tags.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return tags;
+    }
+}
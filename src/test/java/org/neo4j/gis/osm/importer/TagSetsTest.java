@@ -0,0 +1,93 @@
+package org.neo4j.gis.osm.importer;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+public class TagSetsTest {
+
+    @Test
+    public void shouldHashTagSetsRegardlessOfOrder() {
+        assertThat(TagSets.hash(tags("highway", "residential", "surface", "asphalt")),
+                equalTo(TagSets.hash(tags("surface", "asphalt", "highway", "residential"))));
+        assertThat(TagSets.hash(tags("highway", "residential", "surface", "asphalt")),
+                not(equalTo(TagSets.hash(tags("highway", "residential")))));
+        assertThat(TagSets.hash(tags("highway", "residential")),
+                not(equalTo(TagSets.hash(tags("highwa", "yresidential")))));
+        assertThat(TagSets.hash(tags()), not(equalTo(0L)));
+        assertThat(TagSets.check(tags("highway", "residential", "surface", "asphalt")),
+                equalTo(TagSets.check(tags("surface", "asphalt", "highway", "residential"))));
+        assertThat(TagSets.check(tags("highway", "residential")),
+                not(equalTo(TagSets.check(tags("highwa", "yresidential")))));
+    }
+
+    @Test
+    public void shouldShareEachTagSetOnce() {
+        TagSets tagSets = new TagSets(16);
+        Map<String, Object> building = tags("building", "yes");
+        Map<String, Object> road = tags("highway", "residential", "surface", "asphalt");
+        assertThat(add(tagSets, building), equalTo(TagSets.Result.ADDED));
+        assertThat(add(tagSets, building), equalTo(TagSets.Result.FOUND));
+        assertThat(add(tagSets, road), equalTo(TagSets.Result.ADDED));
+        assertThat(add(tagSets, building), equalTo(TagSets.Result.FOUND));
+        assertThat(tagSets.entries(), equalTo(2));
+        assertThat(tagSets.entities(), equalTo(4L));
+        assertThat(tagSets.ratio(), closeTo(2.0, 0.001));
+        assertThat(contains(tagSets, building), equalTo(true));
+        assertThat(contains(tagSets, tags("building", "house")), equalTo(false));
+    }
+
+    @Test
+    public void shouldNotShareTagSetsWithCollidingHashes() {
+        TagSets tagSets = new TagSets(16);
+        assertThat(tagSets.add(42, 1), equalTo(TagSets.Result.ADDED));
+        assertThat("Different tags with the same hash should not be shared", tagSets.add(42, 2), equalTo(TagSets.Result.FULL));
+        assertThat(tagSets.add(42, 1), equalTo(TagSets.Result.FOUND));
+        assertThat(tagSets.contains(42, 1), equalTo(true));
+        assertThat(tagSets.contains(42, 2), equalTo(false));
+        assertThat(tagSets.entries(), equalTo(1));
+        assertThat(tagSets.collisions(), equalTo(1L));
+        assertThat(tagSets.ratio(), closeTo(3.0 / 2.0, 0.001));
+    }
+
+    @Test
+    public void shouldStopSharingWhenFull() {
+        TagSets tagSets = new TagSets(2);
+        for (int i = 0; i < 2; i++) {
+            assertThat(add(tagSets, tags("ref", Integer.toString(i))), equalTo(TagSets.Result.ADDED));
+        }
+        Map<String, Object> third = tags("ref", "2");
+        assertThat(add(tagSets, third), equalTo(TagSets.Result.FULL));
+        assertThat(add(tagSets, third), equalTo(TagSets.Result.FULL));
+        assertThat(contains(tagSets, third), equalTo(false));
+        assertThat(add(tagSets, tags("ref", "1")), equalTo(TagSets.Result.FOUND));
+        // Every unshared entity has an OSMTags node of its own
+        assertThat(tagSets.ratio(), closeTo(5.0 / 4.0, 0.001));
+        tagSets.resetStatistics();
+        assertThat(tagSets.entities(), equalTo(0L));
+        assertThat(contains(tagSets, tags("ref", "0")), equalTo(true));
+        assertThat(tagSets.collisions(), equalTo(0L));
+    }
+
+    private static TagSets.Result add(TagSets tagSets, Map<String, Object> tags) {
+        return tagSets.add(TagSets.hash(tags), TagSets.check(tags));
+    }
+
+    private static boolean contains(TagSets tagSets, Map<String, Object> tags) {
+        return tagSets.contains(TagSets.hash(tags), TagSets.check(tags));
+    }
+
+    private static Map<String, Object> tags(String... keysAndValues) {
+        Map<String, Object> tags = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            tags.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return tags;
+    }
+}
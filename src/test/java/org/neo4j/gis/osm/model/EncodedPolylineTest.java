@@ -0,0 +1,40 @@
+package org.neo4j.gis.osm.model;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class EncodedPolylineTest {
+
+    @Test
+    public void shouldEncodeAndDecodeStreetGeometry() {
+        double[] street = new double[]{12.9693483, 56.0420950, 12.9695012, 56.0421311, 12.9699120, 56.0419876, 12.9701011, 56.0417001};
+        byte[] encoded = EncodedPolyline.encode(street, 4);
+        assertThat(EncodedPolyline.countPoints(encoded), equalTo(4));
+        double[] decoded = EncodedPolyline.decode(encoded);
+        assertThat(decoded.length, equalTo(street.length));
+        for (int i = 0; i < street.length; i++) {
+            assertThat(decoded[i], closeTo(street[i], 1e-6));
+        }
+        // The first point is large, but the following deltas should need only a few bytes each
+        assertThat(encoded.length, lessThan(1 + 10 + 3 * 6));
+    }
+
+    @Test
+    public void shouldRespectPrecision() {
+        double[] point = new double[]{-0.123456789, 51.987654321};
+        double[] decoded = EncodedPolyline.decode(EncodedPolyline.encode(point, 1, 2));
+        assertThat(decoded[0], closeTo(-0.12, 1e-9));
+        assertThat(decoded[1], closeTo(51.99, 1e-9));
+    }
+
+    @Test
+    public void shouldEncodeEmptyGeometry() {
+        byte[] encoded = EncodedPolyline.encode(new double[0], 0);
+        assertThat(EncodedPolyline.countPoints(encoded), equalTo(0));
+        assertThat(EncodedPolyline.decode(encoded).length, equalTo(0));
+    }
+}
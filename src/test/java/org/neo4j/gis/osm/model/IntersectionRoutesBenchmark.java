@@ -0,0 +1,92 @@
+package org.neo4j.gis.osm.model;
+
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.*;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many intersection searches per second can be made on a dense street grid, as done by the
+ * spatial.osm.routeIntersection procedure for each intersection node. Run with the main method, or with the JMH
+ * runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IntersectionRoutesBenchmark {
+
+    @Param({"100"})
+    public int size;
+
+    @Param({"2", "10"})
+    public int spacing;
+
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+    private Transaction tx;
+    private long[] intersections;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void buildGrid() {
+        databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        db = databases.database("neo4j");
+        try (Transaction tx = db.beginTx()) {
+            TestOSMModel osm = new TestOSMModel(tx);
+            osm.buildGrid(size, spacing);
+            osm.addIntersectionLabels();
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            ArrayList<Long> ids = new ArrayList<>();
+            try (ResourceIterator<Node> nodes = tx.findNodes(OSMModel.Intersection)) {
+                nodes.forEachRemaining(node -> ids.add(node.getId()));
+            }
+            intersections = ids.stream().mapToLong(Long::longValue).toArray();
+            tx.commit();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void beginTx() {
+        tx = db.beginTx();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeTx() {
+        tx.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        databases.shutdown();
+    }
+
+    @Benchmark
+    public int findIntersectionRoutes() {
+        Node node = tx.getNodeById(intersections[next]);
+        next = (next + 1) % intersections.length;
+        OSMModel osm = new OSMModel();
+        int found = 0;
+        for (Relationship rel : node.getRelationships(Direction.INCOMING, OSMModel.NODE)) {
+            OSMModel.IntersectionRoutes routes = osm.intersectionRoutes(node, rel, rel.getStartNode(), false);
+            if (routes.process(tx)) {
+                found += routes.routes.size();
+            }
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IntersectionRoutesBenchmark.class.getSimpleName()).build()).run();
+    }
+}
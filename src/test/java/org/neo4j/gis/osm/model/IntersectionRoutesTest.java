@@ -0,0 +1,147 @@
+package org.neo4j.gis.osm.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.*;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+/**
+ * The routes found from every Routable node of small street grids, as found by the earlier recursive search, so that
+ * changes to the search can be checked to find exactly the same routes.
+ */
+public class IntersectionRoutesTest {
+
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+
+    @Before
+    public void setup() {
+        this.databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        this.db = databases.database("neo4j");
+    }
+
+    @After
+    public void shutdown() {
+        this.databases.shutdown();
+    }
+
+    @Test
+    public void shouldFindRoutesOnSparseGrid() {
+        assertRoutes(6, 3,
+                "(0,0) -> (0,3) length:3 segments:1, (3,0) length:3 segments:1",
+                "(0,1) -> (0,3) length:2 segments:1, (3,0) length:4 segments:2",
+                "(0,2) -> (0,3) length:1 segments:1, (3,0) length:5 segments:2",
+                "(0,3) -> (3,0) length:6 segments:2, (3,3) length:3 segments:1, (3,6) length:6 segments:2",
+                "(0,4) -> (0,3) length:1 segments:1, (3,6) length:5 segments:2",
+                "(0,5) -> (0,3) length:2 segments:1, (3,6) length:4 segments:2",
+                "(0,6) -> (0,3) length:3 segments:1, (3,6) length:3 segments:1",
+                "(1,0) -> (0,3) length:4 segments:2, (3,0) length:2 segments:1",
+                "(1,3) -> (0,3) length:1 segments:1, (3,3) length:2 segments:1",
+                "(1,6) -> (0,3) length:4 segments:2, (3,6) length:2 segments:1",
+                "(2,0) -> (0,3) length:5 segments:2, (3,0) length:1 segments:1",
+                "(2,3) -> (0,3) length:2 segments:1, (3,3) length:1 segments:1",
+                "(2,6) -> (0,3) length:5 segments:2, (3,6) length:1 segments:1",
+                "(3,0) -> (0,3) length:6 segments:2, (3,3) length:3 segments:1, (6,3) length:6 segments:2",
+                "(3,1) -> (3,0) length:1 segments:1, (3,3) length:2 segments:1",
+                "(3,2) -> (3,0) length:2 segments:1, (3,3) length:1 segments:1",
+                "(3,3) -> (0,3) length:3 segments:1, (3,0) length:3 segments:1, (3,6) length:3 segments:1, (6,3) length:3 segments:1",
+                "(3,4) -> (3,3) length:1 segments:1, (3,6) length:2 segments:1",
+                "(3,5) -> (3,3) length:2 segments:1, (3,6) length:1 segments:1",
+                "(3,6) -> (0,3) length:6 segments:2, (3,3) length:3 segments:1, (6,3) length:6 segments:2",
+                "(4,0) -> (3,0) length:1 segments:1, (6,3) length:5 segments:2",
+                "(4,3) -> (3,3) length:1 segments:1, (6,3) length:2 segments:1",
+                "(4,6) -> (3,6) length:1 segments:1, (6,3) length:5 segments:2",
+                "(5,0) -> (3,0) length:2 segments:1, (6,3) length:4 segments:2",
+                "(5,3) -> (3,3) length:2 segments:1, (6,3) length:1 segments:1",
+                "(5,6) -> (3,6) length:2 segments:1, (6,3) length:4 segments:2",
+                "(6,0) -> (3,0) length:3 segments:1, (6,3) length:3 segments:1",
+                "(6,1) -> (3,0) length:4 segments:2, (6,3) length:2 segments:1",
+                "(6,2) -> (3,0) length:5 segments:2, (6,3) length:1 segments:1",
+                "(6,3) -> (3,0) length:6 segments:2, (3,3) length:3 segments:1, (3,6) length:6 segments:2",
+                "(6,4) -> (3,6) length:5 segments:2, (6,3) length:1 segments:1",
+                "(6,5) -> (3,6) length:4 segments:2, (6,3) length:2 segments:1",
+                "(6,6) -> (3,6) length:3 segments:1, (6,3) length:3 segments:1");
+    }
+
+    @Test
+    public void shouldFindRoutesOnDenseGrid() {
+        assertRoutes(4, 1,
+                "(0,0) -> (0,1) length:1 segments:1, (1,0) length:1 segments:1",
+                "(0,1) -> (0,2) length:1 segments:1, (1,0) length:2 segments:2, (1,1) length:1 segments:1",
+                "(0,2) -> (0,1) length:1 segments:1, (0,3) length:1 segments:1, (1,2) length:1 segments:1",
+                "(0,3) -> (0,2) length:1 segments:1, (1,3) length:1 segments:1, (1,4) length:2 segments:2",
+                "(0,4) -> (0,3) length:1 segments:1, (1,4) length:1 segments:1",
+                "(1,0) -> (0,1) length:2 segments:2, (1,1) length:1 segments:1, (2,0) length:1 segments:1",
+                "(1,1) -> (0,1) length:1 segments:1, (1,0) length:1 segments:1, (1,2) length:1 segments:1, (2,1) length:1 segments:1",
+                "(1,2) -> (0,2) length:1 segments:1, (1,1) length:1 segments:1, (1,3) length:1 segments:1, (2,2) length:1 segments:1",
+                "(1,3) -> (0,3) length:1 segments:1, (1,2) length:1 segments:1, (1,4) length:1 segments:1, (2,3) length:1 segments:1",
+                "(1,4) -> (0,3) length:2 segments:2, (1,3) length:1 segments:1, (2,4) length:1 segments:1",
+                "(2,0) -> (1,0) length:1 segments:1, (2,1) length:1 segments:1, (3,0) length:1 segments:1",
+                "(2,1) -> (1,1) length:1 segments:1, (2,0) length:1 segments:1, (2,2) length:1 segments:1, (3,1) length:1 segments:1",
+                "(2,2) -> (1,2) length:1 segments:1, (2,1) length:1 segments:1, (2,3) length:1 segments:1, (3,2) length:1 segments:1",
+                "(2,3) -> (1,3) length:1 segments:1, (2,2) length:1 segments:1, (2,4) length:1 segments:1, (3,3) length:1 segments:1",
+                "(2,4) -> (1,4) length:1 segments:1, (2,3) length:1 segments:1, (3,4) length:1 segments:1",
+                "(3,0) -> (2,0) length:1 segments:1, (3,1) length:1 segments:1, (4,1) length:2 segments:2",
+                "(3,1) -> (2,1) length:1 segments:1, (3,0) length:1 segments:1, (3,2) length:1 segments:1, (4,1) length:1 segments:1",
+                "(3,2) -> (2,2) length:1 segments:1, (3,1) length:1 segments:1, (3,3) length:1 segments:1, (4,2) length:1 segments:1",
+                "(3,3) -> (2,3) length:1 segments:1, (3,2) length:1 segments:1, (3,4) length:1 segments:1, (4,3) length:1 segments:1",
+                "(3,4) -> (2,4) length:1 segments:1, (3,3) length:1 segments:1, (4,3) length:2 segments:2",
+                "(4,0) -> (3,0) length:1 segments:1, (4,1) length:1 segments:1",
+                "(4,1) -> (3,0) length:2 segments:2, (3,1) length:1 segments:1, (4,2) length:1 segments:1",
+                "(4,2) -> (3,2) length:1 segments:1, (4,1) length:1 segments:1, (4,3) length:1 segments:1",
+                "(4,3) -> (3,3) length:1 segments:1, (3,4) length:2 segments:2, (4,2) length:1 segments:1",
+                "(4,4) -> (3,4) length:1 segments:1, (4,3) length:1 segments:1");
+    }
+
+    private void assertRoutes(int size, int spacing, String... expected) {
+        try (Transaction tx = db.beginTx()) {
+            TestOSMModel osm = new TestOSMModel(tx);
+            osm.buildGrid(size, spacing);
+            osm.addIntersectionLabels();
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            assertThat(findRoutes(tx), contains(expected));
+            tx.commit();
+        }
+    }
+
+    /**
+     * One line for each Routable node, listing the end, length and number of segments of every route found from it.
+     */
+    static List<String> findRoutes(Transaction tx) {
+        OSMModel osm = new OSMModel();
+        ArrayList<String> lines = new ArrayList<>();
+        try (ResourceIterator<Node> nodes = tx.findNodes(OSMModel.Routable)) {
+            while (nodes.hasNext()) {
+                Node node = nodes.next();
+                ArrayList<String> routes = new ArrayList<>();
+                for (Relationship rel : node.getRelationships(Direction.INCOMING, OSMModel.NODE)) {
+                    OSMModel.IntersectionRoutes found = osm.intersectionRoutes(node, rel, rel.getStartNode(), false);
+                    found.process(tx);
+                    for (OSMModel.IntersectionRoute route : found.routes) {
+                        routes.add(location(osm, route.toNode) + " length:" + route.length + " segments:" + route.count);
+                    }
+                }
+                Collections.sort(routes);
+                lines.add(location(osm, node) + " -> " + String.join(", ", routes));
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    private static String location(OSMModel osm, Node node) {
+        double[] coordinate = osm.located(node).point().coordinate();
+        return String.format("(%.0f,%.0f)", coordinate[0], coordinate[1]);
+    }
+}
@@ -0,0 +1,137 @@
+package org.neo4j.gis.osm.model;
+
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.PointValue;
+import org.neo4j.values.storable.Values;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the geometry used to connect a point of interest to the closest street, as done by the
+ * spatial.osm.routePointOfInterest procedure: the projection of a point onto a street segment by {@link
+ * OSMModel.Triangle}, and finding the closest of the ways of a street grid with {@link OSMModel.OSMWayDistance},
+ * both with the ways loaded in the same transaction, as the procedure does, and with ways loaded once, to tell the
+ * traversal of the way nodes apart from the distance calculation. Run with the main method, or with the JMH runner
+ * on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OSMModelBenchmark {
+
+    @Param({"10"})
+    public int size;
+
+    @Param({"2"})
+    public int spacing;
+
+    private final OSMModel osm = new OSMModel();
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+    private Transaction tx;
+    private OSMModel.Triangle[] triangles;
+    private long[] pointsOfInterest;
+    private final List<OSMModel.OSMWay> loadedWays = new ArrayList<>();
+    private final List<OSMModel.LocatedNode> loadedPointsOfInterest = new ArrayList<>();
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void buildGrid() {
+        Random random = new Random(42);
+        triangles = new OSMModel.Triangle[1024];
+        for (int i = 0; i < triangles.length; i++) {
+            triangles[i] = new OSMModel.Triangle(randomPoint(random), randomPoint(random), randomPoint(random));
+        }
+        databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        db = databases.database("neo4j");
+        pointsOfInterest = new long[100];
+        try (Transaction tx = db.beginTx()) {
+            TestOSMModel grid = new TestOSMModel(tx);
+            grid.buildGrid(size, spacing);
+            for (int i = 0; i < pointsOfInterest.length; i++) {
+                Node poi = tx.createNode();
+                poi.setProperty("location", Values.pointValue(CoordinateReferenceSystem.WGS84, random.nextDouble() * size, random.nextDouble() * size));
+                pointsOfInterest[i] = poi.getId();
+            }
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            try (ResourceIterator<Node> ways = tx.findNodes(OSMModel.OSMWay)) {
+                ways.forEachRemaining(way -> loadedWays.add(osm.way(way)));
+            }
+            for (long poi : pointsOfInterest) {
+                loadedPointsOfInterest.add(osm.located(tx.getNodeById(poi)));
+            }
+            tx.commit();
+        }
+    }
+
+    private static PointValue randomPoint(Random random) {
+        return Values.pointValue(CoordinateReferenceSystem.WGS84, 12 + random.nextDouble(), 56 + random.nextDouble());
+    }
+
+    @Setup(Level.Iteration)
+    public void beginTx() {
+        tx = db.beginTx();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeTx() {
+        tx.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        databases.shutdown();
+    }
+
+    @Benchmark
+    public PointValue projectTriangle() {
+        next = (next + 1) % triangles.length;
+        return triangles[next].project();
+    }
+
+    @Benchmark
+    public OSMModel.OSMWayDistance findClosestWay() {
+        next = (next + 1) % pointsOfInterest.length;
+        OSMModel.LocatedNode poi = osm.located(tx.getNodeById(pointsOfInterest[next]));
+        OSMModel.OSMWayDistance closest = null;
+        try (ResourceIterator<Node> ways = tx.findNodes(OSMModel.OSMWay)) {
+            OSMModel.ClosestWay order = new OSMModel.ClosestWay();
+            while (ways.hasNext()) {
+                OSMModel.OSMWayDistance distance = osm.way(ways.next()).closeTo(poi);
+                if (closest == null || order.compare(distance, closest) < 0) {
+                    closest = distance;
+                }
+            }
+        }
+        return closest;
+    }
+
+    @Benchmark
+    public OSMModel.OSMWayDistance findClosestLoadedWay() {
+        next = (next + 1) % loadedPointsOfInterest.size();
+        OSMModel.LocatedNode poi = loadedPointsOfInterest.get(next);
+        return loadedWays.stream().map(way -> way.closeTo(poi)).min(new OSMModel.ClosestWay()).orElse(null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OSMModelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
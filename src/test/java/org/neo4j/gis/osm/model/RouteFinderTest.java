@@ -0,0 +1,104 @@
+package org.neo4j.gis.osm.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+public class RouteFinderTest {
+
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+
+    @Before
+    public void setup() {
+        this.databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        this.db = databases.database("neo4j");
+    }
+
+    @After
+    public void shutdown() {
+        this.databases.shutdown();
+    }
+
+    @Test
+    public void shouldUseConnectorsInBothDirections() {
+        long start, end, cheap, expensive, connector, exit;
+        try (Transaction tx = db.beginTx()) {
+            // The cheap way reaches x first, but may not turn onto the exit, so the route has to arrive at x over
+            // the connector from y, in the opposite direction to the one the connector was first searched in
+            Node s = makeNode(tx, 1);
+            Node x = makeNode(tx, 2);
+            Node y = makeNode(tx, 3);
+            Node e = makeNode(tx, 4);
+            cheap = makeRoute(s, x, 11, 1.0).getId();
+            expensive = makeRoute(s, y, 12, 5.0).getId();
+            exit = makeRoute(x, e, 13, 1.0).getId();
+            Relationship link = x.createRelationshipTo(y, OSMModel.ROUTE);
+            link.setProperty("distance", 1.0);
+            connector = link.getId();
+            Node via = tx.createNode(OSMModel.OSMNode);
+            via.setProperty("node_osm_id", 2L);
+            makeRestriction(tx, makeWay(tx, 11), via, makeWay(tx, 13));
+            TurnRestrictions.compile(tx);
+            start = s.getId();
+            end = e.getId();
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            RouteFinder finder = new RouteFinder(TurnRestrictions.load(tx));
+            List<Relationship> route = finder.find(tx.getNodeById(start), tx.getNodeById(end));
+            assertThat(route, contains(tx.getRelationshipById(expensive), tx.getRelationshipById(connector), tx.getRelationshipById(exit)));
+            assertThat("Should not use the restricted turn", route.contains(tx.getRelationshipById(cheap)), equalTo(false));
+            tx.commit();
+        }
+    }
+
+    private Node makeNode(Transaction tx, long id) {
+        Node node = tx.createNode(OSMModel.Routable);
+        node.setProperty("node_osm_id", id);
+        return node;
+    }
+
+    private Relationship makeRoute(Node from, Node to, long way, double distance) {
+        Relationship route = from.createRelationshipTo(to, OSMModel.ROUTE);
+        route.setProperty("fromWay", way);
+        route.setProperty("toWay", way);
+        route.setProperty("distance", distance);
+        return route;
+    }
+
+    private Node makeWay(Transaction tx, long id) {
+        Node way = tx.createNode(OSMModel.OSMWay);
+        way.setProperty("way_osm_id", id);
+        return way;
+    }
+
+    private void makeRestriction(Transaction tx, Node from, Node via, Node to) {
+        Node relation = tx.createNode(OSMModel.OSMRelation);
+        relation.setProperty("relation_osm_id", 10L);
+        Node tags = tx.createNode(OSMModel.OSMTags);
+        tags.setProperty("type", "restriction");
+        tags.setProperty("restriction", "no_straight_on");
+        relation.createRelationshipTo(tags, OSMModel.TAGS);
+        makeMember(relation, from, "from");
+        makeMember(relation, via, "via");
+        makeMember(relation, to, "to");
+    }
+
+    private void makeMember(Node relation, Node member, String role) {
+        Relationship rel = relation.createRelationshipTo(member, OSMModel.MEMBER);
+        rel.setProperty("role", role);
+    }
+}
@@ -0,0 +1,102 @@
+package org.neo4j.gis.osm.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
+
+public class RoutingProfileTest {
+
+    @Test
+    public void shouldUseHighwaySpeeds() {
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "motorway")), closeTo(110.0, 0.001));
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "residential")), closeTo(30.0, 0.001));
+        assertThat(RoutingProfile.BICYCLE.speed(tags("highway", "cycleway")), closeTo(18.0, 0.001));
+        assertThat(RoutingProfile.FOOT.speed(tags("highway", "steps")), closeTo(3.0, 0.001));
+    }
+
+    @Test
+    public void shouldNotAllowUnsuitableHighways() {
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "footway")), equalTo(0.0));
+        assertThat(RoutingProfile.FOOT.speed(tags("highway", "motorway")), equalTo(0.0));
+        assertThat(RoutingProfile.BICYCLE.speed(tags("highway", "motorway")), equalTo(0.0));
+        assertThat(RoutingProfile.CAR.speed(tags("building", "yes")), equalTo(0.0));
+    }
+
+    @Test
+    public void shouldRespectAccessTags() {
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "residential", "access", "private")), equalTo(0.0));
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "residential", "access", "no", "motor_vehicle", "destination")), closeTo(30.0, 0.001));
+        assertThat(RoutingProfile.BICYCLE.speed(tags("highway", "pedestrian", "bicycle", "no")), equalTo(0.0));
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "pedestrian", "motor_vehicle", "yes")), closeTo(30.0, 0.001));
+    }
+
+    @Test
+    public void shouldLimitByMaxSpeedAndSurface() {
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "primary", "maxspeed", "50")), closeTo(50.0, 0.001));
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "primary", "maxspeed", "30 mph")), closeTo(48.27, 0.001));
+        assertThat(RoutingProfile.CAR.speed(tags("highway", "primary", "maxspeed", "none")), closeTo(70.0, 0.001));
+        assertThat(RoutingProfile.BICYCLE.speed(tags("highway", "track", "surface", "gravel")), closeTo(7.2, 0.001));
+    }
+
+    @Test
+    public void shouldRespectOneway() {
+        assertThat(RoutingProfile.CAR.allowsReverse(tags("highway", "residential"), true), equalTo(false));
+        assertThat(RoutingProfile.CAR.allowsReverse(tags("highway", "residential"), false), equalTo(true));
+        assertThat(RoutingProfile.FOOT.allowsReverse(tags("highway", "residential"), true), equalTo(true));
+        assertThat(RoutingProfile.BICYCLE.allowsReverse(tags("highway", "residential"), true), equalTo(false));
+        assertThat(RoutingProfile.BICYCLE.allowsReverse(tags("highway", "residential", "oneway:bicycle", "no"), true), equalTo(true));
+    }
+
+    @Test
+    public void shouldAllowChangingSpeeds() {
+        RoutingProfile slowCar = RoutingProfile.CAR.withSpeed("residential", 20);
+        assertThat(slowCar.speed(tags("highway", "residential")), closeTo(20.0, 0.001));
+        assertThat(slowCar.getName(), equalTo("car"));
+        assertThat(RoutingProfile.CAR.withSpeed("residential", 0).speed(tags("highway", "residential")), equalTo(0.0));
+    }
+
+    @Test
+    public void shouldParseProfiles() {
+        List<RoutingProfile> profiles = RoutingProfile.parse(Arrays.asList("# Cars avoiding motorways, and walking", "car  motorway=0 residential=20", "", "walk"));
+        assertThat(profiles.size(), equalTo(2));
+        assertThat(profiles.get(0).getName(), equalTo("car"));
+        assertThat(profiles.get(0).speed(tags("highway", "motorway")), equalTo(0.0));
+        assertThat(profiles.get(0).speed(tags("highway", "residential")), closeTo(20.0, 0.001));
+        assertThat(profiles.get(0).speed(tags("highway", "primary")), closeTo(70.0, 0.001));
+        assertThat(profiles.get(1), equalTo(RoutingProfile.FOOT));
+    }
+
+    @Test
+    public void shouldRejectInvalidProfiles() {
+        assertInvalid("Unknown routing profile 'tram'", "tram");
+        assertInvalid("Highway speed 'residential' on line 1", "car residential");
+        assertInvalid("Highway speed 'residential=fast' on line 1", "car residential=fast");
+        assertInvalid("Routing profile 'bicycle' on line 2 is already defined", "bicycle", "bike cycleway=20");
+    }
+
+    private static void assertInvalid(String message, String... lines) {
+        try {
+            RoutingProfile.parse(Arrays.asList(lines));
+            fail("Expected profile to be rejected: " + Arrays.toString(lines));
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), startsWith(message));
+        }
+    }
+
+    private static Map<String, Object> tags(String... values) {
+        HashMap<String, Object> tags = new HashMap<>();
+        for (int i = 0; i < values.length; i += 2) {
+            tags.put(values[i], values[i + 1]);
+        }
+        return tags;
+    }
+}
@@ -45,6 +45,17 @@ public class TestOSMModel extends OSMModel {
         ways.add(makeVerticalWay(size, name + "-" + count + "d", x + xbase, y + ybase, -1));
     }
 
+    /**
+     * Build a street grid, with horizontal and vertical ways every 'spacing' degrees crossing each other, and
+     * sharing the nodes where they cross.
+     */
+    public void buildGrid(int size, int spacing) {
+        for (int i = 0; i <= size; i += spacing) {
+            ways.add(makeHorizontalWay(size, "Row-" + i, 0, i, 1));
+            ways.add(makeVerticalWay(size, "Column-" + i, i, 0, 1));
+        }
+    }
+
     public void addIntersectionLabels() {
         ResourceIterator<Node> routable = tx.findNodes(OSMModel.Routable);
         while (routable.hasNext()) {
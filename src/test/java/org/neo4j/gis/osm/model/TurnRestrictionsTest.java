@@ -0,0 +1,130 @@
+package org.neo4j.gis.osm.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class TurnRestrictionsTest {
+
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+
+    @Before
+    public void setup() {
+        this.databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        this.db = databases.database("neo4j");
+        try (Transaction tx = db.beginTx()) {
+            Node a = makeWay(tx, 1);
+            Node b = makeWay(tx, 2);
+            Node c = makeWay(tx, 3);
+            Node via = tx.createNode(OSMModel.OSMNode);
+            via.setProperty("node_osm_id", 100L);
+            makeRestriction(tx, 10, "no_left_turn", a, via, b);
+            makeRestriction(tx, 11, "only_straight_on", c, via, a);
+            tx.commit();
+        }
+    }
+
+    @After
+    public void shutdown() {
+        this.databases.shutdown();
+    }
+
+    @Test
+    public void shouldCompileAndLoadRestrictions() {
+        try (Transaction tx = db.beginTx()) {
+            TurnRestrictions.CompileStats stats = TurnRestrictions.compile(tx);
+            assertThat(stats.relations, equalTo(2L));
+            assertThat(stats.restrictions, equalTo(2L));
+            assertThat(stats.skipped, equalTo(0L));
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            TurnRestrictions restrictions = TurnRestrictions.load(tx);
+            assertThat(restrictions.size(), equalTo(2));
+            assertThat("no_left_turn should forbid turn", restrictions.isAllowed(1, 100, 2), equalTo(false));
+            assertThat("no_left_turn should not forbid other turns", restrictions.isAllowed(1, 100, 3), equalTo(true));
+            assertThat("no_left_turn should not forbid reverse turn", restrictions.isAllowed(2, 100, 1), equalTo(true));
+            assertThat("only_straight_on should allow specified way", restrictions.isAllowed(3, 100, 1), equalTo(true));
+            assertThat("only_straight_on should forbid other ways", restrictions.isAllowed(3, 100, 2), equalTo(false));
+            assertThat("Restrictions should only apply at the via node", restrictions.isAllowed(1, 101, 2), equalTo(true));
+            assertThat("Unknown ways should not be restricted", restrictions.isAllowed(-1, 100, 2), equalTo(true));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void shouldAllowEveryWayOfOnlyRestrictions() {
+        try (Transaction tx = db.beginTx()) {
+            Node from = makeWay(tx, 4);
+            Node left = makeWay(tx, 5);
+            Node right = makeWay(tx, 6);
+            Node straight = makeWay(tx, 7);
+            Node via = tx.createNode(OSMModel.OSMNode);
+            via.setProperty("node_osm_id", 200L);
+            Node otherVia = tx.createNode(OSMModel.OSMNode);
+            otherVia.setProperty("node_osm_id", 201L);
+            makeRestriction(tx, 12, "only_left_turn", from, via, left, right);
+            makeRestriction(tx, 13, "only_left_turn", from, otherVia, left);
+            makeRestriction(tx, 14, "only_right_turn", from, otherVia, right);
+            TurnRestrictions.CompileStats stats = TurnRestrictions.compile(tx);
+            assertThat(stats.restrictions, equalTo(6L));
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            TurnRestrictions restrictions = TurnRestrictions.load(tx);
+            assertThat("only_* with two to ways should allow the first", restrictions.isAllowed(4, 200, 5), equalTo(true));
+            assertThat("only_* with two to ways should allow the second", restrictions.isAllowed(4, 200, 6), equalTo(true));
+            assertThat("only_* with two to ways should forbid other ways", restrictions.isAllowed(4, 200, 7), equalTo(false));
+            assertThat("Two only_* restrictions should allow the first way", restrictions.isAllowed(4, 201, 5), equalTo(true));
+            assertThat("Two only_* restrictions should allow the second way", restrictions.isAllowed(4, 201, 6), equalTo(true));
+            assertThat("Two only_* restrictions should forbid other ways", restrictions.isAllowed(4, 201, 7), equalTo(false));
+            assertThat("only_* should not restrict other from ways", restrictions.isAllowed(7, 200, 5), equalTo(true));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void shouldAllowAllTurnsWhenNotCompiled() {
+        try (Transaction tx = db.beginTx()) {
+            TurnRestrictions restrictions = TurnRestrictions.load(tx);
+            assertThat(restrictions.size(), equalTo(0));
+            assertThat(restrictions.isAllowed(1, 100, 2), equalTo(true));
+            tx.commit();
+        }
+    }
+
+    private Node makeWay(Transaction tx, long id) {
+        Node way = tx.createNode(OSMModel.OSMWay);
+        way.setProperty("way_osm_id", id);
+        return way;
+    }
+
+    private void makeRestriction(Transaction tx, long id, String restriction, Node from, Node via, Node... to) {
+        Node relation = tx.createNode(OSMModel.OSMRelation);
+        relation.setProperty("relation_osm_id", id);
+        Node tags = tx.createNode(OSMModel.OSMTags);
+        tags.setProperty("type", "restriction");
+        tags.setProperty("restriction", restriction);
+        relation.createRelationshipTo(tags, OSMModel.TAGS);
+        makeMember(relation, from, "from");
+        makeMember(relation, via, "via");
+        for (Node way : to) {
+            makeMember(relation, way, "to");
+        }
+    }
+
+    private void makeMember(Node relation, Node member, String role) {
+        Relationship rel = relation.createRelationshipTo(member, OSMModel.MEMBER);
+        rel.setProperty("role", role);
+    }
+}
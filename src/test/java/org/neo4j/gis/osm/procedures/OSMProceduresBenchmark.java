@@ -0,0 +1,113 @@
+package org.neo4j.gis.osm.procedures;
+
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.exceptions.KernelException;
+import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.gis.osm.model.TestOSMModel;
+import org.neo4j.graphdb.*;
+import org.neo4j.kernel.api.procedure.GlobalProcedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.Values;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many calls per second can be made to the spatial.osm.routeIntersection and
+ * spatial.osm.routePointOfInterest procedures on a street grid in an embedded test database, including the Cypher
+ * call. Each call runs in a transaction of its own that is rolled back, so that the routes and nodes it creates do
+ * not change the graph for the next call. Run with the main method, or with the JMH runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OSMProceduresBenchmark {
+
+    @Param({"20"})
+    public int size;
+
+    @Param({"2"})
+    public int spacing;
+
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+    private long[] intersections;
+    private long[] pointsOfInterest;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void buildGrid() throws KernelException {
+        databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        db = databases.database("neo4j");
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(GlobalProcedures.class).registerProcedure(OSMProcedures.class);
+        Random random = new Random(42);
+        pointsOfInterest = new long[100];
+        try (Transaction tx = db.beginTx()) {
+            TestOSMModel osm = new TestOSMModel(tx);
+            osm.buildGrid(size, spacing);
+            osm.addIntersectionLabels();
+            for (int i = 0; i < pointsOfInterest.length; i++) {
+                Node poi = tx.createNode();
+                poi.setProperty("location", Values.pointValue(CoordinateReferenceSystem.WGS84, random.nextDouble() * size, random.nextDouble() * size));
+                pointsOfInterest[i] = poi.getId();
+            }
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            ArrayList<Long> ids = new ArrayList<>();
+            try (ResourceIterator<Node> nodes = tx.findNodes(OSMModel.Intersection)) {
+                nodes.forEachRemaining(node -> ids.add(node.getId()));
+            }
+            intersections = ids.stream().mapToLong(Long::longValue).toArray();
+            tx.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        databases.shutdown();
+    }
+
+    @Benchmark
+    public long routeIntersection() {
+        next = (next + 1) % intersections.length;
+        return call(intersections[next], "CALL spatial.osm.routeIntersection($node,false,true,false) YIELD toNode RETURN toNode");
+    }
+
+    @Benchmark
+    public long routePointOfInterest() {
+        next = (next + 1) % pointsOfInterest.length;
+        return call(pointsOfInterest[next], "MATCH (w:OSMWay) WITH collect(w) AS ways CALL spatial.osm.routePointOfInterest($node,ways) YIELD node RETURN node");
+    }
+
+    /**
+     * Run the call for the node in a transaction that is rolled back, returning the number of rows.
+     */
+    private long call(long nodeId, String call) {
+        long rows = 0;
+        try (Transaction tx = db.beginTx()) {
+            try (Result result = tx.execute(call, Map.of("node", tx.getNodeById(nodeId)))) {
+                while (result.hasNext()) {
+                    result.next();
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OSMProceduresBenchmark.class.getSimpleName()).build()).run();
+    }
+}
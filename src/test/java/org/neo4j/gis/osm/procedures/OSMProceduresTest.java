@@ -6,18 +6,25 @@ import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.dbms.api.DatabaseManagementService;
 import org.neo4j.exceptions.KernelException;
+import org.neo4j.gis.osm.model.EncodedPolyline;
 import org.neo4j.gis.osm.model.OSMModel;
 import org.neo4j.gis.osm.model.TestOSMModel;
 import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.spatial.Point;
 import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.kernel.api.procedure.GlobalProcedures;
 import org.neo4j.kernel.impl.traversal.MonoDirectionalTraversalDescription;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+import org.neo4j.values.storable.CRSCalculator;
+import org.neo4j.values.storable.CoordinateReferenceSystem;
+import org.neo4j.values.storable.PointValue;
+import org.neo4j.values.storable.Values;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
@@ -30,6 +37,7 @@ import static org.neo4j.gis.osm.model.OSMModel.Routable;
 public class OSMProceduresTest {
     private DatabaseManagementService databases;
     private GraphDatabaseService db;
+    private final CRSCalculator calculator = CoordinateReferenceSystem.WGS84.getCalculator();
     //private TestOSMModel osm;
 
     @Before
@@ -147,6 +155,189 @@ public class OSMProceduresTest {
         assertFoundIntersections("ChainBottomRight", 3);
     }
 
+    @Test
+    public void shouldRejectInvalidGeometryPrecision() {
+        Node startNode;
+        int routes;
+        try (Transaction tx = db.beginTx()) {
+            startNode = new TestOSMModel(tx).getWay("ChainTopRight-0").nodes.get(0).node();
+            testCallCount(tx, "CALL spatial.osm.routeIntersection($osmNode,true,true,true)", map("osmNode", startNode), 3);
+            routes = countRoutes(startNode);
+            tx.commit();
+        }
+        assertThat("Routes should have been created", routes, greaterThan(0));
+        for (long precision : new long[]{-1, 10}) {
+            try (Transaction tx = db.beginTx()) {
+                testCallFails(tx, "CALL spatial.osm.routeIntersection($osmNode,true,true,true,[],$precision)",
+                        map("osmNode", tx.getNodeById(startNode.getId()), "precision", precision),
+                        "Geometry precision must be between 0 and 9 decimal places, but was " + precision);
+            }
+        }
+        try (Transaction tx = db.beginTx()) {
+            assertThat("Existing routes should be kept", countRoutes(tx.getNodeById(startNode.getId())), equalTo(routes));
+            tx.commit();
+        }
+    }
+
+    private static int countRoutes(Node node) {
+        int count = 0;
+        for (Relationship ignored : node.getRelationships(OSMModel.ROUTE)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void shouldRouteAroundNoLeftTurn() {
+        long[] nodes = buildRestrictedJunction("no_left_turn", 2);
+        assertRoute(nodes, 0, 1, 2);
+        compileTurnRestrictions();
+        assertRoute(nodes, 0, 1, 3, 4, 2);
+    }
+
+    @Test
+    public void shouldRouteAroundOnlyStraightOn() {
+        long[] nodes = buildRestrictedJunction("only_straight_on", 1);
+        compileTurnRestrictions();
+        assertRoute(nodes, 0, 1, 3, 4, 2);
+        assertRoute(nodes, 2, 1, 0);
+    }
+
+    /**
+     * A routing graph like the one created by spatial.osm.routeIntersection: way 1 runs east from A(0,0) through B(1,0)
+     * to D(2,0), way 2 north from B to C(1,1), way 3 north from D to E(2,1) and way 4 west from E to C. The restriction
+     * applies when arriving at B on way 1, so that the left turn onto way 2 towards C can be forbidden.
+     *
+     * @return the ids of the nodes A, B, C, D and E
+     */
+    private long[] buildRestrictedJunction(String restriction, long toWay) {
+        try (Transaction tx = db.beginTx()) {
+            Node a = makeRoutingNode(tx, 1, 0, 0);
+            Node b = makeRoutingNode(tx, 2, 1, 0);
+            Node c = makeRoutingNode(tx, 3, 1, 1);
+            Node d = makeRoutingNode(tx, 4, 2, 0);
+            Node e = makeRoutingNode(tx, 5, 2, 1);
+            makeRoutes(a, b, 1);
+            makeRoutes(b, d, 1, 1.5, 0.0);
+            makeRoutes(b, c, 2);
+            makeRoutes(d, e, 3);
+            makeRoutes(e, c, 4);
+            Node relation = tx.createNode(OSMModel.OSMRelation);
+            relation.setProperty("relation_osm_id", 10L);
+            Node tags = tx.createNode(OSMModel.OSMTags);
+            tags.setProperty("type", "restriction");
+            tags.setProperty("restriction", restriction);
+            relation.createRelationshipTo(tags, OSMModel.TAGS);
+            relation.createRelationshipTo(makeRoutingWay(tx, 1), OSMModel.MEMBER).setProperty("role", "from");
+            relation.createRelationshipTo(b, OSMModel.MEMBER).setProperty("role", "via");
+            relation.createRelationshipTo(makeRoutingWay(tx, toWay), OSMModel.MEMBER).setProperty("role", "to");
+            tx.commit();
+            return new long[]{a.getId(), b.getId(), c.getId(), d.getId(), e.getId()};
+        }
+    }
+
+    private static Node makeRoutingNode(Transaction tx, long osmId, double x, double y) {
+        Node node = tx.createNode(OSMModel.OSMNode, Routable);
+        node.setProperty("node_osm_id", osmId);
+        node.setProperty("location", Values.pointValue(CoordinateReferenceSystem.WGS84, x, y));
+        return node;
+    }
+
+    private static Node makeRoutingWay(Transaction tx, long osmId) {
+        Node way = tx.findNode(OSMModel.OSMWay, "way_osm_id", osmId);
+        if (way == null) {
+            way = tx.createNode(OSMModel.OSMWay);
+            way.setProperty("way_osm_id", osmId);
+        }
+        return way;
+    }
+
+    /**
+     * ROUTE relationships in both directions along a way, through the interior points given as x, y pairs.
+     */
+    private void makeRoutes(Node from, Node to, long wayId, double... interior) {
+        ArrayList<PointValue> points = new ArrayList<>();
+        points.add((PointValue) from.getProperty("location"));
+        for (int i = 0; i < interior.length; i += 2) {
+            points.add(Values.pointValue(CoordinateReferenceSystem.WGS84, interior[i], interior[i + 1]));
+        }
+        points.add((PointValue) to.getProperty("location"));
+        double distance = 0.0;
+        for (int i = 1; i < points.size(); i++) {
+            distance += calculator.distance(points.get(i - 1), points.get(i));
+        }
+        double[] reversed = new double[interior.length];
+        for (int i = 0; i < interior.length; i += 2) {
+            reversed[interior.length - 2 - i] = interior[i];
+            reversed[interior.length - 1 - i] = interior[i + 1];
+        }
+        makeRoute(from, to, wayId, distance, interior);
+        makeRoute(to, from, wayId, distance, reversed);
+    }
+
+    private static void makeRoute(Node from, Node to, long wayId, double distance, double[] interior) {
+        Relationship route = from.createRelationshipTo(to, OSMModel.ROUTE);
+        route.setProperty("distance", distance);
+        route.setProperty("fromWay", wayId);
+        route.setProperty("toWay", wayId);
+        route.setProperty("geometry", EncodedPolyline.encode(interior, interior.length / 2));
+    }
+
+    private void compileTurnRestrictions() {
+        try (Transaction tx = db.beginTx()) {
+            testCall(tx, "CALL spatial.osm.compileTurnRestrictions() YIELD relations, restrictions, skipped RETURN relations, restrictions, skipped", r -> {
+                assertThat(r.get("relations"), equalTo(1L));
+                assertThat(r.get("restrictions"), equalTo(1L));
+                assertThat(r.get("skipped"), equalTo(0L));
+            });
+            tx.commit();
+        }
+    }
+
+    /**
+     * Assert that spatial.osm.route finds the route from one node through the expected nodes, ending at the last of
+     * them, and returns consistent steps.
+     */
+    private void assertRoute(long[] nodes, int from, int... expected) {
+        try (Transaction tx = db.beginTx()) {
+            ArrayList<Node> found = new ArrayList<>();
+            testResult(tx, "CALL spatial.osm.route($from,$to) YIELD index, fromNode, toNode, route, distance, totalDistance, geometry RETURN *",
+                    map("from", tx.getNodeById(nodes[from]), "to", tx.getNodeById(nodes[expected[expected.length - 1]])), res -> {
+                        Node previous = tx.getNodeById(nodes[from]);
+                        double total = 0.0;
+                        while (res.hasNext()) {
+                            Map<String, Object> step = res.next();
+                            Node fromNode = (Node) step.get("fromNode");
+                            Node toNode = (Node) step.get("toNode");
+                            Relationship route = (Relationship) step.get("route");
+                            assertThat("Steps should be numbered in order", step.get("index"), equalTo((long) found.size()));
+                            assertThat("Each step should start where the previous one ended", fromNode, equalTo(previous));
+                            assertThat("Each step should follow its route in its own direction", route.getStartNode(), equalTo(fromNode));
+                            assertThat(route.getEndNode(), equalTo(toNode));
+                            total += (Double) step.get("distance");
+                            assertThat((Double) step.get("totalDistance"), closeTo(total, 0.001));
+                            @SuppressWarnings("unchecked")
+                            List<Point> geometry = (List<Point>) step.get("geometry");
+                            assertThat(geometry.size(), equalTo(2 + EncodedPolyline.countPoints((byte[]) route.getProperty("geometry"))));
+                            assertThat("Geometry should start at the step start", coordinate(geometry.get(0)), equalTo(coordinate(fromNode.getProperty("location"))));
+                            assertThat("Geometry should end at the step end", coordinate(geometry.get(geometry.size() - 1)), equalTo(coordinate(toNode.getProperty("location"))));
+                            found.add(toNode);
+                            previous = toNode;
+                        }
+                    });
+            ArrayList<Node> expectedNodes = new ArrayList<>();
+            for (int index : expected) {
+                expectedNodes.add(tx.getNodeById(nodes[index]));
+            }
+            assertThat(found, equalTo(expectedNodes));
+            tx.commit();
+        }
+    }
+
+    private static List<Double> coordinate(Object point) {
+        return ((Point) point).getCoordinate().getCoordinate();
+    }
+
     private void assertFoundIntersections(String branch, int count) {
         try (Transaction tx = db.beginTx()) {
             TestOSMModel osm = new TestOSMModel(tx);
@@ -178,6 +369,14 @@ public class OSMProceduresTest {
                             assertNotNull(branch + " route relationship ending at " + toNode + " should exist", route);
                             assertThat(branch + " route relationship should have found wayNode relationship id", route.getProperty("fromRel"), equalTo(fromRel.getId()));
                             assertThat(branch + " route relationship should have found wayNode relationship id", route.getProperty("toRel"), equalTo(toRel.getId()));
+                            List<PointValue> geometry = OSMModel.routeGeometry(route, startNode);
+                            assertThat(branch + " route geometry should start at start node", geometry.get(0), equalTo(startNode.getProperty("location")));
+                            assertThat(branch + " route geometry should end at end node", geometry.get(geometry.size() - 1), equalTo(toNode.getProperty("location")));
+                            double geometryDistance = 0.0;
+                            for (int i = 1; i < geometry.size(); i++) {
+                                geometryDistance += calculator.distance(geometry.get(i - 1), geometry.get(i));
+                            }
+                            assertThat(branch + " route geometry should follow the route", geometryDistance, closeTo(distance, 1.0));
                         }
                     });
             assertThat(found.size(), equalTo(count));
@@ -0,0 +1,208 @@
+package org.neo4j.gis.osm.update;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.gis.osm.importer.OSMEntity;
+import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.graphdb.*;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class OSMChangeApplierTest {
+
+    private static final String CREATE = "<osmChange version=\"0.6\"><create>" +
+            "<node id=\"1\" version=\"1\" timestamp=\"2020-11-01T10:00:00Z\" lat=\"56.0\" lon=\"12.0\"/>" +
+            "<node id=\"2\" version=\"1\" timestamp=\"2020-11-01T10:00:00Z\" lat=\"56.0\" lon=\"12.001\"/>" +
+            "<node id=\"3\" version=\"1\" timestamp=\"2020-11-01T10:00:00Z\" lat=\"56.0\" lon=\"12.002\"><tag k=\"name\" v=\"Cafe\"/><tag k=\"amenity\" v=\"cafe\"/></node>" +
+            "<way id=\"10\" version=\"1\" timestamp=\"2020-11-01T10:00:00Z\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/>" +
+            "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"Main Street\"/></way>" +
+            "<relation id=\"20\" version=\"1\"><member type=\"way\" ref=\"10\" role=\"outer\"/><member type=\"node\" ref=\"99\" role=\"\"/>" +
+            "<tag k=\"type\" v=\"route\"/></relation>" +
+            "</create></osmChange>";
+
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+
+    @Before
+    public void setup() {
+        this.databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        this.db = databases.database("neo4j");
+    }
+
+    @After
+    public void shutdown() {
+        this.databases.shutdown();
+    }
+
+    @Test
+    public void shouldReadChanges() throws Exception {
+        List<OSMChange> changes = new ArrayList<>();
+        try (OSMChangeReader reader = reader(CREATE)) {
+            reader.forEachRemaining(changes::add);
+        }
+        assertThat(changes.size(), equalTo(5));
+        OSMChange way = changes.get(3);
+        assertThat(way.action, equalTo(OSMChange.Action.CREATE));
+        assertThat(way.type, equalTo(OSMEntity.Type.WAY));
+        assertThat(way.id, equalTo(10L));
+        assertThat(way.wayNodes, contains(1L, 2L, 3L));
+        assertThat(way.tags.get("highway"), equalTo("residential"));
+        assertThat(changes.get(0).properties, hasKey("location"));
+        assertThat(changes.get(4).members.size(), equalTo(2));
+    }
+
+    @Test
+    public void shouldCreateEntities() throws Exception {
+        OSMChangeApplier.Stats stats = apply(CREATE);
+        assertThat(stats.created, equalTo(5L));
+        assertThat(stats.missingReferences, equalTo(1L));
+        try (Transaction tx = db.beginTx()) {
+            Node way = tx.findNode(OSMModel.OSMWay, "way_osm_id", 10L);
+            assertThat(way.getProperty("name"), equalTo("Main Street"));
+            assertThat(way.getProperty("highway"), equalTo("residential"));
+            assertThat(way.getProperty("oneway"), equalTo("BOTH"));
+            assertThat(wayNodeIds(way), contains(1L, 2L, 3L));
+            assertThat(tags(tx.findNode(OSMModel.OSMNode, "node_osm_id", 3L)).getProperty("amenity"), equalTo("cafe"));
+            assertThat(tx.findNode(OSMModel.OSMNode, "node_osm_id", 3L).getProperty("name"), equalTo("Cafe"));
+            Node relation = tx.findNode(OSMModel.OSMRelation, "relation_osm_id", 20L);
+            Relationship member = relation.getSingleRelationship(OSMModel.MEMBER, Direction.OUTGOING);
+            assertThat(member.getEndNode(), equalTo(way));
+            assertThat(member.getProperty("role"), equalTo("outer"));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void shouldModifyEntities() throws Exception {
+        apply(CREATE);
+        OSMChangeApplier.Stats stats = apply("<osmChange version=\"0.6\"><modify>" +
+                "<node id=\"3\" version=\"2\" lat=\"56.1\" lon=\"12.002\"><tag k=\"amenity\" v=\"restaurant\"/></node>" +
+                "<way id=\"10\" version=\"2\"><nd ref=\"3\"/><nd ref=\"1\"/><tag k=\"highway\" v=\"residential\"/><tag k=\"oneway\" v=\"-1\"/></way>" +
+                "</modify></osmChange>");
+        assertThat(stats.modified, equalTo(2L));
+        assertThat(stats.created, equalTo(0L));
+        try (Transaction tx = db.beginTx()) {
+            Node node = tx.findNode(OSMModel.OSMNode, "node_osm_id", 3L);
+            assertThat(node.getProperty("version"), equalTo(2));
+            assertThat(node.getProperty("lat"), equalTo(56.1));
+            assertThat("Name should be removed with the name tag", node.hasProperty("name"), equalTo(false));
+            assertThat(tags(node).getProperty("amenity"), equalTo("restaurant"));
+            assertThat(count(tx.findNodes(OSMModel.OSMTags)), equalTo(3));
+            Node way = tx.findNode(OSMModel.OSMWay, "way_osm_id", 10L);
+            assertThat(way.hasProperty("name"), equalTo(false));
+            assertThat(way.getProperty("oneway"), equalTo("BACKWARD"));
+            assertThat(count(tx.findNodes(OSMModel.OSMWayNode)), equalTo(2));
+            Node first = way.getSingleRelationship(OSMModel.FIRST_NODE, Direction.OUTGOING).getEndNode();
+            assertThat("Backward one-way should have NEXT pointing to the first node", first.hasRelationship(Direction.INCOMING, OSMModel.NEXT), equalTo(true));
+            assertThat(wayNodeIds(way), contains(3L, 1L));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void shouldDeleteEntities() throws Exception {
+        apply(CREATE);
+        OSMChangeApplier.Stats stats = apply("<osmChange version=\"0.6\"><delete>" +
+                "<relation id=\"20\" version=\"2\"/><way id=\"10\" version=\"2\"/><node id=\"3\" version=\"2\"/><node id=\"42\" version=\"2\"/>" +
+                "</delete></osmChange>");
+        assertThat(stats.deleted, equalTo(3L));
+        assertThat(stats.notFound, equalTo(1L));
+        try (Transaction tx = db.beginTx()) {
+            assertThat(count(tx.findNodes(OSMModel.OSMWay)), equalTo(0));
+            assertThat(count(tx.findNodes(OSMModel.OSMRelation)), equalTo(0));
+            assertThat(count(tx.findNodes(OSMModel.OSMWayNode)), equalTo(0));
+            assertThat(count(tx.findNodes(OSMModel.OSMTags)), equalTo(0));
+            assertThat(count(tx.findNodes(OSMModel.OSMNode)), equalTo(2));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void shouldCommitInBatches() throws Exception {
+        OSMChangeApplier applier = new OSMChangeApplier(db, 2, System.out);
+        applier.ensureIndexes();
+        try (OSMChangeReader reader = reader(CREATE)) {
+            OSMChangeApplier.Stats stats = applier.apply(reader);
+            assertThat(stats.batches, equalTo(3L));
+            assertThat(stats.changes(), equalTo(5L));
+        }
+    }
+
+    private OSMChangeApplier.Stats apply(String osmChange) throws Exception {
+        OSMChangeApplier applier = new OSMChangeApplier(db);
+        applier.ensureIndexes();
+        try (OSMChangeReader reader = reader(osmChange)) {
+            return applier.apply(reader);
+        }
+    }
+
+    private static OSMChangeReader reader(String osmChange) {
+        return new OSMChangeReader("test.osc", new ByteArrayInputStream(osmChange.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void shouldKeepInlineTags() throws Exception {
+        try (Transaction tx = db.beginTx()) {
+            Node dataset = tx.createNode(OSMModel.OSM);
+            dataset.setProperty("inline_tags", true);
+            tx.commit();
+        }
+        apply(CREATE);
+        apply("<osmChange version=\"0.6\"><modify>" +
+                "<node id=\"3\" version=\"2\" lat=\"56.1\" lon=\"12.002\"><tag k=\"amenity\" v=\"restaurant\"/><tag k=\"version\" v=\"x\"/></node>" +
+                "</modify></osmChange>");
+        try (Transaction tx = db.beginTx()) {
+            assertThat("Expected no separate tag nodes", count(tx.findNodes(OSMModel.OSMTags)), equalTo(0));
+            Node node = tx.findNode(OSMModel.OSMNode, "node_osm_id", 3L);
+            assertThat(node.getProperty("amenity"), equalTo("restaurant"));
+            assertThat("Attributes should take precedence over tags", node.getProperty("version"), equalTo(2));
+            assertThat("Removed tags should be removed", node.hasProperty("name"), equalTo(false));
+            Node way = tx.findNode(OSMModel.OSMWay, "way_osm_id", 10L);
+            assertThat(OSMModel.tags(way).get("highway"), equalTo("residential"));
+            Node relation = tx.findNode(OSMModel.OSMRelation, "relation_osm_id", 20L);
+            assertThat(OSMModel.tags(relation).get("type"), equalTo("route"));
+            tx.commit();
+        }
+    }
+
+    private static List<Long> wayNodeIds(Node way) {
+        List<Long> ids = new ArrayList<>();
+        Node wayNode = way.getSingleRelationship(OSMModel.FIRST_NODE, Direction.OUTGOING).getEndNode();
+        Node previous = null;
+        while (wayNode != null) {
+            ids.add((Long) wayNode.getSingleRelationship(OSMModel.NODE, Direction.OUTGOING).getEndNode().getProperty("node_osm_id"));
+            Node next = null;
+            for (Relationship rel : wayNode.getRelationships(OSMModel.NEXT)) {
+                Node other = rel.getOtherNode(wayNode);
+                if (!other.equals(previous)) {
+                    next = other;
+                }
+            }
+            previous = wayNode;
+            wayNode = next;
+        }
+        return ids;
+    }
+
+    private static Node tags(Node entity) {
+        return entity.getSingleRelationship(OSMModel.TAGS, Direction.OUTGOING).getEndNode();
+    }
+
+    private static int count(ResourceIterator<Node> nodes) {
+        int count = 0;
+        while (nodes.hasNext()) {
+            nodes.next();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+package org.neo4j.gis.osm.update;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many times per second a generated osmChange document held in memory can be read, which is mostly the
+ * conversion of the attributes of every element to properties, with the coordinates, versions and timestamps parsed.
+ * Run with the main method, or with the JMH runner on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OSMChangeReaderBenchmark {
+
+    @Param({"10000"})
+    public int changes;
+
+    private byte[] osmChange;
+
+    @Setup(Level.Trial)
+    public void generateChanges() {
+        StringBuilder osc = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osmChange version=\"0.6\" generator=\"OSMChangeReaderBenchmark\">\n");
+        for (int i = 1; i <= changes; i++) {
+            String action = i % 10 == 0 ? "delete" : i % 3 == 0 ? "create" : "modify";
+            osc.append(" <").append(action).append(">\n");
+            String attributes = String.format(Locale.ROOT, "id=\"%d\" version=\"%d\" timestamp=\"2020-02-%02dT08:30:00Z\" uid=\"%d\" user=\"user%d\" changeset=\"%d\"",
+                    i, i % 7 + 1, i % 28 + 1, i % 53, i % 53, 80000000 + i / 100);
+            if (i % 5 == 0) {
+                osc.append("  <way ").append(attributes).append(">\n");
+                for (int node = 0; node < 8; node++) {
+                    osc.append("   <nd ref=\"").append(i * 10 + node).append("\"/>\n");
+                }
+                osc.append("   <tag k=\"highway\" v=\"residential\"/>\n   <tag k=\"name\" v=\"Street ").append(i).append("\"/>\n  </way>\n");
+            } else {
+                osc.append(String.format(Locale.ROOT, "  <node %s lat=\"%.7f\" lon=\"%.7f\"", attributes, 56 + i * 1e-5, 12 + i * 1e-5));
+                if (i % 4 == 0) {
+                    osc.append(">\n   <tag k=\"amenity\" v=\"bench\"/>\n  </node>\n");
+                } else {
+                    osc.append("/>\n");
+                }
+            }
+            osc.append(" </").append(action).append(">\n");
+        }
+        osmChange = osc.append("</osmChange>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long readChanges() throws IOException {
+        long properties = 0;
+        try (OSMChangeReader reader = new OSMChangeReader("benchmark.osc", new ByteArrayInputStream(osmChange))) {
+            while (reader.hasNext()) {
+                OSMChange change = reader.next();
+                properties += change.properties.size() + change.tags.size() + change.wayNodes.size();
+            }
+        }
+        return properties;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OSMChangeReaderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
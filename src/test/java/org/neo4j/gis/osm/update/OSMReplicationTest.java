@@ -0,0 +1,143 @@
+package org.neo4j.gis.osm.update;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.gis.osm.importer.OSMEntity;
+import org.neo4j.gis.osm.model.OSMModel;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.io.fs.FileUtils;
+import org.neo4j.test.TestDatabaseManagementServiceBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class OSMReplicationTest {
+    private static final File directory = new File("target/replication-test");
+
+    private DatabaseManagementService databases;
+    private GraphDatabaseService db;
+
+    @Before
+    public void setup() throws IOException {
+        FileUtils.deleteRecursively(directory);
+        this.databases = new TestDatabaseManagementServiceBuilder().impermanent().build();
+        this.db = databases.database("neo4j");
+        writeDiff(1, "<create><node id=\"1\" version=\"1\" lat=\"56.0\" lon=\"12.0\"/><node id=\"2\" version=\"1\" lat=\"56.0\" lon=\"12.001\"/>" +
+                "<way id=\"10\" version=\"1\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"highway\" v=\"residential\"/></way></create>");
+        writeDiff(2, "<modify><node id=\"1\" version=\"2\" lat=\"56.1\" lon=\"12.0\"/></modify>" +
+                "<create><node id=\"3\" version=\"1\" lat=\"56.0\" lon=\"12.002\"/></create>");
+        writeDiff(3, "<modify><node id=\"1\" version=\"3\" lat=\"56.2\" lon=\"12.0\"/>" +
+                "<way id=\"10\" version=\"2\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><tag k=\"highway\" v=\"residential\"/></way></modify>");
+        writeState(3);
+    }
+
+    @After
+    public void shutdown() {
+        this.databases.shutdown();
+    }
+
+    @Test
+    public void shouldMergeChangesInWindow() throws Exception {
+        ChangeWindow window = new ChangeWindow();
+        OSMReplication replication = replication(3);
+        for (long sequence = 1; sequence <= 3; sequence++) {
+            try (OSMChangeReader changes = new OSMChangeReader(replication.changeFile(sequence).getPath())) {
+                window.addAll(changes);
+            }
+        }
+        assertThat(window.read(), equalTo(7L));
+        assertThat(window.size(), equalTo(4));
+        assertThat(window.updates(OSMEntity.Type.NODE).get(0).properties.get("version"), equalTo(3));
+        assertThat(window.updates(OSMEntity.Type.WAY).get(0).wayNodes.size(), equalTo(3));
+    }
+
+    @Test
+    public void shouldRequireStartingSequence() throws Exception {
+        try {
+            replication(3).catchUp(null);
+            throw new AssertionError("Expected replication without a sequence number to fail");
+        } catch (IllegalStateException e) {
+            assertThat(replication(3).lastApplied(), nullValue());
+        }
+    }
+
+    @Test
+    public void shouldCatchUpAndResume() throws Exception {
+        OSMChangeApplier.Stats stats = replication(2).catchUp(0L);
+        assertThat("Second window should contain only the merged changes to node 1 and way 10", stats.changes(), equalTo(6L));
+        assertThat(replication(2).lastApplied(), equalTo(3L));
+        try (Transaction tx = db.beginTx()) {
+            Node node = tx.findNode(OSMModel.OSMNode, "node_osm_id", 1L);
+            assertThat(node.getProperty("version"), equalTo(3));
+            assertThat(node.getProperty("lat"), equalTo(56.2));
+            Node way = tx.findNode(OSMModel.OSMWay, "way_osm_id", 10L);
+            assertThat(way.getProperty("version"), equalTo(2));
+            tx.commit();
+        }
+
+        writeDiff(4, "<delete><way id=\"10\" version=\"3\"/><node id=\"3\" version=\"2\"/></delete>");
+        writeState(4);
+        stats = replication(2).catchUp(0L);
+        assertThat("Should resume after the last applied sequence", stats.changes(), equalTo(2L));
+        assertThat(stats.deleted, equalTo(2L));
+        assertThat(replication(2).lastApplied(), equalTo(4L));
+        try (Transaction tx = db.beginTx()) {
+            assertThat(tx.findNode(OSMModel.OSMWay, "way_osm_id", 10L), nullValue());
+            assertThat(tx.findNodes(OSMModel.OSMWayNode).hasNext(), equalTo(false));
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void shouldCreateNestedRelationsInOneWindow() throws Exception {
+        replication(3).catchUp(0L);
+        // Ordered by id, each relation would come before the relation it has as member
+        writeDiff(4, "<create><relation id=\"30\" version=\"1\"><member type=\"relation\" ref=\"31\" role=\"\"/></relation>" +
+                "<relation id=\"31\" version=\"1\"><member type=\"relation\" ref=\"32\" role=\"\"/></relation>" +
+                "<relation id=\"32\" version=\"1\"><member type=\"way\" ref=\"10\" role=\"\"/></relation></create>");
+        writeState(4);
+        OSMChangeApplier.Stats stats = replication(3).catchUp(0L);
+        assertThat(stats.created, equalTo(3L));
+        assertThat(stats.missingReferences, equalTo(0L));
+        try (Transaction tx = db.beginTx()) {
+            assertThat(member(tx.findNode(OSMModel.OSMRelation, "relation_osm_id", 30L)).getProperty("relation_osm_id"), equalTo(31L));
+            assertThat(member(tx.findNode(OSMModel.OSMRelation, "relation_osm_id", 31L)).getProperty("relation_osm_id"), equalTo(32L));
+            assertThat(member(tx.findNode(OSMModel.OSMRelation, "relation_osm_id", 32L)).getProperty("way_osm_id"), equalTo(10L));
+            tx.commit();
+        }
+    }
+
+    private static Node member(Node relation) {
+        return relation.getSingleRelationship(OSMModel.MEMBER, Direction.OUTGOING).getEndNode();
+    }
+
+    private OSMReplication replication(int window) {
+        OSMChangeApplier applier = new OSMChangeApplier(db, 100, System.out);
+        applier.ensureIndexes();
+        return new OSMReplication(db, directory, applier, window, 2, System.out);
+    }
+
+    private static void writeDiff(long sequence, String changes) throws IOException {
+        File file = new File(directory, OSMReplication.sequencePath(sequence) + ".osc");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), ("<osmChange version=\"0.6\">" + changes + "</osmChange>").getBytes(StandardCharsets.UTF_8));
+        String state = "sequenceNumber=" + sequence + "\ntimestamp=2020-11-01T10\\:0" + sequence + "\\:00Z\n";
+        Files.write(new File(directory, OSMReplication.sequencePath(sequence) + ".state.txt").toPath(), state.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeState(long sequence) throws IOException {
+        String state = "sequenceNumber=" + sequence + "\ntimestamp=2020-11-01T10\\:0" + sequence + "\\:00Z\n";
+        Files.write(new File(directory, "state.txt").toPath(), state.getBytes(StandardCharsets.UTF_8));
+    }
+}